@@ -0,0 +1,186 @@
+/*
+ * Copyright 2019 Steinar Bang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package no.priv.bang.ukelonn.backend;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import javax.sql.DataSource;
+
+import no.priv.bang.ukelonn.UkelonnException;
+import no.priv.bang.ukelonn.beans.Account;
+
+/**
+ * Keeps the balances of all accounts in memory, so that accounts can
+ * be read without a round trip to the database.  The database is still
+ * the system of record: the ledger is loaded from the accounts table,
+ * and is only changed after a change to the database has been
+ * committed.
+ *
+ * Balances are kept in øre, in an {@link IntLongHashMap} keyed by
+ * account id.  Writers add the change to the balance, rather than
+ * setting the new balance, so that two commits on the same account
+ * give the right result in whichever order they reach the ledger.
+ *
+ * @author Steinar Bang
+ *
+ */
+public class AccountLedger {
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final IntLongHashMap balances;
+    private final Map<String, Integer> accountIds = new LinkedHashMap<>();
+
+    AccountLedger(int expectedNumberOfAccounts) {
+        balances = new IntLongHashMap(expectedNumberOfAccounts);
+    }
+
+    /**
+     * Load the accounts table into a new ledger.  The table is split
+     * into partitions on the account id, and the partitions are read in
+     * parallel.
+     *
+     * @param datasource the database to load the accounts from
+     * @param executor the executor running the partition queries
+     * @param partitions the number of partitions to split the accounts in
+     * @return a ledger holding all accounts
+     */
+    public static AccountLedger load(DataSource datasource, ExecutorService executor, int partitions) {
+        List<CompletableFuture<List<Account>>> partitionQueries = new ArrayList<>();
+        for (int partition = 0; partition < partitions; ++partition) {
+            int remainder = partition;
+            partitionQueries.add(CompletableFuture.supplyAsync(() -> loadPartition(datasource, partitions, remainder), executor));
+        }
+
+        List<Account> accounts = new ArrayList<>();
+        try {
+            for (CompletableFuture<List<Account>> partitionQuery : partitionQueries) {
+                accounts.addAll(partitionQuery.join());
+            }
+        } catch (CompletionException e) {
+            throw new UkelonnException("Failed to load the account ledger", e.getCause());
+        }
+
+        accounts.sort(Comparator.comparingInt(Account::getAccountId));
+        AccountLedger ledger = new AccountLedger(accounts.size());
+        for (Account account : accounts) {
+            ledger.addAccount(account.getAccountId(), account.getUsername(), account.getBalance());
+        }
+
+        return ledger;
+    }
+
+    static List<Account> loadPartition(DataSource datasource, int partitions, int remainder) {
+        List<Account> accounts = new ArrayList<>();
+        try(Connection connection = datasource.getConnection()) {
+            // The partition numbers are inlined, since derby can't find the type of a parameter to mod()
+            String sql = String.format("select account_id, username, balance from accounts where mod(account_id, %d)=%d", partitions, remainder);
+            try(PreparedStatement statement = connection.prepareStatement(sql)) { // NOSONAR Only integers are added to the SQL
+                try(ResultSet results = statement.executeQuery()) {
+                    while (results.next()) {
+                        accounts.add(new Account(results.getInt("account_id"), results.getString("username"), null, null, results.getDouble("balance")));
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            throw new UkelonnException(String.format("Failed to load partition %d of %d of the account ledger", remainder, partitions), e);
+        }
+
+        return accounts;
+    }
+
+    /**
+     * Add an account to the ledger.  If the account is already in the
+     * ledger, e.g. because a job was registered on the account before
+     * the account creation reached the ledger, its balance is kept.
+     */
+    public void addAccount(int accountId, String username, double balance) {
+        lock.writeLock().lock();
+        try {
+            accountIds.put(username, accountId);
+            balances.putIfAbsent(accountId, toOre(balance));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void addToBalance(int accountId, double amount) {
+        lock.writeLock().lock();
+        try {
+            balances.addTo(accountId, toOre(amount));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Find an account by username.
+     *
+     * @return the account without the names of the owner, or null if the account isn't in the ledger
+     */
+    public Account getAccount(String username) {
+        lock.readLock().lock();
+        try {
+            Integer accountId = accountIds.get(username);
+            if (accountId == null) {
+                return null;
+            }
+
+            return new Account(accountId, username, null, null, fromOre(balances.get(accountId, 0)));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Get all accounts, in the order they were added to the ledger.
+     *
+     * @return the accounts without the names of the owners
+     */
+    public List<Account> getAccounts() {
+        lock.readLock().lock();
+        try {
+            List<Account> accounts = new ArrayList<>(accountIds.size());
+            for (Map.Entry<String, Integer> account : accountIds.entrySet()) {
+                accounts.add(new Account(account.getValue(), account.getKey(), null, null, fromOre(balances.get(account.getValue(), 0))));
+            }
+
+            return accounts;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    static long toOre(double kroner) {
+        return Math.round(kroner * 100.0);
+    }
+
+    static double fromOre(long ore) {
+        return ore / 100.0;
+    }
+
+}
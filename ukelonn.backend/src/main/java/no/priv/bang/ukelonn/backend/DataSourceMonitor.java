@@ -0,0 +1,171 @@
+/*
+ * Copyright 2019 Steinar Bang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package no.priv.bang.ukelonn.backend;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.osgi.service.log.LogService;
+
+import no.priv.bang.ukelonn.beans.DataSourceStatistics;
+
+/**
+ * Counts the connections checked out from the {@link InstrumentedDataSource}
+ * and the statements executed on them, logs the statements slower
+ * than a threshold, and flags the connections held longer than a
+ * limit.
+ *
+ * The place a connection was checked out is kept with the connection,
+ * so that the stack trace of a flagged connection shows the code
+ * holding on to the connection.
+ *
+ * @author Steinar Bang
+ *
+ */
+class DataSourceMonitor {
+
+    private final LogService logservice;
+    private final SqlStatementRegistry sqlStatements;
+    private final long slowStatementNanos;
+    private final long holdLimitNanos;
+    private final AtomicLong nextConnectionId = new AtomicLong();
+    private final Map<Long, CheckedOutConnection> checkedOut = new ConcurrentHashMap<>();
+    private final AtomicInteger peakActive = new AtomicInteger();
+    private final LongAdder checkouts = new LongAdder();
+    private final LongAdder checkoutWaitNanos = new LongAdder();
+    private final AtomicLong maxCheckoutWaitNanos = new AtomicLong();
+    private final LongAdder longHeldConnections = new LongAdder();
+    private final LongAdder statements = new LongAdder();
+    private final LongAdder statementNanos = new LongAdder();
+    private final LongAdder slowStatements = new LongAdder();
+    private final FlightRecorderEvents events;
+
+    DataSourceMonitor(LogService logservice, SqlStatementRegistry sqlStatements, long slowStatementMillis, long holdLimitSeconds, FlightRecorderEvents events) {
+        this.logservice = logservice;
+        this.sqlStatements = sqlStatements;
+        this.events = events;
+        this.slowStatementNanos = TimeUnit.MILLISECONDS.toNanos(slowStatementMillis);
+        this.holdLimitNanos = TimeUnit.SECONDS.toNanos(holdLimitSeconds);
+    }
+
+    /**
+     * Count a connection checked out of the DataSource.
+     *
+     * @param waitNanos the time the DataSource took to hand out the connection
+     * @return the ID to report the connection closed with
+     */
+    long connectionCheckedOut(long waitNanos) {
+        long connectionId = nextConnectionId.incrementAndGet();
+        checkedOut.put(connectionId, new CheckedOutConnection(System.nanoTime(), Thread.currentThread().getName()));
+        peakActive.accumulateAndGet(checkedOut.size(), Math::max);
+        checkouts.increment();
+        checkoutWaitNanos.add(waitNanos);
+        maxCheckoutWaitNanos.accumulateAndGet(waitNanos, Math::max);
+        return connectionId;
+    }
+
+    void connectionClosed(long connectionId) {
+        CheckedOutConnection connection = checkedOut.remove(connectionId);
+        if (connection != null && connection.flagged.get()) {
+            long heldMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - connection.checkoutNanos);
+            logservice.log(LogService.LOG_WARNING, String.format("Database connection checked out by thread %s was returned after %d ms", connection.threadName, heldMillis));
+        }
+    }
+
+    /**
+     * Log a warning with the stack trace of the checkout of every
+     * connection that has been held longer than the limit.  Each
+     * connection is flagged once.
+     */
+    void flagLongHeldConnections() {
+        long now = System.nanoTime();
+        for (CheckedOutConnection connection : checkedOut.values()) {
+            long heldNanos = now - connection.checkoutNanos;
+            if (heldNanos > holdLimitNanos && connection.flagged.compareAndSet(false, true)) {
+                longHeldConnections.increment();
+                logservice.log(LogService.LOG_WARNING, String.format("Database connection checked out by thread %s has been held for %d s, longer than the limit of %d s", connection.threadName, TimeUnit.NANOSECONDS.toSeconds(heldNanos), TimeUnit.NANOSECONDS.toSeconds(holdLimitNanos)), connection.checkoutStack);
+            }
+        }
+    }
+
+    /**
+     * Start the flight recorder event of a statement about to be executed.
+     *
+     * @return the event to give to {@link #statementExecuted(String, String, long, Object)}, or null if the events are off
+     */
+    Object beginStatement() {
+        return events.beginSqlStatement();
+    }
+
+    /**
+     * Count an executed statement, and log it if it was slow.
+     *
+     * @param sql the statement, with "?" for the bind parameters
+     * @param parameterShape the types of the bind parameters, see {@link MonitoredConnection}
+     * @param durationNanos the time spent executing the statement
+     * @param event the flight recorder event returned by {@link #beginStatement()}
+     */
+    void statementExecuted(String sql, String parameterShape, long durationNanos, Object event) {
+        if (event != null) {
+            events.commitSqlStatement(event, sqlStatements.findTemplateName(sql), sql);
+        }
+
+        statements.increment();
+        statementNanos.add(durationNanos);
+        if (durationNanos > slowStatementNanos) {
+            slowStatements.increment();
+            String templateName = sqlStatements.findTemplateName(sql);
+            String template = templateName != null ? " from template " + templateName : "";
+            logservice.log(LogService.LOG_WARNING, String.format("Slow SQL statement%s took %d ms, parameters %s: %s", template, TimeUnit.NANOSECONDS.toMillis(durationNanos), parameterShape, sql));
+        }
+    }
+
+    DataSourceStatistics getStatistics(int idleConnections) {
+        return new DataSourceStatistics(
+            checkedOut.size(),
+            peakActive.get(),
+            idleConnections,
+            checkouts.sum(),
+            seconds(checkoutWaitNanos.sum()),
+            seconds(maxCheckoutWaitNanos.get()),
+            longHeldConnections.sum(),
+            statements.sum(),
+            seconds(statementNanos.sum()),
+            slowStatements.sum());
+    }
+
+    private static double seconds(long nanos) {
+        return nanos / (double) TimeUnit.SECONDS.toNanos(1);
+    }
+
+    private static class CheckedOutConnection {
+        private final long checkoutNanos;
+        private final String threadName;
+        private final Throwable checkoutStack = new Throwable("Database connection checked out here");
+        private final AtomicBoolean flagged = new AtomicBoolean();
+
+        CheckedOutConnection(long checkoutNanos, String threadName) {
+            this.checkoutNanos = checkoutNanos;
+            this.threadName = threadName;
+        }
+    }
+
+}
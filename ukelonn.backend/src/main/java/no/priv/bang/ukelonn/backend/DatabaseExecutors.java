@@ -0,0 +1,174 @@
+/*
+ * Copyright 2019 Steinar Bang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package no.priv.bang.ukelonn.backend;
+
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates the executors that run the blocking database calls of
+ * {@link UkelonnServiceProvider}.
+ *
+ * The default executor is a fixed pool of platform threads with a
+ * bounded queue.  On a JVM that has virtual threads (Java 21 and
+ * later), an executor starting one virtual thread per database call
+ * can be used instead.  Since the bundle is built for Java 8, the
+ * virtual thread executor is looked up by reflection.
+ *
+ * Both executors accept at most a fixed number of calls at a time, and
+ * reject the rest with a {@link RejectedExecutionException}, so that an
+ * overloaded database gives fast 503 responses rather than an ever
+ * growing backlog.
+ *
+ * The classes used by the database calls, e.g. the
+ * {@link UserProfileCache}, the {@link NotificationChannel} and the
+ * {@link no.priv.bang.ukelonn.trace.RequestTrace}, guard their state
+ * with a {@link java.util.concurrent.locks.ReentrantLock} rather than
+ * with synchronized, since a virtual thread blocked inside a
+ * synchronized block pins its carrier thread.
+ *
+ * @author Steinar Bang
+ *
+ */
+public class DatabaseExecutors {
+
+    private DatabaseExecutors() {}
+
+    public static ExecutorService platformThreads(int threads, int queueSize) {
+        AtomicInteger threadNumber = new AtomicInteger();
+        return new ThreadPoolExecutor(
+            threads,
+            threads,
+            60L,
+            TimeUnit.SECONDS,
+            new ArrayBlockingQueue<>(queueSize),
+            runnable -> {
+                Thread thread = new Thread(runnable, "ukelonn-database-" + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+    }
+
+    /**
+     * Create an executor running each call on a new virtual thread.
+     *
+     * @param maximumCalls the maximum number of calls running or waiting for a database connection
+     * @return a virtual thread executor, or null if the JVM doesn't have virtual threads
+     */
+    public static ExecutorService virtualThreads(int maximumCalls) {
+        ExecutorService virtualThreadPerTask = newVirtualThreadPerTaskExecutor();
+        if (virtualThreadPerTask == null) {
+            return null;
+        }
+
+        return new BoundedExecutor(virtualThreadPerTask, maximumCalls);
+    }
+
+    public static boolean virtualThreadsSupported() {
+        return findVirtualThreadPerTaskFactory() != null;
+    }
+
+    static ExecutorService newVirtualThreadPerTaskExecutor() {
+        Method factory = findVirtualThreadPerTaskFactory();
+        if (factory == null) {
+            return null;
+        }
+
+        try {
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    private static Method findVirtualThreadPerTaskFactory() {
+        try {
+            return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Limits the number of calls handed to an executor that has no
+     * queue of its own.  A permit is taken when a call is submitted and
+     * released when the call is done.
+     */
+    static class BoundedExecutor extends AbstractExecutorService {
+        private final ExecutorService executor;
+        private final Semaphore permits;
+
+        BoundedExecutor(ExecutorService executor, int maximumCalls) {
+            this.executor = executor;
+            this.permits = new Semaphore(maximumCalls);
+        }
+
+        @Override
+        public void execute(Runnable command) {
+            if (!permits.tryAcquire()) {
+                throw new RejectedExecutionException("Too many concurrent database calls");
+            }
+
+            try {
+                executor.execute(() -> {
+                        try {
+                            command.run();
+                        } finally {
+                            permits.release();
+                        }
+                    });
+            } catch (RejectedExecutionException e) {
+                permits.release();
+                throw e;
+            }
+        }
+
+        @Override
+        public void shutdown() {
+            executor.shutdown();
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            return executor.shutdownNow();
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return executor.isShutdown();
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return executor.isTerminated();
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+            return executor.awaitTermination(timeout, unit);
+        }
+    }
+
+}
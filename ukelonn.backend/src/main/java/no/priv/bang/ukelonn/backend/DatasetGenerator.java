@@ -0,0 +1,365 @@
+/*
+ * Copyright 2019 Steinar Bang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package no.priv.bang.ukelonn.backend;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import javax.sql.DataSource;
+
+import no.priv.bang.ukelonn.UkelonnException;
+import no.priv.bang.ukelonn.beans.Account;
+import no.priv.bang.ukelonn.beans.TransactionType;
+import no.priv.bang.ukelonn.beans.User;
+
+/**
+ * Fills a ukelonn database with generated users, accounts, job types,
+ * payment types and transactions, for load tests and benchmarks that
+ * need more data than the test database has.
+ *
+ * The data depends only on the seed and the arguments, so two runs
+ * with the same seed against empty databases give the same database.
+ * The transactions of a group of accounts are inserted interleaved in
+ * time order, the way they would have been registered, using batched
+ * inserts that are committed one batch at a time.  Balances, paid out
+ * times and earnings aggregates are computed while the transactions
+ * are generated, and are written when a group of accounts is done.
+ *
+ * Only plain SQL that works on both derby and PostgreSQL is used.
+ *
+ * @author Steinar Bang
+ *
+ */
+public class DatasetGenerator {
+
+    static final int BATCH_SIZE = 1000;
+    static final int ACCOUNTS_PER_GROUP = 100;
+    static final int ONE_PAYMENT_IN = 10;
+    static final String PASSWORD_THAT_CANT_BE_USED_FOR_LOGIN = "!";
+    static final String[] JOBTYPE_NAMES = { "Støvsuging", "Tømme oppvaskmaskin", "Gå med resirk", "Støvsuge rommet", "Rydde rommet", "Gå ut med søppel", "Dekke bordet", "Vaske badet", "Klippe plenen", "Måke snø", "Handle", "Bære ved" };
+    static final double[] JOB_AMOUNTS = { 10.0, 15.0, 20.0, 25.0, 35.0, 45.0, 50.0 };
+    static final String[] PAYMENTTYPE_NAMES = { "Inn på konto", "Kontant", "Mobildata", "Vipps" };
+    static final String[] FIRST_NAMES = { "Ola", "Kari", "Per", "Lise", "Jon", "Ingrid", "Nils", "Anne", "Lars", "Marit" };
+    static final String[] LAST_NAMES = { "Nordmann", "Hansen", "Johansen", "Olsen", "Larsen", "Andersen", "Pedersen", "Nilsen" };
+
+    private final DataSource datasource;
+    private final Random random;
+    private final String usernamePrefix;
+    private final long startOfHistory;
+    private final long lengthOfHistory;
+
+    /**
+     * Create a generator.
+     *
+     * @param datasource the database to fill, with the ukelonn schema in place
+     * @param seed the seed of the random numbers
+     * @param usernamePrefix the start of all generated usernames, must not be used by existing users
+     * @param lastDay the day of the newest transactions
+     * @param daysOfHistory the number of days the transactions are spread over
+     */
+    public DatasetGenerator(DataSource datasource, long seed, String usernamePrefix, LocalDate lastDay, int daysOfHistory) {
+        this.datasource = datasource;
+        this.random = new Random(seed);
+        this.usernamePrefix = usernamePrefix;
+        long endOfHistory = lastDay.plusDays(1).atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        this.lengthOfHistory = TimeUnit.DAYS.toMillis(daysOfHistory);
+        this.startOfHistory = endOfHistory - lengthOfHistory;
+    }
+
+    /**
+     * Generate the data and insert it into the database.
+     *
+     * @param numberOfUsers the number of users, each with an account
+     * @param numberOfJobtypes the number of job types
+     * @param numberOfPaymenttypes the number of payment types
+     * @param transactionsPerAccount the number of jobs and payments of each account
+     * @return a description of what was inserted
+     */
+    public GeneratedDataset generate(int numberOfUsers, int numberOfJobtypes, int numberOfPaymenttypes, int transactionsPerAccount) {
+        if (transactionsPerAccount > 0 && numberOfJobtypes < 1) {
+            throw new UkelonnException("At least one job type is needed to generate transactions");
+        }
+
+        try(Connection connection = datasource.getConnection()) {
+            boolean autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+            try {
+                List<TransactionType> jobtypes = insertTransactionTypes(connection, createTransactionTypes(numberOfJobtypes, JOBTYPE_NAMES, true));
+                List<TransactionType> paymenttypes = insertTransactionTypes(connection, createTransactionTypes(numberOfPaymenttypes, PAYMENTTYPE_NAMES, false));
+                List<User> users = createUsers(numberOfUsers);
+                boolean usersInserted = hasTable(connection, "users") && hasTable(connection, "user_roles");
+                if (usersInserted) {
+                    insertUsers(connection, users);
+                }
+
+                List<GeneratedAccount> accounts = insertAccounts(connection, users);
+                long numberOfTransactions = 0;
+                for (int groupStart = 0; groupStart < accounts.size(); groupStart += ACCOUNTS_PER_GROUP) {
+                    List<GeneratedAccount> group = accounts.subList(groupStart, Math.min(groupStart + ACCOUNTS_PER_GROUP, accounts.size()));
+                    numberOfTransactions += insertTransactions(connection, group, jobtypes, paymenttypes, transactionsPerAccount);
+                    updateAccounts(connection, group);
+                }
+
+                List<Account> generatedAccounts = new ArrayList<>(accounts.size());
+                for (GeneratedAccount account : accounts) {
+                    generatedAccounts.add(new Account(account.accountId, account.user.getUsername(), account.user.getFirstname(), account.user.getLastname(), account.balance));
+                }
+
+                return new GeneratedDataset(users, usersInserted, generatedAccounts, jobtypes, paymenttypes, numberOfTransactions);
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(autoCommit);
+            }
+        } catch (SQLException e) {
+            throw new UkelonnException("Failed to generate the dataset", e);
+        }
+    }
+
+    List<TransactionType> createTransactionTypes(int numberOfTransactionTypes, String[] names, boolean jobtypes) {
+        List<TransactionType> transactiontypes = new ArrayList<>(numberOfTransactionTypes);
+        for (int i = 0; i < numberOfTransactionTypes; ++i) {
+            String name = i < names.length ? names[i] : String.format("%s %d", names[i % names.length], i / names.length + 1);
+            Double amount = jobtypes ? JOB_AMOUNTS[random.nextInt(JOB_AMOUNTS.length)] : null;
+            transactiontypes.add(new TransactionType(0, name, amount, jobtypes, !jobtypes));
+        }
+
+        return transactiontypes;
+    }
+
+    List<TransactionType> insertTransactionTypes(Connection connection, List<TransactionType> transactiontypes) throws SQLException {
+        if (transactiontypes.isEmpty()) {
+            return transactiontypes;
+        }
+
+        boolean jobtypes = transactiontypes.get(0).isTransactionIsWork();
+        try(PreparedStatement statement = connection.prepareStatement("insert into transaction_types (transaction_type_name, transaction_amount, transaction_is_work, transaction_is_wage_payment) values (?, ?, ?, ?)")) {
+            for (TransactionType transactiontype : transactiontypes) {
+                statement.setString(1, transactiontype.getTransactionTypeName());
+                statement.setObject(2, transactiontype.getTransactionAmount());
+                statement.setBoolean(3, jobtypes);
+                statement.setBoolean(4, !jobtypes);
+                statement.addBatch();
+            }
+
+            statement.executeBatch();
+        }
+
+        // The newest transaction type with a name wins, in case an earlier run used the same names
+        Map<String, Integer> ids = new HashMap<>();
+        try(PreparedStatement statement = connection.prepareStatement("select transaction_type_id, transaction_type_name from transaction_types where transaction_is_work=? order by transaction_type_id")) {
+            statement.setBoolean(1, jobtypes);
+            try(ResultSet results = statement.executeQuery()) {
+                while (results.next()) {
+                    ids.put(results.getString(2), results.getInt(1));
+                }
+            }
+        }
+
+        connection.commit();
+        List<TransactionType> inserted = new ArrayList<>(transactiontypes.size());
+        for (TransactionType transactiontype : transactiontypes) {
+            inserted.add(new TransactionType(ids.get(transactiontype.getTransactionTypeName()), transactiontype.getTransactionTypeName(), transactiontype.getTransactionAmount(), jobtypes, !jobtypes));
+        }
+
+        return inserted;
+    }
+
+    /**
+     * Make the users.  The user ids aren't known, since the users get
+     * their ids from the database, so they are left at 0.
+     */
+    List<User> createUsers(int numberOfUsers) {
+        List<User> users = new ArrayList<>(numberOfUsers);
+        for (int i = 0; i < numberOfUsers; ++i) {
+            String username = String.format("%s%06d", usernamePrefix, i + 1);
+            String firstname = FIRST_NAMES[random.nextInt(FIRST_NAMES.length)];
+            String lastname = LAST_NAMES[random.nextInt(LAST_NAMES.length)];
+            users.add(new User(0, username, username + "@example.com", firstname, lastname));
+        }
+
+        return users;
+    }
+
+    void insertUsers(Connection connection, List<User> users) throws SQLException {
+        try(PreparedStatement insertUser = connection.prepareStatement("insert into users (username, password, password_salt, email, firstname, lastname) values (?, ?, ?, ?, ?, ?)")) {
+            try(PreparedStatement insertRole = connection.prepareStatement("insert into user_roles (role_name, username) values ('ukelonnuser', ?)")) {
+                int rows = 0;
+                for (User user : users) {
+                    insertUser.setString(1, user.getUsername());
+                    insertUser.setString(2, PASSWORD_THAT_CANT_BE_USED_FOR_LOGIN);
+                    insertUser.setString(3, PASSWORD_THAT_CANT_BE_USED_FOR_LOGIN);
+                    insertUser.setString(4, user.getEmail());
+                    insertUser.setString(5, user.getFirstname());
+                    insertUser.setString(6, user.getLastname());
+                    insertUser.addBatch();
+                    insertRole.setString(1, user.getUsername());
+                    insertRole.addBatch();
+                    if (++rows % BATCH_SIZE == 0) {
+                        insertUser.executeBatch();
+                        insertRole.executeBatch();
+                    }
+                }
+
+                insertUser.executeBatch();
+                insertRole.executeBatch();
+            }
+        }
+
+        connection.commit();
+    }
+
+    List<GeneratedAccount> insertAccounts(Connection connection, List<User> users) throws SQLException {
+        try(PreparedStatement statement = connection.prepareStatement("insert into accounts (username) values (?)")) {
+            int rows = 0;
+            for (User user : users) {
+                statement.setString(1, user.getUsername());
+                statement.addBatch();
+                if (++rows % BATCH_SIZE == 0) {
+                    statement.executeBatch();
+                }
+            }
+
+            statement.executeBatch();
+        }
+
+        Map<String, Integer> accountIds = new HashMap<>();
+        try(PreparedStatement statement = connection.prepareStatement("select account_id, username from accounts where username like ? order by account_id")) {
+            statement.setString(1, usernamePrefix + "%");
+            try(ResultSet results = statement.executeQuery()) {
+                while (results.next()) {
+                    accountIds.put(results.getString(2), results.getInt(1));
+                }
+            }
+        }
+
+        connection.commit();
+        List<GeneratedAccount> accounts = new ArrayList<>(users.size());
+        for (User user : users) {
+            accounts.add(new GeneratedAccount(accountIds.get(user.getUsername()), user));
+        }
+
+        return accounts;
+    }
+
+    /**
+     * Insert the transactions of a group of accounts.  The accounts
+     * take turns, so that the transaction ids of an account are spread
+     * out over the table, like they are when the transactions are
+     * registered over time.  About one transaction in ten is a payment
+     * of the whole balance of the account.
+     *
+     * @return the number of inserted transactions
+     */
+    long insertTransactions(Connection connection, List<GeneratedAccount> accounts, List<TransactionType> jobtypes, List<TransactionType> paymenttypes, int transactionsPerAccount) throws SQLException {
+        long rows = 0;
+        try(PreparedStatement statement = connection.prepareStatement("insert into transactions (account_id, transaction_type_id, transaction_amount, transaction_time) values (?, ?, ?, ?)")) {
+            for (int i = 0; i < transactionsPerAccount; ++i) {
+                for (GeneratedAccount account : accounts) {
+                    Timestamp transactionTime = new Timestamp(startOfHistory + (long) ((i + random.nextDouble()) * lengthOfHistory / transactionsPerAccount));
+                    boolean payment = !paymenttypes.isEmpty() && account.balance > 0.0 && random.nextInt(ONE_PAYMENT_IN) == 0;
+                    if (payment) {
+                        TransactionType paymenttype = paymenttypes.get(random.nextInt(paymenttypes.size()));
+                        statement.setInt(2, paymenttype.getId());
+                        statement.setDouble(3, -account.balance);
+                        account.balance = 0.0;
+                        account.paidOutTime = transactionTime;
+                    } else {
+                        TransactionType jobtype = jobtypes.get(random.nextInt(jobtypes.size()));
+                        double amount = jobtype.getTransactionAmount();
+                        statement.setInt(2, jobtype.getId());
+                        statement.setDouble(3, amount);
+                        account.balance += amount;
+                        account.aggregates.addJob(transactionTime, amount);
+                    }
+
+                    statement.setInt(1, account.accountId);
+                    statement.setTimestamp(4, transactionTime);
+                    statement.addBatch();
+                    if (++rows % BATCH_SIZE == 0) {
+                        statement.executeBatch();
+                        connection.commit();
+                    }
+                }
+            }
+
+            statement.executeBatch();
+        }
+
+        connection.commit();
+        return rows;
+    }
+
+    void updateAccounts(Connection connection, List<GeneratedAccount> accounts) throws SQLException {
+        try(PreparedStatement statement = connection.prepareStatement("update accounts set balance=?, paid_out_time=? where account_id=?")) {
+            for (GeneratedAccount account : accounts) {
+                statement.setDouble(1, account.balance);
+                statement.setTimestamp(2, account.paidOutTime);
+                statement.setInt(3, account.accountId);
+                statement.addBatch();
+            }
+
+            statement.executeBatch();
+        }
+
+        for (GeneratedAccount account : accounts) {
+            account.aggregates.insert(connection);
+        }
+
+        connection.commit();
+    }
+
+    static boolean hasTable(Connection connection, String tablename) throws SQLException {
+        DatabaseMetaData metadata = connection.getMetaData();
+        try(ResultSet tables = metadata.getTables(null, null, "%", null)) {
+            while(tables.next()) {
+                if (tablename.equalsIgnoreCase(tables.getString(3))) {
+                    return true;
+                }
+            }
+        }
+
+        return false;
+    }
+
+    static class GeneratedAccount {
+        final int accountId;
+        final User user;
+        final EarningsAggregates aggregates;
+        double balance = 0.0;
+        Timestamp paidOutTime = null;
+
+        GeneratedAccount(int accountId, User user) {
+            this.accountId = accountId;
+            this.user = user;
+            this.aggregates = new EarningsAggregates(accountId);
+        }
+    }
+
+}
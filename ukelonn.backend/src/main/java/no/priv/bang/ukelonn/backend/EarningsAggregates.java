@@ -0,0 +1,244 @@
+/*
+ * Copyright 2019 Steinar Bang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package no.priv.bang.ukelonn.backend;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.temporal.TemporalAdjusters;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Keeps the earnings_aggregates table up to date with the jobs in the
+ * transactions table.
+ *
+ * The table holds the sum and the count of the jobs of each account,
+ * per day, week, month and year. A job is added to the four
+ * periods it belongs to when it is registered, and removed from them
+ * when it is changed or deleted. This is done in the same database
+ * transaction as the change to the transactions table.
+ *
+ * All changes to the aggregates of an account are made after the
+ * balance of the account has been updated, so the row lock held on
+ * the accounts row keeps two writers from trying to insert the same
+ * period at the same time.
+ *
+ * @author Steinar Bang
+ *
+ */
+public class EarningsAggregates {
+
+    public enum Period {
+        DAY("day") {
+            @Override
+            LocalDate start(LocalDate day) {
+                return day;
+            }
+        },
+        WEEK("week") {
+            @Override
+            LocalDate start(LocalDate day) {
+                return day.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+            }
+        },
+        MONTH("month") {
+            @Override
+            LocalDate start(LocalDate day) {
+                return day.withDayOfMonth(1);
+            }
+        },
+        YEAR("year") {
+            @Override
+            LocalDate start(LocalDate day) {
+                return day.withDayOfYear(1);
+            }
+        };
+
+        private final String columnValue;
+
+        Period(String columnValue) {
+            this.columnValue = columnValue;
+        }
+
+        public String getColumnValue() {
+            return columnValue;
+        }
+
+        abstract LocalDate start(LocalDate day);
+    }
+
+    private final Map<Bucket, Change> changes = new LinkedHashMap<>();
+    private final int accountId;
+    private double amountChange = 0.0;
+    private Date earliestChangedTime = null;
+
+    public EarningsAggregates(int accountId) {
+        this.accountId = accountId;
+    }
+
+    public int getAccountId() {
+        return accountId;
+    }
+
+    /**
+     * The sum of the amounts of the added jobs, minus the sum of the
+     * amounts of the removed jobs, i.e. the change to the balance of the
+     * account.  Not reset by {@link #save(Connection)}.
+     *
+     * @return the net change in earnings
+     */
+    public double getAmountChange() {
+        return amountChange;
+    }
+
+    /**
+     * The time of the oldest job added or removed, i.e. the earliest
+     * point in the history of the account that has been changed.  Not
+     * reset by {@link #save(Connection)}.
+     *
+     * @return the time of the oldest changed job, or null if no job has been added or removed
+     */
+    public Date getEarliestChangedTime() {
+        return earliestChangedTime;
+    }
+
+    public EarningsAggregates addJob(Date transactionTime, double amount) {
+        return change(transactionTime, amount, 1);
+    }
+
+    public EarningsAggregates removeJob(Date transactionTime, double amount) {
+        return change(transactionTime, -amount, -1);
+    }
+
+    /**
+     * Write the collected changes to the earnings_aggregates table.
+     * Changes to the same period are merged, so that each period is
+     * written once.
+     *
+     * @param connection the connection used for the transaction change
+     * @throws SQLException if the aggregates can't be updated
+     */
+    public void save(Connection connection) throws SQLException {
+        for (Map.Entry<Bucket, Change> entry : changes.entrySet()) {
+            Bucket bucket = entry.getKey();
+            Change change = entry.getValue();
+            if (change.count == 0 && change.amount == 0.0) {
+                continue;
+            }
+
+            int updatedRows;
+            try(PreparedStatement statement = connection.prepareStatement("update earnings_aggregates set aggregate_amount=aggregate_amount+?, job_count=job_count+? where account_id=? and aggregate_period=? and period_start=?")) {
+                statement.setDouble(1, change.amount);
+                statement.setInt(2, change.count);
+                statement.setInt(3, accountId);
+                statement.setString(4, bucket.period.getColumnValue());
+                statement.setDate(5, java.sql.Date.valueOf(bucket.start));
+                updatedRows = statement.executeUpdate();
+            }
+
+            if (updatedRows == 0) {
+                try(PreparedStatement statement = connection.prepareStatement("insert into earnings_aggregates (account_id, aggregate_period, period_start, aggregate_amount, job_count) values (?, ?, ?, ?, ?)")) {
+                    statement.setInt(1, accountId);
+                    statement.setString(2, bucket.period.getColumnValue());
+                    statement.setDate(3, java.sql.Date.valueOf(bucket.start));
+                    statement.setDouble(4, change.amount);
+                    statement.setInt(5, change.count);
+                    statement.executeUpdate();
+                }
+            }
+        }
+
+        changes.clear();
+    }
+
+    /**
+     * Write the collected changes as new rows in a single batch.  Only
+     * for accounts that have no rows in the earnings_aggregates table
+     * yet, e.g. accounts made by the {@link DatasetGenerator}.
+     *
+     * @param connection the connection used for the transaction change
+     * @throws SQLException if the aggregates can't be inserted
+     */
+    void insert(Connection connection) throws SQLException {
+        try(PreparedStatement statement = connection.prepareStatement("insert into earnings_aggregates (account_id, aggregate_period, period_start, aggregate_amount, job_count) values (?, ?, ?, ?, ?)")) {
+            for (Map.Entry<Bucket, Change> entry : changes.entrySet()) {
+                statement.setInt(1, accountId);
+                statement.setString(2, entry.getKey().period.getColumnValue());
+                statement.setDate(3, java.sql.Date.valueOf(entry.getKey().start));
+                statement.setDouble(4, entry.getValue().amount);
+                statement.setInt(5, entry.getValue().count);
+                statement.addBatch();
+            }
+
+            statement.executeBatch();
+        }
+
+        changes.clear();
+    }
+
+    private EarningsAggregates change(Date transactionTime, double amount, int count) {
+        amountChange += amount;
+        if (earliestChangedTime == null || transactionTime.before(earliestChangedTime)) {
+            earliestChangedTime = transactionTime;
+        }
+
+        LocalDate day = new Timestamp(transactionTime.getTime()).toLocalDateTime().toLocalDate();
+        for (Period period : Period.values()) {
+            Change change = changes.computeIfAbsent(new Bucket(period, period.start(day)), b -> new Change());
+            change.amount += amount;
+            change.count += count;
+        }
+
+        return this;
+    }
+
+    private static class Bucket {
+        final Period period;
+        final LocalDate start;
+
+        Bucket(Period period, LocalDate start) {
+            this.period = period;
+            this.start = start;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(period, start);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Bucket)) {
+                return false;
+            }
+
+            Bucket other = (Bucket) obj;
+            return period == other.period && start.equals(other.start);
+        }
+    }
+
+    private static class Change {
+        double amount = 0.0;
+        int count = 0;
+    }
+
+}
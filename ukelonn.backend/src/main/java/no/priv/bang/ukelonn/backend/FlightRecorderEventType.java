@@ -0,0 +1,179 @@
+/*
+ * Copyright 2019 Steinar Bang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package no.priv.bang.ukelonn.backend;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A JDK Flight Recorder event type, made with jdk.jfr.EventFactory.
+ *
+ * Since the bundle is built for Java 8, and jdk.jfr isn't there on
+ * all Java 8 JVMs, the JFR API is used by reflection.  The classes
+ * are loaded from the system class loader, so that the bundle doesn't
+ * have to import the jdk.jfr package.  On a JVM without JFR the type
+ * is unavailable, and {@link #begin()} returns null.
+ *
+ * The events don't record stack traces, to keep them cheap enough to
+ * have enabled in production.
+ *
+ * @author Steinar Bang
+ *
+ */
+class FlightRecorderEventType {
+
+    static final String CATEGORY = "Ukelonn";
+    private final Object factory;
+    private final Method newEvent;
+    private final Method begin;
+    private final Method end;
+    private final Method shouldCommit;
+    private final Method set;
+    private final Method commit;
+
+    /**
+     * Create and register an event type.
+     *
+     * @param name the name of the event type in recordings
+     * @param label the human readable name of the event type
+     * @param fields the fields of the event, in the order the values are given to {@link #commit(Object, Object...)}
+     */
+    FlightRecorderEventType(String name, String label, Field... fields) {
+        Object createdFactory = null;
+        Method[] methods = new Method[6];
+        try {
+            ClassLoader jdk = ClassLoader.getSystemClassLoader();
+            Constructor<?> annotationElement = jdk.loadClass("jdk.jfr.AnnotationElement").getConstructor(Class.class, Object.class);
+            List<Object> eventAnnotations = Arrays.asList(
+                annotationElement.newInstance(jdk.loadClass("jdk.jfr.Name"), name),
+                annotationElement.newInstance(jdk.loadClass("jdk.jfr.Label"), label),
+                annotationElement.newInstance(jdk.loadClass("jdk.jfr.Category"), new String[] { CATEGORY }),
+                annotationElement.newInstance(jdk.loadClass("jdk.jfr.StackTrace"), false));
+            Constructor<?> valueDescriptor = jdk.loadClass("jdk.jfr.ValueDescriptor").getConstructor(Class.class, String.class, List.class);
+            List<Object> valueDescriptors = new ArrayList<>();
+            for (Field field : fields) {
+                List<Object> fieldAnnotations = new ArrayList<>();
+                fieldAnnotations.add(annotationElement.newInstance(jdk.loadClass("jdk.jfr.Label"), field.label));
+                if (field.timespan != null) {
+                    fieldAnnotations.add(annotationElement.newInstance(jdk.loadClass("jdk.jfr.Timespan"), field.timespan));
+                }
+
+                valueDescriptors.add(valueDescriptor.newInstance(field.type, field.name, fieldAnnotations));
+            }
+
+            Class<?> eventFactory = jdk.loadClass("jdk.jfr.EventFactory");
+            Class<?> event = jdk.loadClass("jdk.jfr.Event");
+            methods[0] = eventFactory.getMethod("newEvent");
+            methods[1] = event.getMethod("begin");
+            methods[2] = event.getMethod("end");
+            methods[3] = event.getMethod("shouldCommit");
+            methods[4] = event.getMethod("set", int.class, Object.class);
+            methods[5] = event.getMethod("commit");
+            createdFactory = eventFactory.getMethod("create", List.class, List.class).invoke(null, eventAnnotations, valueDescriptors);
+        } catch (ReflectiveOperationException | LinkageError | RuntimeException e) {
+            // No JFR in this JVM
+            createdFactory = null;
+        }
+
+        factory = createdFactory;
+        newEvent = methods[0];
+        begin = methods[1];
+        end = methods[2];
+        shouldCommit = methods[3];
+        set = methods[4];
+        commit = methods[5];
+    }
+
+    boolean isAvailable() {
+        return factory != null;
+    }
+
+    /**
+     * Start timing an event.
+     *
+     * @return the event to give to {@link #commit(Object, Object...)}, or null if JFR isn't available
+     */
+    Object begin() {
+        if (factory == null) {
+            return null;
+        }
+
+        try {
+            Object event = newEvent.invoke(factory);
+            begin.invoke(event);
+            return event;
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Stop timing an event, and write it to the recordings that have
+     * the event type enabled, if its duration is above their threshold.
+     *
+     * @param event the event returned by {@link #begin()}, nothing is done if this is null
+     * @param values the values of the fields of the event
+     */
+    void commit(Object event, Object... values) {
+        if (event == null) {
+            return;
+        }
+
+        try {
+            end.invoke(event);
+            if (Boolean.TRUE.equals(shouldCommit.invoke(event))) {
+                for (int i = 0; i < values.length; ++i) {
+                    set.invoke(event, i, values[i]);
+                }
+
+                commit.invoke(event);
+            }
+        } catch (ReflectiveOperationException e) {
+            // Losing an event is OK
+        }
+    }
+
+    /**
+     * A field of an event type.
+     */
+    static class Field {
+        private final String name;
+        private final String label;
+        private final Class<?> type;
+        private final String timespan;
+
+        /**
+         * @param name the name of the field in recordings
+         * @param label the human readable name of the field
+         * @param type the type of the field, a primitive type or String
+         * @param timespan the unit of a field holding a duration, e.g. "MILLISECONDS", or null for other fields
+         */
+        Field(String name, String label, Class<?> type, String timespan) {
+            this.name = name;
+            this.label = label;
+            this.type = type;
+            this.timespan = timespan;
+        }
+
+        Field(String name, String label, Class<?> type) {
+            this(name, label, type, null);
+        }
+    }
+
+}
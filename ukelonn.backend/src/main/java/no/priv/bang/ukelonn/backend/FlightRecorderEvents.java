@@ -0,0 +1,126 @@
+/*
+ * Copyright 2019 Steinar Bang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package no.priv.bang.ukelonn.backend;
+
+/**
+ * The JDK Flight Recorder events of ukelonn, so that a recording of
+ * a running karaf shows the service calls, SQL statements and
+ * notification deliveries next to the GC and lock events of the JVM.
+ *
+ * The event types are "no.priv.bang.ukelonn.ServiceCall" (method,
+ * account ID and number of rows returned), "no.priv.bang.ukelonn.SqlStatement"
+ * (SQL template name and the statement) and
+ * "no.priv.bang.ukelonn.NotificationDelivery" (the notifications
+ * queued, including the delivered one, and the time the delivered
+ * one was queued), all in the "Ukelonn" category.  A notification
+ * handed directly to a waiting client has queue depth and latency 0.
+ *
+ * The events are turned on by setting the configuration property
+ * "flightRecorderEvents" to true on the {@link InstrumentedUkelonnService}
+ * (service calls), on the {@link UkelonnServiceProvider} (notification
+ * deliveries) and on the {@link InstrumentedDataSource} (SQL
+ * statements).  The event types are
+ * registered with JFR the first time they are turned on, and are then
+ * shared by all components.
+ *
+ * @author Steinar Bang
+ *
+ */
+class FlightRecorderEvents {
+
+    static final String FLIGHT_RECORDER_EVENTS = "flightRecorderEvents";
+    static final FlightRecorderEvents DISABLED = new FlightRecorderEvents(false);
+    private final boolean enabled;
+    private final FlightRecorderEventType serviceCall;
+    private final FlightRecorderEventType sqlStatement;
+    private final FlightRecorderEventType notificationDelivery;
+
+    FlightRecorderEvents(boolean enabled) {
+        this.enabled = enabled;
+        if (enabled) {
+            serviceCall = new FlightRecorderEventType(
+                "no.priv.bang.ukelonn.ServiceCall",
+                "Ukelonn Service Call",
+                new FlightRecorderEventType.Field("method", "Method", String.class),
+                new FlightRecorderEventType.Field("accountId", "Account ID", int.class),
+                new FlightRecorderEventType.Field("rowCount", "Row Count", int.class));
+            sqlStatement = new FlightRecorderEventType(
+                "no.priv.bang.ukelonn.SqlStatement",
+                "Ukelonn SQL Statement",
+                new FlightRecorderEventType.Field("template", "SQL Template", String.class),
+                new FlightRecorderEventType.Field("sql", "SQL", String.class));
+            notificationDelivery = new FlightRecorderEventType(
+                "no.priv.bang.ukelonn.NotificationDelivery",
+                "Ukelonn Notification Delivery",
+                new FlightRecorderEventType.Field("queueDepth", "Queue Depth", int.class),
+                new FlightRecorderEventType.Field("deliveryLatency", "Delivery Latency", long.class, "MILLISECONDS"));
+        } else {
+            serviceCall = null;
+            sqlStatement = null;
+            notificationDelivery = null;
+        }
+    }
+
+    /**
+     * @param enabled true to get the events, false to get events that do nothing
+     * @return the events
+     */
+    static FlightRecorderEvents create(boolean enabled) {
+        return enabled ? Enabled.EVENTS : DISABLED;
+    }
+
+    static FlightRecorderEvents create(Object flightRecorderEventsConfig) {
+        return create(Boolean.parseBoolean(String.valueOf(flightRecorderEventsConfig)));
+    }
+
+    /**
+     * @return true if the events are turned on and the JVM has JFR
+     */
+    boolean isEnabled() {
+        return enabled && serviceCall.isAvailable();
+    }
+
+    Object beginServiceCall() {
+        return enabled ? serviceCall.begin() : null;
+    }
+
+    void commitServiceCall(Object event, String method, int accountId, int rowCount) {
+        if (event != null) {
+            serviceCall.commit(event, method, accountId, rowCount);
+        }
+    }
+
+    Object beginSqlStatement() {
+        return enabled ? sqlStatement.begin() : null;
+    }
+
+    void commitSqlStatement(Object event, String templateName, String sql) {
+        if (event != null) {
+            sqlStatement.commit(event, templateName, sql);
+        }
+    }
+
+    void notificationDelivered(int queueDepth, long deliveryLatencyMillis) {
+        if (enabled) {
+            notificationDelivery.commit(notificationDelivery.begin(), queueDepth, deliveryLatencyMillis);
+        }
+    }
+
+    private static class Enabled {
+        static final FlightRecorderEvents EVENTS = new FlightRecorderEvents(true);
+    }
+
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2019 Steinar Bang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package no.priv.bang.ukelonn.backend;
+
+import java.util.List;
+
+import no.priv.bang.ukelonn.beans.Account;
+import no.priv.bang.ukelonn.beans.TransactionType;
+import no.priv.bang.ukelonn.beans.User;
+
+/**
+ * What the {@link DatasetGenerator} put into the database.
+ *
+ * @author Steinar Bang
+ *
+ */
+public class GeneratedDataset {
+
+    private final List<User> users;
+    private final boolean usersInserted;
+    private final List<Account> accounts;
+    private final List<TransactionType> jobtypes;
+    private final List<TransactionType> paymenttypes;
+    private final long numberOfTransactions;
+
+    public GeneratedDataset(List<User> users, boolean usersInserted, List<Account> accounts, List<TransactionType> jobtypes, List<TransactionType> paymenttypes, long numberOfTransactions) {
+        this.users = users;
+        this.usersInserted = usersInserted;
+        this.accounts = accounts;
+        this.jobtypes = jobtypes;
+        this.paymenttypes = paymenttypes;
+        this.numberOfTransactions = numberOfTransactions;
+    }
+
+    public List<User> getUsers() {
+        return users;
+    }
+
+    /**
+     * The users are only inserted if the database has the users table
+     * of the authservice.  If not, the users must be added to the
+     * user management service some other way.
+     */
+    public boolean isUsersInserted() {
+        return usersInserted;
+    }
+
+    /**
+     * The accounts, in the same order as the users, with the balances
+     * they got from the generated transactions.
+     */
+    public List<Account> getAccounts() {
+        return accounts;
+    }
+
+    public List<TransactionType> getJobtypes() {
+        return jobtypes;
+    }
+
+    public List<TransactionType> getPaymenttypes() {
+        return paymenttypes;
+    }
+
+    public long getNumberOfTransactions() {
+        return numberOfTransactions;
+    }
+
+}
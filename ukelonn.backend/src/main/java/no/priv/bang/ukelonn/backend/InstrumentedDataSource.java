@@ -0,0 +1,159 @@
+/*
+ * Copyright 2019 Steinar Bang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package no.priv.bang.ukelonn.backend;
+
+import java.lang.reflect.Method;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.sql.DataSource;
+
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
+import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.log.LogService;
+
+import no.priv.bang.jdbc.datasourceproxy.DataSourceProxy;
+import no.priv.bang.ukelonn.beans.DataSourceStatistics;
+import no.priv.bang.ukelonn.trace.TracingLogService;
+
+/**
+ * A {@link DataSource} in front of the "jdbc/ukelonn" DataSource,
+ * that times every statement, logs the slow statements, counts the
+ * checked out connections and the time spent waiting for them, and
+ * flags connections that are held too long.
+ *
+ * The DataSource is registered as "jdbc/ukelonn" with a higher
+ * service ranking than the DataSource it wraps, so that the
+ * {@link UkelonnServiceProvider} gets this one.  The counts are
+ * returned by {@link UkelonnServiceProvider#getDataSourceStatistics()}.
+ *
+ * The configuration property "slowStatementMillis" is the time above
+ * which a statement is logged (default 250), and
+ * "connectionHoldLimitSeconds" is the time a connection can be held
+ * before it is flagged (default 60).  Setting "flightRecorderEvents"
+ * to true emits a JDK Flight Recorder event for every statement, see
+ * {@link FlightRecorderEvents}.
+ *
+ * @author Steinar Bang
+ *
+ */
+@Component(service=DataSource.class, immediate=true, property= { "osgi.jndi.service.name=jdbc/ukelonn", "service.ranking:Integer=100", InstrumentedDataSource.INSTRUMENTED + "=true" })
+public class InstrumentedDataSource extends DataSourceProxy {
+
+    static final String INSTRUMENTED = "instrumented";
+    static final String SLOW_STATEMENT_MILLIS = "slowStatementMillis";
+    static final String CONNECTION_HOLD_LIMIT_SECONDS = "connectionHoldLimitSeconds";
+    static final long DEFAULT_SLOW_STATEMENT_MILLIS = 250;
+    static final long DEFAULT_CONNECTION_HOLD_LIMIT_SECONDS = 60;
+    private DataSource wrappedDataSource;
+    private LogService logservice; // NOSONAR In an OSGi DS component injected dependencies are set before activation and is effectively a constant
+    private DataSourceMonitor monitor;
+    private ScheduledExecutorService leakCheck;
+
+    @Override
+    @Reference(target = "(&(osgi.jndi.service.name=jdbc/ukelonn)(!(" + INSTRUMENTED + "=true)))")
+    public void setWrappedDataSource(DataSource wrappedDataSource) {
+        super.setWrappedDataSource(wrappedDataSource);
+        this.wrappedDataSource = wrappedDataSource;
+    }
+
+    @Reference
+    public void setLogservice(LogService logservice) {
+        this.logservice = TracingLogService.wrap(logservice);
+    }
+
+    public void activate() {
+        activate(Collections.emptyMap());
+    }
+
+    @Activate
+    public void activate(Map<String, Object> config) {
+        long slowStatementMillis = longConfig(config, SLOW_STATEMENT_MILLIS, DEFAULT_SLOW_STATEMENT_MILLIS);
+        long holdLimitSeconds = longConfig(config, CONNECTION_HOLD_LIMIT_SECONDS, DEFAULT_CONNECTION_HOLD_LIMIT_SECONDS);
+        FlightRecorderEvents events = FlightRecorderEvents.create(config.get(FlightRecorderEvents.FLIGHT_RECORDER_EVENTS));
+        monitor = new DataSourceMonitor(logservice, new SqlStatementRegistry(), slowStatementMillis, holdLimitSeconds, events);
+        leakCheck = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "ukelonn-connection-leak-check");
+                thread.setDaemon(true);
+                return thread;
+            });
+        long checkIntervalSeconds = Math.max(1, holdLimitSeconds / 2);
+        leakCheck.scheduleWithFixedDelay(monitor::flagLongHeldConnections, checkIntervalSeconds, checkIntervalSeconds, TimeUnit.SECONDS);
+    }
+
+    @Deactivate
+    public void deactivate() {
+        if (leakCheck != null) {
+            leakCheck.shutdownNow();
+            leakCheck = null;
+        }
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        long start = System.nanoTime();
+        Connection connection = super.getConnection();
+        return monitored(connection, System.nanoTime() - start);
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        long start = System.nanoTime();
+        Connection connection = super.getConnection(username, password);
+        return monitored(connection, System.nanoTime() - start);
+    }
+
+    public DataSourceStatistics getStatistics() {
+        return monitor.getStatistics(idleConnections());
+    }
+
+    DataSourceMonitor getMonitor() {
+        return monitor;
+    }
+
+    private Connection monitored(Connection connection, long waitNanos) {
+        long connectionId = monitor.connectionCheckedOut(waitNanos);
+        return MonitoredConnection.wrap(connection, connectionId, monitor);
+    }
+
+    /**
+     * The idle connections of a pool, for pools that have a public
+     * getNumIdle() method, like the commons-dbcp2 BasicDataSource.
+     *
+     * @return the idle connections, or -1 if the DataSource doesn't report them
+     */
+    int idleConnections() {
+        try {
+            Method getNumIdle = wrappedDataSource.getClass().getMethod("getNumIdle");
+            return ((Number) getNumIdle.invoke(wrappedDataSource)).intValue();
+        } catch (Exception e) {
+            return -1;
+        }
+    }
+
+    private static long longConfig(Map<String, Object> config, String key, long defaultValue) {
+        Object value = config.get(key);
+        return value != null ? Long.parseLong(value.toString()) : defaultValue;
+    }
+
+}
@@ -0,0 +1,305 @@
+/*
+ * Copyright 2019 Steinar Bang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package no.priv.bang.ukelonn.backend;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import javax.sql.DataSource;
+
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.log.LogService;
+
+import no.priv.bang.ukelonn.UkelonnAdminService;
+import no.priv.bang.ukelonn.UkelonnService;
+import no.priv.bang.ukelonn.beans.Account;
+import no.priv.bang.ukelonn.beans.DataSourceStatistics;
+import no.priv.bang.ukelonn.beans.MethodMetrics;
+import no.priv.bang.ukelonn.beans.Notification;
+import no.priv.bang.ukelonn.beans.NotificationQueueStatistics;
+import no.priv.bang.ukelonn.beans.PerformedTransaction;
+import no.priv.bang.ukelonn.beans.SumYear;
+import no.priv.bang.ukelonn.beans.SumYearMonth;
+import no.priv.bang.ukelonn.beans.Transaction;
+import no.priv.bang.ukelonn.beans.TransactionType;
+import no.priv.bang.ukelonn.beans.UpdatedTransaction;
+import no.priv.bang.ukelonn.beans.User;
+
+/**
+ * An {@link UkelonnService} in front of the {@link UkelonnServiceProvider},
+ * that counts the calls and errors, and measures the time of every
+ * method.
+ *
+ * This is also the {@link UkelonnAdminService}, returning the
+ * measurements from {@link #getMethodMetrics()}, together with the
+ * statistics and the cache control of the {@link UkelonnServiceProvider}.
+ *
+ * The service is registered with a higher service ranking than the
+ * {@link UkelonnServiceProvider}, so that the components referencing
+ * an UkelonnService get this one.  The methods of asynchronous
+ * calls are timed until the returned future completes.
+ *
+ * The overloaded paged versions of getJobs and getPayments are
+ * reported as "getJobsPage" and "getPaymentsPage".
+ *
+ * This is also where the JDK Flight Recorder "ServiceCall" events
+ * are emitted, one for each successful call, when the configuration
+ * property "flightRecorderEvents" is true.  Since the event is
+ * committed when the call to the {@link UkelonnServiceProvider} has
+ * returned, the event of a call that changes the database comes after
+ * the database transaction has been committed.
+ *
+ * @author Steinar Bang
+ *
+ */
+@Component(service={UkelonnService.class, UkelonnAdminService.class}, immediate=true, property= { "service.ranking:Integer=100" })
+public class InstrumentedUkelonnService implements UkelonnService, UkelonnAdminService {
+
+    private UkelonnServiceProvider ukelonn;
+    private final MethodTimers timers = new MethodTimers();
+
+    @Reference
+    public void setUkelonnService(UkelonnServiceProvider ukelonn) {
+        this.ukelonn = ukelonn;
+    }
+
+    public void activate() {
+        activate(Collections.emptyMap());
+    }
+
+    @Activate
+    public void activate(Map<String, Object> config) {
+        setFlightRecorderEvents(FlightRecorderEvents.create(config.get(FlightRecorderEvents.FLIGHT_RECORDER_EVENTS)));
+    }
+
+    void setFlightRecorderEvents(FlightRecorderEvents events) {
+        timers.setFlightRecorderEvents(events);
+    }
+
+    @Override
+    public String getMessage() {
+        return ukelonn.getMessage();
+    }
+
+    @Override
+    public DataSource getDataSource() {
+        return ukelonn.getDataSource();
+    }
+
+    @Override
+    public LogService getLogservice() {
+        return ukelonn.getLogservice();
+    }
+
+    @Override
+    public List<Account> getAccounts() {
+        return timers.time("getAccounts", () -> ukelonn.getAccounts());
+    }
+
+    @Override
+    public Account getAccount(String username) {
+        return timers.time("getAccount", () -> ukelonn.getAccount(username));
+    }
+
+    @Override
+    public Account getAccountById(int accountId) {
+        return timers.time("getAccountById", accountId, () -> ukelonn.getAccountById(accountId));
+    }
+
+    @Override
+    public Account registerPerformedJob(PerformedTransaction job) {
+        return timers.time("registerPerformedJob", () -> ukelonn.registerPerformedJob(job));
+    }
+
+    @Override
+    public Account registerPerformedJobs(List<PerformedTransaction> jobs) {
+        return timers.time("registerPerformedJobs", MethodTimers.NO_ACCOUNT, () -> ukelonn.registerPerformedJobs(jobs), account -> account != null ? jobs.size() : 0);
+    }
+
+    @Override
+    public List<Transaction> updateJob(UpdatedTransaction editedJob) {
+        return timers.time("updateJob", editedJob.getAccountId(), () -> ukelonn.updateJob(editedJob));
+    }
+
+    @Override
+    public List<TransactionType> getJobTypes() {
+        return timers.time("getJobTypes", () -> ukelonn.getJobTypes());
+    }
+
+    @Override
+    public List<Transaction> getJobs(int accountId) {
+        return timers.time("getJobs", accountId, () -> ukelonn.getJobs(accountId));
+    }
+
+    @Override
+    public List<Transaction> getJobs(int accountId, int beforeTransactionId, int limit) {
+        return timers.time("getJobsPage", accountId, () -> ukelonn.getJobs(accountId, beforeTransactionId, limit));
+    }
+
+    @Override
+    public List<Transaction> deleteJobsFromAccount(int accountId, List<Integer> idsOfJobsToDelete) {
+        return timers.time("deleteJobsFromAccount", accountId, () -> ukelonn.deleteJobsFromAccount(accountId, idsOfJobsToDelete));
+    }
+
+    @Override
+    public List<Transaction> getPayments(int accountId) {
+        return timers.time("getPayments", accountId, () -> ukelonn.getPayments(accountId));
+    }
+
+    @Override
+    public List<Transaction> getPayments(int accountId, int beforeTransactionId, int limit) {
+        return timers.time("getPaymentsPage", accountId, () -> ukelonn.getPayments(accountId, beforeTransactionId, limit));
+    }
+
+    @Override
+    public List<TransactionType> getPaymenttypes() {
+        return timers.time("getPaymenttypes", () -> ukelonn.getPaymenttypes());
+    }
+
+    @Override
+    public void exportTransactions(int accountId, Consumer<Transaction> consumer) {
+        AtomicInteger rowCount = new AtomicInteger();
+        timers.time("exportTransactions", accountId, () -> {
+                ukelonn.exportTransactions(accountId, transaction -> {
+                        rowCount.incrementAndGet();
+                        consumer.accept(transaction);
+                    });
+                return rowCount.get();
+            }, Integer::intValue);
+    }
+
+    @Override
+    public Account registerPayment(PerformedTransaction payment) {
+        return timers.time("registerPayment", () -> ukelonn.registerPayment(payment));
+    }
+
+    @Override
+    public List<TransactionType> modifyJobtype(TransactionType jobtype) {
+        return timers.time("modifyJobtype", () -> ukelonn.modifyJobtype(jobtype));
+    }
+
+    @Override
+    public List<TransactionType> createJobtype(TransactionType jobtype) {
+        return timers.time("createJobtype", () -> ukelonn.createJobtype(jobtype));
+    }
+
+    @Override
+    public List<TransactionType> modifyPaymenttype(TransactionType paymenttype) {
+        return timers.time("modifyPaymenttype", () -> ukelonn.modifyPaymenttype(paymenttype));
+    }
+
+    @Override
+    public List<TransactionType> createPaymenttype(TransactionType paymenttype) {
+        return timers.time("createPaymenttype", () -> ukelonn.createPaymenttype(paymenttype));
+    }
+
+    @Override
+    public Account addAccount(User user) {
+        return timers.time("addAccount", () -> ukelonn.addAccount(user));
+    }
+
+    @Override
+    public List<Notification> notificationsTo(String username) {
+        return timers.time("notificationsTo", () -> ukelonn.notificationsTo(username));
+    }
+
+    @Override
+    public void notificationTo(String username, Notification notification) {
+        timers.time("notificationTo", () -> ukelonn.notificationTo(username, notification));
+    }
+
+    @Override
+    public CompletableFuture<List<Notification>> waitForNotificationTo(String username) {
+        return timers.timeAsync("waitForNotificationTo", () -> ukelonn.waitForNotificationTo(username));
+    }
+
+    @Override
+    public List<SumYear> earningsSumOverYear(String username) {
+        return timers.time("earningsSumOverYear", () -> ukelonn.earningsSumOverYear(username));
+    }
+
+    @Override
+    public List<SumYearMonth> earningsSumOverMonth(String username) {
+        return timers.time("earningsSumOverMonth", () -> ukelonn.earningsSumOverMonth(username));
+    }
+
+    @Override
+    public CompletableFuture<Account> getAccountAsync(String username) {
+        return timers.timeAsync("getAccountAsync", () -> ukelonn.getAccountAsync(username));
+    }
+
+    @Override
+    public CompletableFuture<List<Transaction>> getJobsAsync(int accountId, int beforeTransactionId, int limit) {
+        return timers.timeAsync("getJobsAsync", accountId, () -> ukelonn.getJobsAsync(accountId, beforeTransactionId, limit));
+    }
+
+    @Override
+    public CompletableFuture<List<Transaction>> getPaymentsAsync(int accountId, int beforeTransactionId, int limit) {
+        return timers.timeAsync("getPaymentsAsync", accountId, () -> ukelonn.getPaymentsAsync(accountId, beforeTransactionId, limit));
+    }
+
+    @Override
+    public CompletableFuture<List<SumYear>> earningsSumOverYearAsync(String username) {
+        return timers.timeAsync("earningsSumOverYearAsync", () -> ukelonn.earningsSumOverYearAsync(username));
+    }
+
+    @Override
+    public CompletableFuture<List<SumYearMonth>> earningsSumOverMonthAsync(String username) {
+        return timers.timeAsync("earningsSumOverMonthAsync", () -> ukelonn.earningsSumOverMonthAsync(username));
+    }
+
+    @Override
+    public List<MethodMetrics> getMethodMetrics() {
+        return timers.getMetrics();
+    }
+
+    @Override
+    public NotificationQueueStatistics getNotificationQueueStatistics() {
+        return ukelonn.getNotificationQueueStatistics();
+    }
+
+    @Override
+    public DataSourceStatistics getDataSourceStatistics() {
+        return ukelonn.getDataSourceStatistics();
+    }
+
+    @Override
+    public long getTransactionTypeCacheHits() {
+        return ukelonn.getTransactionTypeCacheHits();
+    }
+
+    @Override
+    public long getTransactionTypeCacheMisses() {
+        return ukelonn.getTransactionTypeCacheMisses();
+    }
+
+    @Override
+    public void invalidateCachedUsers() {
+        ukelonn.invalidateCachedUsers();
+    }
+
+    @Override
+    public void invalidateCachedData() {
+        ukelonn.invalidateCachedData();
+    }
+
+}
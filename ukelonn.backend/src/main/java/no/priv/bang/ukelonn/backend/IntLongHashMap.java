@@ -0,0 +1,165 @@
+/*
+ * Copyright 2019 Steinar Bang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package no.priv.bang.ukelonn.backend;
+
+/**
+ * A map from int keys to long values, that stores keys and values in
+ * primitive arrays, with open addressing and linear probing.
+ *
+ * Entries can't be removed, which is all the {@link AccountLedger}
+ * needs, since accounts are never deleted.  Not thread safe.
+ *
+ * @author Steinar Bang
+ *
+ */
+class IntLongHashMap {
+
+    private static final int MINIMUM_CAPACITY = 16;
+
+    private int[] keys;
+    private long[] values;
+    private boolean[] used;
+    private int size = 0;
+
+    IntLongHashMap() {
+        this(MINIMUM_CAPACITY);
+    }
+
+    IntLongHashMap(int expectedSize) {
+        allocate(tableSizeFor(expectedSize));
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean containsKey(int key) {
+        return used[indexOf(key)];
+    }
+
+    long get(int key, long defaultValue) {
+        int index = indexOf(key);
+        return used[index] ? values[index] : defaultValue;
+    }
+
+    void put(int key, long value) {
+        int index = indexOf(key);
+        if (!used[index]) {
+            index = insert(index, key);
+        }
+
+        values[index] = value;
+    }
+
+    /**
+     * Set the value of a key only if the key isn't already in the map.
+     *
+     * @return true if the value was set
+     */
+    boolean putIfAbsent(int key, long value) {
+        int index = indexOf(key);
+        if (used[index]) {
+            return false;
+        }
+
+        values[insert(index, key)] = value;
+        return true;
+    }
+
+    /**
+     * Add to the value of a key. A missing key is added with the delta
+     * as its value.
+     *
+     * @return the new value
+     */
+    long addTo(int key, long delta) {
+        int index = indexOf(key);
+        if (!used[index]) {
+            index = insert(index, key);
+            values[index] = 0;
+        }
+
+        values[index] += delta;
+        return values[index];
+    }
+
+    private int insert(int index, int key) {
+        if (2 * (size + 1) > keys.length) {
+            rehash(keys.length * 2);
+            index = indexOf(key);
+        }
+
+        used[index] = true;
+        keys[index] = key;
+        ++size;
+        return index;
+    }
+
+    /**
+     * Find the slot of a key, or the empty slot where the key would be
+     * inserted.  The table is never more than half full, so there is
+     * always an empty slot that ends the probe.
+     */
+    private int indexOf(int key) {
+        int mask = keys.length - 1;
+        int index = mix(key) & mask;
+        while (used[index] && keys[index] != key) {
+            index = (index + 1) & mask;
+        }
+
+        return index;
+    }
+
+    private void rehash(int newCapacity) {
+        int[] oldKeys = keys;
+        long[] oldValues = values;
+        boolean[] oldUsed = used;
+        allocate(newCapacity);
+        for (int i = 0; i < oldKeys.length; ++i) {
+            if (oldUsed[i]) {
+                int index = indexOf(oldKeys[i]);
+                used[index] = true;
+                keys[index] = oldKeys[i];
+                values[index] = oldValues[i];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new int[capacity];
+        values = new long[capacity];
+        used = new boolean[capacity];
+    }
+
+    static int tableSizeFor(int expectedSize) {
+        int capacity = MINIMUM_CAPACITY;
+        while (capacity < 2 * expectedSize) {
+            capacity <<= 1;
+        }
+
+        return capacity;
+    }
+
+    /**
+     * Spread sequential ids over the table, so that runs of used slots
+     * stay short.
+     */
+    private static int mix(int key) {
+        int hash = key * 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2019 Steinar Bang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package no.priv.bang.ukelonn.backend;
+
+import java.time.LocalDate;
+
+import org.apache.karaf.shell.api.action.Action;
+import org.apache.karaf.shell.api.action.Command;
+import org.apache.karaf.shell.api.action.Option;
+import org.apache.karaf.shell.api.action.lifecycle.Reference;
+import org.apache.karaf.shell.api.action.lifecycle.Service;
+
+import no.priv.bang.ukelonn.UkelonnAdminService;
+import no.priv.bang.ukelonn.UkelonnService;
+
+@Command(scope="ukelonn", name="generate-dataset", description = "Fill the ukelonn database with generated users, accounts and transactions")
+@Service
+public class KarafGenerateDatasetCommand implements Action {
+    @Reference
+    UkelonnService ukelonn;
+
+    @Reference
+    UkelonnAdminService admin;
+
+    @Option(name = "-u", aliases = "--users", description = "Number of users, each with an account")
+    int users = 10;
+
+    @Option(name = "-t", aliases = "--transactions", description = "Number of transactions of each account")
+    int transactionsPerAccount = 1000;
+
+    @Option(name = "-j", aliases = "--jobtypes", description = "Number of job types")
+    int jobtypes = 8;
+
+    @Option(name = "-p", aliases = "--paymenttypes", description = "Number of payment types")
+    int paymenttypes = 2;
+
+    @Option(name = "-d", aliases = "--days", description = "Number of days, up to today, the transactions are spread over")
+    int days = 3 * 365;
+
+    @Option(name = "-s", aliases = "--seed", description = "Seed of the random numbers, the same seed gives the same data")
+    long seed = 1;
+
+    @Option(name = "--prefix", description = "Start of the generated usernames, must not be used by existing users")
+    String usernamePrefix = "generated";
+
+    @Override
+    public Object execute() throws Exception {
+        DatasetGenerator generator = new DatasetGenerator(ukelonn.getDataSource(), seed, usernamePrefix, LocalDate.now(), days);
+        GeneratedDataset dataset = generator.generate(users, jobtypes, paymenttypes, transactionsPerAccount);
+        admin.invalidateCachedData();
+        System.out.println(format(dataset)); // NOSONAR This is command output and should not go to a logger
+        return null;
+    }
+
+    static String format(GeneratedDataset dataset) {
+        StringBuilder output = new StringBuilder(String.format(
+            "Generated %d accounts, %d job types, %d payment types and %d transactions",
+            dataset.getAccounts().size(),
+            dataset.getJobtypes().size(),
+            dataset.getPaymenttypes().size(),
+            dataset.getNumberOfTransactions()));
+        if (!dataset.isUsersInserted()) {
+            output.append(String.format("%nThe users weren't added, since the database has no users table"));
+        }
+        return output.toString();
+    }
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright 2019 Steinar Bang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package no.priv.bang.ukelonn.backend;
+
+import org.apache.karaf.shell.api.action.Action;
+import org.apache.karaf.shell.api.action.Command;
+import org.apache.karaf.shell.api.action.lifecycle.Reference;
+import org.apache.karaf.shell.api.action.lifecycle.Service;
+
+import no.priv.bang.ukelonn.UkelonnAdminService;
+import no.priv.bang.ukelonn.beans.NotificationQueueStatistics;
+
+@Command(scope="ukelonn", name="notification-queues", description = "Show the size of the notification queues and the number of dropped notifications")
+@Service
+public class KarafNotificationQueuesCommand implements Action {
+    @Reference
+    UkelonnAdminService admin;
+
+    @Override
+    public Object execute() throws Exception {
+        NotificationQueueStatistics statistics = admin.getNotificationQueueStatistics();
+        System.out.println(format(statistics)); // NOSONAR This is command output and should not go to a logger
+        return null;
+    }
+
+    static String format(NotificationQueueStatistics statistics) {
+        return String.format(
+            "Users with notification queues: %d%nQueued notifications: %d%nCoalesced notifications: %d%nDropped notifications: %d%nExpired notifications: %d%nEvicted users: %d",
+            statistics.getUsers(),
+            statistics.getQueuedNotifications(),
+            statistics.getCoalescedNotifications(),
+            statistics.getDroppedNotifications(),
+            statistics.getExpiredNotifications(),
+            statistics.getEvictedUsers());
+    }
+}
@@ -0,0 +1,214 @@
+/*
+ * Copyright 2019 Steinar Bang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package no.priv.bang.ukelonn.backend;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.function.ToIntFunction;
+import java.util.stream.Collectors;
+
+import no.priv.bang.ukelonn.beans.Account;
+import no.priv.bang.ukelonn.beans.MethodMetrics;
+
+/**
+ * Call counts, error counts and latency histograms of named methods.
+ *
+ * The counters are {@link LongAdder}s, so concurrent calls don't
+ * contend on recording.  The histogram has fixed buckets, from half
+ * a millisecond to ten seconds, so that it can be exported as a
+ * prometheus histogram.
+ *
+ * Each successful call is also a "ServiceCall" event of the
+ * {@link FlightRecorderEvents}, if the events are turned on.  The
+ * account ID of the event is the one given to the timer, or the ID
+ * of the account returned by the call.  The row count is the size
+ * of a returned list, 1 for any other returned value, and 0 for no
+ * value, unless the caller counts the rows itself.
+ *
+ * @author Steinar Bang
+ *
+ */
+class MethodTimers {
+
+    static final double[] BUCKET_UPPER_BOUNDS = { 0.0005, 0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1.0, 2.5, 5.0, 10.0 };
+    private static final long[] BUCKET_UPPER_BOUNDS_NANOS = new long[BUCKET_UPPER_BOUNDS.length];
+    static {
+        for (int i = 0; i < BUCKET_UPPER_BOUNDS.length; ++i) {
+            BUCKET_UPPER_BOUNDS_NANOS[i] = (long) (BUCKET_UPPER_BOUNDS[i] * TimeUnit.SECONDS.toNanos(1));
+        }
+    }
+
+    static final int NO_ACCOUNT = 0;
+    private final Map<String, MethodTimer> timers = new ConcurrentHashMap<>();
+    private volatile FlightRecorderEvents events = FlightRecorderEvents.DISABLED;
+
+    void setFlightRecorderEvents(FlightRecorderEvents events) {
+        this.events = events;
+    }
+
+    <T> T time(String method, Supplier<T> call) {
+        return time(method, NO_ACCOUNT, call);
+    }
+
+    <T> T time(String method, int accountId, Supplier<T> call) {
+        return time(method, accountId, call, MethodTimers::rowCount);
+    }
+
+    <T> T time(String method, int accountId, Supplier<T> call, ToIntFunction<T> rowCount) {
+        Object event = events.beginServiceCall();
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            T result = call.get();
+            failed = false;
+            events.commitServiceCall(event, method, accountId(accountId, result), rowCount.applyAsInt(result));
+            return result;
+        } finally {
+            record(method, System.nanoTime() - start, failed);
+        }
+    }
+
+    void time(String method, Runnable call) {
+        time(method, NO_ACCOUNT, call);
+    }
+
+    void time(String method, int accountId, Runnable call) {
+        time(method, accountId, () -> {
+            call.run();
+            return null;
+        });
+    }
+
+    /**
+     * Time an asynchronous call from it is made until the returned
+     * future completes.  A cancelled future, e.g. a long poll for
+     * notifications that timed out, is a normal completion and not
+     * an error.
+     */
+    <T> CompletableFuture<T> timeAsync(String method, Supplier<CompletableFuture<T>> call) {
+        return timeAsync(method, NO_ACCOUNT, call);
+    }
+
+    <T> CompletableFuture<T> timeAsync(String method, int accountId, Supplier<CompletableFuture<T>> call) {
+        Object event = events.beginServiceCall();
+        long start = System.nanoTime();
+        CompletableFuture<T> result;
+        try {
+            result = call.get();
+        } catch (RuntimeException e) {
+            record(method, System.nanoTime() - start, true);
+            throw e;
+        }
+
+        if (result != null) {
+            result.whenComplete((value, exception) -> {
+                    if (exception == null) {
+                        events.commitServiceCall(event, method, accountId(accountId, value), rowCount(value));
+                    }
+
+                    record(method, System.nanoTime() - start, isFailure(exception));
+                });
+        } else {
+            record(method, System.nanoTime() - start, false);
+        }
+
+        return result;
+    }
+
+    static int accountId(int accountId, Object result) {
+        if (accountId == NO_ACCOUNT && result instanceof Account) {
+            return ((Account) result).getAccountId();
+        }
+
+        return accountId;
+    }
+
+    static int rowCount(Object result) {
+        if (result instanceof Collection) {
+            return ((Collection<?>) result).size();
+        }
+
+        return result != null ? 1 : 0;
+    }
+
+    static boolean isFailure(Throwable exception) {
+        Throwable cause = exception instanceof CompletionException ? exception.getCause() : exception;
+        return cause != null && !(cause instanceof CancellationException);
+    }
+
+    void record(String method, long elapsedNanos, boolean failed) {
+        timers.computeIfAbsent(method, m -> new MethodTimer()).record(elapsedNanos, failed);
+    }
+
+    /**
+     * @return the metrics of every method called so far, sorted on the method name
+     */
+    List<MethodMetrics> getMetrics() {
+        return timers.entrySet().stream()
+            .sorted(Map.Entry.comparingByKey())
+            .map(entry -> entry.getValue().getMetrics(entry.getKey()))
+            .collect(Collectors.toList());
+    }
+
+    private static class MethodTimer {
+        final LongAdder calls = new LongAdder();
+        final LongAdder errors = new LongAdder();
+        final LongAdder elapsedNanos = new LongAdder();
+        final LongAdder[] buckets = new LongAdder[BUCKET_UPPER_BOUNDS.length];
+
+        MethodTimer() {
+            for (int i = 0; i < buckets.length; ++i) {
+                buckets[i] = new LongAdder();
+            }
+        }
+
+        void record(long elapsed, boolean failed) {
+            calls.increment();
+            elapsedNanos.add(elapsed);
+            if (failed) {
+                errors.increment();
+            }
+
+            for (int i = 0; i < buckets.length; ++i) {
+                if (elapsed <= BUCKET_UPPER_BOUNDS_NANOS[i]) {
+                    buckets[i].increment();
+                    break;
+                }
+            }
+        }
+
+        MethodMetrics getMetrics(String method) {
+            long[] cumulativeCounts = new long[buckets.length];
+            long count = 0;
+            for (int i = 0; i < buckets.length; ++i) {
+                count += buckets[i].sum();
+                cumulativeCounts[i] = count;
+            }
+
+            double seconds = elapsedNanos.sum() / (double) TimeUnit.SECONDS.toNanos(1);
+            return new MethodMetrics(method, calls.sum(), errors.sum(), seconds, BUCKET_UPPER_BOUNDS.clone(), cumulativeCounts);
+        }
+    }
+
+}
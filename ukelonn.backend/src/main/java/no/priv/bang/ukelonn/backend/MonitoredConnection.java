@@ -0,0 +1,144 @@
+/*
+ * Copyright 2019 Steinar Bang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package no.priv.bang.ukelonn.backend;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A {@link Connection} in front of a connection checked out of the
+ * {@link InstrumentedDataSource}, that reports the time of every
+ * statement executed on the connection, and the closing of the
+ * connection, to a {@link DataSourceMonitor}.
+ *
+ * The statements are reported with the SQL, that has "?" in place of
+ * the bind parameters, and the shape of the bind parameters, e.g.
+ * "(int, string)", or "3 x (int, double)" for a batch of three.  The
+ * values of the bind parameters are never reported, since they may
+ * hold personal information.
+ *
+ * @author Steinar Bang
+ *
+ */
+class MonitoredConnection {
+
+    private MonitoredConnection() {}
+
+    static Connection wrap(Connection connection, long connectionId, DataSourceMonitor monitor) {
+        boolean[] closed = { false };
+        return (Connection) Proxy.newProxyInstance(MonitoredConnection.class.getClassLoader(), new Class<?>[] { Connection.class }, (proxy, method, args) -> {
+                if ("close".equals(method.getName())) {
+                    try {
+                        return invoke(connection, method, args);
+                    } finally {
+                        if (!closed[0]) {
+                            closed[0] = true;
+                            monitor.connectionClosed(connectionId);
+                        }
+                    }
+                }
+
+                Object result = invoke(connection, method, args);
+                if (result instanceof Statement && Statement.class.isAssignableFrom(method.getReturnType())) {
+                    String sql = args != null && args.length > 0 && args[0] instanceof String ? (String) args[0] : null;
+                    return Proxy.newProxyInstance(MonitoredConnection.class.getClassLoader(), new Class<?>[] { method.getReturnType() }, new MonitoredStatement((Statement) result, sql, monitor)::invoke);
+                }
+
+                return result;
+            });
+    }
+
+    private static class MonitoredStatement {
+        private final Statement statement;
+        private final String sql;
+        private final DataSourceMonitor monitor;
+        private final Map<Integer, String> parameterTypes = new TreeMap<>();
+        private int batchSize = 0;
+        private String batchShape = null;
+
+        MonitoredStatement(Statement statement, String sql, DataSourceMonitor monitor) {
+            this.statement = statement;
+            this.sql = sql;
+            this.monitor = monitor;
+        }
+
+        Object invoke(Object proxy, Method method, Object[] args) throws Throwable { // NOSONAR The exceptions of the wrapped statement are passed on unchanged
+            String name = method.getName();
+            if (name.startsWith("set") && args != null && args.length >= 2 && args[0] instanceof Integer) {
+                parameterTypes.put((Integer) args[0], parameterType(name, args[1]));
+            } else if ("clearParameters".equals(name)) {
+                parameterTypes.clear();
+            } else if ("addBatch".equals(name) && args == null) {
+                ++batchSize;
+                batchShape = shape();
+            } else if ("clearBatch".equals(name)) {
+                batchSize = 0;
+            } else if (name.startsWith("execute")) {
+                return execute(method, args);
+            }
+
+            return MonitoredConnection.invoke(statement, method, args);
+        }
+
+        private Object execute(Method method, Object[] args) throws Throwable { // NOSONAR The exceptions of the wrapped statement are passed on unchanged
+            // Plain statements get the SQL as an argument to execute
+            String executedSql = args != null && args.length > 0 && args[0] instanceof String ? (String) args[0] : sql;
+            String parameterShape = shape();
+            if ("executeBatch".equals(method.getName()) || "executeLargeBatch".equals(method.getName())) {
+                parameterShape = batchSize + " x " + (batchShape != null ? batchShape : "()");
+                batchSize = 0;
+            }
+
+            Object event = monitor.beginStatement();
+            long start = System.nanoTime();
+            try {
+                return MonitoredConnection.invoke(statement, method, args);
+            } finally {
+                monitor.statementExecuted(executedSql, parameterShape, System.nanoTime() - start, event);
+            }
+        }
+
+        private String shape() {
+            return "(" + String.join(", ", parameterTypes.values()) + ")";
+        }
+    }
+
+    /**
+     * The type of a bind parameter, from the name of the setter,
+     * e.g. "int" for setInt, or from the value given to setObject.
+     */
+    static String parameterType(String setterName, Object value) {
+        if ("setObject".equals(setterName)) {
+            return value != null ? value.getClass().getSimpleName().toLowerCase() : "null";
+        }
+
+        return setterName.substring("set".length()).toLowerCase();
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable { // NOSONAR The exceptions of the wrapped object are passed on unchanged
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+}
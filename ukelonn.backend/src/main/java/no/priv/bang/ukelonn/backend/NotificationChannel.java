@@ -0,0 +1,248 @@
+/*
+ * Copyright 2019 Steinar Bang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package no.priv.bang.ukelonn.backend;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.locks.ReentrantLock;
+
+import no.priv.bang.ukelonn.beans.Notification;
+
+/**
+ * The notifications waiting to be delivered to one user, and the
+ * clients of that user waiting for a notification.
+ *
+ * A notification sent while a client is waiting is handed directly to
+ * the client.  Otherwise it is queued until a client asks for it.
+ * Each notification is delivered to one client only.
+ *
+ * The queue holds at most a fixed number of notifications, and the
+ * oldest notification is dropped to make room for a new one.  Queued
+ * notifications expire after a fixed time to live.  A notification
+ * equal to one already queued isn't queued again.
+ *
+ * A channel is retired by the {@link NotificationStore} when it has
+ * been idle for a while.  A retired channel refuses new notifications
+ * and waiting clients, and the caller must get a new channel from the
+ * store.
+ *
+ * @author Steinar Bang
+ *
+ */
+public class NotificationChannel {
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Deque<QueuedNotification> notifications = new ArrayDeque<>();
+    private final Deque<CompletableFuture<List<Notification>>> waitingClients = new ArrayDeque<>();
+    private final NotificationStore store;
+    private long lastActivity;
+    private boolean retired = false;
+
+    NotificationChannel(NotificationStore store) {
+        this.store = store;
+        this.lastActivity = store.now();
+    }
+
+    /**
+     * Deliver a notification to a waiting client, or queue it.
+     *
+     * @param notification the notification to send
+     * @return false if the channel has been retired and the notification wasn't sent
+     */
+    boolean send(Notification notification) {
+        List<Notification> delivery = Collections.singletonList(notification);
+        while (true) {
+            CompletableFuture<List<Notification>> client;
+            lock.lock();
+            try {
+                if (retired) {
+                    return false;
+                }
+
+                lastActivity = store.now();
+                client = firstWaitingClient();
+                if (client == null) {
+                    queue(notification);
+                    return true;
+                }
+            } finally {
+                lock.unlock();
+            }
+
+            // Complete outside of the lock, since completing runs the
+            // callbacks of the client.  Try the next client if this one
+            // gave up waiting in the meantime.
+            if (client.complete(delivery)) {
+                store.getFlightRecorderEvents().notificationDelivered(0, 0);
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Take the oldest queued notification.
+     *
+     * @return a list holding the oldest notification, or an empty list if there are no notifications
+     */
+    List<Notification> poll() {
+        lock.lock();
+        try {
+            lastActivity = store.now();
+            removeExpired();
+            QueuedNotification queued = notifications.poll();
+            if (queued == null) {
+                return Collections.emptyList();
+            }
+
+            delivered(queued);
+            return Collections.singletonList(queued.notification);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Wait for a notification.  If a notification is queued the returned
+     * future is already completed.  Otherwise it is completed when the
+     * next notification is sent.  A client that stops waiting should
+     * cancel the future, so that no notification is handed to it.
+     *
+     * @return a future completed with a list holding one notification, or null if the channel has been retired
+     */
+    CompletableFuture<List<Notification>> waitForNotification() {
+        lock.lock();
+        try {
+            if (retired) {
+                return null;
+            }
+
+            lastActivity = store.now();
+            removeExpired();
+            QueuedNotification queued = notifications.poll();
+            if (queued != null) {
+                delivered(queued);
+                return CompletableFuture.completedFuture(Collections.singletonList(queued.notification));
+            }
+
+            waitingClients.removeIf(CompletableFuture::isDone);
+            CompletableFuture<List<Notification>> client = new CompletableFuture<>();
+            waitingClients.add(client);
+            return client;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Retire the channel if it has no waiting clients, no live
+     * notifications, and no activity since the given time.
+     *
+     * @param idleSince the time the channel must have been idle since
+     * @return true if the channel was retired
+     */
+    boolean retireIfIdle(long idleSince) {
+        lock.lock();
+        try {
+            removeExpired();
+            waitingClients.removeIf(CompletableFuture::isDone);
+            retired = lastActivity < idleSince && notifications.isEmpty() && waitingClients.isEmpty();
+            return retired;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    int numberOfQueuedNotifications() {
+        lock.lock();
+        try {
+            removeExpired();
+            return notifications.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    int numberOfWaitingClients() {
+        lock.lock();
+        try {
+            waitingClients.removeIf(CompletableFuture::isDone);
+            return waitingClients.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void queue(Notification notification) {
+        removeExpired();
+        for (QueuedNotification queued : notifications) {
+            if (isDuplicate(queued.notification, notification)) {
+                store.coalescedNotifications.increment();
+                return;
+            }
+        }
+
+        if (notifications.size() >= store.capacity) {
+            notifications.poll();
+            store.droppedNotifications.increment();
+        }
+
+        notifications.add(new QueuedNotification(notification, store.now()));
+    }
+
+    private void delivered(QueuedNotification queued) {
+        store.getFlightRecorderEvents().notificationDelivered(notifications.size() + 1, store.now() - queued.queuedTime);
+    }
+
+    private void removeExpired() {
+        long expiryTime = store.now() - store.timeToLive;
+        Iterator<QueuedNotification> oldestFirst = notifications.iterator();
+        while (oldestFirst.hasNext() && oldestFirst.next().queuedTime <= expiryTime) {
+            oldestFirst.remove();
+            store.expiredNotifications.increment();
+        }
+    }
+
+    private CompletableFuture<List<Notification>> firstWaitingClient() {
+        CompletableFuture<List<Notification>> client = waitingClients.poll();
+        while (client != null && client.isDone()) {
+            client = waitingClients.poll();
+        }
+
+        return client;
+    }
+
+    static boolean isDuplicate(Notification first, Notification second) {
+        return
+            Objects.equals(first.getTitle(), second.getTitle()) &&
+            Objects.equals(first.getMessage(), second.getMessage());
+    }
+
+    private static class QueuedNotification {
+        final Notification notification;
+        final long queuedTime;
+
+        QueuedNotification(Notification notification, long queuedTime) {
+            this.notification = notification;
+            this.queuedTime = queuedTime;
+        }
+    }
+
+}
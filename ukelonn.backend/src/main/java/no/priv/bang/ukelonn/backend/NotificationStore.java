@@ -0,0 +1,203 @@
+/*
+ * Copyright 2019 Steinar Bang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package no.priv.bang.ukelonn.backend;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+import no.priv.bang.ukelonn.beans.Notification;
+import no.priv.bang.ukelonn.beans.NotificationQueueStatistics;
+
+/**
+ * Holds the {@link NotificationChannel} of each user.
+ *
+ * Memory use is kept bounded: each channel holds a limited number of
+ * notifications, queued notifications expire, and the channels of
+ * users that have had no activity for a while are removed.  Idle
+ * channels are looked for at most once per sweep interval, by the
+ * thread that happens to use the store at that time.
+ *
+ * A channel is only made when a notification is sent to a user.
+ * Polls and long polls for a user without a channel are answered with
+ * an empty list right away, so that requests for made up usernames
+ * don't allocate anything.  The number of channels is capped as well.
+ * When the store is full, no channels are made for new usernames until
+ * idle channels have been removed, and notifications to the new
+ * usernames are dropped.
+ *
+ * @author Steinar Bang
+ *
+ */
+public class NotificationStore {
+
+    static final int DEFAULT_CAPACITY = 20;
+    static final long DEFAULT_TIME_TO_LIVE = TimeUnit.HOURS.toMillis(24);
+    static final long DEFAULT_IDLE_TIME = TimeUnit.MINUTES.toMillis(30);
+    static final long SWEEP_INTERVAL = TimeUnit.MINUTES.toMillis(1);
+    static final int DEFAULT_MAX_CHANNELS = 10000;
+
+    final int capacity;
+    final long timeToLive;
+    final LongAdder coalescedNotifications = new LongAdder();
+    final LongAdder droppedNotifications = new LongAdder();
+    final LongAdder expiredNotifications = new LongAdder();
+    private final LongAdder evictedUsers = new LongAdder();
+    private final long idleTime;
+    private final int maxChannels;
+    private final LongSupplier clock;
+    private final ConcurrentHashMap<String, NotificationChannel> channels = new ConcurrentHashMap<>();
+    private final AtomicLong nextSweep;
+    private volatile FlightRecorderEvents events = FlightRecorderEvents.DISABLED;
+
+    public NotificationStore() {
+        this(DEFAULT_CAPACITY, DEFAULT_TIME_TO_LIVE, DEFAULT_IDLE_TIME, DEFAULT_MAX_CHANNELS, System::currentTimeMillis);
+    }
+
+    NotificationStore(int capacity, long timeToLive, long idleTime, int maxChannels, LongSupplier clock) {
+        this.capacity = capacity;
+        this.timeToLive = timeToLive;
+        this.idleTime = idleTime;
+        this.maxChannels = maxChannels;
+        this.clock = clock;
+        this.nextSweep = new AtomicLong(clock.getAsLong() + SWEEP_INTERVAL);
+    }
+
+    public void send(String username, Notification notification) {
+        NotificationChannel channel = channelOrNewChannel(username);
+        while (channel != null && !channel.send(notification)) {
+            // The channel was retired, try again with a new channel
+            channel = channelOrNewChannel(username);
+        }
+
+        if (channel == null) {
+            droppedNotifications.increment();
+        }
+    }
+
+    public List<Notification> poll(String username) {
+        NotificationChannel channel = channel(username);
+        return channel != null ? channel.poll() : Collections.emptyList();
+    }
+
+    /**
+     * Wait for a notification to a user.
+     *
+     * @param username the user to wait for a notification to
+     * @return a future completed with a list holding one notification, or an already completed future with an empty list if the user has no channel
+     */
+    public CompletableFuture<List<Notification>> waitForNotification(String username) {
+        CompletableFuture<List<Notification>> notification = null;
+        while (notification == null) {
+            NotificationChannel channel = channel(username);
+            if (channel == null) {
+                return CompletableFuture.completedFuture(Collections.emptyList());
+            }
+
+            // A retired channel gives null, and the loop looks the user up again
+            notification = channel.waitForNotification();
+        }
+
+        return notification;
+    }
+
+    /**
+     * Emit a JDK Flight Recorder event for each delivered notification,
+     * with the depth of the queue and the time the notification waited.
+     */
+    void setFlightRecorderEvents(FlightRecorderEvents events) {
+        this.events = events;
+    }
+
+    FlightRecorderEvents getFlightRecorderEvents() {
+        return events;
+    }
+
+    public NotificationQueueStatistics getStatistics() {
+        int queuedNotifications = 0;
+        for (NotificationChannel channel : channels.values()) {
+            queuedNotifications += channel.numberOfQueuedNotifications();
+        }
+
+        return new NotificationQueueStatistics(
+            channels.size(),
+            queuedNotifications,
+            coalescedNotifications.sum(),
+            droppedNotifications.sum(),
+            expiredNotifications.sum(),
+            evictedUsers.sum());
+    }
+
+    /**
+     * Remove the channels of users that have been idle longer than the
+     * idle time.  A channel is only removed if it has no waiting clients
+     * and no live notifications.
+     */
+    void evictIdleUsers() {
+        long idleSince = now() - idleTime;
+        for (String username : channels.keySet()) {
+            channels.computeIfPresent(username, (key, channel) -> {
+                    if (channel.retireIfIdle(idleSince)) {
+                        evictedUsers.increment();
+                        return null;
+                    }
+
+                    return channel;
+                });
+        }
+    }
+
+    long now() {
+        return clock.getAsLong();
+    }
+
+    /**
+     * Find the channel of a user.
+     *
+     * @return the channel of the user, or null if the user has no channel
+     */
+    private NotificationChannel channel(String username) {
+        long sweepTime = nextSweep.get();
+        long now = now();
+        if (now >= sweepTime && nextSweep.compareAndSet(sweepTime, now + SWEEP_INTERVAL)) {
+            evictIdleUsers();
+        }
+
+        return channels.get(username);
+    }
+
+    /**
+     * Find the channel of a user, or make a new channel if the store
+     * isn't full.  Concurrent calls for new users may take the store
+     * slightly past the cap.
+     *
+     * @return the channel of the user, or null if the user has no channel and the store is full
+     */
+    private NotificationChannel channelOrNewChannel(String username) {
+        NotificationChannel channel = channel(username);
+        if (channel != null || channels.size() >= maxChannels) {
+            return channel;
+        }
+
+        return channels.computeIfAbsent(username, key -> new NotificationChannel(this));
+    }
+
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2019 Steinar Bang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package no.priv.bang.ukelonn.backend;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import no.priv.bang.ukelonn.UkelonnException;
+
+/**
+ * Holds the SQL statements kept as resources in the backend bundle.
+ *
+ * All statements are read and parsed once, when the registry is
+ * created, so that the statement text handed to the JDBC driver is
+ * the same on every call, and can be reused by the driver's statement
+ * cache and the database's plan cache.  The number of bind parameters
+ * of each statement is checked against the number of parameters the
+ * callers set, so that an edited statement fails when the registry is
+ * created rather than on the first call.
+ *
+ * @author Steinar Bang
+ *
+ */
+public class SqlStatementRegistry {
+
+    public static final String JOBS_LAST_N = "/sql/query/jobs_last_n.sql";
+    public static final String PAYMENTS_LAST_N = "/sql/query/payments_last_n.sql";
+    public static final String TRANSACTIONS_ALL = "/sql/query/transactions_all.sql";
+    static final Map<String, Integer> TEMPLATES = templateParameterCounts();
+
+    private final Map<String, SqlTemplate> templates;
+    private final Map<String, String> templateNamesBySql;
+
+    public SqlStatementRegistry() {
+        this(TEMPLATES);
+    }
+
+    SqlStatementRegistry(Map<String, Integer> templateParameterCounts) {
+        Map<String, SqlTemplate> loadedTemplates = new HashMap<>();
+        Map<String, String> namesBySql = new HashMap<>();
+        for (Map.Entry<String, Integer> templateParameterCount : templateParameterCounts.entrySet()) {
+            String templateName = templateParameterCount.getKey();
+            SqlTemplate template = new SqlTemplate(templateName, loadResourceAsString(templateName));
+            if (template.getParameterCount() != templateParameterCount.getValue()) {
+                throw new UkelonnException(String.format("SQL template \"%s\" has %d bind parameters, expected %d", templateName, template.getParameterCount(), templateParameterCount.getValue()));
+            }
+
+            loadedTemplates.put(templateName, template);
+            namesBySql.put(template.getSql(), templateName);
+        }
+
+        templates = Collections.unmodifiableMap(loadedTemplates);
+        templateNamesBySql = Collections.unmodifiableMap(namesBySql);
+    }
+
+    public SqlTemplate get(String templateName) {
+        SqlTemplate template = templates.get(templateName);
+        if (template == null) {
+            throw new UkelonnException(String.format("No SQL template \"%s\" in the registry", templateName));
+        }
+
+        return template;
+    }
+
+    public String getSql(String templateName) {
+        return get(templateName).getSql();
+    }
+
+    /**
+     * Find the name of the template an SQL statement was made from.
+     *
+     * @param sql the statement text handed to the JDBC driver
+     * @return the name of the template, or null if the statement isn't from a template
+     */
+    public String findTemplateName(String sql) {
+        return templateNamesBySql.get(sql);
+    }
+
+    private static Map<String, Integer> templateParameterCounts() {
+        Map<String, Integer> parameterCounts = new LinkedHashMap<>();
+        parameterCounts.put(JOBS_LAST_N, 3); // account id, before transaction id, limit
+        parameterCounts.put(PAYMENTS_LAST_N, 3); // account id, before transaction id, limit
+        parameterCounts.put(TRANSACTIONS_ALL, 1); // account id
+        return Collections.unmodifiableMap(parameterCounts);
+    }
+
+    static String loadResourceAsString(String resourceName) {
+        try(InputStream resourceStream = SqlStatementRegistry.class.getResourceAsStream(resourceName)) {
+            if (resourceStream == null) {
+                throw new UkelonnException(String.format("SQL template \"%s\" not found on the classpath", resourceName));
+            }
+
+            ByteArrayOutputStream resource = new ByteArrayOutputStream();
+            byte[] buffer = new byte[1024];
+            int length;
+            while ((length = resourceStream.read(buffer)) != -1) {
+                resource.write(buffer, 0, length);
+            }
+
+            return resource.toString("UTF-8");
+        } catch (UkelonnException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new UkelonnException(String.format("Error reading SQL template \"%s\" from the classpath", resourceName), e);
+        }
+    }
+
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2019 Steinar Bang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package no.priv.bang.ukelonn.backend;
+
+/**
+ * An SQL statement read from the classpath, with the number of
+ * JDBC bind parameters ("?") found in the statement.
+ *
+ * @author Steinar Bang
+ *
+ */
+public class SqlTemplate {
+
+    private final String name;
+    private final String sql;
+    private final int parameterCount;
+
+    public SqlTemplate(String name, String sql) {
+        this.name = name;
+        this.sql = sql;
+        this.parameterCount = countParameters(sql);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getSql() {
+        return sql;
+    }
+
+    public int getParameterCount() {
+        return parameterCount;
+    }
+
+    /**
+     * Count the bind parameters of an SQL statement, i.e. the question
+     * marks that aren't inside quoted strings or identifiers.
+     *
+     * @param sql the statement to count parameters in
+     * @return the number of bind parameters
+     */
+    static int countParameters(String sql) {
+        int count = 0;
+        char quote = 0;
+        for (char c : sql.toCharArray()) {
+            if (quote != 0) {
+                if (c == quote) {
+                    quote = 0;
+                }
+            } else if (c == '\'' || c == '"') {
+                quote = c;
+            } else if (c == '?') {
+                ++count;
+            }
+        }
+
+        return count;
+    }
+
+    @Override
+    public String toString() {
+        return "SqlTemplate [name=" + name + ", parameterCount=" + parameterCount + "]";
+    }
+
+}
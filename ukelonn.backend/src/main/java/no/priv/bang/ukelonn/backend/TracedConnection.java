@@ -0,0 +1,92 @@
+/*
+ * Copyright 2019 Steinar Bang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package no.priv.bang.ukelonn.backend;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.Statement;
+
+import no.priv.bang.ukelonn.trace.RequestTrace;
+
+/**
+ * A {@link Connection} in front of another connection, that adds the
+ * time of every statement executed on the connection to a
+ * {@link RequestTrace}, as a "db" phase.  The description of the
+ * phase is the name of the SQL template of the statement, or the SQL
+ * of the statement if it isn't made from a template.
+ *
+ * @author Steinar Bang
+ *
+ */
+class TracedConnection {
+
+    static final String PHASE = "db";
+
+    private TracedConnection() {}
+
+    /**
+     * Wrap a connection so that the statements made from it are timed.
+     *
+     * @param connection the connection to wrap
+     * @param trace the trace to add the statement times to
+     * @param sqlStatements the SQL templates to find the template names of the statements in
+     * @return a proxy for the connection
+     */
+    static Connection wrap(Connection connection, RequestTrace trace, SqlStatementRegistry sqlStatements) {
+        return (Connection) Proxy.newProxyInstance(TracedConnection.class.getClassLoader(), new Class<?>[] { Connection.class }, (proxy, method, args) -> {
+                Object result = invoke(connection, method, args);
+                if (result instanceof Statement && Statement.class.isAssignableFrom(method.getReturnType())) {
+                    String sql = args != null && args.length > 0 && args[0] instanceof String ? (String) args[0] : null;
+                    return wrapStatement((Statement) result, method.getReturnType(), sql, trace, sqlStatements);
+                }
+
+                return result;
+            });
+    }
+
+    private static Object wrapStatement(Statement statement, Class<?> statementInterface, String sql, RequestTrace trace, SqlStatementRegistry sqlStatements) {
+        return Proxy.newProxyInstance(TracedConnection.class.getClassLoader(), new Class<?>[] { statementInterface }, (proxy, method, args) -> {
+                if (!method.getName().startsWith("execute")) {
+                    return invoke(statement, method, args);
+                }
+
+                // Plain statements get the SQL as an argument to execute
+                String executedSql = args != null && args.length > 0 && args[0] instanceof String ? (String) args[0] : sql;
+                long start = System.nanoTime();
+                try {
+                    return invoke(statement, method, args);
+                } finally {
+                    trace.addPhase(PHASE, describe(executedSql, sqlStatements), System.nanoTime() - start);
+                }
+            });
+    }
+
+    private static String describe(String sql, SqlStatementRegistry sqlStatements) {
+        String templateName = sql != null ? sqlStatements.findTemplateName(sql) : null;
+        return templateName != null ? templateName : sql;
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable { // NOSONAR The exceptions of the wrapped object are passed on unchanged
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2019 Steinar Bang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package no.priv.bang.ukelonn.backend;
+
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import no.priv.bang.ukelonn.beans.TransactionType;
+
+/**
+ * Holds a list of {@link TransactionType}s read from the database,
+ * until the list is invalidated by a change to the transaction types.
+ *
+ * A list loaded while an invalidation happens is returned to the
+ * caller that loaded it, but is not kept in the cache.  Failed loads
+ * are never cached.
+ *
+ * @author Steinar Bang
+ *
+ */
+public class TransactionTypeCache {
+
+    private final AtomicReference<Entry> current = new AtomicReference<>(new Entry(null));
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public List<TransactionType> get(Loader loader) throws SQLException {
+        Entry entry = current.get();
+        if (entry.transactionTypes != null) {
+            hits.incrementAndGet();
+            return entry.transactionTypes;
+        }
+
+        misses.incrementAndGet();
+        List<TransactionType> transactionTypes = Collections.unmodifiableList(loader.load());
+        current.compareAndSet(entry, new Entry(transactionTypes));
+        return transactionTypes;
+    }
+
+    public void invalidate() {
+        current.set(new Entry(null));
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    @FunctionalInterface
+    public interface Loader {
+        List<TransactionType> load() throws SQLException;
+    }
+
+    private static class Entry {
+        final List<TransactionType> transactionTypes;
+
+        Entry(List<TransactionType> transactionTypes) {
+            this.transactionTypes = transactionTypes;
+        }
+    }
+
+}
@@ -17,31 +17,43 @@ package no.priv.bang.ukelonn.backend;
 
 import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
 import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.component.annotations.ReferencePolicyOption;
 import org.osgi.service.log.LogService;
 
-import java.io.ByteArrayOutputStream;
-import java.io.InputStream;
+import java.math.BigDecimal;
 import java.sql.Connection;
+import java.sql.DatabaseMetaData;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDate;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
 import java.util.Iterator;
 import java.util.List;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
 import javax.sql.DataSource;
 
 import no.priv.bang.osgiservice.users.UserManagementService;
+import no.priv.bang.ukelonn.UkelonnBadRequestException;
 import no.priv.bang.ukelonn.UkelonnException;
 import no.priv.bang.ukelonn.UkelonnService;
 import no.priv.bang.ukelonn.beans.Account;
+import no.priv.bang.ukelonn.beans.DataSourceStatistics;
 import no.priv.bang.ukelonn.beans.Notification;
+import no.priv.bang.ukelonn.beans.NotificationQueueStatistics;
 import no.priv.bang.ukelonn.beans.PasswordsWithUser;
 import no.priv.bang.ukelonn.beans.PerformedTransaction;
 import no.priv.bang.ukelonn.beans.SumYear;
@@ -50,34 +62,100 @@ import no.priv.bang.ukelonn.beans.Transaction;
 import no.priv.bang.ukelonn.beans.TransactionType;
 import no.priv.bang.ukelonn.beans.UpdatedTransaction;
 import no.priv.bang.ukelonn.beans.User;
+import no.priv.bang.ukelonn.trace.RequestTrace;
+import no.priv.bang.ukelonn.trace.TracingLogService;
 
 /**
  * The OSGi component that provides the business logic of the ukelonn
  * webapp.
  *
+ * The component is also registered under its own class, for the
+ * {@link InstrumentedUkelonnService}, that gives the statistics and
+ * the cache control of this class to the administrators as the
+ * {@link no.priv.bang.ukelonn.UkelonnAdminService}.
+ *
  * @author Steinar Bang
  *
  */
-@Component(service=UkelonnService.class, immediate=true)
+@Component(service={UkelonnService.class, UkelonnServiceProvider.class}, immediate=true)
 public class UkelonnServiceProvider extends UkelonnServiceBase {
     private DataSource datasource;
-    private UserManagementService useradmin;
+    private UserProfileCache usercache;
     private LogService logservice;
-    private ConcurrentHashMap<String, ConcurrentLinkedQueue<Notification>> notificationQueues = new ConcurrentHashMap<>();
+    private SqlStatementRegistry sqlStatements;
+    private final TransactionTypeCache jobtypesCache = new TransactionTypeCache();
+    private final TransactionTypeCache paymenttypesCache = new TransactionTypeCache();
+    private volatile Boolean updateReturningSupported;
+    private ExecutorService databaseExecutor;
+    private final NotificationStore notifications = new NotificationStore();
+    private volatile AccountLedger ledger;
     static final String LAST_NAME = "last_name";
     static final String FIRST_NAME = "first_name";
     static final String USERNAME = "username";
     static final int NUMBER_OF_TRANSACTIONS_TO_DISPLAY = 10;
+    static final int MAXIMUM_NUMBER_OF_TRANSACTIONS_IN_PAGE = 100;
+    static final int EXPORT_FETCH_SIZE = 500;
+    static final int DATABASE_EXECUTOR_THREADS = 8;
+    static final int DATABASE_EXECUTOR_QUEUE_SIZE = 200;
+    static final String VIRTUAL_THREADS = "virtualThreads";
+    static final String ACCOUNT_LEDGER = "accountLedger";
+    static final int ACCOUNT_LEDGER_PARTITIONS = 4;
+    static final String EARNINGS_AGGREGATES_QUERY = "select e.aggregate_amount, e.period_start from earnings_aggregates e join accounts a on a.account_id=e.account_id where a.username=? and e.aggregate_period=? and e.job_count>0 order by e.period_start";
     static final String USER_ID = "user_id";
+    static final double ZERO_BALANCE_TOLERANCE = 0.005; // Half an øre, balances are sums of doubles
 
-    @Activate
     public void activate() {
-        // Nothing to do here
+        activate(Collections.emptyMap());
+    }
+
+    /**
+     * Activate the component.  Setting the configuration property
+     * "virtualThreads" to true runs the database calls on virtual
+     * threads, if the JVM has them.  Setting "accountLedger" to true
+     * serves the accounts and their balances from memory.  Setting
+     * "flightRecorderEvents" to true emits JDK Flight Recorder events
+     * for notification deliveries, see {@link FlightRecorderEvents}.
+     * The events of the service calls are emitted by the
+     * {@link InstrumentedUkelonnService}.
+     *
+     * @param config the OSGi configuration of the component
+     */
+    @Activate
+    public void activate(Map<String, Object> config) {
+        sqlStatements = new SqlStatementRegistry();
+        notifications.setFlightRecorderEvents(FlightRecorderEvents.create(config.get(FlightRecorderEvents.FLIGHT_RECORDER_EVENTS)));
+        databaseExecutor = createDatabaseExecutor(Boolean.parseBoolean(String.valueOf(config.get(VIRTUAL_THREADS))));
+        ledger = Boolean.parseBoolean(String.valueOf(config.get(ACCOUNT_LEDGER))) ? loadAccountLedger() : null;
+    }
+
+    /**
+     * Load the account balances into memory.  If loading fails, the
+     * error is logged and accounts are read from the database.
+     *
+     * @return the loaded ledger, or null if loading failed
+     */
+    AccountLedger loadAccountLedger() {
+        try {
+            return AccountLedger.load(datasource, databaseExecutor, ACCOUNT_LEDGER_PARTITIONS);
+        } catch (UkelonnException e) {
+            logError("Failed to load the account ledger, reading accounts from the database", e);
+            return null;
+        }
+    }
+
+    @Deactivate
+    public void deactivate() {
+        if (databaseExecutor != null) {
+            databaseExecutor.shutdown();
+        }
     }
 
-    @Reference(target = "(osgi.jndi.service.name=jdbc/ukelonn)")
+    // Greedy, to be restarted with the InstrumentedDataSource if it shows up after this component has started
+    @Reference(target = "(osgi.jndi.service.name=jdbc/ukelonn)", policyOption=ReferencePolicyOption.GREEDY)
     public void setDataSource(DataSource datasource) {
         this.datasource = datasource;
+        this.updateReturningSupported = null;
+        invalidateTransactionTypeCaches();
     }
 
     @Override
@@ -87,12 +165,12 @@ public class UkelonnServiceProvider extends UkelonnServiceBase {
 
     @Reference
     public void setUserAdmin(UserManagementService useradmin) {
-        this.useradmin = useradmin;
+        this.usercache = new UserProfileCache(useradmin);
     }
 
     @Reference
     public void setLogservice(LogService logservice) {
-        this.logservice = logservice;
+        this.logservice = TracingLogService.wrap(logservice);
     }
 
     @Override
@@ -102,14 +180,27 @@ public class UkelonnServiceProvider extends UkelonnServiceBase {
 
     @Override
     public List<Account> getAccounts() {
+        AccountLedger activeLedger = ledger;
+        List<Account> accountsWithoutNames = activeLedger != null ? activeLedger.getAccounts() : loadAccountsWithoutNames();
+
+        // Look up the names of the account owners after the connection has been released
+        Map<String, no.priv.bang.osgiservice.users.User> users = usercache.getUsers(accountsWithoutNames.stream().map(Account::getUsername).collect(Collectors.toList()));
         List<Account> accounts = new ArrayList<>();
-        try(Connection connection = datasource.getConnection()) {
-            try(PreparedStatement statement = connection.prepareStatement("select * from accounts_view")) {
+        for (Account account : accountsWithoutNames) {
+            accounts.add(withOwnerNames(account, users.get(account.getUsername())));
+        }
+
+        return accounts;
+    }
+
+    private List<Account> loadAccountsWithoutNames() {
+        List<Account> accountsWithoutNames = new ArrayList<>();
+        try(Connection connection = getConnection()) {
+            try(PreparedStatement statement = connection.prepareStatement("select account_id, username, balance from accounts")) {
                 try(ResultSet results = statement.executeQuery()) {
                     if (results != null) {
                         while(results.next()) {
-                            Account newaccount = mapAccount(results);
-                            accounts.add(newaccount);
+                            accountsWithoutNames.add(new Account(results.getInt("account_id"), results.getString(USERNAME), null, null, results.getDouble("balance")));
                         }
                     }
                 }
@@ -119,18 +210,25 @@ public class UkelonnServiceProvider extends UkelonnServiceBase {
             logError("Error when getting all accounts from the database", e);
         }
 
-        return accounts;
+        return accountsWithoutNames;
     }
 
     @Override
     public Account getAccount(String username) {
-        try(Connection connection = datasource.getConnection()) {
-            try(PreparedStatement statement = connection.prepareStatement("select * from accounts_view where username=?")) {
+        AccountLedger activeLedger = ledger;
+        Account accountInLedger = activeLedger != null ? activeLedger.getAccount(username) : null;
+        if (accountInLedger != null) {
+            return withOwnerNames(accountInLedger);
+        }
+
+        try(Connection connection = getConnection()) {
+            try(PreparedStatement statement = connection.prepareStatement("select account_id, username, balance from accounts where username=?")) {
                 statement.setString(1, username);
                 try(ResultSet resultset = statement.executeQuery()) {
                     if (resultset.next())
                     {
-                        return mapAccount(resultset);
+                        Account account = mapAccount(resultset);
+                        return account;
                     }
 
                     throw new UkelonnException(String.format("Got an empty ResultSet while fetching account from the database for user \\\"%s\\\"", username));
@@ -142,71 +240,204 @@ public class UkelonnServiceProvider extends UkelonnServiceBase {
         }
     }
 
+    @Override
+    public Account getAccountById(int accountId) {
+        Account accountWithoutNames = null;
+        try(Connection connection = getConnection()) {
+            try(PreparedStatement statement = connection.prepareStatement("select account_id, username, balance from accounts where account_id=?")) {
+                statement.setInt(1, accountId);
+                try(ResultSet results = statement.executeQuery()) {
+                    if (results.next()) {
+                        accountWithoutNames = new Account(results.getInt("account_id"), results.getString(USERNAME), null, null, results.getDouble("balance"));
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            throw new UkelonnException(String.format("Caught SQLException while fetching account %d from the database", accountId), e);
+        }
+
+        if (accountWithoutNames == null) {
+            return null;
+        }
+
+        // Give the same balance as getAccount(username)
+        AccountLedger activeLedger = ledger;
+        Account accountInLedger = activeLedger != null ? activeLedger.getAccount(accountWithoutNames.getUsername()) : null;
+        return withOwnerNames(accountInLedger != null ? accountInLedger : accountWithoutNames);
+    }
+
     @Override
     public Account registerPerformedJob(PerformedTransaction job) {
         int accountId = job.getAccount().getAccountId();
         int jobtypeId = job.getTransactionTypeId();
         double jobamount = job.getTransactionAmount();
         Date timeofjob = job.getTransactionDate();
-        try(Connection connection = datasource.getConnection()) {
-            try(PreparedStatement statement = connection.prepareStatement("insert into transactions (account_id, transaction_type_id,transaction_amount, transaction_time) values (?, ?, ?, ?)")) {
-                statement.setInt(1, accountId);
-                statement.setInt(2, jobtypeId);
-                statement.setDouble(3, jobamount);
-                statement.setTimestamp(4, new java.sql.Timestamp(timeofjob.getTime()));
-                statement.executeUpdate();
+        Account updatedAccount = null;
+        try(UnitOfWork unitOfWork = beginUnitOfWork()) {
+            try(Connection connection = getConnection()) {
+                connection.setAutoCommit(false);
+                try {
+                    try(PreparedStatement statement = connection.prepareStatement("insert into transactions (account_id, transaction_type_id,transaction_amount, transaction_time) values (?, ?, ?, ?)")) {
+                        statement.setInt(1, accountId);
+                        statement.setInt(2, jobtypeId);
+                        statement.setDouble(3, jobamount);
+                        statement.setTimestamp(4, new java.sql.Timestamp(timeofjob.getTime()));
+                        statement.executeUpdate();
+                    }
+
+                    updatedAccount = addToAccountBalance(connection, accountId, jobamount);
+                    new EarningsAggregates(accountId).addJob(timeofjob, jobamount).save(connection);
+                    if (isAtOrBeforePaidOutTime(connection, accountId, timeofjob)) {
+                        updatePaidOutTime(connection, accountId, timeofjob);
+                    }
+
+                    connection.commit();
+                    addToLedgerAfterCommit(accountId, jobamount);
+                } catch (SQLException e) {
+                    connection.rollback();
+                    throw e;
+                } finally {
+                    connection.setAutoCommit(true);
+                }
+            } catch (SQLException exception) {
+                String message = String.format("Failed to register performed job in the database, account: %d  jobtype: %d  amount: %f", accountId, jobtypeId, jobamount);
+                logError(message, exception);
+                return unitOfWork.complete(getAccount(job.getAccount().getUsername()));
             }
-        } catch (SQLException exception) {
-            String message = String.format("Failed to register performed job in the database, account: %d  jobtype: %d  amount: %f", accountId, jobtypeId, jobamount);
-            logError(message, exception);
-        }
 
-        return getAccount(job.getAccount().getUsername());
+            return unitOfWork.complete(withOwnerNames(updatedAccount));
+        }
     }
 
     @Override
-    public List<TransactionType> getJobTypes() {
-        List<TransactionType> jobtypes = new ArrayList<>();
-        try(Connection connection = datasource.getConnection()) {
-            try(PreparedStatement statement = connection.prepareStatement("select * from transaction_types where transaction_is_work=true")) {
-                try(ResultSet resultSet = statement.executeQuery()) {
-                    if (resultSet != null) {
-                        while (resultSet.next()) {
-                            TransactionType transactiontype = UkelonnServiceProvider.mapTransactionType(resultSet);
-                            jobtypes.add(transactiontype);
+    public Account registerPerformedJobs(List<PerformedTransaction> jobs) {
+        if (jobs == null || jobs.isEmpty()) {
+            throw new UkelonnBadRequestException("No jobs to register");
+        }
+
+        if (jobs.get(0) == null || jobs.get(0).getAccount() == null) {
+            throw new UkelonnBadRequestException("The jobs to register have no account");
+        }
+
+        Account account = jobs.get(0).getAccount();
+        int accountId = account.getAccountId();
+        if (jobs.stream().anyMatch(job -> job == null || job.getAccount() == null || job.getAccount().getAccountId() != accountId)) {
+            throw new UkelonnBadRequestException(String.format("All jobs registered together must be on the same account, expected account: %d", accountId));
+        }
+
+        Account updatedAccount = null;
+        try(UnitOfWork unitOfWork = beginUnitOfWork()) {
+            try(Connection connection = getConnection()) {
+                connection.setAutoCommit(false);
+                try {
+                    double sumOfJobAmounts = 0.0;
+                    Date earliestJobTime = null;
+                    EarningsAggregates aggregates = new EarningsAggregates(accountId);
+                    try(PreparedStatement statement = connection.prepareStatement("insert into transactions (account_id, transaction_type_id,transaction_amount, transaction_time) values (?, ?, ?, ?)")) {
+                        for (PerformedTransaction job : jobs) {
+                            Date timeofjob = job.getTransactionDate();
+                            statement.setInt(1, accountId);
+                            statement.setInt(2, job.getTransactionTypeId());
+                            double jobamount = job.getTransactionAmount();
+                            statement.setDouble(3, jobamount);
+                            statement.setTimestamp(4, new java.sql.Timestamp(timeofjob.getTime()));
+                            statement.addBatch();
+                            sumOfJobAmounts += jobamount;
+                            aggregates.addJob(timeofjob, jobamount);
+                            if (earliestJobTime == null || timeofjob.before(earliestJobTime)) {
+                                earliestJobTime = timeofjob;
+                            }
                         }
+
+                        statement.executeBatch();
                     }
+
+                    updatedAccount = addToAccountBalance(connection, accountId, sumOfJobAmounts);
+                    aggregates.save(connection);
+                    if (isAtOrBeforePaidOutTime(connection, accountId, earliestJobTime)) {
+                        updatePaidOutTime(connection, accountId, earliestJobTime);
+                    }
+
+                    connection.commit();
+                    addToLedgerAfterCommit(accountId, sumOfJobAmounts);
+                } catch (SQLException e) {
+                    connection.rollback();
+                    throw e;
+                } finally {
+                    connection.setAutoCommit(true);
                 }
+            } catch (SQLException exception) {
+                String message = String.format("Failed to register %d performed jobs in the database, account: %d", jobs.size(), accountId);
+                logError(message, exception);
+                return unitOfWork.complete(getAccountById(accountId));
             }
+
+            return unitOfWork.complete(withOwnerNames(updatedAccount));
+        }
+    }
+
+    @Override
+    public List<TransactionType> getJobTypes() {
+        try {
+            return jobtypesCache.get(() -> loadTransactionTypes("select * from transaction_types where transaction_is_work=true"));
         } catch (SQLException e) {
             logError("Error getting job types from the database", e);
         }
 
-        return jobtypes;
+        return new ArrayList<>();
     }
 
     @Override
     public List<Transaction> getJobs(int accountId) {
-        return getTransactionsFromAccount(accountId, "/sql/query/jobs_last_n.sql", "job");
+        return getJobs(accountId, Integer.MAX_VALUE, NUMBER_OF_TRANSACTIONS_TO_DISPLAY);
+    }
+
+    @Override
+    public List<Transaction> getJobs(int accountId, int beforeTransactionId, int limit) {
+        return getTransactionsFromAccount(accountId, beforeTransactionId, limit, SqlStatementRegistry.JOBS_LAST_N, "job");
     }
 
     @Override
     public List<Transaction> getPayments(int accountId) {
-        List<Transaction> payments = getTransactionsFromAccount(accountId, "/sql/query/payments_last_n.sql", "payments");
+        return getPayments(accountId, Integer.MAX_VALUE, NUMBER_OF_TRANSACTIONS_TO_DISPLAY);
+    }
+
+    @Override
+    public List<Transaction> getPayments(int accountId, int beforeTransactionId, int limit) {
+        List<Transaction> payments = getTransactionsFromAccount(accountId, beforeTransactionId, limit, SqlStatementRegistry.PAYMENTS_LAST_N, "payments");
         UkelonnServiceProvider.makePaymentAmountsPositive(payments); // Payments are negative numbers in the DB, presented as positive numbers in the GUI
         return payments;
     }
 
+    /**
+     * Get a page of transactions of an account, newest first by transaction id.
+     * The page is found by an index lookup on the transaction id, so the cost
+     * of a page doesn't depend on how far back in the history it is.
+     *
+     * @param accountId the account to get transactions for
+     * @param beforeTransactionId only transactions with an id lower than this are returned
+     * @param limit the maximum number of transactions to return
+     * @param sqlTemplate the SQL query to use
+     * @param transactionType the transaction type used in the log message on failure
+     * @return a list of transactions, may be empty but never null
+     */
     List<Transaction> getTransactionsFromAccount(int accountId,
+                                                 int beforeTransactionId,
+                                                 int limit,
                                                  String sqlTemplate,
                                                  String transactionType)
     {
+        if (limit < 1 || limit > MAXIMUM_NUMBER_OF_TRANSACTIONS_IN_PAGE) {
+            throw new UkelonnBadRequestException(String.format("Number of %ss to get must be between 1 and %d, was %d", transactionType, MAXIMUM_NUMBER_OF_TRANSACTIONS_IN_PAGE, limit));
+        }
+
         List<Transaction> transactions = new ArrayList<>();
-        String sql = String.format(getResourceAsString(sqlTemplate), UkelonnServiceProvider.NUMBER_OF_TRANSACTIONS_TO_DISPLAY);
-        try(Connection connection = datasource.getConnection()) {
+        String sql = sqlStatements.getSql(sqlTemplate);
+        try(Connection connection = getConnection()) {
             try(PreparedStatement statement = connection.prepareStatement(sql)) {
                 statement.setInt(1, accountId);
-                trySettingPreparedStatementParameterThatMayNotBePresent(statement, 2, accountId);
+                statement.setInt(2, beforeTransactionId);
+                statement.setInt(3, limit);
                 try(ResultSet resultSet = statement.executeQuery()) {
                     while (resultSet.next()) {
                         transactions.add(UkelonnServiceProvider.mapTransaction(resultSet));
@@ -222,20 +453,76 @@ public class UkelonnServiceProvider extends UkelonnServiceBase {
 
     @Override
     public List<Transaction> deleteJobsFromAccount(int accountId, List<Integer> idsOfJobsToDelete) {
-        if (!idsOfJobsToDelete.isEmpty()) {
-            String deleteQuery = "delete from transactions where transaction_id in (select transaction_id from transactions inner join transaction_types on transactions.transaction_type_id=transaction_types.transaction_type_id where transaction_id in (" + joinIds(idsOfJobsToDelete) + ") and transaction_types.transaction_is_work=? and account_id=?)";
-            try(Connection connection = datasource.getConnection()) {
-                try (PreparedStatement statement = connection.prepareStatement(deleteQuery)) { // NOSONAR This string manipulation is OK and the only way to do it
-                    addParametersToDeleteJobsStatement(accountId, statement);
-                    statement.executeUpdate();
+        try(UnitOfWork unitOfWork = beginUnitOfWork()) {
+            if (!idsOfJobsToDelete.isEmpty()) {
+                String selectJobsToDeleteQuery = "select transaction_time, transaction_amount from transactions inner join transaction_types on transactions.transaction_type_id=transaction_types.transaction_type_id where transaction_id in (" + joinIds(idsOfJobsToDelete) + ") and transaction_types.transaction_is_work=? and account_id=?";
+                String deleteQuery = "delete from transactions where transaction_id in (select transaction_id from transactions inner join transaction_types on transactions.transaction_type_id=transaction_types.transaction_type_id where transaction_id in (" + joinIds(idsOfJobsToDelete) + ") and transaction_types.transaction_is_work=? and account_id=?)";
+                String subtractFromBalanceQuery = "update accounts set balance=balance-(select coalesce(sum(transactions.transaction_amount), 0.0) from transactions inner join transaction_types on transactions.transaction_type_id=transaction_types.transaction_type_id where transaction_id in (" + joinIds(idsOfJobsToDelete) + ") and transaction_types.transaction_is_work=? and transactions.account_id=?) where account_id=?";
+                try(Connection connection = getConnection()) {
+                    connection.setAutoCommit(false);
+                    try {
+                        EarningsAggregates aggregates = new EarningsAggregates(accountId);
+                        try (PreparedStatement statement = connection.prepareStatement(selectJobsToDeleteQuery)) { // NOSONAR This string manipulation is OK and the only way to do it
+                            addParametersToDeleteJobsStatement(accountId, statement);
+                            try (ResultSet results = statement.executeQuery()) {
+                                while (results.next()) {
+                                    aggregates.removeJob(results.getTimestamp(1), results.getDouble(2));
+                                }
+                            }
+                        }
+
+                        try (PreparedStatement statement = connection.prepareStatement(subtractFromBalanceQuery)) { // NOSONAR This string manipulation is OK and the only way to do it
+                            addParametersToDeleteJobsStatement(accountId, statement);
+                            statement.setInt(3, accountId);
+                            statement.executeUpdate();
+                        }
+
+                        aggregates.save(connection);
+
+                        try (PreparedStatement statement = connection.prepareStatement(deleteQuery)) { // NOSONAR This string manipulation is OK and the only way to do it
+                            addParametersToDeleteJobsStatement(accountId, statement);
+                            statement.executeUpdate();
+                        }
+
+                        updatePaidOutTime(connection, accountId, aggregates.getEarliestChangedTime());
+                        connection.commit();
+                        addToLedgerAfterCommit(accountId, aggregates.getAmountChange());
+                    } catch (SQLException e) {
+                        connection.rollback();
+                        throw e;
+                    } finally {
+                        connection.setAutoCommit(true);
+                    }
+                } catch (SQLException e) {
+                    String message = String.format("Failed to delete jobs from accountId: %d", accountId);
+                    logError(message, e);
+                }
+            }
+
+            return unitOfWork.complete(getJobs(accountId));
+        }
+    }
+
+    /**
+     * Find the current time and amount of a job that is about to be changed,
+     * and remove the job from the earnings aggregates of its account.
+     *
+     * @param connection the connection used for the transaction change
+     * @param jobId the transaction id of the job
+     * @return aggregates of the account of the job, with the job removed
+     * @throws SQLException if the job can't be found
+     */
+    EarningsAggregates findJobToReplaceInAggregates(Connection connection, int jobId) throws SQLException {
+        try(PreparedStatement statement = connection.prepareStatement("select account_id, transaction_time, transaction_amount from transactions where transaction_id=?")) {
+            statement.setInt(1, jobId);
+            try(ResultSet results = statement.executeQuery()) {
+                if (results.next()) {
+                    return new EarningsAggregates(results.getInt(1)).removeJob(results.getTimestamp(2), results.getDouble(3));
                 }
-            } catch (SQLException e) {
-                String message = String.format("Failed to delete jobs from accountId: %d", accountId);
-                logError(message, e);
             }
         }
 
-        return getJobs(accountId);
+        throw new SQLException(String.format("Found no job with id %d to update", jobId));
     }
 
     void addParametersToDeleteJobsStatement(int accountId, PreparedStatement statement) {
@@ -251,41 +538,121 @@ public class UkelonnServiceProvider extends UkelonnServiceBase {
 
     @Override
     public List<Transaction> updateJob(UpdatedTransaction editedJob) {
+        String adjustBalanceSql = "update accounts set balance=balance+?-(select transaction_amount from transactions where transaction_id=?) where account_id=(select account_id from transactions where transaction_id=?)";
         String sql = "update transactions set transaction_type_id=?, transaction_time=?, transaction_amount=? where transaction_id=?";
-        try(Connection connection = datasource.getConnection()) {
-            try(PreparedStatement statement = connection.prepareStatement(sql)) {
-                statement.setInt(1, editedJob.getTransactionTypeId());
-                statement.setTimestamp(2, new java.sql.Timestamp(editedJob.getTransactionTime().getTime()));
-                statement.setDouble(3, editedJob.getTransactionAmount());
-                statement.setInt(4, editedJob.getId());
-                statement.executeUpdate();
+        double amount = editedJob.getTransactionAmount();
+        try(UnitOfWork unitOfWork = beginUnitOfWork()) {
+            try(Connection connection = getConnection()) {
+                connection.setAutoCommit(false);
+                try {
+                    EarningsAggregates aggregates = findJobToReplaceInAggregates(connection, editedJob.getId());
+                    try(PreparedStatement statement = connection.prepareStatement(adjustBalanceSql)) {
+                        statement.setDouble(1, amount);
+                        statement.setInt(2, editedJob.getId());
+                        statement.setInt(3, editedJob.getId());
+                        statement.executeUpdate();
+                    }
+
+                    aggregates.addJob(editedJob.getTransactionTime(), amount).save(connection);
+
+                    try(PreparedStatement statement = connection.prepareStatement(sql)) {
+                        statement.setInt(1, editedJob.getTransactionTypeId());
+                        statement.setTimestamp(2, new java.sql.Timestamp(editedJob.getTransactionTime().getTime()));
+                        statement.setDouble(3, amount);
+                        statement.setInt(4, editedJob.getId());
+                        statement.executeUpdate();
+                    }
+
+                    updatePaidOutTime(connection, aggregates.getAccountId(), aggregates.getEarliestChangedTime());
+                    connection.commit();
+                    addToLedgerAfterCommit(aggregates.getAccountId(), aggregates.getAmountChange());
+                } catch (SQLException e) {
+                    connection.rollback();
+                    throw e;
+                } finally {
+                    connection.setAutoCommit(true);
+                }
+            } catch (SQLException e) {
+                throw new UkelonnException(String.format("Failed to update job with id %d", editedJob.getId()) , e);
             }
+
+            return unitOfWork.complete(getJobs(editedJob.getAccountId()));
+        }
+    }
+
+    @Override
+    public List<TransactionType> getPaymenttypes() {
+        try {
+            return paymenttypesCache.get(() -> loadTransactionTypes("select * from transaction_types where transaction_is_wage_payment=true"));
         } catch (SQLException e) {
-            throw new UkelonnException(String.format("Failed to update job with id %d", editedJob.getId()) , e);
+            logError("Error getting payment types from the database", e);
         }
 
-        return getJobs(editedJob.getAccountId());
+        return new ArrayList<>();
     }
 
     @Override
-    public List<TransactionType> getPaymenttypes() {
-        List<TransactionType> paymenttypes = new ArrayList<>();
-        try(Connection connection = datasource.getConnection()) {
-            try(PreparedStatement statement = connection.prepareStatement("select * from transaction_types where transaction_is_wage_payment=true")) {
+    public void exportTransactions(int accountId, Consumer<Transaction> consumer) {
+        String sql = sqlStatements.getSql(SqlStatementRegistry.TRANSACTIONS_ALL);
+        try(Connection connection = getConnection()) {
+            // The PostgreSQL JDBC driver only fetches rows in batches, instead of reading the entire result, outside of autocommit
+            connection.setAutoCommit(false);
+            try {
+                try(PreparedStatement statement = connection.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+                    statement.setFetchSize(EXPORT_FETCH_SIZE);
+                    statement.setInt(1, accountId);
+                    try(ResultSet resultSet = statement.executeQuery()) {
+                        while (resultSet.next()) {
+                            consumer.accept(UkelonnServiceProvider.mapTransaction(resultSet));
+                        }
+                    }
+                }
+
+                connection.commit();
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            String message = String.format("Failed to export transactions of account %d from the database", accountId);
+            logError(message, e);
+            throw new UkelonnException(message, e);
+        }
+    }
+
+    List<TransactionType> loadTransactionTypes(String sql) throws SQLException {
+        List<TransactionType> transactiontypes = new ArrayList<>();
+        try(Connection connection = getConnection()) {
+            try(PreparedStatement statement = connection.prepareStatement(sql)) {
                 try(ResultSet resultSet = statement.executeQuery()) {
                     if (resultSet != null) {
                         while (resultSet.next()) {
                             TransactionType transactiontype = UkelonnServiceProvider.mapTransactionType(resultSet);
-                            paymenttypes.add(transactiontype);
+                            transactiontypes.add(transactiontype);
                         }
                     }
                 }
             }
-        } catch (SQLException e) {
-            logError("Error getting payment types from the database", e);
         }
 
-        return paymenttypes;
+        return transactiontypes;
+    }
+
+    public long getTransactionTypeCacheHits() {
+        return jobtypesCache.getHits() + paymenttypesCache.getHits();
+    }
+
+    public long getTransactionTypeCacheMisses() {
+        return jobtypesCache.getMisses() + paymenttypesCache.getMisses();
+    }
+
+    /**
+     * Called after every change to the transaction_types table.
+     * Both lists are dropped, since a modification may move a
+     * transaction type from one list to the other.
+     */
+    private void invalidateTransactionTypeCaches() {
+        jobtypesCache.invalidate();
+        paymenttypesCache.invalidate();
     }
 
     @Override
@@ -294,13 +661,27 @@ public class UkelonnServiceProvider extends UkelonnServiceBase {
         int transactionTypeId = payment.getTransactionTypeId();
         double amount = 0 - payment.getTransactionAmount();
         Date transactionDate = new Date();
-        try(Connection connection = datasource.getConnection()) {
-            try(PreparedStatement statement = connection.prepareStatement("insert into transactions (account_id,transaction_type_id,transaction_amount, transaction_time) values (?, ?, ?, ?)")) {
-                statement.setInt(1, accountId);
-                statement.setInt(2, transactionTypeId);
-                statement.setDouble(3, amount);
-                statement.setTimestamp(4, new java.sql.Timestamp(transactionDate.getTime()));
-                statement.executeUpdate();
+        Account updatedAccount;
+        try(Connection connection = getConnection()) {
+            connection.setAutoCommit(false);
+            try {
+                try(PreparedStatement statement = connection.prepareStatement("insert into transactions (account_id,transaction_type_id,transaction_amount, transaction_time) values (?, ?, ?, ?)")) {
+                    statement.setInt(1, accountId);
+                    statement.setInt(2, transactionTypeId);
+                    statement.setDouble(3, amount);
+                    statement.setTimestamp(4, new java.sql.Timestamp(transactionDate.getTime()));
+                    statement.executeUpdate();
+                }
+
+                updatedAccount = addToAccountBalance(connection, accountId, amount);
+                setPaidOutTimeIfBalanceIsZero(connection, accountId, transactionDate);
+                connection.commit();
+                addToLedgerAfterCommit(accountId, amount);
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
             }
         } catch (SQLException e) {
             String message = String.format("Failed to register payment  accountId: %d  transactionTypeId: %d  amount: %f", accountId, transactionTypeId, amount);
@@ -308,12 +689,28 @@ public class UkelonnServiceProvider extends UkelonnServiceBase {
             return null;
         }
 
-        return getAccount(payment.getAccount().getUsername());
+        notifyPayment(updatedAccount.getUsername(), payment.getTransactionAmount(), transactionTypeId);
+        return withOwnerNames(updatedAccount);
+    }
+
+    /**
+     * Send a notification about a payment to the owner of the account,
+     * so that a client waiting for notifications gets the change of the
+     * balance right away.
+     */
+    void notifyPayment(String username, double amount, int transactionTypeId) {
+        String paymenttypeName = getPaymenttypes().stream()
+            .filter(paymenttype -> paymenttype.getId() == transactionTypeId)
+            .map(TransactionType::getTransactionTypeName)
+            .findFirst()
+            .orElse("betalt");
+        String message = String.format("%s kroner %s", BigDecimal.valueOf(amount).stripTrailingZeros().toPlainString(), paymenttypeName);
+        notifications.send(username, new Notification("Ukelønn", message));
     }
 
     @Override
     public List<TransactionType> modifyJobtype(TransactionType jobtype) {
-        try(Connection connection = datasource.getConnection()) {
+        try(Connection connection = getConnection()) {
             try(PreparedStatement statement = connection.prepareStatement("update transaction_types set transaction_type_name=?, transaction_amount=?, transaction_is_work=true, transaction_is_wage_payment=false where transaction_type_id=?")) {
                 statement.setString(1, jobtype.getTransactionTypeName());
                 statement.setDouble(2, jobtype.getTransactionAmount());
@@ -326,12 +723,13 @@ public class UkelonnServiceProvider extends UkelonnServiceBase {
             throw new UkelonnException(message, e);
         }
 
+        invalidateTransactionTypeCaches();
         return getJobTypes();
     }
 
     @Override
     public List<TransactionType> createJobtype(TransactionType jobtype) {
-        try(Connection connection = datasource.getConnection()) {
+        try(Connection connection = getConnection()) {
             try(PreparedStatement statement = connection.prepareStatement("insert into transaction_types (transaction_type_name, transaction_amount, transaction_is_work, transaction_is_wage_payment) values (?, ?, true, false)")) {
                 statement.setString(1, jobtype.getTransactionTypeName());
                 statement.setObject(2, jobtype.getTransactionAmount());
@@ -343,12 +741,13 @@ public class UkelonnServiceProvider extends UkelonnServiceBase {
             throw new UkelonnException(message, e);
         }
 
+        invalidateTransactionTypeCaches();
         return getJobTypes();
     }
 
     @Override
     public List<TransactionType> modifyPaymenttype(TransactionType paymenttype) {
-        try(Connection connection = datasource.getConnection()) {
+        try(Connection connection = getConnection()) {
             try(PreparedStatement statement = connection.prepareStatement("update transaction_types set transaction_type_name=?, transaction_amount=?, transaction_is_work=false, transaction_is_wage_payment=true where transaction_type_id=?")) {
                 statement.setString(1, paymenttype.getTransactionTypeName());
                 statement.setDouble(2, paymenttype.getTransactionAmount());
@@ -361,12 +760,13 @@ public class UkelonnServiceProvider extends UkelonnServiceBase {
             throw new UkelonnException(message, e);
         }
 
+        invalidateTransactionTypeCaches();
         return getPaymenttypes();
     }
 
     @Override
     public List<TransactionType> createPaymenttype(TransactionType paymenttype) {
-        try(Connection connection = datasource.getConnection()) {
+        try(Connection connection = getConnection()) {
             try(PreparedStatement statement = connection.prepareStatement("insert into transaction_types (transaction_type_name, transaction_amount, transaction_is_work, transaction_is_wage_payment) values (?, ?, false, true)")) {
                 statement.setString(1, paymenttype.getTransactionTypeName());
                 statement.setObject(2, paymenttype.getTransactionAmount());
@@ -378,38 +778,42 @@ public class UkelonnServiceProvider extends UkelonnServiceBase {
             throw new UkelonnException(message, e);
         }
 
+        invalidateTransactionTypeCaches();
         return getPaymenttypes();
     }
 
     @Override
     public Account addAccount(User user) {
         String username = user.getUsername();
-        try(Connection connection = datasource.getConnection()) {
-            try(PreparedStatement insertAccountSql = connection.prepareStatement("insert into accounts (username) values (?)")) {
-                insertAccountSql.setString(1, username);
-                insertAccountSql.executeUpdate();
-            }
-
-            addDummyPaymentToAccountSoThatAccountWillAppearInAccountsView(username);
+        try(UnitOfWork unitOfWork = beginUnitOfWork()) {
+            try(Connection connection = getConnection()) {
+                try(PreparedStatement insertAccountSql = connection.prepareStatement("insert into accounts (username) values (?)")) {
+                    insertAccountSql.setString(1, username);
+                    insertAccountSql.executeUpdate();
+                }
 
-            return getAccount(user.getUsername());
-        } catch (SQLException e) {
-            String message = "Database exception when account for new user";
-            logservice.log(LogService.LOG_ERROR, message, e);
-            throw new UkelonnException(message, e);
+                Account account = getAccount(user.getUsername());
+                addToLedgerAfterCommit(account);
+                return unitOfWork.complete(account);
+            } catch (SQLException e) {
+                String message = "Database exception when account for new user";
+                logservice.log(LogService.LOG_ERROR, message, e);
+                throw new UkelonnException(message, e);
+            }
         }
     }
 
     @Override
     public List<SumYear> earningsSumOverYear(String username) {
         List<SumYear> statistics = new ArrayList<>();
-        try(Connection connection = datasource.getConnection()) {
-            try(PreparedStatement statement = connection.prepareStatement("select aggregate_amount, aggregate_year from sum_over_year_view where username=?")) {
+        try(Connection connection = getConnection()) {
+            try(PreparedStatement statement = connection.prepareStatement(EARNINGS_AGGREGATES_QUERY)) {
                 statement.setString(1, username);
+                statement.setString(2, EarningsAggregates.Period.YEAR.getColumnValue());
                 try(ResultSet resultSet = statement.executeQuery()) {
                     while (resultSet.next()) {
                         double sum = resultSet.getDouble(1);
-                        int year = resultSet.getInt(2);
+                        int year = resultSet.getDate(2).toLocalDate().getYear();
                         statistics.add(new SumYear(sum, year));
                     }
                 }
@@ -424,14 +828,16 @@ public class UkelonnServiceProvider extends UkelonnServiceBase {
     @Override
     public List<SumYearMonth> earningsSumOverMonth(String username) {
         List<SumYearMonth> statistics = new ArrayList<>();
-        try(Connection connection = datasource.getConnection()) {
-            try(PreparedStatement statement = connection.prepareStatement("select aggregate_amount, aggregate_year, aggregate_month from sum_over_year_and_month_view where username=?")) {
+        try(Connection connection = getConnection()) {
+            try(PreparedStatement statement = connection.prepareStatement(EARNINGS_AGGREGATES_QUERY)) {
                 statement.setString(1, username);
+                statement.setString(2, EarningsAggregates.Period.MONTH.getColumnValue());
                 try(ResultSet resultSet = statement.executeQuery()) {
                     while (resultSet.next()) {
                         double sum = resultSet.getDouble(1);
-                        int year = resultSet.getInt(2);
-                        int month = resultSet.getInt(3);
+                        LocalDate periodStart = resultSet.getDate(2).toLocalDate();
+                        int year = periodStart.getYear();
+                        int month = periodStart.getMonthValue();
                         statistics.add(new SumYearMonth(sum, year, month));
                     }
                 }
@@ -444,24 +850,103 @@ public class UkelonnServiceProvider extends UkelonnServiceBase {
     }
 
     @Override
-    public List<Notification> notificationsTo(String username) {
-        ConcurrentLinkedQueue<Notification> notifications = getNotificationQueueForUser(username);
-        Notification notification = notifications.poll();
-        if (notification == null) {
-            return Collections.emptyList();
+    public CompletableFuture<Account> getAccountAsync(String username) {
+        return supplyAsync(() -> getAccount(username));
+    }
+
+    @Override
+    public CompletableFuture<List<Transaction>> getJobsAsync(int accountId, int beforeTransactionId, int limit) {
+        return supplyAsync(() -> getJobs(accountId, beforeTransactionId, limit));
+    }
+
+    @Override
+    public CompletableFuture<List<Transaction>> getPaymentsAsync(int accountId, int beforeTransactionId, int limit) {
+        return supplyAsync(() -> getPayments(accountId, beforeTransactionId, limit));
+    }
+
+    @Override
+    public CompletableFuture<List<SumYear>> earningsSumOverYearAsync(String username) {
+        return supplyAsync(() -> earningsSumOverYear(username));
+    }
+
+    @Override
+    public CompletableFuture<List<SumYearMonth>> earningsSumOverMonthAsync(String username) {
+        return supplyAsync(() -> earningsSumOverMonth(username));
+    }
+
+    /**
+     * Run a blocking database call on the database executor.  When all
+     * of the threads of the executor are busy and its queue is full, the
+     * call is not queued, and the returned future fails at once with a
+     * {@link RejectedExecutionException}.
+     *
+     * @param databaseCall the blocking call to run
+     * @return a future completed with the result of the call
+     */
+    <T> CompletableFuture<T> supplyAsync(Supplier<T> databaseCall) {
+        try {
+            return CompletableFuture.supplyAsync(RequestTrace.propagate(databaseCall), databaseExecutor);
+        } catch (RejectedExecutionException e) {
+            CompletableFuture<T> rejected = new CompletableFuture<>();
+            rejected.completeExceptionally(e);
+            return rejected;
+        }
+    }
+
+    ExecutorService createDatabaseExecutor(boolean virtualThreads) {
+        if (virtualThreads) {
+            ExecutorService executor = DatabaseExecutors.virtualThreads(DATABASE_EXECUTOR_THREADS + DATABASE_EXECUTOR_QUEUE_SIZE);
+            if (executor != null) {
+                return executor;
+            }
+
+            if (logservice != null) {
+                logservice.log(LogService.LOG_WARNING, "Virtual threads are not supported by this JVM, running database calls on platform threads");
+            }
+        }
+
+        return DatabaseExecutors.platformThreads(DATABASE_EXECUTOR_THREADS, DATABASE_EXECUTOR_QUEUE_SIZE);
+    }
+
+    public void invalidateCachedUsers() {
+        usercache.invalidateAll();
+    }
+
+    /**
+     * Drop the cached users and transaction types, and reload the
+     * account ledger if the ledger is in use, so that rows written
+     * directly to the database, e.g. by the generate-dataset command,
+     * show up.
+     */
+    public void invalidateCachedData() {
+        invalidateCachedUsers();
+        invalidateTransactionTypeCaches();
+        if (ledger != null) {
+            ledger = loadAccountLedger();
         }
+    }
 
-        return Arrays.asList(notification);
+    @Override
+    public List<Notification> notificationsTo(String username) {
+        return notifications.poll(username);
     }
 
     @Override
     public void notificationTo(String username, Notification notification) {
-        ConcurrentLinkedQueue<Notification> notifications = getNotificationQueueForUser(username);
-        notifications.add(notification);
+        notifications.send(username, notification);
     }
 
-    private ConcurrentLinkedQueue<Notification> getNotificationQueueForUser(String username) {
-        return notificationQueues.computeIfAbsent(username, k-> new ConcurrentLinkedQueue<>());
+    @Override
+    public CompletableFuture<List<Notification>> waitForNotificationTo(String username) {
+        return notifications.waitForNotification(username);
+    }
+
+    public NotificationQueueStatistics getNotificationQueueStatistics() {
+        return notifications.getStatistics();
+    }
+
+    public DataSourceStatistics getDataSourceStatistics() {
+        return datasource instanceof InstrumentedDataSource ? ((InstrumentedDataSource) datasource).getStatistics() : null;
     }
 
     static boolean passwordsEqualsAndNotEmpty(PasswordsWithUser passwords) {
@@ -505,12 +990,40 @@ public class UkelonnServiceProvider extends UkelonnServiceBase {
         return !username.isEmpty();
     }
 
-    private static void trySettingPreparedStatementParameterThatMayNotBePresent(PreparedStatement statement, int parameterId, int parameterValue) {
-        try {
-            statement.setInt(parameterId, parameterValue);
-        } catch(SQLException e) {
-            // Oops! The parameter wasn't present!
-            // Continue as if nothing happened
+    /**
+     * Start a unit of work on the datasource of the service.  Service
+     * methods that make several calls to the database, wrap them in a
+     * unit of work, so that they are done on one connection, in one
+     * database transaction.
+     *
+     * @return a unit of work that must be closed by the caller
+     */
+    UnitOfWork beginUnitOfWork() {
+        return UnitOfWork.begin(datasource);
+    }
+
+    Connection getConnection() throws SQLException {
+        Connection connection = UnitOfWork.getConnection(datasource);
+        RequestTrace trace = RequestTrace.current();
+        return trace != null ? TracedConnection.wrap(connection, trace, sqlStatements) : connection;
+    }
+
+    /**
+     * Add a committed change of a balance to the account ledger, if the
+     * ledger is in use.  Inside a unit of work the ledger is changed
+     * when the unit of work commits.
+     */
+    void addToLedgerAfterCommit(int accountId, double amount) {
+        AccountLedger activeLedger = ledger;
+        if (activeLedger != null) {
+            UnitOfWork.afterCommit(datasource, () -> activeLedger.addToBalance(accountId, amount));
+        }
+    }
+
+    void addToLedgerAfterCommit(Account newAccount) {
+        AccountLedger activeLedger = ledger;
+        if (activeLedger != null) {
+            UnitOfWork.afterCommit(datasource, () -> activeLedger.addAccount(newAccount.getAccountId(), newAccount.getUsername(), newAccount.getBalance()));
         }
     }
 
@@ -523,46 +1036,184 @@ public class UkelonnServiceProvider extends UkelonnServiceBase {
     }
 
     /**
-     * Hack!
-     * Because of the sum() column of accounts_view, accounts without transactions
-     * won't appear in the accounts list, so all accounts are created with a
-     * payment of 0 kroner.
-     * @param username Used as the key to do the update to the account
-     * @return the update status
+     * Add an amount to the stored balance of an account, and get the
+     * account as it is after the update, inside the transaction of the
+     * connection.  On PostgreSQL the updated row is returned by the
+     * update itself.  Derby has no "returning" clause, so there the
+     * row is read back on the same connection.
+     *
+     * @param connection the connection used for the transaction change
+     * @param accountId the account to update
+     * @param amount the amount to add to the balance, may be negative
+     * @return the updated account, without the names of the account owner
+     * @throws SQLException if the update fails, or if the account doesn't exist
      */
-    int addDummyPaymentToAccountSoThatAccountWillAppearInAccountsView(String username) {
-        try(Connection connection = datasource.getConnection()) {
-            try(PreparedStatement statement = connection.prepareStatement(getResourceAsString("/sql/query/insert_empty_payment_in_account_keyed_by_username.sql"))) {
-                statement.setString(1, username);
-                return statement.executeUpdate();
+    Account addToAccountBalance(Connection connection, int accountId, double amount) throws SQLException {
+        if (supportsUpdateReturning(connection)) {
+            try(PreparedStatement statement = connection.prepareStatement("update accounts set balance=balance+? where account_id=? returning account_id, username, balance")) {
+                statement.setDouble(1, amount);
+                statement.setInt(2, accountId);
+                try(ResultSet results = statement.executeQuery()) {
+                    return mapUpdatedAccount(results, accountId);
+                }
+            }
+        }
+
+        try(PreparedStatement statement = connection.prepareStatement("update accounts set balance=balance+? where account_id=?")) {
+            statement.setDouble(1, amount);
+            statement.setInt(2, accountId);
+            statement.executeUpdate();
+        }
+
+        try(PreparedStatement statement = connection.prepareStatement("select account_id, username, balance from accounts where account_id=?")) {
+            statement.setInt(1, accountId);
+            try(ResultSet results = statement.executeQuery()) {
+                return mapUpdatedAccount(results, accountId);
+            }
+        }
+    }
+
+    boolean supportsUpdateReturning(Connection connection) throws SQLException {
+        Boolean supported = updateReturningSupported;
+        if (supported == null) {
+            DatabaseMetaData metadata = connection.getMetaData();
+            supported = metadata != null && "PostgreSQL".equals(metadata.getDatabaseProductName());
+            updateReturningSupported = supported;
+        }
+
+        return supported;
+    }
+
+    private Account mapUpdatedAccount(ResultSet results, int accountId) throws SQLException {
+        if (results.next()) {
+            return new Account(results.getInt("account_id"), results.getString(USERNAME), null, null, results.getDouble("balance"));
+        }
+
+        throw new SQLException(String.format("Found no account with id %d when updating the balance", accountId));
+    }
+
+    Account withOwnerNames(Account account) {
+        return withOwnerNames(account, usercache.getUser(account.getUsername()));
+    }
+
+    static Account withOwnerNames(Account account, no.priv.bang.osgiservice.users.User user) {
+        String firstname = user != null ? user.getFirstname() : null;
+        String lastname = user != null ? user.getLastname() : null;
+        return new Account(account.getAccountId(), account.getUsername(), firstname, lastname, account.getBalance());
+    }
+
+    /**
+     * Set the paid out time of an account to the time of a transaction,
+     * if the transaction brought the balance of the account down to 0,
+     * i.e. to less than half an øre from 0.  Used for payments, which are always the most recent transaction
+     * of the account.
+     *
+     * @param connection the connection used for the transaction change
+     * @param accountId the account to possibly update the paid out time for
+     * @param transactionTime the time of the most recent transaction
+     * @throws SQLException if the update fails
+     */
+    void setPaidOutTimeIfBalanceIsZero(Connection connection, int accountId, Date transactionTime) throws SQLException {
+        try(PreparedStatement statement = connection.prepareStatement("update accounts set paid_out_time=? where account_id=? and abs(balance)<?")) {
+            statement.setTimestamp(1, new java.sql.Timestamp(transactionTime.getTime()));
+            statement.setInt(2, accountId);
+            statement.setDouble(3, ZERO_BALANCE_TOLERANCE);
+            statement.executeUpdate();
+        }
+    }
+
+    boolean isAtOrBeforePaidOutTime(Connection connection, int accountId, Date transactionTime) throws SQLException {
+        try(PreparedStatement statement = connection.prepareStatement("select paid_out_time from accounts where account_id=?")) {
+            statement.setInt(1, accountId);
+            try(ResultSet results = statement.executeQuery()) {
+                if (results.next()) {
+                    Timestamp paidOutTime = results.getTimestamp(1);
+                    return paidOutTime != null && transactionTime.getTime() <= paidOutTime.getTime();
+                }
             }
-        } catch (SQLException e) {
-            logError("Failed to set prepared statement argument", e);
         }
 
-        return -1;
+        return false;
     }
 
-    String getResourceAsString(String resourceName) {
-        ByteArrayOutputStream resource = new ByteArrayOutputStream();
-        byte[] buffer = new byte[1024];
-        int length;
-        try(InputStream resourceStream = getClass().getResourceAsStream(resourceName)) {
-            while ((length = resourceStream.read(buffer)) != -1) {
-                resource.write(buffer, 0, length);
+    /**
+     * Find the paid out time of an account after its history has been
+     * changed, i.e. when a transaction is changed or removed, or when a
+     * transaction is inserted before the current paid out time.  The
+     * paid out time is the last time where the running balance is 0,
+     * with the same tolerance as
+     * {@link #setPaidOutTimeIfBalanceIsZero(Connection, int, Date)}.
+     *
+     * The transactions are read newest first, starting from the stored
+     * balance of the account, which must already include the change.
+     * The scan stops at the first time the running balance is 0, which
+     * usually is the last payment that emptied the account.  If the old
+     * paid out time is before the earliest changed transaction, it is
+     * still a time with a balance of 0, and the transactions older than
+     * it aren't read at all.
+     *
+     * @param connection the connection used for the transaction change
+     * @param accountId the account to update the paid out time for
+     * @param earliestChangedTime the time of the oldest changed transaction, null if not known
+     * @throws SQLException if the query or the update fails
+     */
+    void updatePaidOutTime(Connection connection, int accountId, Date earliestChangedTime) throws SQLException {
+        double balance = 0.0;
+        Timestamp oldPaidOutTime = null;
+        try(PreparedStatement statement = connection.prepareStatement("select balance, paid_out_time from accounts where account_id=?")) {
+            statement.setInt(1, accountId);
+            try(ResultSet results = statement.executeQuery()) {
+                if (results.next()) {
+                    balance = results.getDouble(1);
+                    oldPaidOutTime = results.getTimestamp(2);
+                }
+            }
+        }
+
+        boolean oldPaidOutTimeIsUnchanged = oldPaidOutTime != null && earliestChangedTime != null && oldPaidOutTime.getTime() < earliestChangedTime.getTime();
+        Timestamp oldestTime = oldPaidOutTimeIsUnchanged ? oldPaidOutTime : new Timestamp(0);
+        Timestamp paidOutTime = oldPaidOutTimeIsUnchanged ? oldPaidOutTime : null;
+        try(PreparedStatement statement = connection.prepareStatement("select transaction_time, transaction_amount from transactions where account_id=? and transaction_time>=? order by transaction_time desc")) {
+            statement.setInt(1, accountId);
+            statement.setTimestamp(2, oldestTime);
+            try(ResultSet results = statement.executeQuery()) {
+                double runningBalance = balance;
+                Timestamp currentTime = null;
+                while (results.next()) {
+                    Timestamp transactionTime = results.getTimestamp(1);
+                    if (!transactionTime.equals(currentTime)) {
+                        // The running balance is now the balance after all transactions up to and including this time
+                        if (isZeroBalance(runningBalance)) {
+                            paidOutTime = transactionTime;
+                            break;
+                        }
+
+                        currentTime = transactionTime;
+                    }
+
+                    runningBalance -= results.getDouble(2);
+                }
             }
+        }
 
-            return resource.toString("UTF-8");
-        } catch (Exception e) {
-            logError("Error getting resource \"" + resource + "\" from the classpath", e);
+        try(PreparedStatement statement = connection.prepareStatement("update accounts set paid_out_time=? where account_id=?")) {
+            if (paidOutTime != null) {
+                statement.setTimestamp(1, paidOutTime);
+            } else {
+                statement.setNull(1, Types.TIMESTAMP);
+            }
+            statement.setInt(2, accountId);
+            statement.executeUpdate();
         }
+    }
 
-        return null;
+    static boolean isZeroBalance(double balance) {
+        return Math.abs(balance) < ZERO_BALANCE_TOLERANCE;
     }
 
     public Account mapAccount(ResultSet results) throws SQLException {
         String username = results.getString(UkelonnServiceProvider.USERNAME);
-        no.priv.bang.osgiservice.users.User user = useradmin.getUser(username);
+        no.priv.bang.osgiservice.users.User user = usercache.getUser(username);
         return new Account(
             results.getInt("account_id"),
             username,
@@ -0,0 +1,211 @@
+/*
+ * Copyright 2019 Steinar Bang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package no.priv.bang.ukelonn.backend;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.sql.DataSource;
+
+import no.priv.bang.ukelonn.UkelonnException;
+
+/**
+ * Binds one database connection, and one database transaction, to the
+ * current thread for the duration of a service call.
+ *
+ * Used with try-with-resources:
+ * <pre>
+ * try(UnitOfWork unitOfWork = UnitOfWork.begin(datasource)) {
+ *     ...
+ *     return unitOfWork.complete(result);
+ * }
+ * </pre>
+ *
+ * The connection is opened the first time {@link #getConnection(DataSource)}
+ * is called inside the unit of work.  Code inside the unit of work gets
+ * the same connection every time, wrapped so that close, commit and
+ * setAutoCommit do nothing, which lets the existing per-method
+ * transaction handling run unchanged inside a larger transaction.  A
+ * rollback is done at once, and marks the whole unit of work for
+ * rollback.
+ *
+ * A unit of work begun inside another unit of work, on the same
+ * datasource, joins the outer one.  Only the outermost unit of work
+ * commits and closes the connection.  It commits only if it, and every
+ * unit of work that joined it, was completed.
+ *
+ * Work that must only be done if the changes are committed, like
+ * updating in-memory copies of the data, is registered with
+ * {@link #afterCommit(DataSource, Runnable)}.
+ *
+ * @author Steinar Bang
+ *
+ */
+public class UnitOfWork implements AutoCloseable {
+
+    private static final ThreadLocal<UnitOfWork> current = new ThreadLocal<>();
+    private final DataSource datasource;
+    private final UnitOfWork outermost;
+    private final UnitOfWork previous;
+    private Connection connection;
+    private boolean completed = false;
+    private boolean rollbackOnly = false;
+    private final List<Runnable> afterCommitActions = new ArrayList<>();
+
+    private UnitOfWork(DataSource datasource, UnitOfWork outermost, UnitOfWork previous) {
+        this.datasource = datasource;
+        this.outermost = outermost != null ? outermost : this;
+        this.previous = previous;
+    }
+
+    public static UnitOfWork begin(DataSource datasource) {
+        UnitOfWork active = current.get();
+        if (active != null && active.datasource == datasource) {
+            return new UnitOfWork(datasource, active, null);
+        }
+
+        UnitOfWork unitOfWork = new UnitOfWork(datasource, null, active);
+        current.set(unitOfWork);
+        return unitOfWork;
+    }
+
+    /**
+     * Get a connection to a datasource.  Inside a unit of work on the
+     * datasource, the connection of the unit of work is returned.
+     * Outside of a unit of work a new connection is opened, that the
+     * caller must close.
+     *
+     * @param datasource the datasource to get a connection to
+     * @return a connection that must be closed by the caller
+     * @throws SQLException if a new connection can't be opened
+     */
+    public static Connection getConnection(DataSource datasource) throws SQLException {
+        UnitOfWork active = current.get();
+        if (active == null || active.datasource != datasource) {
+            return datasource.getConnection();
+        }
+
+        return active.sharedConnection();
+    }
+
+    /**
+     * Run an action when the changes made so far have been committed.
+     * Inside a unit of work on the datasource the action is run after
+     * the outermost unit of work has committed, and not at all if it
+     * rolls back.  Outside of a unit of work the caller has already
+     * committed, and the action is run at once.
+     *
+     * @param datasource the datasource the changes were made to
+     * @param action the action to run after the commit
+     */
+    public static void afterCommit(DataSource datasource, Runnable action) {
+        UnitOfWork active = current.get();
+        if (active == null || active.datasource != datasource) {
+            action.run();
+            return;
+        }
+
+        active.outermost.afterCommitActions.add(action);
+    }
+
+    public void complete() {
+        completed = true;
+    }
+
+    public <T> T complete(T result) {
+        complete();
+        return result;
+    }
+
+    public boolean isRollbackOnly() {
+        return outermost.rollbackOnly;
+    }
+
+    @Override
+    public void close() {
+        if (outermost != this) {
+            if (!completed) {
+                outermost.rollbackOnly = true;
+            }
+
+            return;
+        }
+
+        if (previous != null) {
+            current.set(previous);
+        } else {
+            current.remove();
+        }
+
+        boolean commit = completed && !rollbackOnly;
+        if (connection != null) {
+            try(Connection ownConnection = connection) {
+                try {
+                    if (commit) {
+                        ownConnection.commit();
+                    } else {
+                        ownConnection.rollback();
+                    }
+                } finally {
+                    ownConnection.setAutoCommit(true);
+                }
+            } catch (SQLException e) {
+                throw new UkelonnException("Failed to end unit of work", e);
+            }
+        }
+
+        if (commit) {
+            afterCommitActions.forEach(Runnable::run);
+        }
+    }
+
+    private Connection sharedConnection() throws SQLException {
+        if (connection == null) {
+            Connection newConnection = datasource.getConnection();
+            newConnection.setAutoCommit(false);
+            connection = newConnection;
+        }
+
+        return (Connection) Proxy.newProxyInstance(UnitOfWork.class.getClassLoader(), new Class<?>[] { Connection.class }, this::invokeOnSharedConnection);
+    }
+
+    private Object invokeOnSharedConnection(Object proxy, Method method, Object[] args) throws Throwable { // NOSONAR The exceptions of the wrapped connection are passed on unchanged
+        String name = method.getName();
+        if ("close".equals(name) || "commit".equals(name) || "setAutoCommit".equals(name)) {
+            return null;
+        }
+
+        if ("getAutoCommit".equals(name)) {
+            return false;
+        }
+
+        if ("rollback".equals(name) && args == null) {
+            rollbackOnly = true;
+        }
+
+        try {
+            return method.invoke(connection, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+}
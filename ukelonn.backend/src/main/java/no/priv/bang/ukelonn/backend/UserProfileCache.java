@@ -0,0 +1,175 @@
+/*
+ * Copyright 2019 Steinar Bang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package no.priv.bang.ukelonn.backend;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+import no.priv.bang.osgiservice.users.User;
+import no.priv.bang.osgiservice.users.UserManagementService;
+
+/**
+ * A bounded cache of user profiles fetched from the
+ * {@link UserManagementService}, used to find the names of account
+ * owners without a round trip to the user database for every account.
+ *
+ * Entries expire after a fixed time to live, and the least recently
+ * used entry is dropped when the cache is full.  No calls to the
+ * user database are made while holding the lock of the cache.
+ *
+ * @author Steinar Bang
+ *
+ */
+public class UserProfileCache {
+
+    static final int DEFAULT_MAXIMUM_SIZE = 1000;
+    static final long DEFAULT_TIME_TO_LIVE = TimeUnit.MINUTES.toMillis(5);
+
+    private final UserManagementService useradmin;
+    private final long timeToLive;
+    private final LongSupplier clock;
+    private final Map<String, CachedUser> cache;
+    private final ReentrantLock lock = new ReentrantLock();
+
+    public UserProfileCache(UserManagementService useradmin) {
+        this(useradmin, DEFAULT_MAXIMUM_SIZE, DEFAULT_TIME_TO_LIVE, System::currentTimeMillis);
+    }
+
+    UserProfileCache(UserManagementService useradmin, int maximumSize, long timeToLive, LongSupplier clock) {
+        this.useradmin = useradmin;
+        this.timeToLive = timeToLive;
+        this.clock = clock;
+        this.cache = new LeastRecentlyUsedMap(maximumSize);
+    }
+
+    /**
+     * Find a single user, asking the {@link UserManagementService} only
+     * if there is no live entry for the user in the cache.  Users not
+     * known by the user management service are cached as well, so that
+     * accounts without a user don't cause a lookup on every call.
+     *
+     * @param username the username to look up
+     * @return the user, or null if the user management service doesn't know the user
+     */
+    public User getUser(String username) {
+        CachedUser cachedUser = getCachedUser(username);
+        if (cachedUser != null) {
+            return cachedUser.user;
+        }
+
+        User user = useradmin.getUser(username);
+        putUser(username, user);
+        return user;
+    }
+
+    /**
+     * Find several users.  Only the users without a live entry in the
+     * cache are looked up in the {@link UserManagementService}, one by
+     * one.
+     *
+     * @param usernames the usernames to look up
+     * @return a map from username to user for all of the usernames, with null values for unknown users
+     */
+    public Map<String, User> getUsers(Collection<String> usernames) {
+        Map<String, User> users = new HashMap<>();
+        for (String username : usernames) {
+            users.put(username, getUser(username));
+        }
+
+        return users;
+    }
+
+    /**
+     * Drop all cached users. Called when users are created or modified,
+     * since a modification may change the username of a user.
+     */
+    public void invalidateAll() {
+        lock.lock();
+        try {
+            cache.clear();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    int size() {
+        lock.lock();
+        try {
+            return cache.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private CachedUser getCachedUser(String username) {
+        lock.lock();
+        try {
+            CachedUser cachedUser = cache.get(username);
+            if (cachedUser == null) {
+                return null;
+            }
+
+            if (clock.getAsLong() - cachedUser.cachedTime >= timeToLive) {
+                cache.remove(username);
+                return null;
+            }
+
+            return cachedUser;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void putUser(String username, User user) {
+        lock.lock();
+        try {
+            cache.put(username, new CachedUser(user, clock.getAsLong()));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static class CachedUser {
+        final User user;
+        final long cachedTime;
+
+        CachedUser(User user, long cachedTime) {
+            this.user = user;
+            this.cachedTime = cachedTime;
+        }
+    }
+
+    private static class LeastRecentlyUsedMap extends LinkedHashMap<String, CachedUser> {
+        private static final long serialVersionUID = 1L;
+        private final int maximumSize;
+
+        LeastRecentlyUsedMap(int maximumSize) {
+            super(16, 0.75f, true);
+            this.maximumSize = maximumSize;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CachedUser> eldest) {
+            return size() > maximumSize;
+        }
+    }
+
+}
@@ -1 +0,0 @@
-insert into transaction_types (transaction_type_name, transaction_amount, transaction_is_work, transaction_is_wage_payment) values ('%s', %f, false, true)
@@ -0,0 +1,5 @@
+select t.transaction_id, t.account_id, t.transaction_type_id, tt.transaction_type_name, tt.transaction_is_work, tt.transaction_is_wage_payment, t.transaction_amount, t.transaction_time, a.paid_out_time is not null and t.transaction_time<a.paid_out_time as paid_out from transactions t
+  join transaction_types tt on tt.transaction_type_id=t.transaction_type_id
+  join accounts a on a.account_id=t.account_id
+ where t.account_id=?
+ order by t.transaction_id
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2019 Steinar Bang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package no.priv.bang.ukelonn.backend;
+
+import static no.priv.bang.ukelonn.testutils.TestUtils.*;
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.sql.DataSource;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import no.priv.bang.ukelonn.UkelonnException;
+import no.priv.bang.ukelonn.beans.Account;
+
+public class AccountLedgerTest {
+
+    @BeforeClass
+    public static void setupForAllTests() throws Exception {
+        setupFakeOsgiServices();
+    }
+
+    @AfterClass
+    public static void teardownForAllTests() throws Exception {
+        releaseFakeOsgiServices();
+    }
+
+    @Test
+    public void testAddAccountAndBalanceChanges() {
+        AccountLedger ledger = new AccountLedger(0);
+        ledger.addAccount(1, "jad", 150.5);
+
+        ledger.addToBalance(1, 45.0);
+        ledger.addToBalance(1, -0.1);
+
+        Account account = ledger.getAccount("jad");
+        assertEquals(1, account.getAccountId());
+        assertEquals(195.4, account.getBalance(), 0.0);
+        assertNull(ledger.getAccount("nosuchuser"));
+    }
+
+    @Test
+    public void testBalanceChangeBeforeAccountCreationIsKept() {
+        AccountLedger ledger = new AccountLedger(0);
+        ledger.addToBalance(3, 45.0);
+
+        ledger.addAccount(3, "jod", 0.0);
+
+        assertEquals(45.0, ledger.getAccount("jod").getBalance(), 0.0);
+    }
+
+    @Test
+    public void testGetAccountsInOrderOfAddition() {
+        AccountLedger ledger = new AccountLedger(0);
+        ledger.addAccount(1, "jad", 150.0);
+        ledger.addAccount(2, "jod", 0.0);
+
+        List<Account> accounts = ledger.getAccounts();
+
+        assertEquals(2, accounts.size());
+        assertEquals("jad", accounts.get(0).getUsername());
+        assertEquals(0.0, accounts.get(1).getBalance(), 0.0);
+    }
+
+    @Test
+    public void testLoad() {
+        UkelonnServiceProvider ukelonn = getUkelonnServiceSingleton();
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            AccountLedger ledger = AccountLedger.load(ukelonn.getDataSource(), executor, 3);
+
+            List<Account> accounts = ledger.getAccounts();
+            assertFalse(accounts.isEmpty());
+            for (int i = 1; i < accounts.size(); ++i) {
+                assertTrue(accounts.get(i - 1).getAccountId() < accounts.get(i).getAccountId());
+            }
+
+            assertNotNull(ledger.getAccount("jad"));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test(expected=UkelonnException.class)
+    public void testLoadWhenSQLExceptionIsThrown() throws Exception {
+        DataSource datasource = mock(DataSource.class);
+        when(datasource.getConnection()).thenThrow(SQLException.class);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            AccountLedger.load(datasource, executor, 2);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testOre() {
+        assertEquals(15050, AccountLedger.toOre(150.5));
+        assertEquals(-10, AccountLedger.toOre(-0.1));
+        assertEquals(150.5, AccountLedger.fromOre(15050), 0.0);
+    }
+
+}
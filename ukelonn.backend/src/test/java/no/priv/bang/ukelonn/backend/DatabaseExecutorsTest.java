@@ -0,0 +1,91 @@
+/*
+ * Copyright 2019 Steinar Bang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package no.priv.bang.ukelonn.backend;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class DatabaseExecutorsTest {
+
+    @Test
+    public void testPlatformThreadsRejectWhenQueueIsFull() throws Exception {
+        ExecutorService executor = DatabaseExecutors.platformThreads(1, 1);
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            executor.execute(() -> await(release));
+            executor.execute(() -> await(release));
+            try {
+                executor.execute(() -> await(release));
+                fail("Expected the third call to be rejected");
+            } catch (RejectedExecutionException e) {
+                // Expected
+            }
+        } finally {
+            release.countDown();
+            executor.shutdown();
+        }
+
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testBoundedExecutorReleasesPermitsWhenCallsAreDone() throws Exception {
+        ExecutorService executor = new DatabaseExecutors.BoundedExecutor(Executors.newCachedThreadPool(), 1);
+        CountDownLatch release = new CountDownLatch(1);
+        Future<?> first = executor.submit(() -> await(release));
+        try {
+            executor.execute(() -> await(release));
+            fail("Expected the second call to be rejected");
+        } catch (RejectedExecutionException e) {
+            // Expected
+        }
+
+        release.countDown();
+        first.get(10, TimeUnit.SECONDS);
+        assertEquals(Integer.valueOf(42), executor.submit(() -> 42).get(10, TimeUnit.SECONDS));
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        assertTrue(executor.isShutdown());
+        assertTrue(executor.isTerminated());
+    }
+
+    @Test
+    public void testVirtualThreadsOnlyWhenSupportedByTheJvm() throws Exception {
+        ExecutorService executor = DatabaseExecutors.virtualThreads(10);
+        assertEquals(DatabaseExecutors.virtualThreadsSupported(), executor != null);
+        if (executor != null) {
+            assertEquals("done", executor.submit(() -> "done").get(10, TimeUnit.SECONDS));
+            executor.shutdownNow();
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+}
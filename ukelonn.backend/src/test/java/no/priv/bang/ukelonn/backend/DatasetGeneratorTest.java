@@ -0,0 +1,158 @@
+/*
+ * Copyright 2019 Steinar Bang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package no.priv.bang.ukelonn.backend;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.*;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Properties;
+import java.util.stream.Collectors;
+
+import javax.sql.DataSource;
+
+import org.junit.Test;
+import org.ops4j.pax.jdbc.derby.impl.DerbyDataSourceFactory;
+import org.osgi.service.jdbc.DataSourceFactory;
+
+import no.priv.bang.ukelonn.UkelonnException;
+import no.priv.bang.ukelonn.beans.Account;
+import no.priv.bang.ukelonn.beans.TransactionType;
+import no.priv.bang.ukelonn.db.liquibase.UkelonnLiquibase;
+
+public class DatasetGeneratorTest {
+
+    private static final LocalDate LAST_DAY = LocalDate.of(2019, 6, 30);
+    private static int databaseCount = 0;
+
+    @Test
+    public void testGenerate() throws Exception {
+        DataSource datasource = createEmptyDatabase();
+        DatasetGenerator generator = new DatasetGenerator(datasource, 1, "gen", LAST_DAY, 365);
+
+        GeneratedDataset dataset = generator.generate(3, 2, 1, 50);
+
+        assertTrue(dataset.isUsersInserted());
+        assertEquals(3, dataset.getUsers().size());
+        assertEquals(2, dataset.getJobtypes().size());
+        assertEquals(1, dataset.getPaymenttypes().size());
+        assertEquals(150, dataset.getNumberOfTransactions());
+        assertEquals(150, queryLong(datasource, "select count(*) from transactions"));
+        assertEquals(3, queryLong(datasource, "select count(*) from user_roles where role_name='ukelonnuser'"));
+        for (Account account : dataset.getAccounts()) {
+            assertEquals(account.getBalance(), queryDouble(datasource, "select balance from accounts where account_id=" + account.getAccountId()), 0.001);
+            assertEquals(account.getBalance(), queryDouble(datasource, "select sum(transaction_amount) from transactions where account_id=" + account.getAccountId()), 0.001);
+            double sumOfJobs = queryDouble(datasource, "select sum(t.transaction_amount) from transactions t join transaction_types tt on tt.transaction_type_id=t.transaction_type_id where tt.transaction_is_work=true and t.account_id=" + account.getAccountId());
+            assertEquals(sumOfJobs, queryDouble(datasource, "select sum(aggregate_amount) from earnings_aggregates where aggregate_period='year' and account_id=" + account.getAccountId()), 0.001);
+            assertEquals(sumOfJobs, queryDouble(datasource, "select sum(aggregate_amount) from earnings_aggregates where aggregate_period='day' and account_id=" + account.getAccountId()), 0.001);
+        }
+
+        assertThat(queryLong(datasource, "select count(*) from accounts where paid_out_time is not null")).isPositive();
+    }
+
+    @Test
+    public void testSameSeedGivesSameData() throws Exception {
+        GeneratedDataset first = new DatasetGenerator(createEmptyDatabase(), 3, "gen", LAST_DAY, 100).generate(4, 3, 2, 30);
+        GeneratedDataset second = new DatasetGenerator(createEmptyDatabase(), 3, "gen", LAST_DAY, 100).generate(4, 3, 2, 30);
+        GeneratedDataset otherSeed = new DatasetGenerator(createEmptyDatabase(), 4, "gen", LAST_DAY, 100).generate(4, 3, 2, 30);
+
+        assertEquals(balances(first), balances(second));
+        assertNotEquals(balances(first), balances(otherSeed));
+    }
+
+    @Test
+    public void testAccountsWithoutTransactions() throws Exception {
+        DataSource datasource = createEmptyDatabase();
+        GeneratedDataset dataset = new DatasetGenerator(datasource, 1, "gen", LAST_DAY, 100).generate(2, 0, 0, 0);
+
+        assertEquals(2, dataset.getAccounts().size());
+        assertEquals(0, dataset.getNumberOfTransactions());
+        assertEquals(0.0, dataset.getAccounts().get(0).getBalance(), 0.0);
+    }
+
+    @Test(expected=UkelonnException.class)
+    public void testTransactionsWithoutJobtypes() throws Exception {
+        new DatasetGenerator(createEmptyDatabase(), 1, "gen", LAST_DAY, 100).generate(2, 0, 1, 10);
+    }
+
+    @Test(expected=UkelonnException.class)
+    public void testGenerateWhenUsernamesAreTaken() throws Exception {
+        DataSource datasource = createEmptyDatabase();
+        new DatasetGenerator(datasource, 1, "gen", LAST_DAY, 100).generate(2, 1, 1, 10);
+
+        new DatasetGenerator(datasource, 1, "gen", LAST_DAY, 100).generate(2, 1, 1, 10);
+    }
+
+    @Test
+    public void testCreateTransactionTypesWithMoreTypesThanNames() {
+        DatasetGenerator generator = new DatasetGenerator(null, 1, "gen", LAST_DAY, 100);
+
+        List<TransactionType> paymenttypes = generator.createTransactionTypes(DatasetGenerator.PAYMENTTYPE_NAMES.length + 1, DatasetGenerator.PAYMENTTYPE_NAMES, false);
+
+        assertEquals("Inn på konto 2", paymenttypes.get(DatasetGenerator.PAYMENTTYPE_NAMES.length).getTransactionTypeName());
+        assertNull(paymenttypes.get(0).getTransactionAmount());
+        assertTrue(paymenttypes.get(0).isTransactionIsWagePayment());
+    }
+
+    static DataSource createEmptyDatabase() throws Exception {
+        DerbyDataSourceFactory datasourceFactory = new DerbyDataSourceFactory();
+        Properties properties = new Properties();
+        properties.put(DataSourceFactory.JDBC_URL, "jdbc:derby:memory:ukelonngenerated" + (++databaseCount) + ";create=true");
+        DataSource datasource = datasourceFactory.createDataSource(properties);
+        UkelonnLiquibase liquibase = new UkelonnLiquibase();
+        try(Connection connection = datasource.getConnection()) {
+            try {
+                liquibase.createInitialSchema(connection);
+                liquibase.updateSchema(connection);
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        }
+
+        return datasource;
+    }
+
+    private static List<Double> balances(GeneratedDataset dataset) {
+        return dataset.getAccounts().stream().map(Account::getBalance).collect(Collectors.toList());
+    }
+
+    private static long queryLong(DataSource datasource, String sql) throws Exception {
+        try(Connection connection = datasource.getConnection()) {
+            try(PreparedStatement statement = connection.prepareStatement(sql)) {
+                try(ResultSet results = statement.executeQuery()) {
+                    results.next();
+                    return results.getLong(1);
+                }
+            }
+        }
+    }
+
+    private static double queryDouble(DataSource datasource, String sql) throws Exception {
+        try(Connection connection = datasource.getConnection()) {
+            try(PreparedStatement statement = connection.prepareStatement(sql)) {
+                try(ResultSet results = statement.executeQuery()) {
+                    results.next();
+                    return results.getDouble(1);
+                }
+            }
+        }
+    }
+
+}
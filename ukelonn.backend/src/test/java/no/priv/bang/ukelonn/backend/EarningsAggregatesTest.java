@@ -0,0 +1,109 @@
+/*
+ * Copyright 2019 Steinar Bang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package no.priv.bang.ukelonn.backend;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.*;
+import static org.mockito.Mockito.*;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.util.Date;
+
+import org.junit.Test;
+
+import no.priv.bang.ukelonn.backend.EarningsAggregates.Period;
+
+public class EarningsAggregatesTest {
+
+    @Test
+    public void testPeriodStart() {
+        LocalDate sunday = LocalDate.of(2019, 3, 17);
+        assertEquals(sunday, Period.DAY.start(sunday));
+        assertEquals(LocalDate.of(2019, 3, 11), Period.WEEK.start(sunday));
+        assertEquals(LocalDate.of(2019, 3, 11), Period.WEEK.start(LocalDate.of(2019, 3, 11)));
+        assertEquals(LocalDate.of(2019, 3, 1), Period.MONTH.start(sunday));
+        assertEquals(LocalDate.of(2019, 1, 1), Period.YEAR.start(sunday));
+    }
+
+    @Test
+    public void testSaveUpdatesExistingPeriods() throws Exception {
+        Connection connection = mock(Connection.class);
+        PreparedStatement update = mock(PreparedStatement.class);
+        when(update.executeUpdate()).thenReturn(1);
+        when(connection.prepareStatement(startsWith("update"))).thenReturn(update);
+
+        new EarningsAggregates(1).addJob(timeOf("2019-03-17 10:00:00"), 45.0).save(connection);
+
+        verify(update, times(Period.values().length)).executeUpdate();
+        verify(update, times(Period.values().length)).setDouble(1, 45.0);
+        verify(connection, never()).prepareStatement(startsWith("insert"));
+    }
+
+    @Test
+    public void testSaveInsertsMissingPeriods() throws Exception {
+        Connection connection = mock(Connection.class);
+        PreparedStatement update = mock(PreparedStatement.class);
+        when(update.executeUpdate()).thenReturn(0);
+        when(connection.prepareStatement(startsWith("update"))).thenReturn(update);
+        PreparedStatement insert = mock(PreparedStatement.class);
+        when(connection.prepareStatement(startsWith("insert"))).thenReturn(insert);
+
+        new EarningsAggregates(1).addJob(timeOf("2019-03-17 10:00:00"), 45.0).save(connection);
+
+        verify(insert, times(Period.values().length)).executeUpdate();
+        verify(insert).setDate(3, java.sql.Date.valueOf("2019-03-11"));
+        verify(insert, times(Period.values().length)).setInt(5, 1);
+    }
+
+    @Test
+    public void testChangesToTheSamePeriodAreMerged() throws Exception {
+        Connection connection = mock(Connection.class);
+        PreparedStatement update = mock(PreparedStatement.class);
+        when(update.executeUpdate()).thenReturn(1);
+        when(connection.prepareStatement(startsWith("update"))).thenReturn(update);
+
+        // Moving a job to another day of the same week leaves the week, month and year untouched
+        new EarningsAggregates(1)
+            .removeJob(timeOf("2019-03-12 10:00:00"), 45.0)
+            .addJob(timeOf("2019-03-13 10:00:00"), 45.0)
+            .save(connection);
+
+        verify(update, times(2)).executeUpdate();
+        verify(update).setDouble(1, -45.0);
+        verify(update).setDouble(1, 45.0);
+    }
+
+    @Test
+    public void testEarliestChangedTime() {
+        EarningsAggregates aggregates = new EarningsAggregates(1);
+        assertNull(aggregates.getEarliestChangedTime());
+
+        aggregates
+            .removeJob(timeOf("2019-03-12 10:00:00"), 45.0)
+            .addJob(timeOf("2019-03-10 10:00:00"), 45.0)
+            .addJob(timeOf("2019-03-13 10:00:00"), 45.0);
+
+        assertEquals(timeOf("2019-03-10 10:00:00"), aggregates.getEarliestChangedTime());
+    }
+
+    private Date timeOf(String timestamp) {
+        return new Date(Timestamp.valueOf(timestamp).getTime());
+    }
+
+}
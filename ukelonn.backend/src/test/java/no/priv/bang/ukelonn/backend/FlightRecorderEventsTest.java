@@ -0,0 +1,107 @@
+/*
+ * Copyright 2019 Steinar Bang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package no.priv.bang.ukelonn.backend;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+import org.osgi.service.log.LogService;
+
+import no.priv.bang.osgiservice.users.UserManagementService;
+
+public class FlightRecorderEventsTest {
+
+    @Test
+    public void testDisabledEvents() {
+        FlightRecorderEvents events = FlightRecorderEvents.create("false");
+
+        assertSame(FlightRecorderEvents.DISABLED, events);
+        assertFalse(events.isEnabled());
+        assertNull(events.beginServiceCall());
+        assertNull(events.beginSqlStatement());
+        events.commitServiceCall(null, "getJobs", 1, 10);
+        events.commitSqlStatement(null, null, "select 1");
+        events.notificationDelivered(1, 10);
+        assertSame(FlightRecorderEvents.DISABLED, FlightRecorderEvents.create(null));
+    }
+
+    @Test
+    public void testEnabledEvents() {
+        FlightRecorderEvents events = FlightRecorderEvents.create(Boolean.TRUE);
+
+        assertSame(events, FlightRecorderEvents.create("true"));
+        Object serviceCall = events.beginServiceCall();
+        Object sqlStatement = events.beginSqlStatement();
+        assertEquals(events.isEnabled(), serviceCall != null);
+        assertEquals(events.isEnabled(), sqlStatement != null);
+        events.commitSqlStatement(sqlStatement, SqlStatementRegistry.JOBS_LAST_N, "select 1");
+        events.commitServiceCall(serviceCall, "getJobs", 1, 10);
+        events.notificationDelivered(1, 10);
+    }
+
+    @Test
+    public void testEventTypeWithoutJfr() {
+        FlightRecorderEventType type = new FlightRecorderEventType("no.priv.bang.ukelonn.Test", "Test", new FlightRecorderEventType.Field("value", "Value", Object.class));
+
+        // Object isn't a valid JFR field type, so creating the event type fails the same way it does without JFR
+        assertFalse(type.isAvailable());
+        assertNull(type.begin());
+        type.commit(null, new Object());
+    }
+
+    @Test
+    public void testProviderWithEvents() throws Exception {
+        UkelonnServiceProvider ukelonn = new UkelonnServiceProvider();
+        ukelonn.setDataSource(DatasetGeneratorTest.createEmptyDatabase());
+        ukelonn.setUserAdmin(mock(UserManagementService.class));
+        Map<String, Object> config = new HashMap<>();
+        config.put(FlightRecorderEvents.FLIGHT_RECORDER_EVENTS, "true");
+        ukelonn.activate(config);
+        InstrumentedUkelonnService instrumented = new InstrumentedUkelonnService();
+        instrumented.setUkelonnService(ukelonn);
+        instrumented.activate(config);
+        try {
+            assertEquals(0, instrumented.getAccounts().size());
+            assertEquals(0, instrumented.getJobs(1).size());
+            assertEquals(0, instrumented.getPayments(1).size());
+            instrumented.exportTransactions(1, transaction -> fail("No transactions expected"));
+        } finally {
+            ukelonn.deactivate();
+        }
+    }
+
+    @Test
+    public void testSqlStatementEvents() throws Exception {
+        InstrumentedDataSource datasource = new InstrumentedDataSource();
+        datasource.setWrappedDataSource(DatasetGeneratorTest.createEmptyDatabase());
+        datasource.setLogservice(mock(LogService.class));
+        datasource.activate(Collections.singletonMap(FlightRecorderEvents.FLIGHT_RECORDER_EVENTS, (Object) "true"));
+        DataSourceMonitor monitor = datasource.getMonitor();
+
+        Object event = monitor.beginStatement();
+        monitor.statementExecuted("select 1", "()", 1000, event);
+
+        assertEquals(FlightRecorderEvents.create(true).isEnabled(), event != null);
+        assertEquals(1, datasource.getStatistics().getStatements());
+        datasource.deactivate();
+    }
+
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright 2019 Steinar Bang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package no.priv.bang.ukelonn.backend;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.*;
+import static org.mockito.Mockito.*;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.sql.DataSource;
+
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.osgi.service.log.LogService;
+
+import no.priv.bang.osgiservice.users.UserManagementService;
+import no.priv.bang.ukelonn.beans.DataSourceStatistics;
+
+public class InstrumentedDataSourceTest {
+
+    @Test
+    public void testConnectionsAndStatementsAreCounted() throws Exception {
+        InstrumentedDataSource datasource = createDataSource(mock(LogService.class), Collections.emptyMap());
+
+        try(Connection connection = datasource.getConnection()) {
+            assertEquals(1, datasource.getStatistics().getActiveConnections());
+            try(PreparedStatement statement = connection.prepareStatement("select count(*) from accounts where account_id > ?")) {
+                statement.setInt(1, 0);
+                try(ResultSet results = statement.executeQuery()) {
+                    assertTrue(results.next());
+                }
+            }
+        }
+
+        DataSourceStatistics statistics = datasource.getStatistics();
+        assertEquals(0, statistics.getActiveConnections());
+        assertEquals(1, statistics.getPeakActiveConnections());
+        assertEquals(-1, statistics.getIdleConnections());
+        assertEquals(1, statistics.getCheckouts());
+        assertThat(statistics.getCheckoutWaitSeconds()).isPositive();
+        assertEquals(1, statistics.getStatements());
+        assertThat(statistics.getStatementSeconds()).isPositive();
+        assertEquals(0, statistics.getSlowStatements());
+        datasource.deactivate();
+    }
+
+    @Test
+    public void testSlowStatementsAreLoggedWithParameterShape() throws Exception {
+        LogService logservice = mock(LogService.class);
+        Map<String, Object> config = new HashMap<>();
+        config.put(InstrumentedDataSource.SLOW_STATEMENT_MILLIS, "-1");
+        InstrumentedDataSource datasource = createDataSource(logservice, config);
+        String jobsQuery = new SqlStatementRegistry().getSql(SqlStatementRegistry.JOBS_LAST_N);
+
+        try(Connection connection = datasource.getConnection()) {
+            try(PreparedStatement statement = connection.prepareStatement(jobsQuery)) {
+                statement.setInt(1, 1);
+                statement.setInt(2, Integer.MAX_VALUE);
+                statement.setInt(3, 10);
+                statement.executeQuery().close();
+            }
+
+            try(PreparedStatement statement = connection.prepareStatement("update accounts set balance=? where username=?")) {
+                statement.setDouble(1, 0.0);
+                statement.setString(2, "jad");
+                statement.addBatch();
+                statement.setDouble(1, 0.0);
+                statement.setObject(2, "jod");
+                statement.addBatch();
+                statement.executeBatch();
+            }
+        }
+
+        ArgumentCaptor<String> messages = ArgumentCaptor.forClass(String.class);
+        verify(logservice, times(2)).log(eq(LogService.LOG_WARNING), messages.capture());
+        assertThat(messages.getAllValues().get(0))
+            .contains("from template " + SqlStatementRegistry.JOBS_LAST_N)
+            .contains("parameters (int, int, int)")
+            .doesNotContain(String.valueOf(Integer.MAX_VALUE));
+        assertThat(messages.getAllValues().get(1))
+            .contains("parameters 2 x (double, string)")
+            .endsWith("update accounts set balance=? where username=?")
+            .doesNotContain("jad");
+        assertEquals(2, datasource.getStatistics().getSlowStatements());
+        datasource.deactivate();
+    }
+
+    @Test
+    public void testConnectionsHeldTooLongAreFlaggedOnce() throws Exception {
+        LogService logservice = mock(LogService.class);
+        Map<String, Object> config = new HashMap<>();
+        config.put(InstrumentedDataSource.CONNECTION_HOLD_LIMIT_SECONDS, 0);
+        InstrumentedDataSource datasource = createDataSource(logservice, config);
+
+        Connection connection = datasource.getConnection();
+        Thread.sleep(2);
+        datasource.getMonitor().flagLongHeldConnections();
+        datasource.getMonitor().flagLongHeldConnections();
+        connection.close();
+        connection.close();
+
+        ArgumentCaptor<String> message = ArgumentCaptor.forClass(String.class);
+        verify(logservice).log(eq(LogService.LOG_WARNING), message.capture(), any(Throwable.class));
+        assertThat(message.getValue()).contains("longer than the limit of 0 s");
+        verify(logservice).log(eq(LogService.LOG_WARNING), startsWith("Database connection checked out by thread"));
+        assertEquals(1, datasource.getStatistics().getLongHeldConnections());
+        assertEquals(0, datasource.getStatistics().getActiveConnections());
+        datasource.deactivate();
+    }
+
+    @Test
+    public void testIdleConnectionsOfPool() throws Exception {
+        InstrumentedDataSource datasource = new InstrumentedDataSource();
+        PoolDataSource pool = mock(PoolDataSource.class);
+        when(pool.getNumIdle()).thenReturn(3);
+        datasource.setWrappedDataSource(pool);
+
+        assertEquals(3, datasource.idleConnections());
+    }
+
+    @Test
+    public void testParameterType() {
+        assertEquals("int", MonitoredConnection.parameterType("setInt", 1));
+        assertEquals("timestamp", MonitoredConnection.parameterType("setTimestamp", null));
+        assertEquals("integer", MonitoredConnection.parameterType("setObject", 1));
+        assertEquals("null", MonitoredConnection.parameterType("setObject", null));
+    }
+
+    @Test
+    public void testProviderReturnsStatisticsOfInstrumentedDataSource() throws Exception {
+        InstrumentedDataSource datasource = createDataSource(mock(LogService.class), Collections.emptyMap());
+        UkelonnServiceProvider ukelonn = new UkelonnServiceProvider();
+        ukelonn.setUserAdmin(mock(UserManagementService.class));
+        ukelonn.setDataSource(datasource);
+        ukelonn.activate();
+        try {
+            ukelonn.getAccounts();
+            assertThat(ukelonn.getDataSourceStatistics().getStatements()).isPositive();
+
+            ukelonn.setDataSource(DatasetGeneratorTest.createEmptyDatabase());
+            assertNull(ukelonn.getDataSourceStatistics());
+        } finally {
+            ukelonn.deactivate();
+            datasource.deactivate();
+        }
+    }
+
+    private InstrumentedDataSource createDataSource(LogService logservice, Map<String, Object> config) throws Exception {
+        InstrumentedDataSource datasource = new InstrumentedDataSource();
+        datasource.setWrappedDataSource(DatasetGeneratorTest.createEmptyDatabase());
+        datasource.setLogservice(logservice);
+        datasource.activate(config);
+        return datasource;
+    }
+
+    public abstract static class PoolDataSource implements DataSource {
+        public abstract int getNumIdle();
+    }
+
+}
@@ -0,0 +1,265 @@
+/*
+ * Copyright 2019 Steinar Bang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package no.priv.bang.ukelonn.backend;
+
+import static no.priv.bang.ukelonn.testutils.TestUtils.*;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.*;
+import static org.mockito.Mockito.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.junit.Test;
+
+import no.priv.bang.osgiservice.users.UserManagementService;
+import no.priv.bang.ukelonn.UkelonnException;
+import no.priv.bang.ukelonn.beans.Account;
+import no.priv.bang.ukelonn.beans.DataSourceStatistics;
+import no.priv.bang.ukelonn.beans.MethodMetrics;
+import no.priv.bang.ukelonn.beans.Notification;
+import no.priv.bang.ukelonn.beans.NotificationQueueStatistics;
+import no.priv.bang.ukelonn.beans.PerformedTransaction;
+import no.priv.bang.ukelonn.beans.Transaction;
+
+public class InstrumentedUkelonnServiceTest {
+
+    @Test
+    public void testCallsAreCountedAndTimed() {
+        UkelonnServiceProvider provider = mock(UkelonnServiceProvider.class);
+        Account account = new Account(1, "jad", "Jane", "Doe", 0.0);
+        when(provider.getAccount(anyString())).thenReturn(account);
+        InstrumentedUkelonnService ukelonn = createInstrumentedService(provider);
+
+        assertEquals(account, ukelonn.getAccount("jad"));
+        ukelonn.getAccount("jad");
+        ukelonn.getJobs(1);
+        ukelonn.getJobs(1, Integer.MAX_VALUE, 10);
+
+        List<MethodMetrics> metrics = ukelonn.getMethodMetrics();
+        assertThat(metrics).extracting(MethodMetrics::getMethod).containsExactly("getAccount", "getJobs", "getJobsPage");
+        MethodMetrics getAccount = metrics.get(0);
+        assertEquals(2, getAccount.getCalls());
+        assertEquals(0, getAccount.getErrors());
+        assertEquals(MethodTimers.BUCKET_UPPER_BOUNDS.length, getAccount.getBucketCounts().length);
+        assertThat(getAccount.getBucketCounts()[getAccount.getBucketCounts().length - 1]).isLessThanOrEqualTo(2);
+        assertThat(getAccount.getDurationSeconds()).isGreaterThanOrEqualTo(0.0);
+    }
+
+    @Test
+    public void testErrorsAreCounted() {
+        UkelonnServiceProvider provider = mock(UkelonnServiceProvider.class);
+        when(provider.getAccounts()).thenThrow(new UkelonnException("database is down"));
+        InstrumentedUkelonnService ukelonn = createInstrumentedService(provider);
+
+        try {
+            ukelonn.getAccounts();
+            fail("Expected UkelonnException to be rethrown");
+        } catch (UkelonnException e) {
+            // Expected
+        }
+
+        MethodMetrics getAccounts = ukelonn.getMethodMetrics().get(0);
+        assertEquals(1, getAccounts.getCalls());
+        assertEquals(1, getAccounts.getErrors());
+    }
+
+    @Test
+    public void testAsyncCallsAreTimedUntilCompletion() throws Exception {
+        UkelonnServiceProvider provider = mock(UkelonnServiceProvider.class);
+        CompletableFuture<Account> future = new CompletableFuture<>();
+        when(provider.getAccountAsync(anyString())).thenReturn(future);
+        InstrumentedUkelonnService ukelonn = createInstrumentedService(provider);
+
+        CompletableFuture<Account> result = ukelonn.getAccountAsync("jad");
+        assertThat(ukelonn.getMethodMetrics()).isEmpty();
+
+        future.completeExceptionally(new UkelonnException("failed"));
+        assertTrue(result.isCompletedExceptionally());
+        MethodMetrics getAccountAsync = ukelonn.getMethodMetrics().get(0);
+        assertEquals("getAccountAsync", getAccountAsync.getMethod());
+        assertEquals(1, getAccountAsync.getErrors());
+    }
+
+    @Test
+    public void testCancelledAsyncCallsAreNotErrors() throws Exception {
+        UkelonnServiceProvider provider = mock(UkelonnServiceProvider.class);
+        CompletableFuture<List<Notification>> future = new CompletableFuture<>();
+        when(provider.waitForNotificationTo(anyString())).thenReturn(future);
+        InstrumentedUkelonnService ukelonn = createInstrumentedService(provider);
+
+        CompletableFuture<List<Notification>> result = ukelonn.waitForNotificationTo("jad");
+        result.cancel(false);
+
+        MethodMetrics waitForNotificationTo = ukelonn.getMethodMetrics().get(0);
+        assertEquals("waitForNotificationTo", waitForNotificationTo.getMethod());
+        assertEquals(1, waitForNotificationTo.getCalls());
+        assertEquals(0, waitForNotificationTo.getErrors());
+    }
+
+    @Test
+    public void testCallsAreRecordedAsFlightRecorderEvents() {
+        UkelonnServiceProvider provider = mock(UkelonnServiceProvider.class);
+        Account account = new Account(1, "jad", "Jane", "Doe", 0.0);
+        when(provider.getAccount(anyString())).thenReturn(account);
+        when(provider.getJobs(anyInt())).thenReturn(Arrays.asList(new Transaction(), new Transaction()));
+        when(provider.getJobTypes()).thenReturn(Collections.emptyList());
+        when(provider.registerPerformedJobs(anyListOf(PerformedTransaction.class))).thenReturn(account);
+        doAnswer(invocation -> {
+                @SuppressWarnings("unchecked")
+                Consumer<Transaction> consumer = (Consumer<Transaction>) invocation.getArguments()[1];
+                consumer.accept(new Transaction());
+                consumer.accept(new Transaction());
+                consumer.accept(new Transaction());
+                return null;
+            }).when(provider).exportTransactions(anyInt(), any());
+        InstrumentedUkelonnService ukelonn = createInstrumentedService(provider);
+        FlightRecorderEvents events = mock(FlightRecorderEvents.class);
+        Object event = new Object();
+        when(events.beginServiceCall()).thenReturn(event);
+        ukelonn.setFlightRecorderEvents(events);
+
+        ukelonn.getAccount("jad");
+        ukelonn.getJobs(2);
+        ukelonn.getJobTypes();
+        ukelonn.deleteJobsFromAccount(2, Arrays.asList(1, 2));
+        ukelonn.registerPerformedJobs(Arrays.asList(new PerformedTransaction(account, 1, 45.0, new Date()), new PerformedTransaction(account, 1, 45.0, new Date())));
+        ukelonn.exportTransactions(2, transaction -> { });
+
+        verify(events).commitServiceCall(event, "getAccount", 1, 1);
+        verify(events).commitServiceCall(event, "getJobs", 2, 2);
+        verify(events).commitServiceCall(event, "getJobTypes", 0, 0);
+        verify(events).commitServiceCall(event, "deleteJobsFromAccount", 2, 0);
+        verify(events).commitServiceCall(event, "registerPerformedJobs", 1, 2);
+        verify(events).commitServiceCall(event, "exportTransactions", 2, 3);
+    }
+
+    @Test
+    public void testFailedCallsAreNotRecordedAsFlightRecorderEvents() {
+        UkelonnServiceProvider provider = mock(UkelonnServiceProvider.class);
+        when(provider.getAccounts()).thenThrow(new UkelonnException("database is down"));
+        CompletableFuture<Account> future = new CompletableFuture<>();
+        when(provider.getAccountAsync(anyString())).thenReturn(future);
+        InstrumentedUkelonnService ukelonn = createInstrumentedService(provider);
+        FlightRecorderEvents events = mock(FlightRecorderEvents.class);
+        ukelonn.setFlightRecorderEvents(events);
+
+        try {
+            ukelonn.getAccounts();
+            fail("Expected UkelonnException to be rethrown");
+        } catch (UkelonnException e) {
+            // Expected
+        }
+
+        ukelonn.getAccountAsync("jad");
+        future.completeExceptionally(new UkelonnException("failed"));
+
+        verify(events, never()).commitServiceCall(any(), anyString(), anyInt(), anyInt());
+    }
+
+    @Test
+    public void testRegisterPerformedJobIsRecordedAfterTheJobIsCommitted() throws Exception {
+        UkelonnServiceProvider provider = getUkelonnServiceSingleton();
+        UserManagementService useradmin = mock(UserManagementService.class);
+        when(useradmin.getUser(anyString())).thenReturn(new no.priv.bang.osgiservice.users.User(1, "jad", "jad@gmail.com", "Jane", "Doe"));
+        provider.setUserAdmin(useradmin);
+        InstrumentedUkelonnService ukelonn = createInstrumentedService(provider);
+        FlightRecorderEvents events = mock(FlightRecorderEvents.class);
+        Object event = new Object();
+        when(events.beginServiceCall()).thenReturn(event);
+        ukelonn.setFlightRecorderEvents(events);
+        try {
+            Account account = ukelonn.getAccount("jad");
+            doAnswer(invocation -> {
+                    // The job must be visible to other connections when the event is committed
+                    assertEquals(account.getBalance() + 45.0, provider.getAccount("jad").getBalance(), 0.001);
+                    return null;
+                }).when(events).commitServiceCall(event, "registerPerformedJob", account.getAccountId(), 1);
+
+            ukelonn.registerPerformedJob(new PerformedTransaction(account, provider.getJobTypes().get(0).getId(), 45.0, new Date()));
+
+            verify(events).commitServiceCall(event, "registerPerformedJob", account.getAccountId(), 1);
+        } finally {
+            restoreTestDatabase();
+        }
+    }
+
+    @Test
+    public void testIsFailure() {
+        assertFalse(MethodTimers.isFailure(null));
+        assertFalse(MethodTimers.isFailure(new CancellationException()));
+        assertFalse(MethodTimers.isFailure(new CompletionException(new CancellationException())));
+        assertTrue(MethodTimers.isFailure(new CompletionException(new UkelonnException("failed"))));
+        assertTrue(MethodTimers.isFailure(new UkelonnException("failed")));
+    }
+
+    @Test
+    public void testBuckets() {
+        MethodTimers timers = new MethodTimers();
+        timers.record("slow", TimeUnit.SECONDS.toNanos(30), false);
+        timers.record("slow", TimeUnit.MICROSECONDS.toNanos(100), false);
+        timers.record("slow", TimeUnit.MILLISECONDS.toNanos(2), false);
+
+        MethodMetrics slow = timers.getMetrics().get(0);
+        assertEquals(3, slow.getCalls());
+        assertEquals(1, slow.getBucketCounts()[0]);
+        assertEquals(2, slow.getBucketCounts()[2]);
+        assertEquals(2, slow.getBucketCounts()[slow.getBucketCounts().length - 1]);
+        assertEquals(30.0021, slow.getDurationSeconds(), 0.00001);
+    }
+
+    @Test
+    public void testDelegatedMethodsAreNotTimed() {
+        UkelonnServiceProvider provider = mock(UkelonnServiceProvider.class);
+        NotificationQueueStatistics statistics = new NotificationQueueStatistics(1, 2, 0, 0, 0, 0);
+        when(provider.getNotificationQueueStatistics()).thenReturn(statistics);
+        DataSourceStatistics datasourceStatistics = new DataSourceStatistics();
+        when(provider.getDataSourceStatistics()).thenReturn(datasourceStatistics);
+        when(provider.getTransactionTypeCacheHits()).thenReturn(5L);
+        when(provider.getTransactionTypeCacheMisses()).thenReturn(2L);
+        InstrumentedUkelonnService ukelonn = createInstrumentedService(provider);
+
+        assertEquals(statistics, ukelonn.getNotificationQueueStatistics());
+        assertEquals(datasourceStatistics, ukelonn.getDataSourceStatistics());
+        assertEquals(5, ukelonn.getTransactionTypeCacheHits());
+        assertEquals(2, ukelonn.getTransactionTypeCacheMisses());
+        ukelonn.getDataSource();
+        ukelonn.getLogservice();
+        ukelonn.getMessage();
+        ukelonn.invalidateCachedUsers();
+        ukelonn.invalidateCachedData();
+
+        verify(provider).invalidateCachedUsers();
+        verify(provider).invalidateCachedData();
+        assertThat(ukelonn.getMethodMetrics()).isEmpty();
+    }
+
+    private InstrumentedUkelonnService createInstrumentedService(UkelonnServiceProvider provider) {
+        InstrumentedUkelonnService ukelonn = new InstrumentedUkelonnService();
+        ukelonn.setUkelonnService(provider);
+        ukelonn.activate();
+        return ukelonn;
+    }
+
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2019 Steinar Bang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package no.priv.bang.ukelonn.backend;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class IntLongHashMapTest {
+
+    @Test
+    public void testPutAndGet() {
+        IntLongHashMap map = new IntLongHashMap();
+        assertFalse(map.containsKey(1));
+        assertEquals(-1, map.get(1, -1));
+
+        map.put(1, 15000);
+        map.put(1, 20000);
+
+        assertTrue(map.containsKey(1));
+        assertEquals(20000, map.get(1, -1));
+        assertEquals(1, map.size());
+    }
+
+    @Test
+    public void testPutIfAbsent() {
+        IntLongHashMap map = new IntLongHashMap();
+        assertTrue(map.putIfAbsent(1, 100));
+        assertFalse(map.putIfAbsent(1, 200));
+        assertEquals(100, map.get(1, -1));
+    }
+
+    @Test
+    public void testAddTo() {
+        IntLongHashMap map = new IntLongHashMap();
+        assertEquals(4500, map.addTo(1, 4500));
+        assertEquals(-500, map.addTo(1, -5000));
+        assertEquals(-500, map.get(1, 0));
+    }
+
+    @Test
+    public void testGrowsAndKeepsAllEntries() {
+        IntLongHashMap map = new IntLongHashMap(2);
+        for (int key = -1000; key < 10000; ++key) {
+            map.put(key, key * 10L);
+        }
+
+        assertEquals(11000, map.size());
+        for (int key = -1000; key < 10000; ++key) {
+            assertEquals(key * 10L, map.get(key, Long.MIN_VALUE));
+        }
+
+        assertFalse(map.containsKey(10000));
+    }
+
+    @Test
+    public void testTableSizeFor() {
+        assertEquals(16, IntLongHashMap.tableSizeFor(0));
+        assertEquals(16, IntLongHashMap.tableSizeFor(8));
+        assertEquals(32, IntLongHashMap.tableSizeFor(9));
+    }
+
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2019 Steinar Bang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package no.priv.bang.ukelonn.backend;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+import static org.mockito.internal.util.reflection.Whitebox.*;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import no.priv.bang.osgiservice.users.UserManagementService;
+
+/*
+ * Unit tests for {@link KarafGenerateDatasetCommand}.
+ */
+public class KarafGenerateDatasetCommandTest {
+
+    @Test
+    public void testExecute() throws Exception {
+        KarafGenerateDatasetCommand action = new KarafGenerateDatasetCommand();
+        UkelonnServiceProvider ukelonn = new UkelonnServiceProvider();
+        ukelonn.setDataSource(DatasetGeneratorTest.createEmptyDatabase());
+        ukelonn.setUserAdmin(mock(UserManagementService.class));
+        ukelonn.activate();
+        InstrumentedUkelonnService admin = new InstrumentedUkelonnService();
+        admin.setUkelonnService(ukelonn);
+
+        // Fake OSGi service injection and option parsing
+        setInternalState(action, "ukelonn", ukelonn);
+        setInternalState(action, "admin", admin);
+        setInternalState(action, "users", 2);
+        setInternalState(action, "transactionsPerAccount", 20);
+
+        // Run the code under test
+        Object result = action.execute();
+
+        // Verify expected results
+        assertNull(result);
+        assertEquals(2, ukelonn.getAccounts().size());
+        assertThat(ukelonn.getJobs(ukelonn.getAccounts().get(0).getAccountId())).isNotEmpty();
+    }
+
+    @Test
+    public void testExecuteWithAccountLedger() throws Exception {
+        KarafGenerateDatasetCommand action = new KarafGenerateDatasetCommand();
+        UkelonnServiceProvider ukelonn = new UkelonnServiceProvider();
+        ukelonn.setDataSource(DatasetGeneratorTest.createEmptyDatabase());
+        ukelonn.setUserAdmin(mock(UserManagementService.class));
+        Map<String, Object> config = new HashMap<>();
+        config.put(UkelonnServiceProvider.ACCOUNT_LEDGER, "true");
+        ukelonn.activate(config);
+        InstrumentedUkelonnService admin = new InstrumentedUkelonnService();
+        admin.setUkelonnService(ukelonn);
+        try {
+            assertThat(ukelonn.getAccounts()).isEmpty();
+            assertThat(ukelonn.getJobTypes()).isEmpty();
+            assertThat(ukelonn.getPaymenttypes()).isEmpty();
+
+            // Fake OSGi service injection and option parsing
+            setInternalState(action, "ukelonn", ukelonn);
+            setInternalState(action, "admin", admin);
+            setInternalState(action, "users", 2);
+            setInternalState(action, "transactionsPerAccount", 20);
+
+            // Run the code under test
+            action.execute();
+
+            // Verify that the generated data is seen through the ledger and the caches
+            assertEquals(2, ukelonn.getAccounts().size());
+            assertThat(ukelonn.getAccounts().get(0).getUsername()).startsWith("generated");
+            assertEquals(8, ukelonn.getJobTypes().size());
+            assertEquals(2, ukelonn.getPaymenttypes().size());
+        } finally {
+            ukelonn.deactivate();
+        }
+    }
+
+    @Test
+    public void testFormat() {
+        GeneratedDataset dataset = new GeneratedDataset(Collections.emptyList(), false, Collections.emptyList(), Collections.emptyList(), Collections.emptyList(), 1200);
+
+        String output = KarafGenerateDatasetCommand.format(dataset);
+
+        assertThat(output).contains("1200 transactions").contains("no users table").doesNotContain("Restart");
+    }
+
+}
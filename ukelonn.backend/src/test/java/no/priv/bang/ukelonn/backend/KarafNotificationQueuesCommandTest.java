@@ -0,0 +1,57 @@
+/*
+ * Copyright 2019 Steinar Bang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package no.priv.bang.ukelonn.backend;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.*;
+import static org.mockito.internal.util.reflection.Whitebox.*;
+
+import org.junit.Test;
+
+import no.priv.bang.ukelonn.beans.Notification;
+import no.priv.bang.ukelonn.beans.NotificationQueueStatistics;
+
+/*
+ * Unit tests for {@link KarafNotificationQueuesCommand}.
+ */
+public class KarafNotificationQueuesCommandTest {
+
+    @Test
+    public void testExecute() throws Exception {
+        KarafNotificationQueuesCommand action = new KarafNotificationQueuesCommand();
+        UkelonnServiceProvider ukelonn = new UkelonnServiceProvider();
+        ukelonn.notificationTo("jad", new Notification("Ukelønn", "150 kroner betalt til konto"));
+        InstrumentedUkelonnService admin = new InstrumentedUkelonnService();
+        admin.setUkelonnService(ukelonn);
+
+        // Fake OSGi service injection
+        setInternalState(action, "admin", admin);
+
+        // Run the code under test
+        Object result = action.execute();
+
+        // Verify expected results
+        assertNull(result);
+        assertEquals(1, ukelonn.getNotificationQueueStatistics().getQueuedNotifications());
+    }
+
+    @Test
+    public void testFormat() {
+        String output = KarafNotificationQueuesCommand.format(new NotificationQueueStatistics(2, 3, 4, 5, 6, 7));
+        assertThat(output).contains("Queued notifications: 3").contains("Evicted users: 7");
+    }
+
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2019 Steinar Bang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package no.priv.bang.ukelonn.backend;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.*;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.Test;
+
+import no.priv.bang.ukelonn.beans.Notification;
+
+public class NotificationChannelTest {
+
+    @Test
+    public void testQueuedNotificationIsDeliveredAtOnce() {
+        NotificationChannel channel = new NotificationChannel(new NotificationStore());
+        Notification utbetalt = new Notification("Ukelønn", "150 kroner betalt til konto");
+        channel.send(utbetalt);
+
+        CompletableFuture<List<Notification>> waiting = channel.waitForNotification();
+
+        assertTrue(waiting.isDone());
+        assertEquals(utbetalt, waiting.getNow(null).get(0));
+        assertThat(channel.poll()).isEmpty();
+    }
+
+    @Test
+    public void testNotificationIsHandedToWaitingClient() {
+        NotificationChannel channel = new NotificationChannel(new NotificationStore());
+        CompletableFuture<List<Notification>> waiting = channel.waitForNotification();
+        assertFalse(waiting.isDone());
+        assertEquals(1, channel.numberOfWaitingClients());
+
+        Notification utbetalt = new Notification("Ukelønn", "150 kroner betalt til konto");
+        channel.send(utbetalt);
+
+        assertEquals(utbetalt, waiting.getNow(null).get(0));
+        assertThat(channel.poll()).isEmpty();
+        assertEquals(0, channel.numberOfWaitingClients());
+    }
+
+    @Test
+    public void testNotificationIsNotHandedToClientThatGaveUp() {
+        NotificationChannel channel = new NotificationChannel(new NotificationStore());
+        CompletableFuture<List<Notification>> gaveUp = channel.waitForNotification();
+        gaveUp.cancel(false);
+        CompletableFuture<List<Notification>> waiting = channel.waitForNotification();
+        assertEquals(1, channel.numberOfWaitingClients());
+
+        Notification utbetalt = new Notification("Ukelønn", "150 kroner betalt til konto");
+        channel.send(utbetalt);
+
+        assertEquals(utbetalt, waiting.getNow(null).get(0));
+    }
+
+    @Test
+    public void testNotificationIsQueuedWhenAllClientsGaveUp() {
+        NotificationChannel channel = new NotificationChannel(new NotificationStore());
+        channel.waitForNotification().cancel(false);
+
+        Notification utbetalt = new Notification("Ukelønn", "150 kroner betalt til konto");
+        channel.send(utbetalt);
+
+        assertEquals(utbetalt, channel.poll().get(0));
+    }
+
+    @Test
+    public void testRetiredChannelRefusesNotificationsAndClients() {
+        NotificationChannel channel = new NotificationChannel(new NotificationStore());
+
+        assertTrue(channel.retireIfIdle(Long.MAX_VALUE));
+
+        assertFalse(channel.send(new Notification("Ukelønn", "150 kroner betalt til konto")));
+        assertNull(channel.waitForNotification());
+    }
+
+    @Test
+    public void testChannelWithWaitingClientIsNotRetired() {
+        NotificationChannel channel = new NotificationChannel(new NotificationStore());
+        channel.waitForNotification();
+
+        assertFalse(channel.retireIfIdle(Long.MAX_VALUE));
+    }
+
+}
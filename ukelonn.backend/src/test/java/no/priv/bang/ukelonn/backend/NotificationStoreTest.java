@@ -0,0 +1,175 @@
+/*
+ * Copyright 2019 Steinar Bang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package no.priv.bang.ukelonn.backend;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+import no.priv.bang.ukelonn.beans.Notification;
+import no.priv.bang.ukelonn.beans.NotificationQueueStatistics;
+
+public class NotificationStoreTest {
+
+    private static final long TIME_TO_LIVE = 1000;
+    private static final long IDLE_TIME = 100;
+    private static final int MAX_CHANNELS = 3;
+
+    private final AtomicLong clock = new AtomicLong(0);
+    private final NotificationStore store = new NotificationStore(2, TIME_TO_LIVE, IDLE_TIME, MAX_CHANNELS, clock::get);
+
+    @Test
+    public void testOldestNotificationIsDroppedWhenQueueIsFull() {
+        store.send("jad", new Notification("Ukelønn", "1"));
+        store.send("jad", new Notification("Ukelønn", "2"));
+        store.send("jad", new Notification("Ukelønn", "3"));
+
+        assertEquals("2", store.poll("jad").get(0).getMessage());
+        assertEquals("3", store.poll("jad").get(0).getMessage());
+        assertEquals(1, store.getStatistics().getDroppedNotifications());
+    }
+
+    @Test
+    public void testDuplicateNotificationsAreCoalesced() {
+        store.send("jad", new Notification("Ukelønn", "150 kroner betalt til konto"));
+        store.send("jad", new Notification("Ukelønn", "150 kroner betalt til konto"));
+
+        NotificationQueueStatistics statistics = store.getStatistics();
+        assertEquals(1, statistics.getQueuedNotifications());
+        assertEquals(1, statistics.getCoalescedNotifications());
+    }
+
+    @Test
+    public void testNotificationsExpire() {
+        store.send("jad", new Notification("Ukelønn", "150 kroner betalt til konto"));
+        clock.addAndGet(TIME_TO_LIVE);
+
+        assertThat(store.poll("jad")).isEmpty();
+        assertEquals(1, store.getStatistics().getExpiredNotifications());
+    }
+
+    @Test
+    public void testPollsDontMakeChannels() {
+        assertThat(store.poll("nosuchuser")).isEmpty();
+        CompletableFuture<List<Notification>> waiting = store.waitForNotification("nosuchuser");
+
+        assertTrue(waiting.isDone());
+        assertThat(waiting.getNow(null)).isEmpty();
+        assertEquals(0, store.getStatistics().getUsers());
+    }
+
+    @Test
+    public void testIdleUsersAreEvicted() {
+        store.send("nosuchuser", new Notification("Ukelønn", "Velkommen"));
+        store.poll("nosuchuser");
+        store.send("jad", new Notification("Ukelønn", "150 kroner betalt til konto"));
+        store.send("jod", new Notification("Ukelønn", "Velkommen"));
+        store.poll("jod");
+        CompletableFuture<?> waitingForJod = store.waitForNotification("jod");
+        assertEquals(3, store.getStatistics().getUsers());
+
+        clock.addAndGet(IDLE_TIME + 1);
+        store.evictIdleUsers();
+
+        // Users with queued notifications or waiting clients are kept
+        NotificationQueueStatistics statistics = store.getStatistics();
+        assertEquals(2, statistics.getUsers());
+        assertEquals(1, statistics.getEvictedUsers());
+
+        waitingForJod.cancel(false);
+        clock.addAndGet(TIME_TO_LIVE);
+        store.evictIdleUsers();
+        assertEquals(0, store.getStatistics().getUsers());
+    }
+
+    @Test
+    public void testIdleUsersAreEvictedWhenStoreIsUsed() {
+        store.send("nosuchuser", new Notification("Ukelønn", "Velkommen"));
+        store.poll("nosuchuser");
+        clock.addAndGet(NotificationStore.SWEEP_INTERVAL);
+
+        store.send("jad", new Notification("Ukelønn", "Velkommen"));
+
+        assertEquals(1, store.getStatistics().getEvictedUsers());
+        assertEquals(1, store.getStatistics().getUsers());
+    }
+
+    @Test
+    public void testNotificationToEvictedUserIsDeliveredToNewChannel() {
+        store.send("jad", new Notification("Ukelønn", "Velkommen"));
+        store.poll("jad");
+        clock.addAndGet(IDLE_TIME + 1);
+        store.evictIdleUsers();
+
+        store.send("jad", new Notification("Ukelønn", "150 kroner betalt til konto"));
+
+        assertEquals("150 kroner betalt til konto", store.waitForNotification("jad").getNow(null).get(0).getMessage());
+    }
+
+    @Test
+    public void testNoChannelsAreMadeForNewUsersWhenStoreIsFull() {
+        for (String username : Arrays.asList("jad", "jod", "nosuchuser")) {
+            store.send(username, new Notification("Ukelønn", "Velkommen"));
+            store.poll(username);
+        }
+
+        store.send("anotheruser", new Notification("Ukelønn", "150 kroner betalt til konto"));
+        assertThat(store.poll("anotheruser")).isEmpty();
+        // Long polls get their answer right away, rather than waiting forever
+        CompletableFuture<List<Notification>> waiting = store.waitForNotification("anotheruser");
+        assertThat(waiting.getNow(null)).isEmpty();
+        NotificationQueueStatistics statistics = store.getStatistics();
+        assertEquals(MAX_CHANNELS, statistics.getUsers());
+        assertEquals(1, statistics.getDroppedNotifications());
+
+        // Existing users still get their notifications
+        store.send("jad", new Notification("Ukelønn", "150 kroner betalt til konto"));
+        assertThat(store.poll("jad")).hasSize(1);
+
+        // New users get channels when idle users have been evicted
+        clock.addAndGet(IDLE_TIME + 1);
+        store.evictIdleUsers();
+        store.send("anotheruser", new Notification("Ukelønn", "150 kroner betalt til konto"));
+        assertThat(store.poll("anotheruser")).hasSize(1);
+    }
+
+    @Test
+    public void testDeliveriesAreRecordedAsFlightRecorderEvents() {
+        FlightRecorderEvents events = mock(FlightRecorderEvents.class);
+        store.setFlightRecorderEvents(events);
+        store.send("jad", new Notification("Ukelønn", "1"));
+        store.send("jad", new Notification("Ukelønn", "2"));
+        clock.addAndGet(5);
+
+        store.poll("jad");
+        store.waitForNotification("jad");
+        CompletableFuture<?> waiting = store.waitForNotification("jad");
+        store.send("jad", new Notification("Ukelønn", "3"));
+
+        assertTrue(waiting.isDone());
+        verify(events).notificationDelivered(2, 5);
+        verify(events).notificationDelivered(1, 5);
+        verify(events).notificationDelivered(0, 0);
+    }
+
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2019 Steinar Bang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package no.priv.bang.ukelonn.backend;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.*;
+
+import java.util.Collections;
+
+import org.junit.Test;
+
+import no.priv.bang.ukelonn.UkelonnException;
+
+public class SqlStatementRegistryTest {
+
+    @Test
+    public void testLoadAllTemplates() {
+        SqlStatementRegistry registry = new SqlStatementRegistry();
+        for (String templateName : SqlStatementRegistry.TEMPLATES.keySet()) {
+            SqlTemplate template = registry.get(templateName);
+            assertEquals(templateName, template.getName());
+            assertThat(template.getSql()).isNotEmpty().doesNotContain("%d");
+        }
+    }
+
+    @Test
+    public void testJobsAndPaymentsTemplatesTakeAccountIdAndLimit() {
+        SqlStatementRegistry registry = new SqlStatementRegistry();
+        assertEquals(3, registry.get(SqlStatementRegistry.JOBS_LAST_N).getParameterCount());
+        assertEquals(3, registry.get(SqlStatementRegistry.PAYMENTS_LAST_N).getParameterCount());
+    }
+
+    @Test
+    public void testSameSqlReturnedOnEveryCall() {
+        SqlStatementRegistry registry = new SqlStatementRegistry();
+        assertSame(registry.getSql(SqlStatementRegistry.JOBS_LAST_N), registry.getSql(SqlStatementRegistry.JOBS_LAST_N));
+    }
+
+    @Test
+    public void testFindTemplateName() {
+        SqlStatementRegistry registry = new SqlStatementRegistry();
+        assertEquals(SqlStatementRegistry.JOBS_LAST_N, registry.findTemplateName(registry.getSql(SqlStatementRegistry.JOBS_LAST_N)));
+        assertNull(registry.findTemplateName("select * from accounts"));
+    }
+
+    @Test(expected=UkelonnException.class)
+    public void testMissingResourceFailsWhenCreatingRegistry() {
+        new SqlStatementRegistry(Collections.singletonMap("finnesikke", 0));
+        fail("Should never get here");
+    }
+
+    @Test(expected=UkelonnException.class)
+    public void testWrongNumberOfBindParametersFailsWhenCreatingRegistry() {
+        new SqlStatementRegistry(Collections.singletonMap(SqlStatementRegistry.JOBS_LAST_N, 2));
+        fail("Should never get here");
+    }
+
+    @Test(expected=UkelonnException.class)
+    public void testGetUnknownTemplate() {
+        SqlStatementRegistry registry = new SqlStatementRegistry();
+        registry.get("finnesikke");
+        fail("Should never get here");
+    }
+
+    @Test
+    public void testCountParameters() {
+        assertEquals(0, SqlTemplate.countParameters("select * from accounts"));
+        assertEquals(1, SqlTemplate.countParameters("select * from accounts where username=?"));
+        assertEquals(2, SqlTemplate.countParameters("select * from transactions where account_id=? fetch next ? rows only"));
+        assertEquals(1, SqlTemplate.countParameters("select * from users where username=? and firstname<>'?'"));
+        assertEquals(0, SqlTemplate.countParameters("select \"?\" from users"));
+    }
+
+    @Test
+    public void testToString() {
+        SqlTemplate template = new SqlTemplate("foo", "select * from accounts where account_id=?");
+        assertThat(template.toString()).contains("foo").contains("parameterCount=1");
+    }
+
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2019 Steinar Bang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package no.priv.bang.ukelonn.backend;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+import javax.sql.DataSource;
+
+import org.junit.Test;
+
+import no.priv.bang.osgiservice.users.UserManagementService;
+import no.priv.bang.ukelonn.trace.RequestTrace;
+
+public class TracedConnectionTest {
+
+    @Test
+    public void testStatementsAreAddedToTrace() throws Exception {
+        DataSource datasource = DatasetGeneratorTest.createEmptyDatabase();
+        RequestTrace trace = new RequestTrace();
+
+        try(Connection connection = TracedConnection.wrap(datasource.getConnection(), trace, new SqlStatementRegistry())) {
+            try(PreparedStatement statement = connection.prepareStatement("select count(*) from accounts where account_id > ?")) {
+                statement.setInt(1, 0);
+                try(ResultSet results = statement.executeQuery()) {
+                    assertTrue(results.next());
+                }
+            }
+
+            try(Statement statement = connection.createStatement()) {
+                statement.execute("select count(*) from transactions");
+            }
+        }
+
+        List<RequestTrace.Phase> phases = trace.getPhases();
+        assertEquals(2, phases.size());
+        assertEquals(TracedConnection.PHASE, phases.get(0).getName());
+        assertEquals("select count(*) from accounts where account_id > ?", phases.get(0).getDescription());
+        assertEquals("select count(*) from transactions", phases.get(1).getDescription());
+    }
+
+    @Test
+    public void testStatementsFromTemplatesAreDescribedByTemplateName() throws Exception {
+        DataSource datasource = DatasetGeneratorTest.createEmptyDatabase();
+        RequestTrace trace = new RequestTrace();
+        SqlStatementRegistry sqlStatements = new SqlStatementRegistry();
+
+        try(Connection connection = TracedConnection.wrap(datasource.getConnection(), trace, sqlStatements)) {
+            try(PreparedStatement statement = connection.prepareStatement(sqlStatements.getSql(SqlStatementRegistry.TRANSACTIONS_ALL))) {
+                statement.setInt(1, 1);
+                try(ResultSet results = statement.executeQuery()) {
+                    assertFalse(results.next());
+                }
+            }
+        }
+
+        List<RequestTrace.Phase> phases = trace.getPhases();
+        assertEquals(1, phases.size());
+        assertEquals(SqlStatementRegistry.TRANSACTIONS_ALL, phases.get(0).getDescription());
+    }
+
+    @Test
+    public void testFailedStatementIsAddedToTrace() throws Exception {
+        DataSource datasource = DatasetGeneratorTest.createEmptyDatabase();
+        RequestTrace trace = new RequestTrace();
+
+        try(Connection connection = TracedConnection.wrap(datasource.getConnection(), trace, new SqlStatementRegistry())) {
+            try(Statement statement = connection.createStatement()) {
+                statement.executeQuery("select * from no_such_table");
+                fail("Expected an SQLException");
+            }
+        } catch (SQLException e) {
+            assertThat(e.getMessage()).containsIgnoringCase("NO_SUCH_TABLE");
+        }
+
+        assertEquals(1, trace.getPhases().size());
+    }
+
+    @Test
+    public void testProviderTracesStatementsOfCurrentRequest() throws Exception {
+        UkelonnServiceProvider ukelonn = new UkelonnServiceProvider();
+        ukelonn.setDataSource(DatasetGeneratorTest.createEmptyDatabase());
+        ukelonn.setUserAdmin(mock(UserManagementService.class));
+        ukelonn.activate();
+        try {
+            RequestTrace trace = new RequestTrace();
+            RequestTrace previous = trace.bind();
+            try {
+                ukelonn.earningsSumOverYear("jad");
+                assertThat(trace.getPhases()).hasSize(1);
+
+                // The trace is passed on to the thread running the async call
+                ukelonn.earningsSumOverYearAsync("jad").get();
+                assertThat(trace.getPhases()).hasSize(2);
+            } finally {
+                RequestTrace.restore(previous);
+            }
+        } finally {
+            ukelonn.deactivate();
+        }
+    }
+
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2019 Steinar Bang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package no.priv.bang.ukelonn.backend;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.*;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import no.priv.bang.ukelonn.beans.TransactionType;
+
+public class TransactionTypeCacheTest {
+
+    private static final List<TransactionType> JOBTYPES = Arrays.asList(new TransactionType(1, "Støvsuging", 45.0, true, false));
+
+    @Test
+    public void testGetIsCachedUntilInvalidated() throws Exception {
+        TransactionTypeCache cache = new TransactionTypeCache();
+        AtomicInteger loads = new AtomicInteger();
+        TransactionTypeCache.Loader loader = () -> { loads.incrementAndGet(); return JOBTYPES; };
+
+        assertEquals(JOBTYPES, cache.get(loader));
+        assertEquals(JOBTYPES, cache.get(loader));
+        assertEquals(1, loads.get());
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+
+        cache.invalidate();
+        cache.get(loader);
+        assertEquals(2, loads.get());
+        assertEquals(2, cache.getMisses());
+    }
+
+    @Test
+    public void testListLoadedDuringInvalidationIsNotCached() throws Exception {
+        TransactionTypeCache cache = new TransactionTypeCache();
+        AtomicInteger loads = new AtomicInteger();
+
+        // Invalidate while the first load is in progress
+        List<TransactionType> firstLoad = cache.get(() -> { loads.incrementAndGet(); cache.invalidate(); return JOBTYPES; });
+        assertEquals(JOBTYPES, firstLoad);
+
+        cache.get(() -> { loads.incrementAndGet(); return JOBTYPES; });
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    public void testFailedLoadIsNotCached() throws Exception {
+        TransactionTypeCache cache = new TransactionTypeCache();
+        try {
+            cache.get(() -> { throw new SQLException("database is down"); });
+            fail("Should never get here");
+        } catch (SQLException e) {
+            // Expected
+        }
+
+        assertThat(cache.get(() -> JOBTYPES)).isEqualTo(JOBTYPES);
+        assertEquals(2, cache.getMisses());
+    }
+
+    @Test(expected=UnsupportedOperationException.class)
+    public void testCachedListCanNotBeModified() throws Exception {
+        TransactionTypeCache cache = new TransactionTypeCache();
+        cache.get(() -> new ArrayList<>(JOBTYPES)).add(new TransactionType(2, "Vasking", 50.0, true, false));
+    }
+
+}
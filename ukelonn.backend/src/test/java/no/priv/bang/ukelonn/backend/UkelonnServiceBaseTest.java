@@ -18,6 +18,8 @@ package no.priv.bang.ukelonn.backend;
 import static org.junit.Assert.*;
 
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
 import org.junit.Test;
 
@@ -38,11 +40,41 @@ public class UkelonnServiceBaseTest {
     public void testDefaults() {
         UkelonnService ukelonn = new UkelonnServiceBase() {
 
+                @Override
+                public CompletableFuture<Account> getAccountAsync(String username) {
+                    return null;
+                }
+
+                @Override
+                public CompletableFuture<List<Transaction>> getJobsAsync(int accountId, int beforeTransactionId, int limit) {
+                    return null;
+                }
+
+                @Override
+                public CompletableFuture<List<Transaction>> getPaymentsAsync(int accountId, int beforeTransactionId, int limit) {
+                    return null;
+                }
+
+                @Override
+                public CompletableFuture<List<SumYear>> earningsSumOverYearAsync(String username) {
+                    return null;
+                }
+
+                @Override
+                public CompletableFuture<List<SumYearMonth>> earningsSumOverMonthAsync(String username) {
+                    return null;
+                }
+
                 @Override
                 public Account registerPerformedJob(PerformedTransaction job) {
                     return null;
                 }
 
+                @Override
+                public Account registerPerformedJobs(List<PerformedTransaction> jobs) {
+                    return null;
+                }
+
                 @Override
                 public Account registerPayment(PerformedTransaction payment) {
                     return null;
@@ -63,16 +95,30 @@ public class UkelonnServiceBaseTest {
                     return null;
                 }
 
+                @Override
+                public void exportTransactions(int accountId, Consumer<Transaction> consumer) {
+                }
+
                 @Override
                 public List<Transaction> getPayments(int accountId) {
                     return null;
                 }
 
+                @Override
+                public List<Transaction> getPayments(int accountId, int beforeTransactionId, int limit) {
+                    return null;
+                }
+
                 @Override
                 public List<Transaction> getJobs(int accountId) {
                     return null;
                 }
 
+                @Override
+                public List<Transaction> getJobs(int accountId, int beforeTransactionId, int limit) {
+                    return null;
+                }
+
                 @Override
                 public List<TransactionType> getJobTypes() {
                     return null;
@@ -88,6 +134,11 @@ public class UkelonnServiceBaseTest {
                     return null;
                 }
 
+                @Override
+                public Account getAccountById(int accountId) {
+                    return null;
+                }
+
                 @Override
                 public List<TransactionType> createPaymenttype(TransactionType paymenttype) {
                     return null;
@@ -113,6 +164,11 @@ public class UkelonnServiceBaseTest {
                     // Empty method
                 }
 
+                @Override
+                public CompletableFuture<List<Notification>> waitForNotificationTo(String username) {
+                    return null;
+                }
+
                 @Override
                 public List<Transaction> updateJob(UpdatedTransaction editedJob) {
                     return null;
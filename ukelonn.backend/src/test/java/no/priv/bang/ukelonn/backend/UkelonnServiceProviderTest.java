@@ -22,13 +22,20 @@ import static org.mockito.Matchers.*;
 import static org.mockito.Mockito.*;
 
 import java.sql.Connection;
+import java.sql.DatabaseMetaData;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 import java.util.stream.Collectors;
 
 import javax.sql.DataSource;
@@ -42,6 +49,7 @@ import no.priv.bang.authservice.users.UserManagementServiceProvider;
 import no.priv.bang.osgi.service.mocks.logservice.MockLogService;
 import no.priv.bang.osgiservice.users.UserAndPasswords;
 import no.priv.bang.osgiservice.users.UserManagementService;
+import no.priv.bang.ukelonn.UkelonnBadRequestException;
 import no.priv.bang.ukelonn.UkelonnException;
 import no.priv.bang.ukelonn.UkelonnService;
 import no.priv.bang.ukelonn.beans.Account;
@@ -78,6 +86,32 @@ public class UkelonnServiceProviderTest {
         assertThat(accounts.size()).isGreaterThan(1);
     }
 
+    @Test
+    public void testGetAccountsLooksUpEachUserOnce() {
+        UkelonnServiceProvider provider = getUkelonnServiceSingleton();
+        UserManagementService useradmin = mock(UserManagementService.class);
+        when(useradmin.getUser(anyString())).thenAnswer(invocation -> {
+                String username = (String) invocation.getArguments()[0];
+                return new no.priv.bang.osgiservice.users.User(1, username, username + "@gmail.com", "First " + username, "Last " + username);
+            });
+        provider.setUserAdmin(useradmin);
+
+        List<Account> accounts = provider.getAccounts();
+        String username = accounts.get(0).getUsername();
+        assertThat(accounts.get(0).getFirstName()).isEqualTo("First " + username);
+        verify(useradmin, times(1)).getUser(username);
+        verify(useradmin, never()).getUsers();
+
+        // Second call should be served from the cache
+        provider.getAccounts();
+        verify(useradmin, times(1)).getUser(username);
+
+        // After invalidation the users are fetched again
+        provider.invalidateCachedUsers();
+        provider.getAccounts();
+        verify(useradmin, times(2)).getUser(username);
+    }
+
     /**
      * Corner case test: Tests what happens to the {@link CommonDatabaseMethods#getAccounts(Class)}
      * method when a resultset that throws SQLException is returned from the
@@ -156,15 +190,111 @@ public class UkelonnServiceProviderTest {
         assertEquals(10, payments.size());
     }
 
+    @Test
+    public void testGetJobsPageByPage() {
+        UkelonnServiceProvider provider = getUkelonnServiceSingleton();
+        UserManagementService useradmin = mock(UserManagementService.class);
+        when(useradmin.getUser(anyString())).thenReturn(new no.priv.bang.osgiservice.users.User(1, "jad", "jad@gmail.com", "Jane", "Doe"));
+        provider.setUserAdmin(useradmin);
+        Account account = provider.getAccount("jad");
+        List<Integer> lastTenJobs = provider.getJobs(account.getAccountId()).stream().map(Transaction::getId).collect(Collectors.toList());
+
+        List<Integer> firstPage = provider.getJobs(account.getAccountId(), Integer.MAX_VALUE, 5).stream().map(Transaction::getId).collect(Collectors.toList());
+        assertEquals(5, firstPage.size());
+        int oldestJobOnFirstPage = Collections.min(firstPage);
+        List<Integer> secondPage = provider.getJobs(account.getAccountId(), oldestJobOnFirstPage, 5).stream().map(Transaction::getId).collect(Collectors.toList());
+        assertEquals(5, secondPage.size());
+        assertThat(Collections.max(secondPage)).isLessThan(oldestJobOnFirstPage);
+
+        // The two pages together are the same jobs as the default list
+        List<Integer> bothPages = new ArrayList<>(firstPage);
+        bothPages.addAll(secondPage);
+        assertThat(lastTenJobs).hasSize(10).containsOnlyElementsOf(bothPages);
+
+        // Paging past the oldest job gives an empty list
+        List<Transaction> pastOldestJob = provider.getJobs(account.getAccountId(), 0, 5);
+        assertThat(pastOldestJob).isEmpty();
+    }
+
+    @Test
+    public void testGetPaymentsPageByPage() {
+        UkelonnServiceProvider provider = getUkelonnServiceSingleton();
+        UserManagementService useradmin = mock(UserManagementService.class);
+        when(useradmin.getUser(anyString())).thenReturn(new no.priv.bang.osgiservice.users.User(1, "jad", "jad@gmail.com", "Jane", "Doe"));
+        provider.setUserAdmin(useradmin);
+        Account account = provider.getAccount("jad");
+
+        List<Transaction> firstPage = provider.getPayments(account.getAccountId(), Integer.MAX_VALUE, 3);
+        assertEquals(3, firstPage.size());
+        assertThat(firstPage.get(0).getTransactionAmount()).isPositive();
+        int oldestPaymentOnFirstPage = firstPage.stream().mapToInt(Transaction::getId).min().getAsInt();
+        List<Transaction> secondPage = provider.getPayments(account.getAccountId(), oldestPaymentOnFirstPage, 3);
+        assertThat(secondPage).isNotEmpty();
+        assertThat(secondPage.stream().mapToInt(Transaction::getId).max().getAsInt()).isLessThan(oldestPaymentOnFirstPage);
+    }
+
+    @Test
+    public void testExportTransactions() {
+        UkelonnServiceProvider provider = getUkelonnServiceSingleton();
+        UserManagementService useradmin = mock(UserManagementService.class);
+        when(useradmin.getUser(anyString())).thenReturn(new no.priv.bang.osgiservice.users.User(1, "jad", "jad@gmail.com", "Jane", "Doe"));
+        provider.setUserAdmin(useradmin);
+        Account account = provider.getAccount("jad");
+
+        List<Transaction> transactions = new ArrayList<>();
+        provider.exportTransactions(account.getAccountId(), transactions::add);
+
+        // All jobs and payments, in the order they were registered
+        assertThat(transactions.size()).isGreaterThanOrEqualTo(20);
+        assertThat(transactions.stream().anyMatch(t -> t.getTransactionType().isTransactionIsWork())).isTrue();
+        assertThat(transactions.stream().anyMatch(t -> t.getTransactionType().isTransactionIsWagePayment())).isTrue();
+        List<Integer> ids = transactions.stream().map(Transaction::getId).collect(Collectors.toList());
+        assertThat(ids).isSorted();
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test(expected=UkelonnException.class)
+    public void testExportTransactionsWhenSQLExceptionIsThrown() throws Exception {
+        UkelonnServiceProvider ukelonn = new UkelonnServiceProvider();
+        ukelonn.activate();
+        DataSource datasource = mock(DataSource.class);
+        Connection connection = mock(Connection.class);
+        when(datasource.getConnection()).thenReturn(connection);
+        PreparedStatement statement = mock(PreparedStatement.class);
+        when(connection.prepareStatement(anyString(), anyInt(), anyInt())).thenReturn(statement);
+        when(statement.executeQuery()).thenThrow(SQLException.class);
+        ukelonn.setDataSource(datasource);
+        ukelonn.setLogservice(new MockLogService());
+
+        ukelonn.exportTransactions(1, t -> fail("Should never get here"));
+    }
+
+    @Test(expected=UkelonnBadRequestException.class)
+    public void testGetJobsWithTooLargeLimit() {
+        UkelonnServiceProvider provider = getUkelonnServiceSingleton();
+        provider.getJobs(1, Integer.MAX_VALUE, UkelonnServiceProvider.MAXIMUM_NUMBER_OF_TRANSACTIONS_IN_PAGE + 1);
+    }
+
+    @Test(expected=UkelonnBadRequestException.class)
+    public void testGetPaymentsWithZeroLimit() {
+        UkelonnServiceProvider provider = getUkelonnServiceSingleton();
+        provider.getPayments(1, Integer.MAX_VALUE, 0);
+    }
+
     /**
-     * Corner case test: test what happens when an account has no transactions
-     * (the query result is empty)
+     * Corner case test: test that an account with no transactions is
+     * found, and has a balance of 0.
      */
-    @Test(expected=UkelonnException.class)
+    @Test
     public void testGetAccountInfoFromDatabaseAccountHasNoTransactions() {
         UkelonnServiceProvider provider = getUkelonnServiceSingleton();
-        Account accountForAdmin = provider.getAccount("on");
-        assertNull("Should never get here", accountForAdmin);
+        UserManagementService useradmin = mock(UserManagementService.class);
+        no.priv.bang.osgiservice.users.User user = new no.priv.bang.osgiservice.users.User(1, "on", "on@gmail.com", "Ola", "Nordmann");
+        when(useradmin.getUser(anyString())).thenReturn(user);
+        provider.setUserAdmin(useradmin);
+        Account accountWithoutTransactions = provider.getAccount("on");
+        assertEquals("on", accountWithoutTransactions.getUsername());
+        assertEquals(0.0, accountWithoutTransactions.getBalance(), 0.0);
     }
 
     /**
@@ -311,6 +441,209 @@ public class UkelonnServiceProviderTest {
         }
     }
 
+    @Test
+    public void testRegisterPerformedJobUsesASingleConnection() throws Exception {
+        UkelonnServiceProvider ukelonn = getUkelonnServiceSingleton();
+        DataSource originalDatasource = ukelonn.getDataSource();
+        try {
+            UserManagementService useradmin = mock(UserManagementService.class);
+            when(useradmin.getUser(anyString())).thenReturn(new no.priv.bang.osgiservice.users.User(1, "jad", "jad@gmail.com", "Jane", "Doe"));
+            ukelonn.setUserAdmin(useradmin);
+            Account account = ukelonn.getAccount("jad");
+            TransactionType jobtype = ukelonn.getJobTypes().get(0);
+
+            DataSource datasource = spy(originalDatasource);
+            ukelonn.setDataSource(datasource);
+            PerformedTransaction performedJob = new PerformedTransaction(account, jobtype.getId(), jobtype.getTransactionAmount(), new Date());
+            Account updatedAccount = ukelonn.registerPerformedJob(performedJob);
+
+            assertEquals(account.getBalance() + jobtype.getTransactionAmount(), updatedAccount.getBalance(), 0.001);
+            assertEquals("Jane", updatedAccount.getFirstName());
+            verify(datasource, times(1)).getConnection();
+        } finally {
+            ukelonn.setDataSource(originalDatasource);
+            restoreTestDatabase();
+        }
+    }
+
+    @Test
+    public void testAsyncQueries() throws Exception {
+        UkelonnServiceProvider ukelonn = getUkelonnServiceSingleton();
+        UserManagementService useradmin = mock(UserManagementService.class);
+        when(useradmin.getUser(anyString())).thenReturn(new no.priv.bang.osgiservice.users.User(1, "jad", "jad@gmail.com", "Jane", "Doe"));
+        ukelonn.setUserAdmin(useradmin);
+
+        Account account = ukelonn.getAccountAsync("jad").get();
+        assertEquals("jad", account.getUsername());
+        assertEquals(ukelonn.getJobs(account.getAccountId()).size(), ukelonn.getJobsAsync(account.getAccountId(), Integer.MAX_VALUE, 10).get().size());
+        assertEquals(ukelonn.getPayments(account.getAccountId()).size(), ukelonn.getPaymentsAsync(account.getAccountId(), Integer.MAX_VALUE, 10).get().size());
+        assertEquals(ukelonn.earningsSumOverYear("jad").size(), ukelonn.earningsSumOverYearAsync("jad").get().size());
+        assertEquals(ukelonn.earningsSumOverMonth("jad").size(), ukelonn.earningsSumOverMonthAsync("jad").get().size());
+    }
+
+    @Test
+    public void testAsyncQueryFailure() throws Exception {
+        UkelonnServiceProvider ukelonn = getUkelonnServiceSingleton();
+        try {
+            ukelonn.getJobsAsync(1, Integer.MAX_VALUE, 0).get();
+            fail("Should never get here");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause()).isInstanceOf(UkelonnBadRequestException.class);
+        }
+    }
+
+    @Test
+    public void testAsyncQueriesWithVirtualThreadsConfigured() throws Exception {
+        UkelonnServiceProvider ukelonn = new UkelonnServiceProvider();
+        MockLogService logservice = new MockLogService();
+        ukelonn.setLogservice(logservice);
+        ukelonn.setDataSource(getUkelonnServiceSingleton().getDataSource());
+        UserManagementService useradmin = mock(UserManagementService.class);
+        when(useradmin.getUser(anyString())).thenReturn(new no.priv.bang.osgiservice.users.User(1, "jad", "jad@gmail.com", "Jane", "Doe"));
+        ukelonn.setUserAdmin(useradmin);
+        Map<String, Object> config = new HashMap<>();
+        config.put(UkelonnServiceProvider.VIRTUAL_THREADS, "true");
+        ukelonn.activate(config);
+        try {
+            Account account = ukelonn.getAccountAsync("jad").get();
+
+            assertEquals("jad", account.getUsername());
+            int expectedWarnings = DatabaseExecutors.virtualThreadsSupported() ? 0 : 1;
+            assertEquals(expectedWarnings, logservice.getLogmessages().size());
+        } finally {
+            ukelonn.deactivate();
+        }
+    }
+
+    @Test
+    public void testAsyncQueryRejectedWhenExecutorIsShutDown() throws Exception {
+        UkelonnServiceProvider ukelonn = new UkelonnServiceProvider();
+        ukelonn.activate();
+        ukelonn.deactivate();
+
+        CompletableFuture<Account> account = ukelonn.getAccountAsync("jad");
+
+        assertTrue(account.isCompletedExceptionally());
+    }
+
+    @Test
+    public void testAddToAccountBalanceUsesReturningOnPostgresql() throws Exception {
+        UkelonnServiceProvider ukelonn = new UkelonnServiceProvider();
+        Connection connection = mock(Connection.class);
+        DatabaseMetaData metadata = mock(DatabaseMetaData.class);
+        when(metadata.getDatabaseProductName()).thenReturn("PostgreSQL");
+        when(connection.getMetaData()).thenReturn(metadata);
+        PreparedStatement statement = mock(PreparedStatement.class);
+        when(connection.prepareStatement(anyString())).thenReturn(statement);
+        ResultSet results = mock(ResultSet.class);
+        when(results.next()).thenReturn(true);
+        when(results.getInt("account_id")).thenReturn(4);
+        when(results.getString("username")).thenReturn("jad");
+        when(results.getDouble("balance")).thenReturn(145.0);
+        when(statement.executeQuery()).thenReturn(results);
+
+        Account account = ukelonn.addToAccountBalance(connection, 4, 45.0);
+
+        assertEquals(145.0, account.getBalance(), 0.0);
+        assertEquals("jad", account.getUsername());
+        verify(connection, times(1)).prepareStatement(contains("returning"));
+        verify(connection, times(1)).prepareStatement(anyString());
+        verify(statement, never()).executeUpdate();
+    }
+
+    @Test(expected=SQLException.class)
+    public void testAddToAccountBalanceOfMissingAccount() throws Exception {
+        UkelonnServiceProvider ukelonn = new UkelonnServiceProvider();
+        Connection connection = mock(Connection.class);
+        PreparedStatement statement = mock(PreparedStatement.class);
+        when(connection.prepareStatement(anyString())).thenReturn(statement);
+        ResultSet results = mock(ResultSet.class);
+        when(statement.executeQuery()).thenReturn(results);
+
+        ukelonn.addToAccountBalance(connection, 4000, 45.0);
+    }
+
+    @Test
+    public void testRegisterPerformedJobs() throws Exception {
+        try {
+            UkelonnServiceProvider ukelonn = getUkelonnServiceSingleton();
+            String username = "jad";
+            UserManagementService useradmin = mock(UserManagementService.class);
+            no.priv.bang.osgiservice.users.User user = new no.priv.bang.osgiservice.users.User(1, username, "jad@gmail.com", "Jane", "Doe");
+            when(useradmin.getUser(anyString())).thenReturn(user);
+            ukelonn.setUserAdmin(useradmin);
+            Account account = ukelonn.getAccount(username);
+            double oldBalance = account.getBalance();
+            List<TransactionType> jobtypes = ukelonn.getJobTypes();
+            TransactionType jobtype1 = jobtypes.get(0);
+            TransactionType jobtype2 = jobtypes.get(1);
+            List<PerformedTransaction> performedJobs = Arrays.asList(
+                new PerformedTransaction(account, jobtype1.getId(), jobtype1.getTransactionAmount(), new Date()),
+                new PerformedTransaction(account, jobtype2.getId(), jobtype2.getTransactionAmount(), new Date()));
+            Account updatedAccount = ukelonn.registerPerformedJobs(performedJobs);
+            double expectedBalance = oldBalance + jobtype1.getTransactionAmount() + jobtype2.getTransactionAmount();
+            assertEquals(expectedBalance, updatedAccount.getBalance(), 0.0);
+        } finally {
+            restoreTestDatabase();
+        }
+    }
+
+    @Test(expected=UkelonnBadRequestException.class)
+    public void testRegisterPerformedJobsWithEmptyList() {
+        UkelonnServiceProvider ukelonn = getUkelonnServiceSingleton();
+        ukelonn.registerPerformedJobs(Collections.emptyList());
+        fail("Should never get here");
+    }
+
+    @Test(expected=UkelonnBadRequestException.class)
+    public void testRegisterPerformedJobsWithoutAccount() {
+        UkelonnServiceProvider ukelonn = getUkelonnServiceSingleton();
+        Account jad = new Account(4, "jad", "Jane", "Doe", 0.0);
+        List<PerformedTransaction> performedJobs = Arrays.asList(
+            new PerformedTransaction(null, 1, 45.0, new Date()),
+            new PerformedTransaction(jad, 1, 45.0, new Date()));
+        ukelonn.registerPerformedJobs(performedJobs);
+        fail("Should never get here");
+    }
+
+    @Test(expected=UkelonnBadRequestException.class)
+    public void testRegisterPerformedJobsOnDifferentAccounts() {
+        UkelonnServiceProvider ukelonn = getUkelonnServiceSingleton();
+        Account jad = new Account(4, "jad", "Jane", "Doe", 0.0);
+        Account jod = new Account(5, "jod", "John", "Doe", 0.0);
+        List<PerformedTransaction> performedJobs = Arrays.asList(
+            new PerformedTransaction(jad, 1, 45.0, new Date()),
+            new PerformedTransaction(jod, 1, 45.0, new Date()));
+        ukelonn.registerPerformedJobs(performedJobs);
+        fail("Should never get here");
+    }
+
+    @Test
+    public void testRegisterPerformedJobsWhenSQLExceptionIsThrown() throws Exception {
+        try {
+            UkelonnServiceProvider ukelonn = getUkelonnServiceSingleton();
+            UserManagementService useradmin = mock(UserManagementService.class);
+            no.priv.bang.osgiservice.users.User user = new no.priv.bang.osgiservice.users.User(1, "jad", "jad@gmail.com", "Jane", "Doe");
+            when(useradmin.getUser(anyString())).thenReturn(user);
+            ukelonn.setUserAdmin(useradmin);
+            Account account = ukelonn.getAccount("jad");
+            int numberOfJobs = ukelonn.getJobs(account.getAccountId(), Integer.MAX_VALUE, 100).size();
+            TransactionType jobtype = ukelonn.getJobTypes().get(0);
+            int nonExistingJobtype = 9999;
+            List<PerformedTransaction> performedJobs = Arrays.asList(
+                new PerformedTransaction(account, jobtype.getId(), jobtype.getTransactionAmount(), new Date()),
+                new PerformedTransaction(account, nonExistingJobtype, 45.0, new Date()));
+
+            // Like registerPerformedJob, the failure is logged and the unchanged account is returned
+            Account updatedAccount = ukelonn.registerPerformedJobs(performedJobs);
+            assertEquals(account.getBalance(), updatedAccount.getBalance(), 0.0);
+            assertEquals("Jane", updatedAccount.getFirstName());
+            assertEquals(numberOfJobs, ukelonn.getJobs(account.getAccountId(), Integer.MAX_VALUE, 100).size());
+        } finally {
+            restoreTestDatabase();
+        }
+    }
+
     /**
      * Corner case test: Tests what happens to the {@link CommonDatabaseMethods#registerNewJobInDatabase(Class, Account, int, double)}
      * method when a resultset that throws SQLException is returned from the
@@ -369,6 +702,10 @@ public class UkelonnServiceProviderTest {
 
             // Check that the job list that was two items earlier is now empty
             assertEquals(0, jobsAfterDelete.size());
+
+            // Check that the deleted jobs have been subtracted from the balance
+            double expectedBalance = account.getBalance() - jobs.get(0).getTransactionAmount() - jobs.get(1).getTransactionAmount();
+            assertEquals(expectedBalance, ukelonn.getAccount(username).getBalance(), 0.0);
         } finally {
             restoreTestDatabase();
         }
@@ -402,6 +739,7 @@ public class UkelonnServiceProviderTest {
     @Test
     public void testDeleteJobsWithErrorOnClosingStatement() throws Exception {
         UkelonnServiceProvider ukelonn = new UkelonnServiceProvider();
+        ukelonn.activate();
 
         // Create a mock database with a prepared statement that will fail on close
         DataSource datasource = mock(DataSource.class);
@@ -562,11 +900,39 @@ public class UkelonnServiceProviderTest {
             assertEquals(editedJob.getTransactionTypeId(), editedJobFromDatabase.getTransactionType().getId().intValue());
             assertThat(editedJobFromDatabase.getTransactionTime().getTime()).isGreaterThan(originalTransactionTime.getTime());
             assertEquals(editedJob.getTransactionAmount(), editedJobFromDatabase.getTransactionAmount(), 0.0);
+
+            // Verify that the balance has been adjusted with the difference in amount
+            double expectedBalance = account.getBalance() - originalTransactionAmount + editedJob.getTransactionAmount();
+            assertEquals(expectedBalance, ukelonn.getAccount(username).getBalance(), 0.0);
         } finally {
             restoreTestDatabase();
         }
     }
 
+    @Test
+    public void testUpdateJobUsesASingleConnection() throws Exception {
+        UkelonnServiceProvider ukelonn = getUkelonnServiceSingleton();
+        DataSource originalDatasource = ukelonn.getDataSource();
+        try {
+            UserManagementService useradmin = mock(UserManagementService.class);
+            when(useradmin.getUser(anyString())).thenReturn(new no.priv.bang.osgiservice.users.User(1, "jad", "jad@gmail.com", "Jane", "Doe"));
+            ukelonn.setUserAdmin(useradmin);
+            Account account = ukelonn.getAccount("jad");
+            Transaction job = ukelonn.getJobs(account.getAccountId()).get(0);
+
+            DataSource datasource = spy(originalDatasource);
+            ukelonn.setDataSource(datasource);
+            UpdatedTransaction editedJob = new UpdatedTransaction(job.getId(), account.getAccountId(), job.getTransactionType().getId(), job.getTransactionTime(), job.getTransactionAmount() + 1.0);
+            List<Transaction> updatedJobs = ukelonn.updateJob(editedJob);
+
+            assertEquals(job.getTransactionAmount() + 1.0, updatedJobs.get(0).getTransactionAmount(), 0.0);
+            verify(datasource, times(1)).getConnection();
+        } finally {
+            ukelonn.setDataSource(originalDatasource);
+            restoreTestDatabase();
+        }
+    }
+
     @Test(expected=UkelonnException.class)
     public void testUpdateJobGetSQLException() throws Exception {
         UkelonnServiceProvider ukelonn = new UkelonnServiceProvider();
@@ -673,6 +1039,129 @@ public class UkelonnServiceProviderTest {
         assertThat(result.getBalance()).isLessThan(originalBalance);
     }
 
+    @Test
+    public void testRegisterPaymentNotifiesOwnerOfAccount() {
+        UkelonnServiceProvider ukelonn = getUkelonnServiceSingleton();
+        UserManagementService useradmin = mock(UserManagementService.class);
+        no.priv.bang.osgiservice.users.User user = new no.priv.bang.osgiservice.users.User(1, "jad", "jad@gmail.com", "Jane", "Doe");
+        when(useradmin.getUser(anyString())).thenReturn(user);
+        ukelonn.setUserAdmin(useradmin);
+        while (!ukelonn.notificationsTo("jad").isEmpty()) {
+            // Empty the queue of notifications from other tests
+        }
+
+        Account account = ukelonn.getAccount("jad");
+        TransactionType paymenttype = ukelonn.getPaymenttypes().get(0);
+        ukelonn.registerPayment(new PerformedTransaction(account, paymenttype.getId(), 37.5, new Date()));
+
+        List<Notification> notifications = ukelonn.notificationsTo("jad");
+        assertEquals(1, notifications.size());
+        assertEquals("37.5 kroner " + paymenttype.getTransactionTypeName(), notifications.get(0).getMessage());
+    }
+
+    @Test
+    public void testJobsArePaidOutAfterPayingTheFullBalance() throws Exception {
+        try {
+            UkelonnServiceProvider ukelonn = getUkelonnServiceSingleton();
+            UserManagementService useradmin = mock(UserManagementService.class);
+            no.priv.bang.osgiservice.users.User user = new no.priv.bang.osgiservice.users.User(1, "jad", "jad@gmail.com", "Jane", "Doe");
+            when(useradmin.getUser(anyString())).thenReturn(user);
+            ukelonn.setUserAdmin(useradmin);
+            Account account = ukelonn.getAccount("jad");
+            List<TransactionType> paymenttypes = ukelonn.getPaymenttypes();
+
+            // Pay out the full balance
+            PerformedTransaction payment = new PerformedTransaction(account, paymenttypes.get(0).getId(), account.getBalance(), new Date());
+            Account result = ukelonn.registerPayment(payment);
+            assertEquals(0.0, result.getBalance(), 0.0);
+
+            // Verify that all of the jobs now are paid out
+            List<Transaction> jobs = ukelonn.getJobs(account.getAccountId());
+            assertThat(jobs).isNotEmpty().allMatch(Transaction::isPaidOut);
+        } finally {
+            restoreTestDatabase();
+        }
+    }
+
+    @Test
+    public void testJobsArePaidOutWhenThePaymentIsLessThanHalfAnOreFromTheBalance() throws Exception {
+        try {
+            UkelonnServiceProvider ukelonn = getUkelonnServiceSingleton();
+            UserManagementService useradmin = mock(UserManagementService.class);
+            no.priv.bang.osgiservice.users.User user = new no.priv.bang.osgiservice.users.User(1, "jad", "jad@gmail.com", "Jane", "Doe");
+            when(useradmin.getUser(anyString())).thenReturn(user);
+            ukelonn.setUserAdmin(useradmin);
+            Account account = ukelonn.getAccount("jad");
+            List<TransactionType> paymenttypes = ukelonn.getPaymenttypes();
+
+            // Pay out the balance, with a rounding error
+            PerformedTransaction payment = new PerformedTransaction(account, paymenttypes.get(0).getId(), account.getBalance() - 0.001, new Date());
+            ukelonn.registerPayment(payment);
+
+            // Verify that all of the jobs now are paid out
+            List<Transaction> jobs = ukelonn.getJobs(account.getAccountId());
+            assertThat(jobs).isNotEmpty().allMatch(Transaction::isPaidOut);
+        } finally {
+            restoreTestDatabase();
+        }
+    }
+
+    @Test
+    public void testUpdateJobFindsPaidOutTimeOfTheAccountOfTheJob() throws Exception {
+        try {
+            UkelonnServiceProvider ukelonn = getUkelonnServiceSingleton();
+            UserManagementService useradmin = mock(UserManagementService.class);
+            no.priv.bang.osgiservice.users.User user = new no.priv.bang.osgiservice.users.User(1, "jad", "jad@gmail.com", "Jane", "Doe");
+            when(useradmin.getUser(anyString())).thenReturn(user);
+            ukelonn.setUserAdmin(useradmin);
+            Account account = ukelonn.getAccount("jad");
+            ukelonn.registerPayment(new PerformedTransaction(account, ukelonn.getPaymenttypes().get(0).getId(), account.getBalance(), new Date()));
+            Transaction job = ukelonn.getJobs(account.getAccountId()).get(0);
+            assertTrue(job.isPaidOut());
+
+            // Edit the job, sending the id of a different account
+            int otherAccountId = ukelonn.getAccount("jod").getAccountId();
+            ukelonn.updateJob(new UpdatedTransaction(job.getId(), otherAccountId, job.getTransactionType().getId(), job.getTransactionTime(), job.getTransactionAmount() + 1.0));
+
+            // The balance is no longer 0 at the payment, so the paid out time of the account of the job is moved back
+            Transaction editedJob = ukelonn.getJobs(account.getAccountId()).stream().filter(j -> j.getId() == job.getId()).findFirst().get();
+            assertFalse(editedJob.isPaidOut());
+        } finally {
+            restoreTestDatabase();
+        }
+    }
+
+    @Test
+    public void testUpdateJobAfterThePaidOutTimeKeepsThePaidOutTime() throws Exception {
+        try {
+            UkelonnServiceProvider ukelonn = getUkelonnServiceSingleton();
+            UserManagementService useradmin = mock(UserManagementService.class);
+            no.priv.bang.osgiservice.users.User user = new no.priv.bang.osgiservice.users.User(1, "jad", "jad@gmail.com", "Jane", "Doe");
+            when(useradmin.getUser(anyString())).thenReturn(user);
+            ukelonn.setUserAdmin(useradmin);
+            Account account = ukelonn.getAccount("jad");
+            Date paymentTime = new Date();
+            ukelonn.registerPayment(new PerformedTransaction(account, ukelonn.getPaymenttypes().get(0).getId(), account.getBalance(), paymentTime));
+            TransactionType jobtype = ukelonn.getJobTypes().get(0);
+            ukelonn.registerPerformedJob(new PerformedTransaction(account, jobtype.getId(), 45.0, new Date(paymentTime.getTime() + 60000)));
+            List<Transaction> jobs = ukelonn.getJobs(account.getAccountId());
+            Transaction newJob = jobs.get(0);
+
+            ukelonn.updateJob(new UpdatedTransaction(newJob.getId(), account.getAccountId(), jobtype.getId(), newJob.getTransactionTime(), 50.0));
+
+            // The jobs before the payment are still paid out, and the edited job isn't
+            List<Transaction> jobsAfterUpdate = ukelonn.getJobs(account.getAccountId());
+            assertFalse(jobsAfterUpdate.get(0).isPaidOut());
+            assertThat(jobsAfterUpdate.subList(1, jobsAfterUpdate.size())).isNotEmpty().allMatch(Transaction::isPaidOut);
+
+            // Deleting the job after the payment leaves the account paid out at the payment
+            ukelonn.deleteJobsFromAccount(account.getAccountId(), Arrays.asList(newJob.getId()));
+            assertThat(ukelonn.getJobs(account.getAccountId())).isNotEmpty().allMatch(Transaction::isPaidOut);
+        } finally {
+            restoreTestDatabase();
+        }
+    }
+
     @SuppressWarnings("unchecked")
     @Test
     public void testRegisterPaymentWithDatabaseFailure() throws Exception {
@@ -825,6 +1314,25 @@ public class UkelonnServiceProviderTest {
         assertThat(updatedJobtypes.size()).isGreaterThan(originalJobtypes.size());
     }
 
+    @Test
+    public void testTransactionTypesAreCached() {
+        UkelonnServiceProvider ukelonn = getUkelonnServiceSingleton();
+        List<TransactionType> jobtypes = ukelonn.getJobTypes();
+        long hits = ukelonn.getTransactionTypeCacheHits();
+        long misses = ukelonn.getTransactionTypeCacheMisses();
+
+        // A second read is served from the cache
+        assertThat(ukelonn.getJobTypes()).isSameAs(jobtypes);
+        assertEquals(hits + 1, ukelonn.getTransactionTypeCacheHits());
+        assertEquals(misses, ukelonn.getTransactionTypeCacheMisses());
+
+        // Creating a job type invalidates the cache
+        List<TransactionType> updatedJobtypes = ukelonn.createJobtype(new TransactionType(-1, "Rydde garasjen", 150.0, true, false));
+        assertThat(updatedJobtypes).isNotSameAs(jobtypes);
+        assertThat(updatedJobtypes.size()).isGreaterThan(jobtypes.size());
+        assertEquals(misses + 1, ukelonn.getTransactionTypeCacheMisses());
+    }
+
     @SuppressWarnings("unchecked")
     @Test(expected=UkelonnException.class)
     public void testCreateJobtypeFailure() throws Exception {
@@ -987,6 +1495,26 @@ public class UkelonnServiceProviderTest {
         assertEquals(utbetalt, ukelonn.notificationsTo("jad").get(0));
     }
 
+    @Test
+    public void testWaitForNotification() {
+        UkelonnService ukelonn = new UkelonnServiceProvider();
+        // Give "jad" a channel
+        ukelonn.notificationTo("jad", new Notification("Ukelønn", "Velkommen"));
+        ukelonn.notificationsTo("jad");
+        CompletableFuture<List<Notification>> waitingForJad = ukelonn.waitForNotificationTo("jad");
+        assertFalse(waitingForJad.isDone());
+
+        // Send notification to "jad"
+        Notification utbetalt = new Notification("Ukelønn", "150 kroner betalt til konto");
+        ukelonn.notificationTo("jad", utbetalt);
+
+        // Verify that the notification went to the waiting client and wasn't queued
+        assertEquals(utbetalt, waitingForJad.getNow(null).get(0));
+        assertThat(ukelonn.notificationsTo("jad")).isEmpty();
+        // A user without a channel gets an empty list right away
+        assertThat(ukelonn.waitForNotificationTo("jod").getNow(null)).isEmpty();
+    }
+
     @Test
     public void testJoinIds() {
         assertEquals("", UkelonnServiceProvider.joinIds(null).toString());
@@ -1004,54 +1532,206 @@ public class UkelonnServiceProviderTest {
         assertEquals("31, 33, 34, 35, 37, 38, 39, 41, 42, 43", UkelonnServiceProvider.joinIds(jobs).toString());
     }
 
-    /**
-     * Corner case test: Tests what happens to the {@link UkelonnServiceProvider#addDummyPaymentToAccountSoThatAccountWillAppearInAccountsView(UkelonnDatabase, int)}
-     * method when a resultset that throws SQLException is returned from the
-     * {@link UkelonnDatabase#update(PreparedStatement)} method.
-     *
-     * Expect no exception to be thrown, and {@link CommonDatabaseMethods#UPDATE_FAILED} to be returned
-     *
-     * @throws SQLException
-     */
-    @SuppressWarnings("unchecked")
-    @Test()
-    public void testaddDummyPaymentToAccountSoThatAccountWillAppearInAccountsViewWhenSQLExceptionIsThrown() throws SQLException {
-        // Swap the real derby database with a mock
+    @Test
+    public void testEarningsSumOverYear() {
         UkelonnServiceProvider ukelonn = getUkelonnServiceSingleton();
-        DataSource originalDatasource = ukelonn.getDataSource();
+        List<SumYear> statistics = ukelonn.earningsSumOverYear("jad");
+        assertThat(statistics.size()).isGreaterThan(0);
+        SumYear firstYear = statistics.get(0);
+        assertEquals(1250.0, firstYear.getSum(), 0.0);
+        assertEquals(2016, firstYear.getYear());
+    }
+
+    @Test
+    public void testEarningsAggregatesFollowJobChanges() throws Exception {
         try {
-            DataSource datasource = mock(DataSource.class);
-            Connection connection = mock(Connection.class);
-            when(datasource.getConnection()).thenReturn(connection);
-            PreparedStatement statement = mock(PreparedStatement.class);
-            when(connection.prepareStatement(anyString())).thenReturn(statement);
-            when(statement.executeUpdate()).thenThrow(SQLException.class);
-            ukelonn.setDataSource(datasource);
-            int updateStatus = ukelonn.addDummyPaymentToAccountSoThatAccountWillAppearInAccountsView("jad");
-            assertEquals(-1, updateStatus);
+            UkelonnServiceProvider ukelonn = getUkelonnServiceSingleton();
+            UserManagementService useradmin = mock(UserManagementService.class);
+            when(useradmin.getUser(anyString())).thenReturn(new no.priv.bang.osgiservice.users.User(1, "jad", "jad@gmail.com", "Jane", "Doe"));
+            ukelonn.setUserAdmin(useradmin);
+            Account account = ukelonn.getAccount("jad");
+            TransactionType jobtype = ukelonn.getJobTypes().get(0);
+
+            // Register a job in a year without any other jobs
+            Date timeOfJob = new Date(Timestamp.valueOf("2030-03-15 12:00:00").getTime());
+            ukelonn.registerPerformedJob(new PerformedTransaction(account, jobtype.getId(), 45.0, timeOfJob));
+            assertEquals(45.0, sumOfYear(ukelonn.earningsSumOverYear("jad"), 2030), 0.0);
+            assertEquals(45.0, sumOfMonth(ukelonn.earningsSumOverMonth("jad"), 2030, 3), 0.0);
+
+            // Move the job to a different month and change the amount
+            Transaction job = ukelonn.getJobs(account.getAccountId()).stream().filter(t -> t.getTransactionTime().getTime() == timeOfJob.getTime()).findFirst().get();
+            Date newTimeOfJob = new Date(Timestamp.valueOf("2030-04-02 12:00:00").getTime());
+            ukelonn.updateJob(new UpdatedTransaction(job.getId(), account.getAccountId(), jobtype.getId(), newTimeOfJob, 50.0));
+            assertEquals(50.0, sumOfYear(ukelonn.earningsSumOverYear("jad"), 2030), 0.0);
+            List<SumYearMonth> monthsAfterUpdate = ukelonn.earningsSumOverMonth("jad");
+            assertEquals(50.0, sumOfMonth(monthsAfterUpdate, 2030, 4), 0.0);
+            assertEquals(0.0, sumOfMonth(monthsAfterUpdate, 2030, 3), 0.0);
+
+            // Delete the job
+            ukelonn.deleteJobsFromAccount(account.getAccountId(), Arrays.asList(job.getId()));
+            assertEquals(0.0, sumOfYear(ukelonn.earningsSumOverYear("jad"), 2030), 0.0);
         } finally {
-            // Restore the real derby database
-            ukelonn.setDataSource(originalDatasource);
+            restoreTestDatabase();
+        }
+    }
+
+    @Test
+    public void testAccountLedgerFollowsBalanceChanges() throws Exception {
+        UkelonnServiceProvider database = getUkelonnServiceSingleton();
+        UserManagementService useradmin = mock(UserManagementService.class);
+        when(useradmin.getUser(anyString())).thenReturn(new no.priv.bang.osgiservice.users.User(1, "jad", "jad@gmail.com", "Jane", "Doe"));
+        database.setUserAdmin(useradmin);
+        UkelonnServiceProvider ukelonn = new UkelonnServiceProvider();
+        ukelonn.setLogservice(new MockLogService());
+        ukelonn.setDataSource(database.getDataSource());
+        ukelonn.setUserAdmin(useradmin);
+        Map<String, Object> config = new HashMap<>();
+        config.put(UkelonnServiceProvider.ACCOUNT_LEDGER, "true");
+        ukelonn.activate(config);
+        try {
+            assertEquals(database.getAccounts().size(), ukelonn.getAccounts().size());
+            Account account = ukelonn.getAccount("jad");
+            assertEquals("Jane", account.getFirstName());
+            assertEquals(database.getAccount("jad").getBalance(), account.getBalance(), 0.0);
+            TransactionType jobtype = ukelonn.getJobTypes().get(0);
+
+            ukelonn.registerPerformedJob(new PerformedTransaction(account, jobtype.getId(), 45.0, new Date()));
+            assertEquals(account.getBalance() + 45.0, ukelonn.getAccount("jad").getBalance(), 0.0);
+            assertEquals(database.getAccount("jad").getBalance(), ukelonn.getAccount("jad").getBalance(), 0.0);
+
+            Transaction job = ukelonn.getJobs(account.getAccountId()).get(0);
+            ukelonn.updateJob(new UpdatedTransaction(job.getId(), account.getAccountId(), jobtype.getId(), job.getTransactionTime(), job.getTransactionAmount() + 10.0));
+            assertEquals(database.getAccount("jad").getBalance(), ukelonn.getAccount("jad").getBalance(), 0.0);
+
+            ukelonn.deleteJobsFromAccount(account.getAccountId(), Arrays.asList(job.getId()));
+            assertEquals(database.getAccount("jad").getBalance(), ukelonn.getAccount("jad").getBalance(), 0.0);
+
+            Account beforePayment = ukelonn.getAccount("jad");
+            ukelonn.registerPayment(new PerformedTransaction(beforePayment, ukelonn.getPaymenttypes().get(0).getId(), beforePayment.getBalance(), new Date()));
+            assertEquals(0.0, ukelonn.getAccount("jad").getBalance(), 0.0);
+            assertEquals(database.getAccount("jad").getBalance(), ukelonn.getAccount("jad").getBalance(), 0.0);
+        } finally {
+            ukelonn.deactivate();
+            restoreTestDatabase();
+        }
+    }
+
+    @Test
+    public void testAccountLedgerDoesNotRoundTheAmountsInTheDatabase() throws Exception {
+        UkelonnServiceProvider database = getUkelonnServiceSingleton();
+        UserManagementService useradmin = mock(UserManagementService.class);
+        when(useradmin.getUser(anyString())).thenReturn(new no.priv.bang.osgiservice.users.User(1, "jad", "jad@gmail.com", "Jane", "Doe"));
+        database.setUserAdmin(useradmin);
+        UkelonnServiceProvider ukelonn = new UkelonnServiceProvider();
+        ukelonn.setLogservice(new MockLogService());
+        ukelonn.setDataSource(database.getDataSource());
+        ukelonn.setUserAdmin(useradmin);
+        Map<String, Object> config = new HashMap<>();
+        config.put(UkelonnServiceProvider.ACCOUNT_LEDGER, "true");
+        ukelonn.activate(config);
+        try {
+            Account account = ukelonn.getAccount("jad");
+            int jobtypeId = ukelonn.getJobTypes().get(0).getId();
+            int paymenttypeId = ukelonn.getPaymenttypes().get(0).getId();
+            double originalBalance = balanceColumnOf(database.getDataSource(), account.getAccountId());
+            ukelonn.registerPerformedJob(new PerformedTransaction(account, jobtypeId, 12.345, new Date()));
+            ukelonn.registerPerformedJobs(Arrays.asList(
+                new PerformedTransaction(account, jobtypeId, 0.015, new Date()),
+                new PerformedTransaction(account, jobtypeId, 2.675, new Date())));
+            ukelonn.registerPayment(new PerformedTransaction(account, paymenttypeId, 7.777, new Date()));
+            Transaction job = ukelonn.getJobs(account.getAccountId()).get(0);
+            ukelonn.updateJob(new UpdatedTransaction(job.getId(), account.getAccountId(), jobtypeId, job.getTransactionTime(), 4.444));
+
+            // The database gets the amounts as they were sent
+            double expectedBalance = originalBalance + 12.345 + 0.015 + 2.675 - 7.777 + 4.444 - job.getTransactionAmount();
+            assertEquals(expectedBalance, balanceColumnOf(database.getDataSource(), account.getAccountId()), 0.0000001);
+            assertEquals(expectedBalance, database.getAccount("jad").getBalance(), 0.0000001);
+            assertEquals(4.444, database.getJobs(account.getAccountId()).get(0).getTransactionAmount(), 0.0);
+
+            // The ledger rounds every change to øre
+            assertEquals(expectedBalance, ukelonn.getAccount("jad").getBalance(), 0.03);
+        } finally {
+            ukelonn.deactivate();
+            restoreTestDatabase();
+        }
+    }
+
+    private double balanceColumnOf(DataSource datasource, int accountId) throws SQLException {
+        try(Connection connection = datasource.getConnection()) {
+            try(PreparedStatement statement = connection.prepareStatement("select balance from accounts where account_id=?")) {
+                statement.setInt(1, accountId);
+                try(ResultSet results = statement.executeQuery()) {
+                    assertTrue(results.next());
+                    return results.getDouble(1);
+                }
+            }
         }
     }
 
     @Test
-    public void testGetResourceAsStringNoResource() {
+    public void testAccountLedgerNotUsedWhenLoadingFails() throws Exception {
         UkelonnServiceProvider ukelonn = new UkelonnServiceProvider();
         MockLogService logservice = new MockLogService();
         ukelonn.setLogservice(logservice);
-        String resource = ukelonn.getResourceAsString("finnesikke");
-        assertNull(resource);
+        DataSource datasource = mock(DataSource.class);
+        when(datasource.getConnection()).thenThrow(SQLException.class);
+        ukelonn.setDataSource(datasource);
+        ukelonn.setUserAdmin(mock(UserManagementService.class));
+        Map<String, Object> config = new HashMap<>();
+        config.put(UkelonnServiceProvider.ACCOUNT_LEDGER, "true");
+        ukelonn.activate(config);
+        try {
+            assertEquals(1, logservice.getLogmessages().size());
+            assertThat(ukelonn.getAccounts()).isEmpty();
+            assertEquals(2, logservice.getLogmessages().size());
+        } finally {
+            ukelonn.deactivate();
+        }
     }
 
     @Test
-    public void testEarningsSumOverYear() {
-        UkelonnServiceProvider ukelonn = getUkelonnServiceSingleton();
-        List<SumYear> statistics = ukelonn.earningsSumOverYear("jad");
-        assertThat(statistics.size()).isGreaterThan(0);
-        SumYear firstYear = statistics.get(0);
-        assertEquals(1250.0, firstYear.getSum(), 0.0);
-        assertEquals(2016, firstYear.getYear());
+    public void testJobsAndPaymentsTemplatesUseCompositeIndex() throws Exception {
+        DataSource datasource = getUkelonnServiceSingleton().getDataSource();
+        SqlStatementRegistry registry = new SqlStatementRegistry();
+        for (String templateName : Arrays.asList(SqlStatementRegistry.JOBS_LAST_N, SqlStatementRegistry.PAYMENTS_LAST_N)) {
+            String plan = explain(datasource, registry.getSql(templateName), 4, Integer.MAX_VALUE, 10);
+            assertThat(plan.toUpperCase()).as(templateName).contains("USING INDEX TRANSACTIONS-ACCOUNT-ID-TRANSACTION-ID-INDEX");
+        }
+    }
+
+    private String explain(DataSource datasource, String sql, int... parameters) throws SQLException {
+        try(Connection connection = datasource.getConnection()) {
+            try(PreparedStatement statement = connection.prepareStatement("CALL SYSCS_UTIL.SYSCS_SET_RUNTIMESTATISTICS(1)")) {
+                statement.execute();
+            }
+
+            try(PreparedStatement statement = connection.prepareStatement(sql)) {
+                for (int i = 0; i < parameters.length; ++i) {
+                    statement.setInt(i + 1, parameters[i]);
+                }
+
+                try(ResultSet results = statement.executeQuery()) {
+                    while (results.next()) {
+                        // Read the entire result before getting the statistics
+                    }
+                }
+            }
+
+            try(PreparedStatement statement = connection.prepareStatement("VALUES SYSCS_UTIL.SYSCS_GET_RUNTIMESTATISTICS()")) {
+                try(ResultSet results = statement.executeQuery()) {
+                    assertTrue(results.next());
+                    return results.getString(1);
+                }
+            }
+        }
+    }
+
+    private double sumOfYear(List<SumYear> years, int year) {
+        return years.stream().filter(y -> y.getYear() == year).mapToDouble(SumYear::getSum).sum();
+    }
+
+    private double sumOfMonth(List<SumYearMonth> months, int year, int month) {
+        return months.stream().filter(m -> m.getYear() == year && m.getMonth() == month).mapToDouble(SumYear::getSum).sum();
     }
 
     @SuppressWarnings("unchecked")
@@ -0,0 +1,205 @@
+/*
+ * Copyright 2019 Steinar Bang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package no.priv.bang.ukelonn.backend;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.sql.DataSource;
+
+import org.junit.Test;
+
+import no.priv.bang.ukelonn.UkelonnException;
+
+public class UnitOfWorkTest {
+
+    @Test
+    public void testConnectionIsSharedAndCommittedOnce() throws Exception {
+        DataSource datasource = mock(DataSource.class);
+        Connection connection = mock(Connection.class);
+        when(datasource.getConnection()).thenReturn(connection);
+
+        try(UnitOfWork unitOfWork = UnitOfWork.begin(datasource)) {
+            try(Connection first = UnitOfWork.getConnection(datasource)) {
+                first.setAutoCommit(false);
+                first.prepareStatement("insert into accounts (username) values (?)");
+                first.commit();
+                first.setAutoCommit(true);
+            }
+
+            try(UnitOfWork nested = UnitOfWork.begin(datasource)) {
+                try(Connection second = UnitOfWork.getConnection(datasource)) {
+                    second.prepareStatement("select * from accounts");
+                }
+
+                nested.complete();
+            }
+
+            unitOfWork.complete();
+        }
+
+        verify(datasource, times(1)).getConnection();
+        verify(connection).prepareStatement("insert into accounts (username) values (?)");
+        verify(connection).prepareStatement("select * from accounts");
+        verify(connection, times(1)).commit();
+        verify(connection, never()).rollback();
+        verify(connection, times(1)).close();
+    }
+
+    @Test
+    public void testUnitOfWorkWithoutDatabaseAccessOpensNoConnection() throws Exception {
+        DataSource datasource = mock(DataSource.class);
+
+        try(UnitOfWork unitOfWork = UnitOfWork.begin(datasource)) {
+            unitOfWork.complete();
+        }
+
+        verify(datasource, never()).getConnection();
+    }
+
+    @Test
+    public void testIncompleteUnitOfWorkIsRolledBack() throws Exception {
+        DataSource datasource = mock(DataSource.class);
+        Connection connection = mock(Connection.class);
+        when(datasource.getConnection()).thenReturn(connection);
+
+        try(UnitOfWork unitOfWork = UnitOfWork.begin(datasource)) {
+            UnitOfWork.getConnection(datasource).close();
+        }
+
+        verify(connection, never()).commit();
+        verify(connection).rollback();
+        verify(connection).close();
+    }
+
+    @Test
+    public void testRollbackInsideUnitOfWorkPreventsCommit() throws Exception {
+        DataSource datasource = mock(DataSource.class);
+        Connection connection = mock(Connection.class);
+        when(datasource.getConnection()).thenReturn(connection);
+
+        try(UnitOfWork unitOfWork = UnitOfWork.begin(datasource)) {
+            try(Connection shared = UnitOfWork.getConnection(datasource)) {
+                shared.rollback();
+            }
+
+            assertTrue(unitOfWork.isRollbackOnly());
+            unitOfWork.complete();
+        }
+
+        verify(connection, never()).commit();
+        verify(connection, times(2)).rollback();
+    }
+
+    @Test
+    public void testIncompleteNestedUnitOfWorkPreventsCommit() throws Exception {
+        DataSource datasource = mock(DataSource.class);
+        Connection connection = mock(Connection.class);
+        when(datasource.getConnection()).thenReturn(connection);
+
+        try(UnitOfWork unitOfWork = UnitOfWork.begin(datasource)) {
+            UnitOfWork.getConnection(datasource).close();
+            try(UnitOfWork nested = UnitOfWork.begin(datasource)) {
+                // Not completed
+            }
+
+            unitOfWork.complete();
+        }
+
+        verify(connection, never()).commit();
+        verify(connection).rollback();
+    }
+
+    @Test
+    public void testConnectionOutsideUnitOfWorkIsNotShared() throws Exception {
+        DataSource datasource = mock(DataSource.class);
+        Connection connection = mock(Connection.class);
+        when(datasource.getConnection()).thenReturn(connection);
+        DataSource otherDatasource = mock(DataSource.class);
+        Connection otherConnection = mock(Connection.class);
+        when(otherDatasource.getConnection()).thenReturn(otherConnection);
+
+        try(UnitOfWork unitOfWork = UnitOfWork.begin(datasource)) {
+            assertSame(otherConnection, UnitOfWork.getConnection(otherDatasource));
+            unitOfWork.complete();
+        }
+
+        assertSame(connection, UnitOfWork.getConnection(datasource));
+    }
+
+    @Test
+    public void testAfterCommitRunsWhenOutermostUnitOfWorkCommits() throws Exception {
+        DataSource datasource = mock(DataSource.class);
+        Connection connection = mock(Connection.class);
+        when(datasource.getConnection()).thenReturn(connection);
+        AtomicInteger actionsRun = new AtomicInteger();
+
+        try(UnitOfWork unitOfWork = UnitOfWork.begin(datasource)) {
+            UnitOfWork.getConnection(datasource).close();
+            try(UnitOfWork nested = UnitOfWork.begin(datasource)) {
+                UnitOfWork.afterCommit(datasource, actionsRun::incrementAndGet);
+                nested.complete();
+            }
+
+            assertEquals(0, actionsRun.get());
+            unitOfWork.complete();
+        }
+
+        assertEquals(1, actionsRun.get());
+    }
+
+    @Test
+    public void testAfterCommitNotRunOnRollback() throws Exception {
+        DataSource datasource = mock(DataSource.class);
+        Connection connection = mock(Connection.class);
+        when(datasource.getConnection()).thenReturn(connection);
+        AtomicInteger actionsRun = new AtomicInteger();
+
+        try(UnitOfWork unitOfWork = UnitOfWork.begin(datasource)) {
+            UnitOfWork.getConnection(datasource).close();
+            UnitOfWork.afterCommit(datasource, actionsRun::incrementAndGet);
+        }
+
+        assertEquals(0, actionsRun.get());
+    }
+
+    @Test
+    public void testAfterCommitOutsideUnitOfWorkRunsAtOnce() {
+        AtomicInteger actionsRun = new AtomicInteger();
+
+        UnitOfWork.afterCommit(mock(DataSource.class), actionsRun::incrementAndGet);
+
+        assertEquals(1, actionsRun.get());
+    }
+
+    @Test(expected=UkelonnException.class)
+    public void testFailedCommit() throws Exception {
+        DataSource datasource = mock(DataSource.class);
+        Connection connection = mock(Connection.class);
+        when(datasource.getConnection()).thenReturn(connection);
+        doThrow(SQLException.class).when(connection).commit();
+
+        try(UnitOfWork unitOfWork = UnitOfWork.begin(datasource)) {
+            UnitOfWork.getConnection(datasource).close();
+            unitOfWork.complete();
+        }
+    }
+
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2019 Steinar Bang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package no.priv.bang.ukelonn.backend;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+import no.priv.bang.osgiservice.users.User;
+import no.priv.bang.osgiservice.users.UserManagementService;
+
+public class UserProfileCacheTest {
+
+    private static final User JAD = new User(1, "jad", "jad@gmail.com", "Jane", "Doe");
+    private static final User JOD = new User(2, "jod", "jod@gmail.com", "John", "Doe");
+
+    @Test
+    public void testGetUserIsCached() {
+        UserManagementService useradmin = mock(UserManagementService.class);
+        when(useradmin.getUser("jad")).thenReturn(JAD);
+        UserProfileCache cache = new UserProfileCache(useradmin);
+
+        assertThat(cache.getUser("jad")).isEqualTo(JAD);
+        assertThat(cache.getUser("jad")).isEqualTo(JAD);
+        verify(useradmin, times(1)).getUser("jad");
+    }
+
+    @Test
+    public void testUnknownUserIsCached() {
+        UserManagementService useradmin = mock(UserManagementService.class);
+        AtomicLong now = new AtomicLong(0);
+        UserProfileCache cache = new UserProfileCache(useradmin, 10, 1000, now::get);
+
+        assertThat(cache.getUser("unknown")).isNull();
+        assertThat(cache.getUser("unknown")).isNull();
+        assertThat(cache.size()).isEqualTo(1);
+        verify(useradmin, times(1)).getUser("unknown");
+
+        // The unknown user is looked up again when the entry has expired
+        now.set(1000);
+        assertThat(cache.getUser("unknown")).isNull();
+        verify(useradmin, times(2)).getUser("unknown");
+    }
+
+    @Test
+    public void testEntriesExpire() {
+        UserManagementService useradmin = mock(UserManagementService.class);
+        when(useradmin.getUser("jad")).thenReturn(JAD);
+        AtomicLong now = new AtomicLong(0);
+        UserProfileCache cache = new UserProfileCache(useradmin, 10, 1000, now::get);
+
+        cache.getUser("jad");
+        now.set(999);
+        cache.getUser("jad");
+        verify(useradmin, times(1)).getUser("jad");
+
+        now.set(1000);
+        cache.getUser("jad");
+        verify(useradmin, times(2)).getUser("jad");
+    }
+
+    @Test
+    public void testSizeIsBounded() {
+        UserManagementService useradmin = mock(UserManagementService.class);
+        when(useradmin.getUser("jad")).thenReturn(JAD);
+        when(useradmin.getUser("jod")).thenReturn(JOD);
+        UserProfileCache cache = new UserProfileCache(useradmin, 1, 1000, () -> 0);
+
+        cache.getUser("jad");
+        cache.getUser("jod");
+        assertThat(cache.size()).isEqualTo(1);
+
+        // The least recently used user has been dropped
+        cache.getUser("jad");
+        verify(useradmin, times(2)).getUser("jad");
+    }
+
+    @Test
+    public void testGetUsersOnlyLooksUpMissingUsers() {
+        UserManagementService useradmin = mock(UserManagementService.class);
+        when(useradmin.getUser("jad")).thenReturn(JAD);
+        when(useradmin.getUser("jod")).thenReturn(JOD);
+        UserProfileCache cache = new UserProfileCache(useradmin);
+        cache.getUser("jad");
+
+        Map<String, User> users = cache.getUsers(Arrays.asList("jad", "jod", "unknown"));
+        assertThat(users).containsEntry("jad", JAD).containsEntry("jod", JOD).containsEntry("unknown", null);
+        verify(useradmin, times(1)).getUser("jad");
+        verify(useradmin, times(1)).getUser("jod");
+        verify(useradmin, times(1)).getUser("unknown");
+        verify(useradmin, never()).getUsers();
+
+        // Second lookup is served from the cache
+        cache.getUsers(Arrays.asList("jad", "jod", "unknown"));
+        verify(useradmin, times(1)).getUser("jad");
+        verify(useradmin, times(1)).getUser("jod");
+        verify(useradmin, times(1)).getUser("unknown");
+    }
+
+    @Test
+    public void testInvalidateAll() {
+        UserManagementService useradmin = mock(UserManagementService.class);
+        when(useradmin.getUser("jad")).thenReturn(JAD);
+        UserProfileCache cache = new UserProfileCache(useradmin);
+        cache.getUser("jad");
+        assertThat(cache.size()).isEqualTo(1);
+
+        cache.invalidateAll();
+        assertThat(cache.size()).isEqualTo(0);
+        cache.getUser("jad");
+        verify(useradmin, times(2)).getUser("jad");
+    }
+
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2019 Steinar Bang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package no.priv.bang.ukelonn.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import no.priv.bang.ukelonn.beans.Account;
+import no.priv.bang.ukelonn.beans.SumYear;
+import no.priv.bang.ukelonn.beans.SumYearMonth;
+
+/**
+ * Benchmarks of the {@link no.priv.bang.ukelonn.UkelonnService} methods
+ * reading accounts and earnings statistics.
+ *
+ * @author Steinar Bang
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AccountBenchmarks {
+
+    @Benchmark
+    public List<Account> getAccounts(BenchmarkDatabase database) {
+        return database.getUkelonn().getAccounts();
+    }
+
+    @Benchmark
+    public List<Account> getAccountsAfterInvalidatingCachedUsers(BenchmarkDatabase database) {
+        database.getUkelonn().invalidateCachedUsers();
+        return database.getUkelonn().getAccounts();
+    }
+
+    @Benchmark
+    public Account getAccount(BenchmarkDatabase database) {
+        return database.getUkelonn().getAccount(database.randomAccount().getUsername());
+    }
+
+    @Benchmark
+    public Account getAccountAsync(BenchmarkDatabase database) {
+        return database.getUkelonn().getAccountAsync(database.randomAccount().getUsername()).join();
+    }
+
+    @Benchmark
+    public List<SumYear> earningsSumOverYear(BenchmarkDatabase database) {
+        return database.getUkelonn().earningsSumOverYear(database.randomAccount().getUsername());
+    }
+
+    @Benchmark
+    public List<SumYear> earningsSumOverYearAsync(BenchmarkDatabase database) {
+        return database.getUkelonn().earningsSumOverYearAsync(database.randomAccount().getUsername()).join();
+    }
+
+    @Benchmark
+    public List<SumYearMonth> earningsSumOverMonth(BenchmarkDatabase database) {
+        return database.getUkelonn().earningsSumOverMonth(database.randomAccount().getUsername());
+    }
+
+    @Benchmark
+    public List<SumYearMonth> earningsSumOverMonthAsync(BenchmarkDatabase database) {
+        return database.getUkelonn().earningsSumOverMonthAsync(database.randomAccount().getUsername()).join();
+    }
+
+}
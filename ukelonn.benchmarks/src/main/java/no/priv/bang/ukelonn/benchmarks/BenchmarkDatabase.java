@@ -0,0 +1,189 @@
+/*
+ * Copyright 2019 Steinar Bang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package no.priv.bang.ukelonn.benchmarks;
+
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.*;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.sql.DataSource;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.ops4j.pax.jdbc.derby.impl.DerbyDataSourceFactory;
+import org.osgi.service.jdbc.DataSourceFactory;
+
+import liquibase.exception.LiquibaseException;
+import no.priv.bang.osgi.service.mocks.logservice.MockLogService;
+import no.priv.bang.osgiservice.users.UserManagementService;
+import no.priv.bang.ukelonn.backend.DatasetGenerator;
+import no.priv.bang.ukelonn.backend.GeneratedDataset;
+import no.priv.bang.ukelonn.backend.UkelonnServiceProvider;
+import no.priv.bang.ukelonn.beans.Account;
+import no.priv.bang.ukelonn.beans.TransactionType;
+import no.priv.bang.ukelonn.beans.User;
+import no.priv.bang.ukelonn.db.liquibase.UkelonnLiquibase;
+
+/**
+ * An embedded derby database with the ukelonn schema, filled by the
+ * {@link DatasetGenerator}, and an {@link UkelonnServiceProvider}
+ * running on top of it.
+ *
+ * The size of the database is set by the "accounts" and
+ * "transactionsPerAccount" parameters, and the "accountLedger" and
+ * "virtualThreads" parameters are passed on as the configuration of
+ * the provider, so that a run can compare the provider with and
+ * without an optimization.  The generated data is the same for every
+ * run with the same parameters.
+ *
+ * @author Steinar Bang
+ *
+ */
+@State(Scope.Benchmark)
+public class BenchmarkDatabase {
+
+    static final long SEED = 1203;
+    static final LocalDate LAST_DAY = LocalDate.of(2019, 12, 31);
+    static final int DAYS_OF_HISTORY = 3 * 365;
+    static final int NUMBER_OF_JOBTYPES = 8;
+    static final int NUMBER_OF_PAYMENTTYPES = 2;
+    private static final AtomicInteger databaseCount = new AtomicInteger();
+
+    @Param({"10"})
+    public int accounts;
+
+    @Param({"100"})
+    public int transactionsPerAccount;
+
+    @Param({"false"})
+    public boolean accountLedger;
+
+    @Param({"false"})
+    public boolean virtualThreads;
+
+    private String databaseUrl;
+    private UkelonnServiceProvider ukelonn;
+    private List<Account> accountsInDatabase;
+    private List<TransactionType> jobtypes;
+    private List<TransactionType> paymenttypes;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        databaseUrl = "jdbc:derby:memory:ukelonnbenchmark" + databaseCount.incrementAndGet();
+        DataSource datasource = createDatabase(databaseUrl);
+        GeneratedDataset dataset = new DatasetGenerator(datasource, SEED, "user", LAST_DAY, DAYS_OF_HISTORY).generate(accounts, NUMBER_OF_JOBTYPES, NUMBER_OF_PAYMENTTYPES, transactionsPerAccount);
+        accountsInDatabase = dataset.getAccounts();
+        jobtypes = dataset.getJobtypes();
+        paymenttypes = dataset.getPaymenttypes();
+        ukelonn = new UkelonnServiceProvider();
+        ukelonn.setLogservice(new MockLogService());
+        ukelonn.setDataSource(datasource);
+        ukelonn.setUserAdmin(mockUserManagementService(dataset.getUsers()));
+        Map<String, Object> config = new HashMap<>();
+        config.put("accountLedger", accountLedger);
+        config.put("virtualThreads", virtualThreads);
+        ukelonn.activate(config);
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() {
+        ukelonn.deactivate();
+        dropDatabase(databaseUrl);
+    }
+
+    public UkelonnServiceProvider getUkelonn() {
+        return ukelonn;
+    }
+
+    public List<Account> getAccounts() {
+        return accountsInDatabase;
+    }
+
+    /**
+     * Pick one of the generated accounts at random, so that concurrent
+     * benchmark threads spread out over the accounts.
+     */
+    public Account randomAccount() {
+        return accountsInDatabase.get(ThreadLocalRandom.current().nextInt(accountsInDatabase.size()));
+    }
+
+    public List<TransactionType> getJobtypes() {
+        return jobtypes;
+    }
+
+    public List<TransactionType> getPaymenttypes() {
+        return paymenttypes;
+    }
+
+    static DataSource createDatabase(String databaseUrl) throws SQLException, LiquibaseException {
+        DerbyDataSourceFactory datasourceFactory = new DerbyDataSourceFactory();
+        Properties properties = new Properties();
+        properties.put(DataSourceFactory.JDBC_URL, databaseUrl + ";create=true");
+        DataSource datasource = datasourceFactory.createDataSource(properties);
+        UkelonnLiquibase liquibase = new UkelonnLiquibase();
+        try(Connection connection = datasource.getConnection()) {
+            try {
+                liquibase.createInitialSchema(connection);
+                liquibase.updateSchema(connection);
+            } finally {
+                // Liquibase sets Connection.autoCommit to false, set it back to true
+                connection.setAutoCommit(true);
+            }
+        }
+
+        return datasource;
+    }
+
+    static void dropDatabase(String databaseUrl) {
+        DerbyDataSourceFactory datasourceFactory = new DerbyDataSourceFactory();
+        Properties properties = new Properties();
+        properties.put(DataSourceFactory.JDBC_URL, databaseUrl + ";drop=true");
+        try {
+            datasourceFactory.createDataSource(properties).getConnection().close();
+        } catch (SQLException e) {
+            // Derby reports a successful drop of an in-memory database with an SQLException
+        }
+    }
+
+    static UserManagementService mockUserManagementService(List<User> users) {
+        Map<String, no.priv.bang.osgiservice.users.User> usersByUsername = new HashMap<>();
+        int userId = 0;
+        for (User user : users) {
+            usersByUsername.put(user.getUsername(), new no.priv.bang.osgiservice.users.User(++userId, user.getUsername(), user.getEmail(), user.getFirstname(), user.getLastname()));
+        }
+
+        // Stub only, since a recording mock would hold on to every call made during the benchmark
+        UserManagementService useradmin = mock(UserManagementService.class, withSettings().stubOnly());
+        when(useradmin.getUser(anyString())).thenAnswer(invocation -> usersByUsername.get(invocation.getArguments()[0]));
+        when(useradmin.getUsers()).thenAnswer(invocation -> new ArrayList<>(usersByUsername.values()));
+        return useradmin;
+    }
+
+}
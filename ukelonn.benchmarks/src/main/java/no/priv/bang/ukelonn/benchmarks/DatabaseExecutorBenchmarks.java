@@ -0,0 +1,100 @@
+/*
+ * Copyright 2019 Steinar Bang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package no.priv.bang.ukelonn.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import no.priv.bang.ukelonn.backend.DatabaseExecutors;
+import no.priv.bang.ukelonn.beans.Transaction;
+
+/**
+ * Compares the platform thread and the virtual thread executors of
+ * {@link DatabaseExecutors}, by running the same database call on
+ * each of them.  Both executors run at most {@link #CONCURRENT_CALLS}
+ * calls at a time, so that the only difference is the kind of thread
+ * running the call.
+ *
+ * The virtual thread executor rejects calls beyond its bound, so the
+ * number of benchmark threads must not be larger than
+ * {@link #CONCURRENT_CALLS}, e.g.
+ * <pre>
+ * java -Dukelonn.benchmark.threads=1,4,16 -jar benchmarks.jar DatabaseExecutorBenchmarks
+ * </pre>
+ *
+ * The runs with the "virtual" thread kind need Java 21 or later.
+ *
+ * @author Steinar Bang
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DatabaseExecutorBenchmarks {
+
+    static final int CONCURRENT_CALLS = 16;
+
+    @State(Scope.Benchmark)
+    public static class Executor {
+
+        @Param({"platform", "virtual"})
+        public String threadKind;
+
+        ExecutorService executor;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            if ("virtual".equals(threadKind)) {
+                executor = DatabaseExecutors.virtualThreads(CONCURRENT_CALLS);
+                if (executor == null) {
+                    throw new IllegalStateException("Virtual threads are not supported by this JVM");
+                }
+            } else {
+                executor = DatabaseExecutors.platformThreads(CONCURRENT_CALLS, CONCURRENT_CALLS);
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void teardown() {
+            executor.shutdown();
+        }
+    }
+
+    @Benchmark
+    public List<Transaction> getJobsPage(BenchmarkDatabase database, Executor executor) {
+        int accountId = database.randomAccount().getAccountId();
+        return CompletableFuture.supplyAsync(() -> database.getUkelonn().getJobs(accountId, Integer.MAX_VALUE, TransactionBenchmarks.PAGE_SIZE), executor.executor).join();
+    }
+
+}
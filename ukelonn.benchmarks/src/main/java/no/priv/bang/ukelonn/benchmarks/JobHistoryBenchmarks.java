@@ -0,0 +1,81 @@
+/*
+ * Copyright 2019 Steinar Bang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package no.priv.bang.ukelonn.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import no.priv.bang.ukelonn.beans.Transaction;
+import no.priv.bang.ukelonn.beans.UpdatedTransaction;
+
+/**
+ * Benchmarks of reading the most recent jobs of an account with 100,
+ * 10000 and 1000000 transactions.  The time should stay the same for
+ * all three sizes, since only the last jobs are read, using the
+ * "transactions-account-id-transaction-id-index" index on account id
+ * and transaction id.
+ *
+ * The update benchmark edits the most recent job of the account, and
+ * should also stay the same for all three sizes, since finding the
+ * new paid out time of the account only reads the transactions after
+ * the last payment.
+ *
+ * Run with e.g.
+ * <pre>
+ * java -Dukelonn.benchmark.threads=1 -jar benchmarks.jar JobHistoryBenchmarks
+ * </pre>
+ *
+ * @author Steinar Bang
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JobHistoryBenchmarks {
+
+    @Benchmark
+    public List<Transaction> getJobs(JobHistoryDatabase database) {
+        return database.getUkelonn().getJobs(database.getAccount().getAccountId());
+    }
+
+    @Benchmark
+    public List<Transaction> getJobsPage(JobHistoryDatabase database) {
+        return database.getUkelonn().getJobs(database.getAccount().getAccountId(), Integer.MAX_VALUE, TransactionBenchmarks.PAGE_SIZE);
+    }
+
+    @Benchmark
+    public List<Transaction> updateJob(JobHistoryDatabase database) {
+        Transaction job = database.getNewestJob();
+        UpdatedTransaction updatedJob = new UpdatedTransaction(
+            job.getId(),
+            database.getAccount().getAccountId(),
+            job.getTransactionType().getId(),
+            job.getTransactionTime(),
+            job.getTransactionAmount());
+        return database.getUkelonn().updateJob(updatedJob);
+    }
+
+}
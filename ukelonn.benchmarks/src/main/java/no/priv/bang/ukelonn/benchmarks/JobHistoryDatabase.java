@@ -0,0 +1,103 @@
+/*
+ * Copyright 2019 Steinar Bang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package no.priv.bang.ukelonn.benchmarks;
+
+import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.sql.DataSource;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import no.priv.bang.osgi.service.mocks.logservice.MockLogService;
+import no.priv.bang.ukelonn.backend.DatasetGenerator;
+import no.priv.bang.ukelonn.backend.GeneratedDataset;
+import no.priv.bang.ukelonn.backend.UkelonnServiceProvider;
+import no.priv.bang.ukelonn.beans.Account;
+import no.priv.bang.ukelonn.beans.Transaction;
+
+/**
+ * A database with a few accounts with a long history each, for
+ * measuring how reading the most recent jobs of an account scales
+ * with the number of transactions of the account.
+ *
+ * Kept apart from {@link BenchmarkDatabase}, since generating a
+ * million transactions for every account of every benchmark would
+ * make a full run take hours.
+ *
+ * @author Steinar Bang
+ *
+ */
+@State(Scope.Benchmark)
+public class JobHistoryDatabase {
+
+    static final int ACCOUNTS = 2;
+    private static final AtomicInteger databaseCount = new AtomicInteger();
+
+    @Param({"100", "10000", "1000000"})
+    public int transactionsPerAccount;
+
+    private String databaseUrl;
+    private UkelonnServiceProvider ukelonn;
+    private Account account;
+    private Transaction newestJob;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        databaseUrl = "jdbc:derby:memory:ukelonnjobhistory" + databaseCount.incrementAndGet();
+        DataSource datasource = BenchmarkDatabase.createDatabase(databaseUrl);
+        GeneratedDataset dataset = new DatasetGenerator(datasource, BenchmarkDatabase.SEED, "user", BenchmarkDatabase.LAST_DAY, BenchmarkDatabase.DAYS_OF_HISTORY)
+            .generate(ACCOUNTS, BenchmarkDatabase.NUMBER_OF_JOBTYPES, BenchmarkDatabase.NUMBER_OF_PAYMENTTYPES, transactionsPerAccount);
+        account = dataset.getAccounts().get(0);
+        ukelonn = new UkelonnServiceProvider();
+        ukelonn.setLogservice(new MockLogService());
+        ukelonn.setDataSource(datasource);
+        ukelonn.setUserAdmin(BenchmarkDatabase.mockUserManagementService(dataset.getUsers()));
+        ukelonn.activate(new HashMap<>());
+        newestJob = ukelonn.getJobs(account.getAccountId(), Integer.MAX_VALUE, 1).get(0);
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() {
+        ukelonn.deactivate();
+        BenchmarkDatabase.dropDatabase(databaseUrl);
+    }
+
+    public UkelonnServiceProvider getUkelonn() {
+        return ukelonn;
+    }
+
+    /**
+     * The account whose history is read by the benchmarks.
+     */
+    public Account getAccount() {
+        return account;
+    }
+
+    /**
+     * The most recent job of {@link #getAccount()}, updated with
+     * unchanged values by the update benchmark.
+     */
+    public Transaction getNewestJob() {
+        return newestJob;
+    }
+
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2019 Steinar Bang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package no.priv.bang.ukelonn.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import no.priv.bang.ukelonn.UkelonnService;
+import no.priv.bang.ukelonn.beans.Notification;
+import no.priv.bang.ukelonn.beans.NotificationQueueStatistics;
+
+/**
+ * Benchmarks of the {@link UkelonnService} notification methods.
+ * Every benchmark both sends and receives, so that the notification
+ * queues don't fill up during the run, and each benchmark thread uses
+ * its own recipient, so that a thread waiting for a notification can't
+ * have it taken by another thread.
+ *
+ * @author Steinar Bang
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class NotificationBenchmarks {
+
+    private static final AtomicInteger recipientCount = new AtomicInteger();
+
+    @State(Scope.Thread)
+    public static class Recipient {
+        final String username = "recipient" + recipientCount.incrementAndGet();
+    }
+
+    @Benchmark
+    public List<Notification> notificationToAndNotificationsTo(BenchmarkDatabase database, Recipient recipient) {
+        UkelonnService ukelonn = database.getUkelonn();
+        String username = recipient.username;
+        ukelonn.notificationTo(username, new Notification("Ukelønn", "1,00 kroner betalt til konto"));
+        return ukelonn.notificationsTo(username);
+    }
+
+    @Benchmark
+    public List<Notification> notificationToAndWaitForNotificationTo(BenchmarkDatabase database, Recipient recipient) {
+        UkelonnService ukelonn = database.getUkelonn();
+        String username = recipient.username;
+        ukelonn.notificationTo(username, new Notification("Ukelønn", "1,00 kroner betalt til konto"));
+        return ukelonn.waitForNotificationTo(username).join();
+    }
+
+    @Benchmark
+    public NotificationQueueStatistics getNotificationQueueStatistics(BenchmarkDatabase database) {
+        return database.getUkelonn().getNotificationQueueStatistics();
+    }
+
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright 2019 Steinar Bang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package no.priv.bang.ukelonn.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import no.priv.bang.ukelonn.UkelonnService;
+import no.priv.bang.ukelonn.beans.Account;
+import no.priv.bang.ukelonn.beans.PerformedTransaction;
+import no.priv.bang.ukelonn.beans.Transaction;
+import no.priv.bang.ukelonn.beans.TransactionType;
+import no.priv.bang.ukelonn.beans.UpdatedTransaction;
+import no.priv.bang.ukelonn.beans.User;
+
+/**
+ * Benchmarks of the {@link UkelonnService} methods changing the
+ * database.  The database grows during a run, so these should be
+ * compared between runs with the same warmup and measurement times.
+ *
+ * @author Steinar Bang
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RegistrationBenchmarks {
+
+    static final int JOBS_PER_REGISTRATION = 5;
+    private static final AtomicInteger uniqueNameCount = new AtomicInteger();
+
+    /**
+     * A job owned by a single benchmark thread, that the thread can
+     * update without interfering with the other threads.
+     */
+    @State(Scope.Thread)
+    public static class OwnJob {
+        Account account;
+        int transactionTypeId;
+        int jobId;
+        double amount;
+
+        @Setup(Level.Iteration)
+        public void registerJob(BenchmarkDatabase database) {
+            account = database.randomAccount();
+            TransactionType jobtype = database.getJobtypes().get(0);
+            transactionTypeId = jobtype.getId();
+            amount = jobtype.getTransactionAmount();
+            jobId = registerJobAndFindId(database.getUkelonn(), new PerformedTransaction(account, transactionTypeId, amount, new Date()));
+        }
+    }
+
+    @Benchmark
+    public Account registerPerformedJob(BenchmarkDatabase database) {
+        return database.getUkelonn().registerPerformedJob(performedJob(database, database.randomAccount()));
+    }
+
+    @Benchmark
+    public Account registerPerformedJobs(BenchmarkDatabase database) {
+        Account account = database.randomAccount();
+        List<PerformedTransaction> jobs = new ArrayList<>(JOBS_PER_REGISTRATION);
+        for (int i = 0; i < JOBS_PER_REGISTRATION; ++i) {
+            jobs.add(performedJob(database, account));
+        }
+
+        return database.getUkelonn().registerPerformedJobs(jobs);
+    }
+
+    @Benchmark
+    public List<Transaction> updateJob(BenchmarkDatabase database, OwnJob job) {
+        job.amount = job.amount + 1.0;
+        UpdatedTransaction editedJob = new UpdatedTransaction(job.jobId, job.account.getAccountId(), job.transactionTypeId, new Date(), job.amount);
+        return database.getUkelonn().updateJob(editedJob);
+    }
+
+    @Benchmark
+    public List<Transaction> registerAndDeleteJob(BenchmarkDatabase database) {
+        Account account = database.randomAccount();
+        UkelonnService ukelonn = database.getUkelonn();
+        int jobId = registerJobAndFindId(ukelonn, performedJob(database, account));
+        return ukelonn.deleteJobsFromAccount(account.getAccountId(), Collections.singletonList(jobId));
+    }
+
+    @Benchmark
+    public Account registerPayment(BenchmarkDatabase database) {
+        Account account = database.randomAccount();
+        int paymenttypeId = database.getPaymenttypes().get(0).getId();
+        return database.getUkelonn().registerPayment(new PerformedTransaction(account, paymenttypeId, 1.0, new Date()));
+    }
+
+    @Benchmark
+    public List<TransactionType> modifyJobtype(BenchmarkDatabase database) {
+        TransactionType jobtype = database.getJobtypes().get(0);
+        return database.getUkelonn().modifyJobtype(new TransactionType(jobtype.getId(), jobtype.getTransactionTypeName(), jobtype.getTransactionAmount(), true, false));
+    }
+
+    @Benchmark
+    public List<TransactionType> createJobtype(BenchmarkDatabase database) {
+        return database.getUkelonn().createJobtype(new TransactionType(0, "Jobb " + uniqueNameCount.incrementAndGet(), 25.0, true, false));
+    }
+
+    @Benchmark
+    public List<TransactionType> modifyPaymenttype(BenchmarkDatabase database) {
+        TransactionType paymenttype = database.getPaymenttypes().get(0);
+        return database.getUkelonn().modifyPaymenttype(new TransactionType(paymenttype.getId(), paymenttype.getTransactionTypeName(), 0.0, false, true));
+    }
+
+    @Benchmark
+    public List<TransactionType> createPaymenttype(BenchmarkDatabase database) {
+        return database.getUkelonn().createPaymenttype(new TransactionType(0, "Utbetaling " + uniqueNameCount.incrementAndGet(), null, false, true));
+    }
+
+    @Benchmark
+    public Account addAccount(BenchmarkDatabase database) {
+        String username = "newuser" + uniqueNameCount.incrementAndGet();
+        return database.getUkelonn().addAccount(new User(0, username, username + "@example.com", "New", "User"));
+    }
+
+    static PerformedTransaction performedJob(BenchmarkDatabase database, Account account) {
+        TransactionType jobtype = database.getJobtypes().get(0);
+        return new PerformedTransaction(account, jobtype.getId(), jobtype.getTransactionAmount(), new Date());
+    }
+
+    static int registerJobAndFindId(UkelonnService ukelonn, PerformedTransaction job) {
+        ukelonn.registerPerformedJob(job);
+        return ukelonn.getJobs(job.getAccount().getAccountId(), Integer.MAX_VALUE, 1).get(0).getId();
+    }
+
+}
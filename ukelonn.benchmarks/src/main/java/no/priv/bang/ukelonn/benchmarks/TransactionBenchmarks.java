@@ -0,0 +1,94 @@
+/*
+ * Copyright 2019 Steinar Bang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package no.priv.bang.ukelonn.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import no.priv.bang.ukelonn.beans.Transaction;
+import no.priv.bang.ukelonn.beans.TransactionType;
+
+/**
+ * Benchmarks of the {@link no.priv.bang.ukelonn.UkelonnService} methods
+ * reading transactions and transaction types.
+ *
+ * @author Steinar Bang
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TransactionBenchmarks {
+
+    static final int PAGE_SIZE = 100;
+
+    @Benchmark
+    public List<TransactionType> getJobTypes(BenchmarkDatabase database) {
+        return database.getUkelonn().getJobTypes();
+    }
+
+    @Benchmark
+    public List<TransactionType> getPaymenttypes(BenchmarkDatabase database) {
+        return database.getUkelonn().getPaymenttypes();
+    }
+
+    @Benchmark
+    public List<Transaction> getJobs(BenchmarkDatabase database) {
+        return database.getUkelonn().getJobs(database.randomAccount().getAccountId());
+    }
+
+    @Benchmark
+    public List<Transaction> getJobsPage(BenchmarkDatabase database) {
+        return database.getUkelonn().getJobs(database.randomAccount().getAccountId(), Integer.MAX_VALUE, PAGE_SIZE);
+    }
+
+    @Benchmark
+    public List<Transaction> getJobsAsync(BenchmarkDatabase database) {
+        return database.getUkelonn().getJobsAsync(database.randomAccount().getAccountId(), Integer.MAX_VALUE, PAGE_SIZE).join();
+    }
+
+    @Benchmark
+    public List<Transaction> getPayments(BenchmarkDatabase database) {
+        return database.getUkelonn().getPayments(database.randomAccount().getAccountId());
+    }
+
+    @Benchmark
+    public List<Transaction> getPaymentsPage(BenchmarkDatabase database) {
+        return database.getUkelonn().getPayments(database.randomAccount().getAccountId(), Integer.MAX_VALUE, PAGE_SIZE);
+    }
+
+    @Benchmark
+    public List<Transaction> getPaymentsAsync(BenchmarkDatabase database) {
+        return database.getUkelonn().getPaymentsAsync(database.randomAccount().getAccountId(), Integer.MAX_VALUE, PAGE_SIZE).join();
+    }
+
+    @Benchmark
+    public void exportTransactions(BenchmarkDatabase database, Blackhole blackhole) {
+        database.getUkelonn().exportTransactions(database.randomAccount().getAccountId(), blackhole::consume);
+    }
+
+}
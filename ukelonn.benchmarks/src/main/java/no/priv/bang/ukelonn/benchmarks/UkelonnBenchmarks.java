@@ -0,0 +1,74 @@
+/*
+ * Copyright 2019 Steinar Bang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package no.priv.bang.ukelonn.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Main class of the benchmarks jar.  Takes the usual JMH command line
+ * options, and runs the selected benchmarks once for each of the
+ * thread counts in the "ukelonn.benchmark.threads" system property
+ * (default "1,4,16").  The results of each thread count are written
+ * as JSON to jmh-result-threads-&lt;n&gt;.json, to be kept and
+ * compared with later runs.
+ *
+ * The size of the database is set with the JMH parameters, e.g.
+ * <pre>
+ * java -Dukelonn.benchmark.threads=1,8 -jar benchmarks.jar -p accounts=10,100 -p transactionsPerAccount=1000 AccountBenchmarks
+ * </pre>
+ *
+ * @author Steinar Bang
+ *
+ */
+public class UkelonnBenchmarks {
+
+    static final String THREADS_PROPERTY = "ukelonn.benchmark.threads";
+    static final String DEFAULT_THREADS = "1,4,16";
+
+    private UkelonnBenchmarks() {}
+
+    public static void main(String[] args) throws CommandLineOptionException, RunnerException {
+        CommandLineOptions commandLineOptions = new CommandLineOptions(args);
+        for (int threads : parseThreadCounts(System.getProperty(THREADS_PROPERTY, DEFAULT_THREADS))) {
+            Options options = new OptionsBuilder()
+                .parent(commandLineOptions)
+                .threads(threads)
+                .resultFormat(ResultFormatType.JSON)
+                .result(String.format("jmh-result-threads-%d.json", threads))
+                .build();
+            new Runner(options).run();
+        }
+    }
+
+    static List<Integer> parseThreadCounts(String threadCounts) {
+        List<Integer> counts = new ArrayList<>();
+        for (String count : threadCounts.split(",")) {
+            counts.add(Integer.valueOf(count.trim()));
+        }
+
+        return counts;
+    }
+
+}
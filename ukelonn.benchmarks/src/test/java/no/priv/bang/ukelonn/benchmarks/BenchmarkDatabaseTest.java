@@ -0,0 +1,92 @@
+/*
+ * Copyright 2019 Steinar Bang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package no.priv.bang.ukelonn.benchmarks;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import no.priv.bang.ukelonn.beans.Account;
+import no.priv.bang.ukelonn.beans.Transaction;
+
+public class BenchmarkDatabaseTest {
+
+    @Test
+    public void testSetupFillsDatabase() throws Exception {
+        BenchmarkDatabase database = new BenchmarkDatabase();
+        database.accounts = 3;
+        database.transactionsPerAccount = 25;
+        database.accountLedger = true;
+        database.setup();
+        try {
+            List<Account> accounts = database.getUkelonn().getAccounts();
+            assertEquals(3, accounts.size());
+            assertNotNull(accounts.get(0).getFirstName());
+
+            Account account = database.randomAccount();
+            List<Transaction> jobs = database.getUkelonn().getJobs(account.getAccountId(), Integer.MAX_VALUE, 100);
+            List<Transaction> payments = database.getUkelonn().getPayments(account.getAccountId(), Integer.MAX_VALUE, 100);
+            assertEquals(25, jobs.size() + payments.size());
+            assertFalse(database.getUkelonn().earningsSumOverMonth(account.getUsername()).isEmpty());
+        } finally {
+            database.teardown();
+        }
+    }
+
+    @Test
+    public void testSameDataInEveryRun() throws Exception {
+        assertEquals(balances(), balances());
+    }
+
+    @Test
+    public void testJobHistoryDatabase() throws Exception {
+        JobHistoryDatabase database = new JobHistoryDatabase();
+        database.transactionsPerAccount = 60;
+        database.setup();
+        try {
+            assertEquals(JobHistoryDatabase.ACCOUNTS, database.getUkelonn().getAccounts().size());
+            int accountId = database.getAccount().getAccountId();
+            List<Transaction> jobs = database.getUkelonn().getJobs(accountId, Integer.MAX_VALUE, 100);
+            List<Transaction> payments = database.getUkelonn().getPayments(accountId, Integer.MAX_VALUE, 100);
+            assertEquals(60, jobs.size() + payments.size());
+            assertFalse(database.getUkelonn().getJobs(accountId).isEmpty());
+        } finally {
+            database.teardown();
+        }
+    }
+
+    @Test
+    public void testParseThreadCounts() {
+        assertEquals(Arrays.asList(1, 4, 16), UkelonnBenchmarks.parseThreadCounts(UkelonnBenchmarks.DEFAULT_THREADS));
+        assertEquals(Arrays.asList(2, 8), UkelonnBenchmarks.parseThreadCounts(" 2, 8"));
+    }
+
+    private List<Double> balances() throws Exception {
+        BenchmarkDatabase database = new BenchmarkDatabase();
+        database.accounts = 2;
+        database.transactionsPerAccount = 15;
+        database.setup();
+        try {
+            return Arrays.asList(database.getAccounts().get(0).getBalance(), database.getAccounts().get(1).getBalance());
+        } finally {
+            database.teardown();
+        }
+    }
+
+}
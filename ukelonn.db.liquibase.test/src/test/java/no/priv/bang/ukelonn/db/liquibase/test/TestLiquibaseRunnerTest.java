@@ -81,7 +81,23 @@ public class TestLiquibaseRunnerTest {
 
         // Verify that the schema changeset as well as all of the test data change sets has been run
         List<RanChangeSet> ranChangeSets = runner.getChangeLogHistory(datasource);
-        assertEquals(47, ranChangeSets.size());
+        assertEquals(57, ranChangeSets.size());
+    }
+
+    @Test
+    public void testPaidOutTimeQueryUsesCompositeIndex() throws Exception {
+        DerbyDataSourceFactory dataSourceFactory = new DerbyDataSourceFactory();
+        Properties derbyMemoryCredentials = createDerbyMemoryCredentials();
+        DataSource datasource = dataSourceFactory.createDataSource(derbyMemoryCredentials);
+        TestLiquibaseRunner runner = new TestLiquibaseRunner();
+        runner.setLogService(new MockLogService());
+        runner.activate();
+        runner.prepare(datasource); // Create the database
+
+        // The SQL templates of the jobs and payments pages are in the backend bundle, and their plans are checked by the backend tests
+        String paidOutTime = "select transaction_time, transaction_amount from transactions where account_id=? order by transaction_time";
+        String plan = explain(datasource, paidOutTime, 4);
+        assertThat(plan.toUpperCase()).contains("USING INDEX TRANSACTIONS-ACCOUNT-ID-TRANSACTION-TIME-INDEX");
     }
 
     @Test
@@ -279,6 +295,37 @@ public class TestLiquibaseRunnerTest {
         liquibase.updateSchema(connect);
     }
 
+    /**
+     * Run a query with the derby runtime statistics turned on, and
+     * return the text describing the query plan used.
+     */
+    private String explain(DataSource datasource, String sql, int... parameters) throws SQLException {
+        try(Connection connection = datasource.getConnection()) {
+            try(PreparedStatement statement = connection.prepareStatement("CALL SYSCS_UTIL.SYSCS_SET_RUNTIMESTATISTICS(1)")) {
+                statement.execute();
+            }
+
+            try(PreparedStatement statement = connection.prepareStatement(sql)) {
+                for (int i = 0; i < parameters.length; ++i) {
+                    statement.setInt(i + 1, parameters[i]);
+                }
+
+                try(ResultSet results = statement.executeQuery()) {
+                    while (results.next()) {
+                        // Read the entire result before getting the statistics
+                    }
+                }
+            }
+
+            try(PreparedStatement statement = connection.prepareStatement("VALUES SYSCS_UTIL.SYSCS_GET_RUNTIMESTATISTICS()")) {
+                try(ResultSet results = statement.executeQuery()) {
+                    assertTrue(results.next());
+                    return results.getString(1);
+                }
+            }
+        }
+    }
+
     private Properties createDerbyMemoryCredentials() {
         Properties properties = new Properties();
         properties.put(DataSourceFactory.JDBC_URL, "jdbc:derby:memory:ukelonn;create=true");
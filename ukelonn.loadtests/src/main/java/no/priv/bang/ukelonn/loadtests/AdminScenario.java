@@ -0,0 +1,57 @@
+/*
+ * Copyright 2019 Steinar Bang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package no.priv.bang.ukelonn.loadtests;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * What a user with role "ukelonnadmin" does in a visit: log in, pick
+ * one of the accounts, look at its jobs, payments and statistics,
+ * pay out the balance and log out.
+ *
+ * @author Steinar Bang
+ *
+ */
+public class AdminScenario extends Scenario {
+
+    public AdminScenario(String username, String password) {
+        super(username, password);
+    }
+
+    @Override
+    public void visit(UkelonnClient client) {
+        login(client);
+        JsonNode accounts = client.get("GET /api/accounts", "/api/accounts");
+        JsonNode paymenttypes = client.get("GET /api/paymenttypes", "/api/paymenttypes");
+        if (accounts.size() > 0) {
+            JsonNode account = accounts.get(ThreadLocalRandom.current().nextInt(accounts.size()));
+            int accountId = account.path("accountId").asInt();
+            String username = account.path("username").asText();
+            client.get("GET /api/jobs/{accountId}", "/api/jobs/" + accountId);
+            client.get("GET /api/payments/{accountId}", "/api/payments/" + accountId);
+            client.get("GET /api/statistics/earnings/sumoveryear/{username}", "/api/statistics/earnings/sumoveryear/" + username);
+            double balance = account.path("balance").asDouble();
+            if (balance > 0 && paymenttypes.size() > 0) {
+                client.post("POST /api/registerpayment", "/api/registerpayment", performedTransaction(account, paymenttypes.get(0), balance));
+            }
+        }
+
+        logout(client);
+    }
+
+}
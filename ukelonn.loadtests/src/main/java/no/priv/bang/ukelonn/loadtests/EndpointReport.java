@@ -0,0 +1,98 @@
+/*
+ * Copyright 2019 Steinar Bang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package no.priv.bang.ukelonn.loadtests;
+
+import org.HdrHistogram.Histogram;
+
+/**
+ * Request count, error count, throughput and latency percentiles
+ * of one endpoint.  The latencies are in milliseconds and the
+ * throughput is in requests per second.
+ *
+ * @author Steinar Bang
+ *
+ */
+public class EndpointReport {
+
+    private final String endpoint;
+    private final long requests;
+    private final long errors;
+    private final double throughput;
+    private final double mean;
+    private final double p50;
+    private final double p90;
+    private final double p99;
+    private final double p999;
+    private final double max;
+
+    public EndpointReport(String endpoint, Histogram latenciesInMicroseconds, long errors, double elapsedSeconds) {
+        this.endpoint = endpoint;
+        this.requests = latenciesInMicroseconds.getTotalCount();
+        this.errors = errors;
+        this.throughput = elapsedSeconds > 0 ? requests / elapsedSeconds : 0.0;
+        this.mean = latenciesInMicroseconds.getMean() / 1000.0;
+        this.p50 = milliseconds(latenciesInMicroseconds, 50.0);
+        this.p90 = milliseconds(latenciesInMicroseconds, 90.0);
+        this.p99 = milliseconds(latenciesInMicroseconds, 99.0);
+        this.p999 = milliseconds(latenciesInMicroseconds, 99.9);
+        this.max = latenciesInMicroseconds.getMaxValue() / 1000.0;
+    }
+
+    public String getEndpoint() {
+        return endpoint;
+    }
+
+    public long getRequests() {
+        return requests;
+    }
+
+    public long getErrors() {
+        return errors;
+    }
+
+    public double getThroughput() {
+        return throughput;
+    }
+
+    public double getMean() {
+        return mean;
+    }
+
+    public double getP50() {
+        return p50;
+    }
+
+    public double getP90() {
+        return p90;
+    }
+
+    public double getP99() {
+        return p99;
+    }
+
+    public double getP999() {
+        return p999;
+    }
+
+    public double getMax() {
+        return max;
+    }
+
+    private static double milliseconds(Histogram latenciesInMicroseconds, double percentile) {
+        return latenciesInMicroseconds.getValueAtPercentile(percentile) / 1000.0;
+    }
+
+}
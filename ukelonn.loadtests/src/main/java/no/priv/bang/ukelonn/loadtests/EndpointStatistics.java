@@ -0,0 +1,95 @@
+/*
+ * Copyright 2019 Steinar Bang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package no.priv.bang.ukelonn.loadtests;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+/**
+ * Latencies and error counts of the endpoints called by the load test.
+ *
+ * Each endpoint has its own HdrHistogram {@link Recorder}, so that the
+ * virtual users can record latencies concurrently without locking,
+ * and so that the warmup can be thrown away by {@link #reset()}.
+ *
+ * @author Steinar Bang
+ *
+ */
+public class EndpointStatistics {
+
+    static final long HIGHEST_TRACKABLE_MICROSECONDS = TimeUnit.MINUTES.toMicros(10);
+    static final int SIGNIFICANT_DIGITS = 3;
+    private final Map<String, Endpoint> endpoints = new ConcurrentHashMap<>();
+
+    /**
+     * Record one call of an endpoint.
+     *
+     * @param endpoint the method and normalized path of the endpoint, e.g. "GET /api/jobs/{accountId}"
+     * @param elapsedNanoseconds the time from sending the request until the response was read
+     * @param failed true if the call didn't give a successful response
+     */
+    public void record(String endpoint, long elapsedNanoseconds, boolean failed) {
+        Endpoint statistics = endpoints.computeIfAbsent(endpoint, e -> new Endpoint());
+        long microseconds = TimeUnit.NANOSECONDS.toMicros(elapsedNanoseconds);
+        statistics.latencies.recordValue(Math.min(microseconds, HIGHEST_TRACKABLE_MICROSECONDS));
+        if (failed) {
+            statistics.errors.increment();
+        }
+    }
+
+    /**
+     * Throw away everything recorded so far.
+     */
+    public void reset() {
+        for (Endpoint statistics : endpoints.values()) {
+            statistics.latencies.getIntervalHistogram();
+            statistics.errors.reset();
+        }
+    }
+
+    /**
+     * Create a report of everything recorded since the previous
+     * {@link #reset()} and start recording from scratch.
+     *
+     * @param elapsedNanoseconds the time spent recording, used to find the throughput
+     * @return a report of each endpoint, sorted on the endpoint
+     */
+    public List<EndpointReport> report(long elapsedNanoseconds) {
+        double elapsedSeconds = elapsedNanoseconds / (double) TimeUnit.SECONDS.toNanos(1);
+        List<EndpointReport> reports = new ArrayList<>();
+        for (Map.Entry<String, Endpoint> entry : endpoints.entrySet()) {
+            Histogram histogram = entry.getValue().latencies.getIntervalHistogram();
+            long errors = entry.getValue().errors.sumThenReset();
+            reports.add(new EndpointReport(entry.getKey(), histogram, errors, elapsedSeconds));
+        }
+
+        reports.sort((a, b) -> a.getEndpoint().compareTo(b.getEndpoint()));
+        return reports;
+    }
+
+    private static class Endpoint {
+        final Recorder latencies = new Recorder(HIGHEST_TRACKABLE_MICROSECONDS, SIGNIFICANT_DIGITS);
+        final LongAdder errors = new LongAdder();
+    }
+
+}
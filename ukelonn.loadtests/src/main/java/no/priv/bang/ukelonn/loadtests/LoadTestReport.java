@@ -0,0 +1,93 @@
+/*
+ * Copyright 2019 Steinar Bang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package no.priv.bang.ukelonn.loadtests;
+
+import java.util.List;
+
+/**
+ * The result of a load test run, written as JSON by {@link UkelonnLoadTest}.
+ *
+ * @author Steinar Bang
+ *
+ */
+public class LoadTestReport {
+
+    private final int users;
+    private final int admins;
+    private final double durationSeconds;
+    private final long failedVisits;
+    private final long requests;
+    private final long errors;
+    private final double throughput;
+    private final List<EndpointReport> endpoints;
+
+    public LoadTestReport(int users, int admins, double durationSeconds, long failedVisits, List<EndpointReport> endpoints) {
+        this.users = users;
+        this.admins = admins;
+        this.durationSeconds = durationSeconds;
+        this.failedVisits = failedVisits;
+        this.requests = endpoints.stream().mapToLong(EndpointReport::getRequests).sum();
+        this.errors = endpoints.stream().mapToLong(EndpointReport::getErrors).sum();
+        this.throughput = endpoints.stream().mapToDouble(EndpointReport::getThroughput).sum();
+        this.endpoints = endpoints;
+    }
+
+    public int getUsers() {
+        return users;
+    }
+
+    public int getAdmins() {
+        return admins;
+    }
+
+    public double getDurationSeconds() {
+        return durationSeconds;
+    }
+
+    /**
+     * A visit fails when one of its calls fails, or when the login is refused.
+     */
+    public long getFailedVisits() {
+        return failedVisits;
+    }
+
+    public long getRequests() {
+        return requests;
+    }
+
+    public long getErrors() {
+        return errors;
+    }
+
+    public double getThroughput() {
+        return throughput;
+    }
+
+    public List<EndpointReport> getEndpoints() {
+        return endpoints;
+    }
+
+    /**
+     * Find the report of an endpoint.
+     *
+     * @param endpoint the method and normalized path of the endpoint, e.g. "POST /api/login"
+     * @return the report of the endpoint, or null if the endpoint wasn't called
+     */
+    public EndpointReport getEndpoint(String endpoint) {
+        return endpoints.stream().filter(e -> e.getEndpoint().equals(endpoint)).findFirst().orElse(null);
+    }
+
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2019 Steinar Bang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package no.priv.bang.ukelonn.loadtests;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import no.priv.bang.ukelonn.UkelonnException;
+
+/**
+ * A scripted visit to the ukelonn webapp, from login to logout.
+ *
+ * Each virtual user of the load test repeats the visit of its
+ * scenario until the load test ends.  The endpoints are named by
+ * their method and normalized path, so that all calls to
+ * e.g. "/api/jobs/1" and "/api/jobs/2" are reported as
+ * "GET /api/jobs/{accountId}".
+ *
+ * @author Steinar Bang
+ *
+ */
+public abstract class Scenario {
+
+    private final String username;
+    private final String password;
+
+    protected Scenario(String username, String password) {
+        this.username = username;
+        this.password = password;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    /**
+     * Run the scenario once.
+     *
+     * @param client the REST client of the virtual user running the scenario
+     */
+    public abstract void visit(UkelonnClient client);
+
+    protected void login(UkelonnClient client) {
+        client.clearCookies();
+        ObjectNode credentials = JsonNodeFactory.instance.objectNode();
+        credentials.put("username", username);
+        credentials.put("password", password);
+        JsonNode result = client.post("POST /api/login", "/api/login", credentials);
+        String errorMessage = result.path("errorMessage").asText();
+        if (!errorMessage.isEmpty()) {
+            throw new UkelonnException(String.format("Login of %s failed: %s", username, errorMessage));
+        }
+    }
+
+    protected void logout(UkelonnClient client) {
+        client.post("POST /api/logout", "/api/logout", null);
+    }
+
+    protected static ObjectNode performedTransaction(JsonNode account, JsonNode transactionType, double amount) {
+        ObjectNode transaction = JsonNodeFactory.instance.objectNode();
+        transaction.set("account", account);
+        transaction.put("transactionTypeId", transactionType.path("id").asInt());
+        transaction.put("transactionAmount", amount);
+        transaction.put("transactionDate", System.currentTimeMillis());
+        return transaction;
+    }
+
+}
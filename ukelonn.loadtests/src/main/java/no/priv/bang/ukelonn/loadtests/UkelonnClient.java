@@ -0,0 +1,150 @@
+/*
+ * Copyright 2019 Steinar Bang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package no.priv.bang.ukelonn.loadtests;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.MissingNode;
+
+import no.priv.bang.ukelonn.UkelonnException;
+
+/**
+ * A REST client for one virtual user of the load test.
+ *
+ * The client keeps the cookies of the user, i.e. the shiro session
+ * and the remember me cookie, and times every call from the
+ * request is sent until the response body has been read.  The time
+ * is recorded in {@link EndpointStatistics} under the endpoint name
+ * given by the caller, so that calls with different path parameters
+ * end up in the same histogram.
+ *
+ * @author Steinar Bang
+ *
+ */
+public class UkelonnClient {
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+    private final String baseUrl;
+    private final EndpointStatistics statistics;
+    private final Map<String, String> cookies = new LinkedHashMap<>();
+
+    /**
+     * @param baseUrl the URL of the ukelonn web context, e.g. "http://localhost:8181/ukelonn"
+     * @param statistics where the latencies of the calls are recorded
+     */
+    public UkelonnClient(String baseUrl, EndpointStatistics statistics) {
+        this.baseUrl = baseUrl;
+        this.statistics = statistics;
+    }
+
+    public JsonNode get(String endpoint, String path) {
+        return call(endpoint, "GET", path, null);
+    }
+
+    public JsonNode post(String endpoint, String path, Object body) {
+        return call(endpoint, "POST", path, body);
+    }
+
+    /**
+     * Forget the session, so that the next call starts a new session.
+     */
+    public void clearCookies() {
+        cookies.clear();
+    }
+
+    JsonNode call(String endpoint, String method, String path, Object body) {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            HttpURLConnection connection = (HttpURLConnection) new URL(baseUrl + path).openConnection();
+            connection.setRequestMethod(method);
+            connection.setRequestProperty("Accept", "application/json");
+            if (!cookies.isEmpty()) {
+                connection.setRequestProperty("Cookie", String.join("; ", cookies.values()));
+            }
+
+            if (body != null) {
+                connection.setDoOutput(true);
+                connection.setRequestProperty("Content-Type", "application/json");
+                try (OutputStream requestBody = connection.getOutputStream()) {
+                    mapper.writeValue(requestBody, body);
+                }
+            }
+
+            int status = connection.getResponseCode();
+            saveCookies(connection.getHeaderFields().get("Set-Cookie"));
+            if (status >= 400) {
+                discard(connection.getErrorStream());
+                throw new UkelonnException(String.format("%s %s failed with HTTP status %d", method, path, status));
+            }
+
+            JsonNode response = readResponse(connection);
+            failed = false;
+            return response;
+        } catch (IOException e) {
+            throw new UkelonnException(String.format("%s %s failed", method, path), e);
+        } finally {
+            statistics.record(endpoint, System.nanoTime() - start, failed);
+        }
+    }
+
+    private JsonNode readResponse(HttpURLConnection connection) throws IOException {
+        try (InputStream responseBody = connection.getInputStream()) {
+            JsonNode response = mapper.readTree(responseBody);
+            return response != null ? response : MissingNode.getInstance();
+        }
+    }
+
+    private void saveCookies(List<String> setCookieHeaders) {
+        if (setCookieHeaders == null) {
+            return;
+        }
+
+        for (String setCookie : setCookieHeaders) {
+            String cookie = setCookie.split(";", 2)[0].trim();
+            int equals = cookie.indexOf('=');
+            if (equals > 0) {
+                String name = cookie.substring(0, equals);
+                if (setCookie.contains("deleteMe") || cookie.length() == equals + 1) {
+                    cookies.remove(name);
+                } else {
+                    cookies.put(name, cookie);
+                }
+            }
+        }
+    }
+
+    private static void discard(InputStream errorBody) throws IOException {
+        if (errorBody != null) {
+            try (InputStream body = errorBody) {
+                byte[] buffer = new byte[1024];
+                while (body.read(buffer) >= 0) {
+                    // Read the body to the end, so that the connection can be reused
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright 2019 Steinar Bang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package no.priv.bang.ukelonn.loadtests;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import no.priv.bang.ukelonn.UkelonnException;
+
+/**
+ * Load test of the ukelonn webapp, running in-process in a
+ * {@link WebappServer}.
+ *
+ * A number of virtual users and virtual administrators repeat the
+ * visits of {@link UserScenario} and {@link AdminScenario} as fast as
+ * they can, i.e. without think time, so that the throughput in the
+ * report is the maximum throughput of the webapp for that number of
+ * concurrent clients.  What is recorded during the warmup is thrown
+ * away.
+ *
+ * The run is set up with system properties:
+ * <ul>
+ * <li>"ukelonn.loadtest.users" the number of virtual users (default 8)</li>
+ * <li>"ukelonn.loadtest.admins" the number of virtual administrators (default 2)</li>
+ * <li>"ukelonn.loadtest.warmup" the warmup in seconds (default 10)</li>
+ * <li>"ukelonn.loadtest.duration" the measurement in seconds (default 60)</li>
+ * <li>"ukelonn.loadtest.report" the file the JSON report is written to (default "loadtest-report.json")</li>
+ * <li>"ukelonn.loadtest.accountLedger" and "ukelonn.loadtest.virtualThreads" the configuration of the UkelonnService (default false)</li>
+ * </ul>
+ *
+ * @author Steinar Bang
+ *
+ */
+public class UkelonnLoadTest {
+
+    static final String USERNAME = "jad";
+    static final String PASSWORD = "1ad"; // NOSONAR This is the password of a user in the test database
+    static final String ADMIN_USERNAME = "admin";
+    static final String ADMIN_PASSWORD = "admin"; // NOSONAR This is the password of a user in the test database
+    private static final ObjectMapper mapper = new ObjectMapper();
+    private final String baseUrl;
+    private final int users;
+    private final int admins;
+    private final LongAdder failedVisits = new LongAdder();
+
+    public UkelonnLoadTest(String baseUrl, int users, int admins) {
+        this.baseUrl = baseUrl;
+        this.users = users;
+        this.admins = admins;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int users = Integer.getInteger("ukelonn.loadtest.users", 8);
+        int admins = Integer.getInteger("ukelonn.loadtest.admins", 2);
+        long warmup = Long.getLong("ukelonn.loadtest.warmup", 10);
+        long duration = Long.getLong("ukelonn.loadtest.duration", 60);
+        File reportFile = new File(System.getProperty("ukelonn.loadtest.report", "loadtest-report.json"));
+        Map<String, Object> ukelonnConfig = new HashMap<>();
+        ukelonnConfig.put("accountLedger", Boolean.getBoolean("ukelonn.loadtest.accountLedger"));
+        ukelonnConfig.put("virtualThreads", Boolean.getBoolean("ukelonn.loadtest.virtualThreads"));
+
+        WebappServer server = new WebappServer("ukelonnloadtest", ukelonnConfig);
+        String baseUrl = server.start(0);
+        try {
+            LoadTestReport report = new UkelonnLoadTest(baseUrl, users, admins).run(warmup, duration);
+            mapper.writerWithDefaultPrettyPrinter().writeValue(reportFile, report);
+            System.out.println(format(report)); // NOSONAR This is command output and should not go to a logger
+        } finally {
+            server.stop();
+        }
+    }
+
+    /**
+     * Run the virtual users and administrators against the webapp.
+     *
+     * @param warmupSeconds how long to run before starting to measure
+     * @param durationSeconds how long to measure
+     * @return the latencies and throughput measured after the warmup
+     * @throws InterruptedException if the load test is interrupted
+     */
+    public LoadTestReport run(long warmupSeconds, long durationSeconds) throws InterruptedException {
+        EndpointStatistics statistics = new EndpointStatistics();
+        AtomicBoolean running = new AtomicBoolean(true);
+        List<Scenario> scenarios = new ArrayList<>();
+        for (int i = 0; i < users; ++i) {
+            scenarios.add(new UserScenario(USERNAME, PASSWORD));
+        }
+
+        for (int i = 0; i < admins; ++i) {
+            scenarios.add(new AdminScenario(ADMIN_USERNAME, ADMIN_PASSWORD));
+        }
+
+        ExecutorService virtualUsers = Executors.newFixedThreadPool(Math.max(1, scenarios.size()));
+        for (Scenario scenario : scenarios) {
+            virtualUsers.execute(() -> repeatVisits(scenario, new UkelonnClient(baseUrl, statistics), running));
+        }
+
+        try {
+            Thread.sleep(TimeUnit.SECONDS.toMillis(warmupSeconds));
+            statistics.reset();
+            failedVisits.reset();
+            long start = System.nanoTime();
+            Thread.sleep(TimeUnit.SECONDS.toMillis(durationSeconds));
+            long elapsed = System.nanoTime() - start;
+            return new LoadTestReport(users, admins, elapsed / (double) TimeUnit.SECONDS.toNanos(1), failedVisits.sum(), statistics.report(elapsed));
+        } finally {
+            running.set(false);
+            virtualUsers.shutdown();
+            virtualUsers.awaitTermination(1, TimeUnit.MINUTES);
+        }
+    }
+
+    private void repeatVisits(Scenario scenario, UkelonnClient client, AtomicBoolean running) {
+        while (running.get()) {
+            try {
+                scenario.visit(client);
+            } catch (UkelonnException e) {
+                // The failed call has been recorded, start a new visit
+                failedVisits.increment();
+            }
+        }
+    }
+
+    static String format(LoadTestReport report) {
+        StringBuilder output = new StringBuilder(String.format(
+            "%d users and %d admins for %.1f seconds: %d requests, %d errors, %d failed visits, %.1f requests/s%n",
+            report.getUsers(),
+            report.getAdmins(),
+            report.getDurationSeconds(),
+            report.getRequests(),
+            report.getErrors(),
+            report.getFailedVisits(),
+            report.getThroughput()));
+        output.append(String.format("%-55s %8s %7s %9s %8s %8s %8s %8s%n", "Endpoint", "Requests", "Errors", "Req/s", "p50 ms", "p90 ms", "p99 ms", "max ms"));
+        for (EndpointReport endpoint : report.getEndpoints()) {
+            output.append(String.format(
+                "%-55s %8d %7d %9.1f %8.2f %8.2f %8.2f %8.2f%n",
+                endpoint.getEndpoint(),
+                endpoint.getRequests(),
+                endpoint.getErrors(),
+                endpoint.getThroughput(),
+                endpoint.getP50(),
+                endpoint.getP90(),
+                endpoint.getP99(),
+                endpoint.getMax()));
+        }
+
+        return output.toString();
+    }
+
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright 2019 Steinar Bang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package no.priv.bang.ukelonn.loadtests;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * What a user with role "ukelonnuser" does in a visit: log in, look
+ * at the account, register a job, list jobs and payments, look at
+ * the statistics and log out.
+ *
+ * @author Steinar Bang
+ *
+ */
+public class UserScenario extends Scenario {
+
+    public UserScenario(String username, String password) {
+        super(username, password);
+    }
+
+    @Override
+    public void visit(UkelonnClient client) {
+        login(client);
+        JsonNode account = client.get("GET /api/account/{username}", "/api/account/" + getUsername());
+        int accountId = account.path("accountId").asInt();
+        JsonNode jobtypes = client.get("GET /api/jobtypes", "/api/jobtypes");
+        if (jobtypes.size() > 0) {
+            JsonNode jobtype = jobtypes.get(ThreadLocalRandom.current().nextInt(jobtypes.size()));
+            client.post("POST /api/job/register", "/api/job/register", performedTransaction(account, jobtype, jobtype.path("transactionAmount").asDouble()));
+        }
+
+        client.get("GET /api/jobs/{accountId}", "/api/jobs/" + accountId);
+        client.get("GET /api/payments/{accountId}", "/api/payments/" + accountId);
+        client.get("GET /api/statistics/earnings/sumoveryear/{username}", "/api/statistics/earnings/sumoveryear/" + getUsername());
+        client.get("GET /api/statistics/earnings/sumovermonth/{username}", "/api/statistics/earnings/sumovermonth/" + getUsername());
+        logout(client);
+    }
+
+}
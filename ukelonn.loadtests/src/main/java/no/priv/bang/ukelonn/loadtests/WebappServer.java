@@ -0,0 +1,208 @@
+/*
+ * Copyright 2019 Steinar Bang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package no.priv.bang.ukelonn.loadtests;
+
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Properties;
+
+import javax.servlet.DispatcherType;
+import javax.sql.DataSource;
+
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.servlet.FilterHolder;
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
+import org.glassfish.jersey.server.ServerProperties;
+import org.ops4j.pax.jdbc.derby.impl.DerbyDataSourceFactory;
+import org.osgi.service.jdbc.DataSourceFactory;
+import org.osgi.service.log.LogService;
+
+import no.priv.bang.authservice.users.UserManagementServiceProvider;
+import no.priv.bang.authservice.web.security.dbrealm.AuthserviceDbRealm;
+import no.priv.bang.authservice.web.security.memorysession.MemorySession;
+import no.priv.bang.osgi.service.mocks.logservice.MockLogService;
+import no.priv.bang.ukelonn.api.RouteTimingFilter;
+import no.priv.bang.ukelonn.api.TraceFilter;
+import no.priv.bang.ukelonn.api.UkelonnRestApiServlet;
+import no.priv.bang.ukelonn.backend.InstrumentedDataSource;
+import no.priv.bang.ukelonn.backend.InstrumentedUkelonnService;
+import no.priv.bang.ukelonn.backend.UkelonnServiceProvider;
+import no.priv.bang.ukelonn.db.liquibase.test.TestLiquibaseRunner;
+import no.priv.bang.ukelonn.web.security.UkelonnShiroFilter;
+
+/**
+ * Runs the ukelonn webapp in-process, in an embedded jetty, without
+ * an OSGi framework.
+ *
+ * The DS components are wired together by hand the same way the
+ * OSGi service registry wires them in karaf: a derby in-memory
+ * database with the test data, the {@link UkelonnServiceProvider}
+ * on top of an {@link InstrumentedDataSource} in front of the
+ * database, the authservice {@link UserManagementServiceProvider}
+ * on top of the database, the {@link InstrumentedUkelonnService} in
+ * front of the UkelonnServiceProvider, the {@link RouteTimingFilter},
+ * the {@link TraceFilter} and the {@link UkelonnShiroFilter} on "/*"
+ * and the {@link UkelonnRestApiServlet} on "/api/*", all in the
+ * "/ukelonn" web context.
+ *
+ * @author Steinar Bang
+ *
+ */
+public class WebappServer {
+
+    static final String CONTEXT_PATH = "/ukelonn";
+    private final String databaseName;
+    private final Map<String, Object> ukelonnConfig;
+    private Server server;
+    private InstrumentedDataSource instrumentedDatasource;
+    private UkelonnServiceProvider ukelonn;
+    private RouteTimingFilter routeTiming;
+
+    /**
+     * @param databaseName the name of the derby in-memory database to create
+     * @param ukelonnConfig configuration of the {@link UkelonnServiceProvider}, e.g. "accountLedger"
+     */
+    public WebappServer(String databaseName, Map<String, Object> ukelonnConfig) {
+        this.databaseName = databaseName;
+        this.ukelonnConfig = ukelonnConfig;
+    }
+
+    /**
+     * Start the webapp.
+     *
+     * @param port the port to listen to, 0 means pick a free port
+     * @return the URL of the "/ukelonn" web context
+     * @throws Exception if the database or jetty fails to start
+     */
+    public String start(int port) throws Exception {
+        LogService logservice = new MockLogService();
+        DataSource datasource = createDatabase(databaseName, logservice);
+
+        UserManagementServiceProvider usermanagement = new UserManagementServiceProvider();
+        usermanagement.setLogservice(logservice);
+        usermanagement.setDataSource(datasource);
+
+        instrumentedDatasource = new InstrumentedDataSource();
+        instrumentedDatasource.setWrappedDataSource(datasource);
+        instrumentedDatasource.setLogservice(logservice);
+        instrumentedDatasource.activate();
+
+        ukelonn = new UkelonnServiceProvider();
+        ukelonn.setLogservice(logservice);
+        ukelonn.setDataSource(instrumentedDatasource);
+        ukelonn.setUserAdmin(usermanagement);
+        ukelonn.activate(ukelonnConfig);
+        InstrumentedUkelonnService instrumentedUkelonn = new InstrumentedUkelonnService();
+        instrumentedUkelonn.setUkelonnService(ukelonn);
+        instrumentedUkelonn.activate();
+
+        AuthserviceDbRealm realm = new AuthserviceDbRealm();
+        realm.setDataSource(datasource);
+        realm.activate();
+        MemorySession session = new MemorySession();
+        session.activate();
+        UkelonnShiroFilter shirofilter = new UkelonnShiroFilter();
+        shirofilter.setRealm(realm);
+        shirofilter.setSession(session);
+        shirofilter.activate();
+
+        routeTiming = new RouteTimingFilter();
+        routeTiming.setLogservice(logservice);
+        routeTiming.activate(Collections.emptyMap());
+
+        UkelonnRestApiServlet servlet = new UkelonnRestApiServlet();
+        servlet.setLogservice(logservice);
+        servlet.setUkelonnService(instrumentedUkelonn);
+        servlet.setUkelonnAdminService(instrumentedUkelonn);
+        servlet.setUserManagement(usermanagement);
+        servlet.activate();
+
+        // The same filter and servlet properties as the http whiteboard registrations of the components
+        ServletContextHandler context = new ServletContextHandler(ServletContextHandler.NO_SESSIONS);
+        context.setContextPath(CONTEXT_PATH);
+        FilterHolder timing = new FilterHolder(routeTiming);
+        timing.setAsyncSupported(true);
+        context.addFilter(timing, "/*", EnumSet.of(DispatcherType.REQUEST, DispatcherType.ASYNC));
+        FilterHolder trace = new FilterHolder(new TraceFilter());
+        trace.setAsyncSupported(true);
+        context.addFilter(trace, "/*", EnumSet.of(DispatcherType.REQUEST, DispatcherType.ASYNC));
+        FilterHolder filter = new FilterHolder(shirofilter);
+        filter.setAsyncSupported(true);
+        context.addFilter(filter, "/*", EnumSet.of(DispatcherType.REQUEST, DispatcherType.ASYNC));
+        ServletHolder api = new ServletHolder("ukelonnapi", servlet);
+        api.setAsyncSupported(true);
+        api.setInitParameter(ServerProperties.PROVIDER_PACKAGES, "no.priv.bang.ukelonn.api.resources");
+        context.addServlet(api, "/api/*");
+
+        server = new Server(port);
+        server.setHandler(context);
+        server.start();
+        int localPort = ((ServerConnector) server.getConnectors()[0]).getLocalPort();
+        return "http://localhost:" + localPort + CONTEXT_PATH;
+    }
+
+    public void stop() throws Exception {
+        if (server != null) {
+            server.stop();
+            server = null;
+        }
+
+        if (routeTiming != null) {
+            routeTiming.deactivate();
+            routeTiming = null;
+        }
+
+        if (ukelonn != null) {
+            ukelonn.deactivate();
+            ukelonn = null;
+        }
+
+        if (instrumentedDatasource != null) {
+            instrumentedDatasource.deactivate();
+            instrumentedDatasource = null;
+        }
+
+        dropDatabase(databaseName);
+    }
+
+    static DataSource createDatabase(String databaseName, LogService logservice) throws SQLException {
+        DerbyDataSourceFactory datasourceFactory = new DerbyDataSourceFactory();
+        Properties properties = new Properties();
+        properties.put(DataSourceFactory.JDBC_URL, "jdbc:derby:memory:" + databaseName + ";create=true");
+        DataSource datasource = datasourceFactory.createDataSource(properties);
+        TestLiquibaseRunner runner = new TestLiquibaseRunner();
+        runner.setLogService(logservice);
+        runner.activate();
+        runner.prepare(datasource);
+        return datasource;
+    }
+
+    static void dropDatabase(String databaseName) {
+        DerbyDataSourceFactory datasourceFactory = new DerbyDataSourceFactory();
+        Properties properties = new Properties();
+        properties.put(DataSourceFactory.JDBC_URL, "jdbc:derby:memory:" + databaseName + ";drop=true");
+        try {
+            datasourceFactory.createDataSource(properties).getConnection().close();
+        } catch (SQLException e) {
+            // Derby reports a successful drop of an in-memory database with an SQLException
+        }
+    }
+
+}
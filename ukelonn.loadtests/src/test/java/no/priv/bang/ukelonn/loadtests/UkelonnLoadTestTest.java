@@ -0,0 +1,54 @@
+/*
+ * Copyright 2019 Steinar Bang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package no.priv.bang.ukelonn.loadtests;
+
+import static org.junit.Assert.*;
+
+import java.util.Collections;
+
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class UkelonnLoadTestTest {
+
+    @Test
+    public void testRunAgainstInProcessWebapp() throws Exception {
+        WebappServer server = new WebappServer("ukelonnloadtesttest", Collections.emptyMap());
+        String baseUrl = server.start(0);
+        try {
+            LoadTestReport report = new UkelonnLoadTest(baseUrl, 1, 1).run(0, 2);
+
+            assertEquals(0, report.getErrors());
+            assertEquals(0, report.getFailedVisits());
+            assertTrue(report.getEndpoint("POST /api/login").getRequests() > 0);
+            assertTrue(report.getEndpoint("POST /api/job/register").getRequests() > 0);
+            assertTrue(report.getEndpoint("GET /api/accounts").getRequests() > 0);
+            EndpointReport jobs = report.getEndpoint("GET /api/jobs/{accountId}");
+            assertTrue(jobs.getP50() <= jobs.getP99());
+            assertTrue(jobs.getThroughput() > 0);
+
+            String json = new ObjectMapper().writeValueAsString(report);
+            assertTrue(json.contains("\"p99\""));
+
+            String output = UkelonnLoadTest.format(report);
+            assertTrue(output.contains("GET /api/statistics/earnings/sumoveryear/{username}"));
+        } finally {
+            server.stop();
+        }
+    }
+
+}
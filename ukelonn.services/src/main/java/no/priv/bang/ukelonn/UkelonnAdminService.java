@@ -0,0 +1,70 @@
+/*
+ * Copyright 2019 Steinar Bang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package no.priv.bang.ukelonn;
+
+import java.util.List;
+
+import no.priv.bang.ukelonn.beans.DataSourceStatistics;
+import no.priv.bang.ukelonn.beans.MethodMetrics;
+import no.priv.bang.ukelonn.beans.NotificationQueueStatistics;
+
+/**
+ * The metrics and the cache control of the {@link UkelonnService},
+ * for the administrators of the web application, kept out of the
+ * {@link UkelonnService} used by the users.
+ *
+ * @author Steinar Bang
+ *
+ */
+public interface UkelonnAdminService {
+
+    /**
+     * Call counts, error counts and latencies of the methods of the {@link UkelonnService}.
+     *
+     * @return one entry for each method called so far
+     */
+    List<MethodMetrics> getMethodMetrics();
+
+    NotificationQueueStatistics getNotificationQueueStatistics();
+
+    /**
+     * Connection and statement counts of the DataSource of the {@link UkelonnService}.
+     *
+     * @return the statistics, or null if the DataSource isn't instrumented
+     */
+    DataSourceStatistics getDataSourceStatistics();
+
+    /**
+     * @return the number of times the job types or payment types were found in the cache
+     */
+    long getTransactionTypeCacheHits();
+
+    /**
+     * @return the number of times the job types or payment types had to be read from the database
+     */
+    long getTransactionTypeCacheMisses();
+
+    void invalidateCachedUsers();
+
+    /**
+     * Drop everything the {@link UkelonnService} holds in memory from
+     * the database, i.e. the users, the transaction types and the
+     * account balances.  To be called after the database has been
+     * changed behind the back of the service.
+     */
+    void invalidateCachedData();
+
+}
@@ -16,6 +16,8 @@
 package no.priv.bang.ukelonn;
 
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
 import javax.sql.DataSource;
 
@@ -53,20 +55,37 @@ public interface UkelonnService {
 
     Account getAccount(String username);
 
+    /**
+     * Find the account with an account id, e.g. to find the owner of
+     * the account before giving access to it.
+     *
+     * @param accountId the id of the account
+     * @return the account, or null if there is no account with the id
+     */
+    Account getAccountById(int accountId);
+
     Account registerPerformedJob(PerformedTransaction job);
 
+    Account registerPerformedJobs(List<PerformedTransaction> jobs);
+
     List<Transaction> updateJob(UpdatedTransaction editedJob);
 
     List<TransactionType> getJobTypes();
 
     List<Transaction> getJobs(int accountId);
 
+    List<Transaction> getJobs(int accountId, int beforeTransactionId, int limit);
+
     List<Transaction> deleteJobsFromAccount(int accountId, List<Integer> idsOfJobsToDelete);
 
     List<Transaction> getPayments(int accountId);
 
+    List<Transaction> getPayments(int accountId, int beforeTransactionId, int limit);
+
     List<TransactionType> getPaymenttypes();
 
+    void exportTransactions(int accountId, Consumer<Transaction> consumer);
+
     Account registerPayment(PerformedTransaction payment);
 
     List<TransactionType> modifyJobtype(TransactionType jobtype);
@@ -83,8 +102,26 @@ public interface UkelonnService {
 
     void notificationTo(String username, Notification notification);
 
+    /**
+     * Wait for the next notification to a user.
+     *
+     * @param username the user to wait for a notification to
+     * @return a future completed with a list holding one notification, that should be cancelled if the caller stops waiting
+     */
+    CompletableFuture<List<Notification>> waitForNotificationTo(String username);
+
     List<SumYear> earningsSumOverYear(String username);
 
     List<SumYearMonth> earningsSumOverMonth(String username);
 
+    CompletableFuture<Account> getAccountAsync(String username);
+
+    CompletableFuture<List<Transaction>> getJobsAsync(int accountId, int beforeTransactionId, int limit);
+
+    CompletableFuture<List<Transaction>> getPaymentsAsync(int accountId, int beforeTransactionId, int limit);
+
+    CompletableFuture<List<SumYear>> earningsSumOverYearAsync(String username);
+
+    CompletableFuture<List<SumYearMonth>> earningsSumOverMonthAsync(String username);
+
 }
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2019 Steinar Bang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package no.priv.bang.ukelonn.beans;
+
+/**
+ * Connection and statement counts of the instrumented DataSource in
+ * front of the ukelonn database.
+ *
+ * The idle connections are the idle connections of the connection
+ * pool behind the DataSource, and are -1 when the DataSource isn't a
+ * pool that reports its idle connections.
+ */
+public class DataSourceStatistics {
+
+    private int activeConnections;
+    private int peakActiveConnections;
+    private int idleConnections;
+    private long checkouts;
+    private double checkoutWaitSeconds;
+    private double maxCheckoutWaitSeconds;
+    private long longHeldConnections;
+    private long statements;
+    private double statementSeconds;
+    private long slowStatements;
+
+    public DataSourceStatistics(int activeConnections, int peakActiveConnections, int idleConnections, long checkouts, double checkoutWaitSeconds, double maxCheckoutWaitSeconds, long longHeldConnections, long statements, double statementSeconds, long slowStatements) {
+        this.activeConnections = activeConnections;
+        this.peakActiveConnections = peakActiveConnections;
+        this.idleConnections = idleConnections;
+        this.checkouts = checkouts;
+        this.checkoutWaitSeconds = checkoutWaitSeconds;
+        this.maxCheckoutWaitSeconds = maxCheckoutWaitSeconds;
+        this.longHeldConnections = longHeldConnections;
+        this.statements = statements;
+        this.statementSeconds = statementSeconds;
+        this.slowStatements = slowStatements;
+    }
+
+    public DataSourceStatistics() {
+        this(0, 0, -1, 0, 0.0, 0.0, 0, 0, 0.0, 0);
+        // No-args constructor required by jackson
+    }
+
+    public int getActiveConnections() {
+        return activeConnections;
+    }
+
+    public int getPeakActiveConnections() {
+        return peakActiveConnections;
+    }
+
+    public int getIdleConnections() {
+        return idleConnections;
+    }
+
+    public long getCheckouts() {
+        return checkouts;
+    }
+
+    public double getCheckoutWaitSeconds() {
+        return checkoutWaitSeconds;
+    }
+
+    public double getMaxCheckoutWaitSeconds() {
+        return maxCheckoutWaitSeconds;
+    }
+
+    public long getLongHeldConnections() {
+        return longHeldConnections;
+    }
+
+    public long getStatements() {
+        return statements;
+    }
+
+    public double getStatementSeconds() {
+        return statementSeconds;
+    }
+
+    public long getSlowStatements() {
+        return slowStatements;
+    }
+
+}
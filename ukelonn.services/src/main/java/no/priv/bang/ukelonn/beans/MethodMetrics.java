@@ -0,0 +1,77 @@
+/*
+ * Copyright 2019 Steinar Bang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package no.priv.bang.ukelonn.beans;
+
+/**
+ * Call count, error count and latency histogram of one method of the
+ * UkelonnService.
+ *
+ * The histogram is cumulative, the way prometheus wants it: the
+ * count at an index is the number of calls that took at most the
+ * upper bound, in seconds, at the same index.  Calls slower than the
+ * last upper bound are only counted in the calls.
+ */
+public class MethodMetrics {
+
+    private String method;
+    private long calls;
+    private long errors;
+    private double durationSeconds;
+    private double[] bucketUpperBounds;
+    private long[] bucketCounts;
+
+    public MethodMetrics(String method, long calls, long errors, double durationSeconds, double[] bucketUpperBounds, long[] bucketCounts) {
+        this.method = method;
+        this.calls = calls;
+        this.errors = errors;
+        this.durationSeconds = durationSeconds;
+        this.bucketUpperBounds = bucketUpperBounds;
+        this.bucketCounts = bucketCounts;
+    }
+
+    public MethodMetrics() {
+        this(null, 0, 0, 0.0, new double[0], new long[0]);
+        // No-args constructor required by jackson
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    public long getCalls() {
+        return calls;
+    }
+
+    public long getErrors() {
+        return errors;
+    }
+
+    /**
+     * @return the sum of the time spent in all calls, in seconds
+     */
+    public double getDurationSeconds() {
+        return durationSeconds;
+    }
+
+    public double[] getBucketUpperBounds() {
+        return bucketUpperBounds;
+    }
+
+    public long[] getBucketCounts() {
+        return bucketCounts;
+    }
+
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2019 Steinar Bang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package no.priv.bang.ukelonn.beans;
+
+public class NotificationQueueStatistics {
+
+    private int users;
+    private int queuedNotifications;
+    private long coalescedNotifications;
+    private long droppedNotifications;
+    private long expiredNotifications;
+    private long evictedUsers;
+
+    public NotificationQueueStatistics(int users, int queuedNotifications, long coalescedNotifications, long droppedNotifications, long expiredNotifications, long evictedUsers) {
+        this.users = users;
+        this.queuedNotifications = queuedNotifications;
+        this.coalescedNotifications = coalescedNotifications;
+        this.droppedNotifications = droppedNotifications;
+        this.expiredNotifications = expiredNotifications;
+        this.evictedUsers = evictedUsers;
+    }
+
+    public NotificationQueueStatistics() {
+        this(0, 0, 0, 0, 0, 0);
+        // No-args constructor required by jackson
+    }
+
+    public int getUsers() {
+        return users;
+    }
+
+    public int getQueuedNotifications() {
+        return queuedNotifications;
+    }
+
+    public long getCoalescedNotifications() {
+        return coalescedNotifications;
+    }
+
+    public long getDroppedNotifications() {
+        return droppedNotifications;
+    }
+
+    public long getExpiredNotifications() {
+        return expiredNotifications;
+    }
+
+    public long getEvictedUsers() {
+        return evictedUsers;
+    }
+
+}
@@ -0,0 +1,251 @@
+/*
+ * Copyright 2019 Steinar Bang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package no.priv.bang.ukelonn.trace;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * The trace of one HTTP request: an ID that is put on everything
+ * logged while handling the request, and the time spent in each
+ * phase of handling the request, e.g. authentication, the REST
+ * resource and each database statement.
+ *
+ * The trace of the request being handled is bound to the current
+ * thread.  Work handed over to another thread, like the database
+ * calls of the asynchronous REST resources, takes the trace along
+ * with {@link #propagate(Supplier)}.
+ *
+ * The number of phases kept is limited, so that a request running
+ * a lot of database statements won't make the trace grow without
+ * bounds.
+ *
+ * @author Steinar Bang
+ *
+ */
+public class RequestTrace {
+
+    static final int MAX_PHASES = 50;
+    static final int MAX_DESCRIPTION_LENGTH = 60;
+    private static final ThreadLocal<RequestTrace> current = new ThreadLocal<>();
+    private final String traceId;
+    private final long startNanos;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final List<Phase> phases = new ArrayList<>();
+    private int droppedPhases = 0;
+
+    public RequestTrace(String traceId) {
+        this.traceId = traceId;
+        this.startNanos = System.nanoTime();
+    }
+
+    public RequestTrace() {
+        this(newTraceId());
+    }
+
+    public static String newTraceId() {
+        return String.format("%016x", ThreadLocalRandom.current().nextLong());
+    }
+
+    /**
+     * @return the trace bound to the current thread, or null if there is none
+     */
+    public static RequestTrace current() {
+        return current.get();
+    }
+
+    /**
+     * @return the ID of the trace bound to the current thread, or null if there is none
+     */
+    public static String currentTraceId() {
+        RequestTrace trace = current.get();
+        return trace != null ? trace.getTraceId() : null;
+    }
+
+    /**
+     * Bind this trace to the current thread.
+     *
+     * @return the trace bound to the thread before, to be restored with {@link #restore(RequestTrace)}
+     */
+    public RequestTrace bind() {
+        RequestTrace previous = current.get();
+        current.set(this);
+        return previous;
+    }
+
+    /**
+     * Bind a trace returned by {@link #bind()} to the current thread again.
+     *
+     * @param previous the trace to restore, null means no trace
+     */
+    public static void restore(RequestTrace previous) {
+        if (previous != null) {
+            current.set(previous);
+        } else {
+            current.remove();
+        }
+    }
+
+    /**
+     * Make a supplier that runs with the trace of the current thread
+     * bound, on whatever thread it is run.
+     *
+     * @param work the work to run with the current trace
+     * @return the work itself if there is no current trace
+     */
+    public static <T> Supplier<T> propagate(Supplier<T> work) {
+        RequestTrace trace = current.get();
+        if (trace == null) {
+            return work;
+        }
+
+        return () -> {
+            RequestTrace previous = trace.bind();
+            try {
+                return work.get();
+            } finally {
+                restore(previous);
+            }
+        };
+    }
+
+    public String getTraceId() {
+        return traceId;
+    }
+
+    /**
+     * @return the nanoseconds since the trace was started
+     */
+    public long elapsedNanos() {
+        return System.nanoTime() - startNanos;
+    }
+
+    /**
+     * Add the time of a phase of handling the request.
+     *
+     * @param name the name of the phase, must be a token, i.e. no spaces, commas or semicolons
+     * @param description a text describing the phase, or null
+     * @param durationNanos the time spent in the phase
+     */
+    public void addPhase(String name, String description, long durationNanos) {
+        lock.lock();
+        try {
+            if (phases.size() < MAX_PHASES) {
+                phases.add(new Phase(name, description, durationNanos));
+            } else {
+                ++droppedPhases;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public List<Phase> getPhases() {
+        lock.lock();
+        try {
+            return new ArrayList<>(phases);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Format the names and durations of the phases as the value of a
+     * Server-Timing HTTP header, followed by the total time since the
+     * trace was started.  The descriptions are left out, since they
+     * may contain SQL.
+     *
+     * @return the phases in Server-Timing header syntax, with durations in milliseconds
+     */
+    public String serverTiming() {
+        return serverTiming(false);
+    }
+
+    /**
+     * Format the phases as the value of a Server-Timing HTTP header,
+     * followed by the total time since the trace was started.
+     *
+     * @param withDescriptions if true, add the descriptions of the phases to the header
+     * @return the phases in Server-Timing header syntax, with durations in milliseconds
+     */
+    public String serverTiming(boolean withDescriptions) {
+        List<Phase> phasesToShow;
+        int phasesNotShown;
+        lock.lock();
+        try {
+            phasesToShow = new ArrayList<>(phases);
+            phasesNotShown = droppedPhases;
+        } finally {
+            lock.unlock();
+        }
+
+        StringBuilder header = new StringBuilder();
+        for (Phase phase : phasesToShow) {
+            header.append(phase.name);
+            if (withDescriptions && phase.description != null) {
+                header.append(";desc=\"").append(quote(phase.description)).append('"');
+            }
+
+            header.append(";dur=").append(milliseconds(phase.durationNanos)).append(", ");
+        }
+
+        if (phasesNotShown > 0) {
+            header.append("dropped;desc=\"").append(phasesNotShown).append(" phases not shown\", ");
+        }
+
+        header.append("total;dur=").append(milliseconds(elapsedNanos()));
+        return header.toString();
+    }
+
+    static String quote(String description) {
+        String shortened = description.length() > MAX_DESCRIPTION_LENGTH ? description.substring(0, MAX_DESCRIPTION_LENGTH) + "..." : description;
+        return shortened.replaceAll("\\s+", " ").replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+
+    private static String milliseconds(long nanos) {
+        return String.format(Locale.ROOT, "%.3f", nanos / (double) TimeUnit.MILLISECONDS.toNanos(1));
+    }
+
+    public static class Phase {
+        private final String name;
+        private final String description;
+        private final long durationNanos;
+
+        Phase(String name, String description, long durationNanos) {
+            this.name = name;
+            this.description = description;
+            this.durationNanos = durationNanos;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getDescription() {
+            return description;
+        }
+
+        public long getDurationNanos() {
+            return durationNanos;
+        }
+    }
+
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2019 Steinar Bang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package no.priv.bang.ukelonn.trace;
+
+import org.osgi.framework.ServiceReference;
+import org.osgi.service.log.LogService;
+
+/**
+ * A {@link LogService} in front of another LogService, that starts
+ * every message logged while handling a traced request with the ID
+ * of the {@link RequestTrace}, so that all of the log messages of a
+ * request can be found.
+ *
+ * @author Steinar Bang
+ *
+ */
+public class TracingLogService implements LogService {
+
+    private final LogService logservice;
+
+    private TracingLogService(LogService logservice) {
+        this.logservice = logservice;
+    }
+
+    /**
+     * Put a TracingLogService in front of a LogService.
+     *
+     * @param logservice the LogService to wrap
+     * @return a wrapped LogService, or the argument if it is null or already wrapped
+     */
+    public static LogService wrap(LogService logservice) {
+        if (logservice == null || logservice instanceof TracingLogService) {
+            return logservice;
+        }
+
+        return new TracingLogService(logservice);
+    }
+
+    @Override
+    public void log(int level, String message) {
+        logservice.log(level, traced(message));
+    }
+
+    @Override
+    public void log(int level, String message, Throwable exception) {
+        logservice.log(level, traced(message), exception);
+    }
+
+    @SuppressWarnings("rawtypes")
+    @Override
+    public void log(ServiceReference sr, int level, String message) {
+        logservice.log(sr, level, traced(message));
+    }
+
+    @SuppressWarnings("rawtypes")
+    @Override
+    public void log(ServiceReference sr, int level, String message, Throwable exception) {
+        logservice.log(sr, level, traced(message), exception);
+    }
+
+    static String traced(String message) {
+        String traceId = RequestTrace.currentTraceId();
+        if (traceId == null) {
+            return message;
+        }
+
+        return "[trace " + traceId + "] " + message;
+    }
+
+}
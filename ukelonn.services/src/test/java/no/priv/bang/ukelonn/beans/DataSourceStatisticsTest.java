@@ -0,0 +1,47 @@
+/*
+ * Copyright 2019 Steinar Bang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package no.priv.bang.ukelonn.beans;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class DataSourceStatisticsTest {
+
+    @Test
+    public void testBean() {
+        DataSourceStatistics bean = new DataSourceStatistics(2, 5, 3, 100, 0.25, 0.1, 1, 400, 2.5, 4);
+        assertEquals(2, bean.getActiveConnections());
+        assertEquals(5, bean.getPeakActiveConnections());
+        assertEquals(3, bean.getIdleConnections());
+        assertEquals(100, bean.getCheckouts());
+        assertEquals(0.25, bean.getCheckoutWaitSeconds(), 0.0);
+        assertEquals(0.1, bean.getMaxCheckoutWaitSeconds(), 0.0);
+        assertEquals(1, bean.getLongHeldConnections());
+        assertEquals(400, bean.getStatements());
+        assertEquals(2.5, bean.getStatementSeconds(), 0.0);
+        assertEquals(4, bean.getSlowStatements());
+    }
+
+    @Test
+    public void testNoArgsConstructor() {
+        DataSourceStatistics bean = new DataSourceStatistics();
+        assertEquals(0, bean.getActiveConnections());
+        assertEquals(-1, bean.getIdleConnections());
+        assertEquals(0, bean.getStatements());
+    }
+
+}
@@ -0,0 +1,45 @@
+/*
+ * Copyright 2019 Steinar Bang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package no.priv.bang.ukelonn.beans;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class MethodMetricsTest {
+
+    @Test
+    public void testBean() {
+        double[] bucketUpperBounds = { 0.001, 0.01 };
+        long[] bucketCounts = { 2, 3 };
+        MethodMetrics bean = new MethodMetrics("getAccounts", 4, 1, 0.5, bucketUpperBounds, bucketCounts);
+        assertEquals("getAccounts", bean.getMethod());
+        assertEquals(4, bean.getCalls());
+        assertEquals(1, bean.getErrors());
+        assertEquals(0.5, bean.getDurationSeconds(), 0.0);
+        assertArrayEquals(bucketUpperBounds, bean.getBucketUpperBounds(), 0.0);
+        assertArrayEquals(bucketCounts, bean.getBucketCounts());
+    }
+
+    @Test
+    public void testNoArgsConstructor() {
+        MethodMetrics bean = new MethodMetrics();
+        assertNull(bean.getMethod());
+        assertEquals(0, bean.getCalls());
+        assertEquals(0, bean.getBucketCounts().length);
+    }
+
+}
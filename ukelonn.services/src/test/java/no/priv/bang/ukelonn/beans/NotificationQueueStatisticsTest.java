@@ -0,0 +1,43 @@
+/*
+ * Copyright 2019 Steinar Bang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package no.priv.bang.ukelonn.beans;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class NotificationQueueStatisticsTest {
+
+    @Test
+    public void testBean() {
+        NotificationQueueStatistics bean = new NotificationQueueStatistics(2, 3, 4, 5, 6, 7);
+        assertEquals(2, bean.getUsers());
+        assertEquals(3, bean.getQueuedNotifications());
+        assertEquals(4, bean.getCoalescedNotifications());
+        assertEquals(5, bean.getDroppedNotifications());
+        assertEquals(6, bean.getExpiredNotifications());
+        assertEquals(7, bean.getEvictedUsers());
+    }
+
+    @Test
+    public void testNoArgsConstructor() {
+        NotificationQueueStatistics bean = new NotificationQueueStatistics();
+        assertEquals(0, bean.getUsers());
+        assertEquals(0, bean.getQueuedNotifications());
+        assertEquals(0, bean.getEvictedUsers());
+    }
+
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2019 Steinar Bang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package no.priv.bang.ukelonn.trace;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.*;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+import org.junit.Test;
+
+public class RequestTraceTest {
+
+    @Test
+    public void testBindAndRestore() {
+        assertNull(RequestTrace.current());
+        RequestTrace trace = new RequestTrace();
+        assertThat(trace.getTraceId()).hasSize(16);
+
+        RequestTrace previous = trace.bind();
+        try {
+            assertSame(trace, RequestTrace.current());
+            assertEquals(trace.getTraceId(), RequestTrace.currentTraceId());
+        } finally {
+            RequestTrace.restore(previous);
+        }
+
+        assertNull(RequestTrace.current());
+        assertNull(RequestTrace.currentTraceId());
+    }
+
+    @Test
+    public void testPropagateToOtherThread() throws Exception {
+        RequestTrace trace = new RequestTrace("0123456789abcdef");
+        RequestTrace previous = trace.bind();
+        try {
+            Supplier<String> work = RequestTrace.propagate(RequestTrace::currentTraceId);
+            String traceIdInOtherThread = CompletableFuture.supplyAsync(work).get();
+            assertEquals("0123456789abcdef", traceIdInOtherThread);
+        } finally {
+            RequestTrace.restore(previous);
+        }
+    }
+
+    @Test
+    public void testPropagateWithoutTrace() {
+        Supplier<String> work = RequestTrace::currentTraceId;
+        assertSame(work, RequestTrace.propagate(work));
+    }
+
+    @Test
+    public void testServerTiming() {
+        RequestTrace trace = new RequestTrace("0123456789abcdef");
+        trace.addPhase("auth", null, 1500000);
+        trace.addPhase("db", "select * from \"accounts\"", 250000);
+
+        String header = trace.serverTiming();
+
+        assertThat(header)
+            .startsWith("auth;dur=1.500, db;dur=0.250, total;dur=")
+            .doesNotContain("select")
+            .doesNotContain("dropped");
+    }
+
+    @Test
+    public void testServerTimingWithDescriptions() {
+        RequestTrace trace = new RequestTrace("0123456789abcdef");
+        trace.addPhase("auth", null, 1500000);
+        trace.addPhase("db", "select * from \"accounts\"", 250000);
+
+        String header = trace.serverTiming(true);
+
+        assertThat(header)
+            .startsWith("auth;dur=1.500, db;desc=\"select * from \\\"accounts\\\"\";dur=0.250, total;dur=")
+            .doesNotContain("dropped");
+    }
+
+    @Test
+    public void testServerTimingDropsPhasesOverTheLimit() {
+        RequestTrace trace = new RequestTrace();
+        for (int i = 0; i < RequestTrace.MAX_PHASES + 3; ++i) {
+            trace.addPhase("db", null, 1000);
+        }
+
+        assertEquals(RequestTrace.MAX_PHASES, trace.getPhases().size());
+        assertThat(trace.serverTiming()).contains("dropped;desc=\"3 phases not shown\"");
+    }
+
+    @Test
+    public void testQuoteShortensLongDescriptions() {
+        String sql = "select a.account_id, a.username, u.first_name, u.last_name from accounts a join users u on u.username=a.username";
+
+        String quoted = RequestTrace.quote(sql);
+
+        assertEquals(RequestTrace.MAX_DESCRIPTION_LENGTH + 3, quoted.length());
+        assertThat(quoted).endsWith("...");
+    }
+
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2019 Steinar Bang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package no.priv.bang.ukelonn.trace;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import org.junit.Test;
+import org.osgi.framework.ServiceReference;
+import org.osgi.service.log.LogService;
+
+public class TracingLogServiceTest {
+
+    @Test
+    public void testLogWithoutTrace() {
+        LogService logservice = mock(LogService.class);
+        LogService tracing = TracingLogService.wrap(logservice);
+
+        tracing.log(LogService.LOG_INFO, "no trace");
+
+        verify(logservice).log(LogService.LOG_INFO, "no trace");
+    }
+
+    @SuppressWarnings("rawtypes")
+    @Test
+    public void testLogWithTrace() {
+        LogService logservice = mock(LogService.class);
+        LogService tracing = TracingLogService.wrap(logservice);
+        ServiceReference reference = mock(ServiceReference.class);
+        Exception exception = new Exception("failed");
+
+        RequestTrace previous = new RequestTrace("0123456789abcdef").bind();
+        try {
+            tracing.log(LogService.LOG_INFO, "info");
+            tracing.log(LogService.LOG_ERROR, "error", exception);
+            tracing.log(reference, LogService.LOG_WARNING, "warning");
+            tracing.log(reference, LogService.LOG_DEBUG, "debug", exception);
+        } finally {
+            RequestTrace.restore(previous);
+        }
+
+        verify(logservice).log(LogService.LOG_INFO, "[trace 0123456789abcdef] info");
+        verify(logservice).log(LogService.LOG_ERROR, "[trace 0123456789abcdef] error", exception);
+        verify(logservice).log(reference, LogService.LOG_WARNING, "[trace 0123456789abcdef] warning");
+        verify(logservice).log(reference, LogService.LOG_DEBUG, "[trace 0123456789abcdef] debug", exception);
+    }
+
+    @Test
+    public void testWrap() {
+        assertNull(TracingLogService.wrap(null));
+        LogService tracing = TracingLogService.wrap(mock(LogService.class));
+        assertSame(tracing, TracingLogService.wrap(tracing));
+    }
+
+}
@@ -1,6 +1,5 @@
 import { takeLatest, call, put, fork } from 'redux-saga/effects';
 import axios from 'axios';
-import delay from 'delay';
 import {
     START_NOTIFICATION_LISTENING,
     RECEIVED_NOTIFICATION,
@@ -16,7 +15,7 @@ export function* startNotificationListening() {
 // worker saga
 function* pollNotification(action) {
     const username = action.payload;
-    const notificationsRestEndpoint = '/ukelonn/api/notificationsto/' + username;
+    const notificationsRestEndpoint = '/ukelonn/api/notificationsto/' + username + '/wait';
     var loop = true;
     try {
         while (loop) {
@@ -28,8 +27,6 @@ function* pollNotification(action) {
             if (response.headers['content-type'] === 'text/html') { // Happens in redirect to login page after logout
                 loop = false;
             }
-
-            yield call(delay, 60000);
         }
     } catch (err) {
         // Error will break the loop
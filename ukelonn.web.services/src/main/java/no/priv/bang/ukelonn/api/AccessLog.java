@@ -0,0 +1,212 @@
+/*
+ * Copyright 2019 Steinar Bang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package no.priv.bang.ukelonn.api;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.HdrHistogram.Histogram;
+import org.osgi.service.log.LogService;
+
+/**
+ * Writes the access log and the route timing summaries on a thread
+ * of its own, so that the request threads only have to put an entry
+ * on a queue.
+ *
+ * The entries are written in batches, with one flush per batch.  The
+ * queue is bounded, and entries that don't fit in the queue are
+ * dropped and counted, rather than making the request threads wait
+ * for the writer.
+ *
+ * Access log lines are in the apache combined log format without the
+ * user, referer and user agent, followed by the time of the request in
+ * microseconds and the route of the request.
+ *
+ * @author Steinar Bang
+ *
+ */
+class AccessLog {
+
+    static final int QUEUE_CAPACITY = 10000;
+    static final int BATCH_SIZE = 500;
+    static final long POLL_INTERVAL_MILLIS = 1000;
+    private static final DateTimeFormatter TIMESTAMP_FORMAT = DateTimeFormatter.ofPattern("dd/MMM/yyyy:HH:mm:ss Z", Locale.ENGLISH).withZone(ZoneId.systemDefault());
+    private final BlockingQueue<Entry> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final LongAdder droppedEntries = new LongAdder();
+    private final Writer writer;
+    private final RouteStatistics statistics;
+    private final LogService logservice;
+    private final long summaryIntervalMillis;
+    private final Thread thread;
+    private volatile boolean running = true;
+
+    /**
+     * @param writer where the access log is written, null means no access log
+     * @param statistics the route timings to summarize in the log service
+     * @param logservice where the route timing summaries are logged
+     * @param summaryIntervalMillis time between the summaries, 0 means no summaries
+     */
+    AccessLog(Writer writer, RouteStatistics statistics, LogService logservice, long summaryIntervalMillis) {
+        this.writer = writer;
+        this.statistics = statistics;
+        this.logservice = logservice;
+        this.summaryIntervalMillis = summaryIntervalMillis;
+        thread = new Thread(this::run, "ukelonn-access-log");
+        thread.setDaemon(true);
+    }
+
+    void start() {
+        thread.start();
+    }
+
+    /**
+     * Write what is left in the queue, and stop the writer thread.
+     */
+    void stop() {
+        running = false;
+        thread.interrupt();
+        try {
+            thread.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    boolean isEnabled() {
+        return writer != null;
+    }
+
+    void log(long timestamp, String remoteAddress, String method, String uri, String protocol, int status, long elapsedNanos, String route) {
+        if (!queue.offer(new Entry(timestamp, remoteAddress, method, uri, protocol, status, TimeUnit.NANOSECONDS.toMicros(elapsedNanos), route))) {
+            droppedEntries.increment();
+        }
+    }
+
+    long getDroppedEntries() {
+        return droppedEntries.sum();
+    }
+
+    void run() {
+        List<Entry> batch = new ArrayList<>(BATCH_SIZE);
+        long nextSummary = System.currentTimeMillis() + summaryIntervalMillis;
+        while (running || !queue.isEmpty()) {
+            try {
+                Entry first = running ? queue.poll(POLL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS) : queue.poll();
+                if (first != null) {
+                    batch.add(first);
+                    queue.drainTo(batch, BATCH_SIZE - 1);
+                    write(batch);
+                    batch.clear();
+                }
+            } catch (InterruptedException e) {
+                // Stopped, write what is left in the queue before exiting
+            }
+
+            if (summaryIntervalMillis > 0 && System.currentTimeMillis() >= nextSummary) {
+                logSummary();
+                nextSummary = System.currentTimeMillis() + summaryIntervalMillis;
+            }
+        }
+
+        close();
+    }
+
+    void write(List<Entry> batch) {
+        if (writer == null) {
+            return;
+        }
+
+        try {
+            for (Entry entry : batch) {
+                writer.write(format(entry));
+                writer.write('\n');
+            }
+
+            writer.flush();
+        } catch (IOException e) {
+            logservice.log(LogService.LOG_WARNING, String.format("Failed to write %d entries to the ukelonn access log", batch.size()), e);
+        }
+    }
+
+    void logSummary() {
+        Map<String, Histogram> histograms = statistics.getIntervalHistograms();
+        for (Map.Entry<String, Histogram> histogram : histograms.entrySet()) {
+            logservice.log(LogService.LOG_INFO, "Ukelonn route timing: " + RouteStatistics.format(histogram.getKey(), histogram.getValue()));
+        }
+
+        long dropped = droppedEntries.sumThenReset();
+        if (dropped > 0) {
+            logservice.log(LogService.LOG_WARNING, String.format("Dropped %d ukelonn access log entries because the queue was full", dropped));
+        }
+    }
+
+    private void close() {
+        if (writer != null) {
+            try {
+                writer.close();
+            } catch (IOException e) {
+                logservice.log(LogService.LOG_WARNING, "Failed to close the ukelonn access log", e);
+            }
+        }
+    }
+
+    static String format(Entry entry) {
+        return String.format(
+            "%s - - [%s] \"%s %s %s\" %d %d %s",
+            entry.remoteAddress,
+            TIMESTAMP_FORMAT.format(Instant.ofEpochMilli(entry.timestamp)),
+            entry.method,
+            entry.uri,
+            entry.protocol,
+            entry.status,
+            entry.elapsedMicros,
+            entry.route);
+    }
+
+    static class Entry {
+        final long timestamp;
+        final String remoteAddress;
+        final String method;
+        final String uri;
+        final String protocol;
+        final int status;
+        final long elapsedMicros;
+        final String route;
+
+        Entry(long timestamp, String remoteAddress, String method, String uri, String protocol, int status, long elapsedMicros, String route) {
+            this.timestamp = timestamp;
+            this.remoteAddress = remoteAddress;
+            this.method = method;
+            this.uri = uri;
+            this.protocol = protocol;
+            this.status = status;
+            this.elapsedMicros = elapsedMicros;
+            this.route = route;
+        }
+    }
+
+}
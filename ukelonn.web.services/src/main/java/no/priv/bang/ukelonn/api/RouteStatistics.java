@@ -0,0 +1,103 @@
+/*
+ * Copyright 2019 Steinar Bang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package no.priv.bang.ukelonn.api;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+/**
+ * Wall time of the requests to each route of the webapp.
+ *
+ * Each route has its own HdrHistogram {@link Recorder}, so that
+ * request threads record without locking, and the histograms can be
+ * collected and reset at intervals while requests are recorded.
+ *
+ * A route is the servlet path followed by the path template of the
+ * jersey resource method handling the request,
+ * e.g. "/api/jobs/{accountId}".  When no resource method handled
+ * the request, numbers in the path are replaced with "{id}".  The
+ * number of routes is limited, to keep arbitrary paths from filling
+ * the memory, and requests to new routes past the limit are recorded
+ * on the route "other".
+ *
+ * @author Steinar Bang
+ *
+ */
+class RouteStatistics {
+
+    static final int MAX_ROUTES = 200;
+    static final String OTHER_ROUTES = "other";
+    static final long HIGHEST_TRACKABLE_MICROSECONDS = TimeUnit.MINUTES.toMicros(10);
+    static final int SIGNIFICANT_DIGITS = 3;
+    private static final Pattern NUMBER_SEGMENT = Pattern.compile("/\\d+(?=/|$)");
+    private final Map<String, Recorder> recorders = new ConcurrentHashMap<>();
+
+    void record(String route, long elapsedNanos) {
+        Recorder recorder = recorders.get(route);
+        if (recorder == null) {
+            String recordedRoute = recorders.size() < MAX_ROUTES ? route : OTHER_ROUTES;
+            recorder = recorders.computeIfAbsent(recordedRoute, r -> new Recorder(HIGHEST_TRACKABLE_MICROSECONDS, SIGNIFICANT_DIGITS));
+        }
+
+        long microseconds = TimeUnit.NANOSECONDS.toMicros(elapsedNanos);
+        recorder.recordValue(Math.min(microseconds, HIGHEST_TRACKABLE_MICROSECONDS));
+    }
+
+    /**
+     * Get the histograms recorded since the previous call, and start
+     * new histograms.
+     *
+     * @return the histogram of each route with requests, sorted on route
+     */
+    Map<String, Histogram> getIntervalHistograms() {
+        Map<String, Histogram> histograms = new TreeMap<>();
+        for (Map.Entry<String, Recorder> recorder : recorders.entrySet()) {
+            Histogram histogram = recorder.getValue().getIntervalHistogram();
+            if (histogram.getTotalCount() > 0) {
+                histograms.put(recorder.getKey(), histogram);
+            }
+        }
+
+        return histograms;
+    }
+
+    static String route(String servletPath, String pathInfo, Object template) {
+        String path = servletPath != null ? servletPath : "";
+        if (template != null) {
+            return path + template;
+        }
+
+        return NUMBER_SEGMENT.matcher(path + (pathInfo != null ? pathInfo : "")).replaceAll("/{id}");
+    }
+
+    static String format(String route, Histogram histogram) {
+        return String.format(
+            "%s requests=%d p50=%.3fms p90=%.3fms p99=%.3fms max=%.3fms",
+            route,
+            histogram.getTotalCount(),
+            histogram.getValueAtPercentile(50.0) / 1000.0,
+            histogram.getValueAtPercentile(90.0) / 1000.0,
+            histogram.getValueAtPercentile(99.0) / 1000.0,
+            histogram.getMaxValue() / 1000.0);
+    }
+
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2019 Steinar Bang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package no.priv.bang.ukelonn.api;
+
+import java.util.List;
+
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerRequestFilter;
+import javax.ws.rs.core.UriInfo;
+
+import org.glassfish.jersey.server.ExtendedUriInfo;
+import org.glassfish.jersey.uri.UriTemplate;
+
+/**
+ * Jersey filter that puts the path template of the matched resource
+ * method, e.g. "/jobs/{accountId}", into a request attribute, so that
+ * the {@link RouteTimingFilter} can report every call to the same
+ * resource method on the same route.
+ *
+ * The template is relative to the servlet path, i.e. "/api".
+ *
+ * @author Steinar Bang
+ *
+ */
+public class RouteTemplateFilter implements ContainerRequestFilter {
+
+    public static final String ROUTE_TEMPLATE = "no.priv.bang.ukelonn.api.routeTemplate";
+
+    @Override
+    public void filter(ContainerRequestContext requestContext) {
+        UriInfo uriInfo = requestContext.getUriInfo();
+        if (uriInfo instanceof ExtendedUriInfo) {
+            // Properties of the request context are attributes of the servlet request
+            requestContext.setProperty(ROUTE_TEMPLATE, template(((ExtendedUriInfo) uriInfo).getMatchedTemplates()));
+        }
+    }
+
+    /**
+     * Join the matched templates, that are listed from the resource
+     * method and up to the root resource.
+     */
+    static String template(List<UriTemplate> matchedTemplates) {
+        StringBuilder route = new StringBuilder();
+        for (int i = matchedTemplates.size() - 1; i >= 0; --i) {
+            route.append('/').append(matchedTemplates.get(i).getTemplate());
+        }
+
+        String template = route.toString().replaceAll("/+", "/");
+        if (template.isEmpty()) {
+            return "/";
+        }
+
+        if (template.length() > 1 && template.endsWith("/")) {
+            return template.substring(0, template.length() - 1);
+        }
+
+        return template;
+    }
+
+}
@@ -0,0 +1,207 @@
+/*
+ * Copyright 2019 Steinar Bang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package no.priv.bang.ukelonn.api;
+
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
+import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.http.whiteboard.HttpWhiteboardConstants;
+import org.osgi.service.log.LogService;
+
+/**
+ * This is an OSGi DS component that provides a {@link Filter} service
+ * in front of everything in the "/ukelonn" webcontext, that measures
+ * the wall time of each request, from before authentication until
+ * the response is complete.
+ *
+ * The filter has a higher service ranking than the shiro filter, so
+ * that it is first in the filter chain.  Requests that are
+ * suspended, like the asynchronous REST API calls, are timed until
+ * the async processing completes.
+ *
+ * The times are recorded per route in a {@link RouteStatistics} and
+ * summarized to the log service at intervals.  The configuration
+ * property "accessLog" gives the path of an access log file, and
+ * "summaryIntervalMinutes" the minutes between summaries (default 5,
+ * 0 turns off the summaries).
+ *
+ * @author Steinar Bang
+ *
+ */
+@Component(
+    property= {
+        HttpWhiteboardConstants.HTTP_WHITEBOARD_FILTER_PATTERN+"=/*",
+        HttpWhiteboardConstants.HTTP_WHITEBOARD_FILTER_ASYNC_SUPPORTED+"=true",
+        HttpWhiteboardConstants.HTTP_WHITEBOARD_CONTEXT_SELECT + "=(" + HttpWhiteboardConstants.HTTP_WHITEBOARD_CONTEXT_NAME +"=ukelonn)",
+        "service.ranking:Integer=100"},
+    service=Filter.class,
+    immediate=true
+)
+public class RouteTimingFilter implements Filter {
+
+    static final long DEFAULT_SUMMARY_INTERVAL_MINUTES = 5;
+    private LogService logservice; // NOSONAR In an OSGi DS component injected dependencies are set before activation and is effectively a constant
+    private final RouteStatistics statistics = new RouteStatistics();
+    private AccessLog accessLog;
+
+    @Reference
+    public void setLogservice(LogService logservice) {
+        this.logservice = logservice;
+    }
+
+    @Activate
+    public void activate(Map<String, Object> config) {
+        long summaryIntervalMinutes = DEFAULT_SUMMARY_INTERVAL_MINUTES;
+        Object summaryInterval = config.get("summaryIntervalMinutes");
+        if (summaryInterval != null) {
+            summaryIntervalMinutes = Long.parseLong(summaryInterval.toString());
+        }
+
+        Writer writer = openAccessLog((String) config.get("accessLog"));
+        accessLog = new AccessLog(writer, statistics, logservice, TimeUnit.MINUTES.toMillis(summaryIntervalMinutes));
+        accessLog.start();
+    }
+
+    @Deactivate
+    public void deactivate() {
+        if (accessLog != null) {
+            accessLog.stop();
+            accessLog = null;
+        }
+    }
+
+    @Override
+    public void init(FilterConfig filterConfig) throws ServletException {
+        // Nothing to initialize
+    }
+
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain) throws IOException, ServletException {
+        if (!(request instanceof HttpServletRequest && response instanceof HttpServletResponse)) {
+            chain.doFilter(request, response);
+            return;
+        }
+
+        HttpServletRequest httpRequest = (HttpServletRequest) request;
+        HttpServletResponse httpResponse = (HttpServletResponse) response;
+        long timestamp = System.currentTimeMillis();
+        long start = System.nanoTime();
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            if (httpRequest.isAsyncStarted()) {
+                httpRequest.getAsyncContext().addListener(new RecordOnComplete(timestamp, start, httpRequest, httpResponse));
+            } else {
+                record(timestamp, start, httpRequest, httpResponse);
+            }
+        }
+    }
+
+    @Override
+    public void destroy() {
+        // Nothing to clean up
+    }
+
+    RouteStatistics getStatistics() {
+        return statistics;
+    }
+
+    AccessLog getAccessLog() {
+        return accessLog;
+    }
+
+    void record(long timestamp, long start, HttpServletRequest request, HttpServletResponse response) {
+        long elapsed = System.nanoTime() - start;
+        String route = RouteStatistics.route(request.getServletPath(), request.getPathInfo(), request.getAttribute(RouteTemplateFilter.ROUTE_TEMPLATE));
+        statistics.record(route, elapsed);
+        if (accessLog != null && accessLog.isEnabled()) {
+            String query = request.getQueryString();
+            String uri = query != null ? request.getRequestURI() + "?" + query : request.getRequestURI();
+            accessLog.log(timestamp, request.getRemoteAddr(), request.getMethod(), uri, request.getProtocol(), response.getStatus(), elapsed, route);
+        }
+    }
+
+    private Writer openAccessLog(String accessLogFile) {
+        if (accessLogFile == null || accessLogFile.isEmpty()) {
+            return null;
+        }
+
+        try {
+            // Not a file channel, since a file channel is closed by interrupting the writer thread
+            return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(accessLogFile, true), StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            logservice.log(LogService.LOG_ERROR, String.format("Failed to open ukelonn access log %s, access log turned off", accessLogFile), e);
+            return null;
+        }
+    }
+
+    private class RecordOnComplete implements AsyncListener {
+        private final long timestamp;
+        private final long start;
+        private final HttpServletRequest request;
+        private final HttpServletResponse response;
+
+        RecordOnComplete(long timestamp, long start, HttpServletRequest request, HttpServletResponse response) {
+            this.timestamp = timestamp;
+            this.start = start;
+            this.request = request;
+            this.response = response;
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            record(timestamp, start, request, response);
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+            // Recorded when the timed out request completes
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+            // Recorded when the failed request completes
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+            // Keep listening if the request is suspended again
+            event.getAsyncContext().addListener(this);
+        }
+    }
+
+}
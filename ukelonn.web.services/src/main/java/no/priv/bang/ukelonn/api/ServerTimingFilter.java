@@ -0,0 +1,110 @@
+/*
+ * Copyright 2019 Steinar Bang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package no.priv.bang.ukelonn.api;
+
+import java.io.IOException;
+
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerRequestFilter;
+import javax.ws.rs.container.ContainerResponseContext;
+import javax.ws.rs.container.ContainerResponseFilter;
+import javax.ws.rs.core.SecurityContext;
+import javax.ws.rs.ext.WriterInterceptor;
+import javax.ws.rs.ext.WriterInterceptorContext;
+
+import no.priv.bang.ukelonn.trace.RequestTrace;
+
+/**
+ * Jersey filter and interceptor that adds the phases of a REST API
+ * call to the {@link RequestTrace} started by the {@link TraceFilter},
+ * and returns the phases in a "Server-Timing" response header.
+ *
+ * The phases are:
+ * <ul>
+ * <li>"auth", the time from the start of the trace until Jersey gets the request, i.e. mostly shiro authentication</li>
+ * <li>"resource", the time from Jersey gets the request until the response is ready, including the "db" phases of the database statements</li>
+ * <li>"serialization", the time spent writing the response entity as JSON</li>
+ * </ul>
+ *
+ * The header is set before the entity is written, and replaced when
+ * the entity has been written.  The replaced header with the
+ * "serialization" phase reaches the client when the entity fits in
+ * the Jersey output buffer, i.e. for all but the biggest responses.
+ *
+ * The header has only the names and durations of the phases.  The
+ * descriptions of the phases, e.g. the SQL template of a "db" phase,
+ * are only added for users with the administrator role.
+ *
+ * @author Steinar Bang
+ *
+ */
+public class ServerTimingFilter implements ContainerRequestFilter, ContainerResponseFilter, WriterInterceptor {
+
+    public static final String SERVER_TIMING_HEADER = "Server-Timing";
+    static final String RESOURCE_START = "no.priv.bang.ukelonn.api.resourceStart";
+    static final String SHOW_DESCRIPTIONS = "no.priv.bang.ukelonn.api.showPhaseDescriptions";
+    static final String ADMIN_ROLE = "ukelonnadmin";
+
+    @Override
+    public void filter(ContainerRequestContext requestContext) {
+        RequestTrace trace = trace(requestContext.getProperty(TraceFilter.REQUEST_TRACE));
+        if (trace != null) {
+            trace.addPhase("auth", null, trace.elapsedNanos());
+            requestContext.setProperty(RESOURCE_START, System.nanoTime());
+            SecurityContext securityContext = requestContext.getSecurityContext();
+            requestContext.setProperty(SHOW_DESCRIPTIONS, securityContext != null && securityContext.isUserInRole(ADMIN_ROLE));
+        }
+    }
+
+    @Override
+    public void filter(ContainerRequestContext requestContext, ContainerResponseContext responseContext) {
+        RequestTrace trace = trace(requestContext.getProperty(TraceFilter.REQUEST_TRACE));
+        if (trace != null) {
+            Object resourceStart = requestContext.getProperty(RESOURCE_START);
+            if (resourceStart instanceof Long) {
+                trace.addPhase("resource", null, System.nanoTime() - (Long) resourceStart);
+            }
+
+            responseContext.getHeaders().putSingle(SERVER_TIMING_HEADER, trace.serverTiming(showDescriptions(requestContext.getProperty(SHOW_DESCRIPTIONS))));
+        }
+    }
+
+    @Override
+    public void aroundWriteTo(WriterInterceptorContext context) throws IOException {
+        RequestTrace trace = trace(context.getProperty(TraceFilter.REQUEST_TRACE));
+        if (trace == null) {
+            context.proceed();
+            return;
+        }
+
+        long start = System.nanoTime();
+        try {
+            context.proceed();
+        } finally {
+            trace.addPhase("serialization", null, System.nanoTime() - start);
+            context.getHeaders().putSingle(SERVER_TIMING_HEADER, trace.serverTiming(showDescriptions(context.getProperty(SHOW_DESCRIPTIONS))));
+        }
+    }
+
+    private static boolean showDescriptions(Object property) {
+        return Boolean.TRUE.equals(property);
+    }
+
+    private static RequestTrace trace(Object property) {
+        return property instanceof RequestTrace ? (RequestTrace) property : null;
+    }
+
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2019 Steinar Bang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package no.priv.bang.ukelonn.api;
+
+import java.io.IOException;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletResponse;
+
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.http.whiteboard.HttpWhiteboardConstants;
+
+import no.priv.bang.ukelonn.trace.RequestTrace;
+
+/**
+ * This is an OSGi DS component that provides a {@link Filter} service
+ * in front of everything in the "/ukelonn" webcontext, that starts a
+ * {@link RequestTrace} for each request.
+ *
+ * The trace is bound to the thread handling the request, so that
+ * everything logged by a {@link no.priv.bang.ukelonn.trace.TracingLogService}
+ * gets the trace ID, and the trace ID is returned to the client in
+ * the "X-Trace-Id" response header.  The trace is also put in a
+ * request attribute, for the {@link ServerTimingFilter} that runs
+ * on whatever thread completes an asynchronous request.
+ *
+ * The filter has a lower service ranking than the
+ * {@link RouteTimingFilter} and a higher ranking than the shiro
+ * filter, so that the time spent authenticating is part of the trace.
+ *
+ * @author Steinar Bang
+ *
+ */
+@Component(
+    property= {
+        HttpWhiteboardConstants.HTTP_WHITEBOARD_FILTER_PATTERN+"=/*",
+        HttpWhiteboardConstants.HTTP_WHITEBOARD_FILTER_ASYNC_SUPPORTED+"=true",
+        HttpWhiteboardConstants.HTTP_WHITEBOARD_CONTEXT_SELECT + "=(" + HttpWhiteboardConstants.HTTP_WHITEBOARD_CONTEXT_NAME +"=ukelonn)",
+        "service.ranking:Integer=90"},
+    service=Filter.class,
+    immediate=true
+)
+public class TraceFilter implements Filter {
+
+    public static final String REQUEST_TRACE = "no.priv.bang.ukelonn.api.requestTrace";
+    public static final String TRACE_ID_HEADER = "X-Trace-Id";
+
+    @Override
+    public void init(FilterConfig filterConfig) throws ServletException {
+        // Nothing to initialize
+    }
+
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain) throws IOException, ServletException {
+        Object existingTrace = request.getAttribute(REQUEST_TRACE);
+        RequestTrace trace;
+        if (existingTrace instanceof RequestTrace) {
+            // An async dispatch of a request that is already traced
+            trace = (RequestTrace) existingTrace;
+        } else {
+            trace = new RequestTrace();
+            request.setAttribute(REQUEST_TRACE, trace);
+            if (response instanceof HttpServletResponse) {
+                ((HttpServletResponse) response).setHeader(TRACE_ID_HEADER, trace.getTraceId());
+            }
+        }
+
+        RequestTrace previous = trace.bind();
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            RequestTrace.restore(previous);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        // Nothing to clean up
+    }
+
+}
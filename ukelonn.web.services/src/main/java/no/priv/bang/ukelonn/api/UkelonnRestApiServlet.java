@@ -29,17 +29,21 @@ import org.glassfish.jersey.servlet.WebConfig;
 import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
 import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.component.annotations.ReferencePolicyOption;
 import org.osgi.service.http.whiteboard.HttpWhiteboardConstants;
 import org.osgi.service.log.LogService;
 
 import no.priv.bang.osgiservice.users.UserManagementService;
+import no.priv.bang.ukelonn.UkelonnAdminService;
 import no.priv.bang.ukelonn.UkelonnService;
+import no.priv.bang.ukelonn.trace.TracingLogService;
 
 @Component(
     property= {
         HttpWhiteboardConstants.HTTP_WHITEBOARD_SERVLET_PATTERN+"=/api/*",
         HttpWhiteboardConstants.HTTP_WHITEBOARD_CONTEXT_SELECT + "=(" + HttpWhiteboardConstants.HTTP_WHITEBOARD_CONTEXT_NAME +"=ukelonn)",
         HttpWhiteboardConstants.HTTP_WHITEBOARD_SERVLET_NAME+"=ukelonnapi",
+        HttpWhiteboardConstants.HTTP_WHITEBOARD_SERVLET_ASYNC_SUPPORTED+"=true",
         HttpWhiteboardConstants.HTTP_WHITEBOARD_SERVLET_INIT_PARAM_PREFIX+ServerProperties.PROVIDER_PACKAGES+"=no.priv.bang.ukelonn.api.resources"},
     service=Servlet.class,
     immediate=true
@@ -48,6 +52,7 @@ import no.priv.bang.ukelonn.UkelonnService;
 public class UkelonnRestApiServlet extends ServletContainer {
 
     private UkelonnService ukelonnService; // NOSONAR In an OSGi DS component injected dependencies are set before activation and is effectively a constant
+    private UkelonnAdminService ukelonnAdminService; // NOSONAR In an OSGi DS component injected dependencies are set before activation and is effectively a constant
     private LogService logservice; // NOSONAR In an OSGi DS component injected dependencies are set before activation and is effectively a constant
     private UserManagementService useradmin; // NOSONAR In an OSGi DS component injected dependencies are set before activation and is effectively a constant
 
@@ -60,11 +65,14 @@ public class UkelonnRestApiServlet extends ServletContainer {
     protected void init(WebConfig webConfig) throws ServletException {
         super.init(webConfig);
         ResourceConfig copyOfExistingConfig = new ResourceConfig(getConfiguration());
+        copyOfExistingConfig.register(RouteTemplateFilter.class);
+        copyOfExistingConfig.register(ServerTimingFilter.class);
         copyOfExistingConfig.register(new AbstractBinder() {
                 @Override
                 protected void configure() {
                     bind(logservice).to(LogService.class);
                     bind(ukelonnService).to(UkelonnService.class);
+                    bind(ukelonnAdminService).to(UkelonnAdminService.class);
                     bind(useradmin).to(UserManagementService.class);
                 }
             });
@@ -74,12 +82,18 @@ public class UkelonnRestApiServlet extends ServletContainer {
         logservice.log(LogService.LOG_INFO, String.format("Ukelonn Jersey servlet initialized with WebConfig, with resources: %s  and config params: %s", classes.toString(), configProperties.toString()));
     }
 
-    @Reference
+    // Greedy, to be restarted with the instrumented UkelonnService if it shows up after this servlet has started
+    @Reference(policyOption=ReferencePolicyOption.GREEDY)
     public void setUkelonnService(UkelonnService ukelonnService) {
         this.ukelonnService = ukelonnService;
 
     }
 
+    @Reference
+    public void setUkelonnAdminService(UkelonnAdminService ukelonnAdminService) {
+        this.ukelonnAdminService = ukelonnAdminService;
+    }
+
     @Reference
     public void setUserManagement(UserManagementService useradmin) {
         this.useradmin = useradmin;
@@ -87,7 +101,7 @@ public class UkelonnRestApiServlet extends ServletContainer {
 
     @Reference
     public void setLogservice(LogService logservice) {
-        this.logservice = logservice;
+        this.logservice = TracingLogService.wrap(logservice);
     }
 
 }
@@ -23,13 +23,14 @@ import javax.ws.rs.InternalServerErrorException;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
 import javax.ws.rs.core.MediaType;
 
 import org.osgi.service.log.LogService;
 
-import no.priv.bang.ukelonn.UkelonnException;
 import no.priv.bang.ukelonn.UkelonnService;
-import no.priv.bang.ukelonn.beans.Account;
 
 @Path("/account")
 @Produces(MediaType.APPLICATION_JSON)
@@ -44,7 +45,7 @@ public class AccountResource extends ResourceBase {
 
     @GET
     @Path("{username}")
-    public Account getAccount(@PathParam("username") String username) {
+    public void getAccount(@PathParam("username") String username, @Suspended AsyncResponse asyncResponse) {
         if (username == null) {
             logservice.log(LogService.LOG_WARNING, USERNAME_MISSING_ERROR);
             throw new BadRequestException(USERNAME_MISSING_ERROR);
@@ -55,12 +56,12 @@ public class AccountResource extends ResourceBase {
             throw new ForbiddenException();
         }
 
-        try {
-            return ukelonn.getAccount(username);
-        } catch (UkelonnException e) {
-            logservice.log(LogService.LOG_ERROR, String.format("Internal Server Error in REST endpoint /ukelonn/api/account: %s", e.getMessage()), e);
-            throw new InternalServerErrorException("Failed to get account from database. See log for details.");
-        }
+        resumeWhenComplete(asyncResponse, ukelonn.getAccountAsync(username), this::accountError);
+    }
+
+    WebApplicationException accountError(Throwable e) {
+        logservice.log(LogService.LOG_ERROR, String.format("Internal Server Error in REST endpoint /ukelonn/api/account: %s", e.getMessage()), e);
+        return new InternalServerErrorException("Failed to get account from database. See log for details.");
     }
 
 }
@@ -0,0 +1,145 @@
+/*
+ * Copyright 2019 Steinar Bang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package no.priv.bang.ukelonn.api.resources;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import javax.inject.Inject;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+
+import no.priv.bang.ukelonn.UkelonnAdminService;
+import no.priv.bang.ukelonn.beans.DataSourceStatistics;
+import no.priv.bang.ukelonn.beans.MethodMetrics;
+import no.priv.bang.ukelonn.beans.NotificationQueueStatistics;
+
+/**
+ * The metrics of the UkelonnService methods, of the notification
+ * queues, of the transaction type cache and of the database
+ * connections, in the prometheus text exposition format.
+ *
+ * The path is below "/api/admin/" so that shiro only lets
+ * administrators in.
+ */
+@Path("/admin/metrics")
+public class AdminMetrics {
+
+    static final String PROMETHEUS_TEXT = "text/plain; version=0.0.4; charset=utf-8";
+
+    @Inject
+    UkelonnAdminService admin;
+
+    @GET
+    @Produces(PROMETHEUS_TEXT)
+    public String metrics() {
+        StringBuilder output = new StringBuilder();
+        formatMethodMetrics(output, admin.getMethodMetrics());
+        formatNotificationQueueStatistics(output, admin.getNotificationQueueStatistics());
+        formatTransactionTypeCacheStatistics(output, admin.getTransactionTypeCacheHits(), admin.getTransactionTypeCacheMisses());
+        formatDataSourceStatistics(output, admin.getDataSourceStatistics());
+        return output.toString();
+    }
+
+    static void formatMethodMetrics(StringBuilder output, List<MethodMetrics> methods) {
+        header(output, "ukelonn_service_calls_total", "counter", "Number of calls of UkelonnService methods");
+        for (MethodMetrics method : methods) {
+            sample(output, "ukelonn_service_calls_total", method, method.getCalls());
+        }
+
+        header(output, "ukelonn_service_errors_total", "counter", "Number of UkelonnService method calls that threw an exception");
+        for (MethodMetrics method : methods) {
+            sample(output, "ukelonn_service_errors_total", method, method.getErrors());
+        }
+
+        header(output, "ukelonn_service_duration_seconds", "histogram", "Time spent in UkelonnService methods");
+        for (MethodMetrics method : methods) {
+            String label = escape(method.getMethod());
+            double[] upperBounds = method.getBucketUpperBounds();
+            long[] counts = method.getBucketCounts();
+            for (int i = 0; i < upperBounds.length; ++i) {
+                output.append(String.format("ukelonn_service_duration_seconds_bucket{method=\"%s\",le=\"%s\"} %d\n", label, BigDecimal.valueOf(upperBounds[i]).toPlainString(), counts[i]));
+            }
+
+            output.append(String.format("ukelonn_service_duration_seconds_bucket{method=\"%s\",le=\"+Inf\"} %d\n", label, method.getCalls()));
+            output.append(String.format("ukelonn_service_duration_seconds_sum{method=\"%s\"} %s\n", label, Double.toString(method.getDurationSeconds())));
+            output.append(String.format("ukelonn_service_duration_seconds_count{method=\"%s\"} %d\n", label, method.getCalls()));
+        }
+    }
+
+    static void formatNotificationQueueStatistics(StringBuilder output, NotificationQueueStatistics statistics) {
+        if (statistics == null) {
+            return;
+        }
+
+        metric(output, "ukelonn_notification_users", "gauge", "Number of users with a notification queue", statistics.getUsers());
+        metric(output, "ukelonn_notification_queued", "gauge", "Number of notifications waiting in the queues", statistics.getQueuedNotifications());
+        metric(output, "ukelonn_notification_coalesced_total", "counter", "Number of notifications merged with a notification already in a queue", statistics.getCoalescedNotifications());
+        metric(output, "ukelonn_notification_dropped_total", "counter", "Number of notifications dropped because a queue was full", statistics.getDroppedNotifications());
+        metric(output, "ukelonn_notification_expired_total", "counter", "Number of notifications that expired before being delivered", statistics.getExpiredNotifications());
+        metric(output, "ukelonn_notification_evicted_users_total", "counter", "Number of idle users whose queue has been removed", statistics.getEvictedUsers());
+    }
+
+    static void formatTransactionTypeCacheStatistics(StringBuilder output, long hits, long misses) {
+        metric(output, "ukelonn_transaction_type_cache_hits_total", "counter", "Number of job type and payment type lookups served from the cache", hits);
+        metric(output, "ukelonn_transaction_type_cache_misses_total", "counter", "Number of job type and payment type lookups read from the database", misses);
+    }
+
+    static void formatDataSourceStatistics(StringBuilder output, DataSourceStatistics statistics) {
+        if (statistics == null) {
+            return;
+        }
+
+        metric(output, "ukelonn_db_connections_active", "gauge", "Number of database connections checked out", statistics.getActiveConnections());
+        metric(output, "ukelonn_db_connections_active_peak", "gauge", "Highest number of database connections checked out at the same time", statistics.getPeakActiveConnections());
+        if (statistics.getIdleConnections() >= 0) {
+            metric(output, "ukelonn_db_connections_idle", "gauge", "Number of idle connections in the connection pool", statistics.getIdleConnections());
+        }
+
+        metric(output, "ukelonn_db_connection_checkouts_total", "counter", "Number of database connections checked out", statistics.getCheckouts());
+        metric(output, "ukelonn_db_connection_checkout_wait_seconds_total", "counter", "Time spent waiting for database connections", statistics.getCheckoutWaitSeconds());
+        metric(output, "ukelonn_db_connection_checkout_wait_seconds_max", "gauge", "Longest wait for a database connection", statistics.getMaxCheckoutWaitSeconds());
+        metric(output, "ukelonn_db_connections_held_too_long_total", "counter", "Number of database connections held longer than the limit", statistics.getLongHeldConnections());
+        metric(output, "ukelonn_db_statements_total", "counter", "Number of executed SQL statements", statistics.getStatements());
+        metric(output, "ukelonn_db_statement_seconds_total", "counter", "Time spent executing SQL statements", statistics.getStatementSeconds());
+        metric(output, "ukelonn_db_slow_statements_total", "counter", "Number of SQL statements slower than the threshold", statistics.getSlowStatements());
+    }
+
+    private static void header(StringBuilder output, String name, String type, String help) {
+        output.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        output.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void sample(StringBuilder output, String name, MethodMetrics method, long value) {
+        output.append(String.format("%s{method=\"%s\"} %d\n", name, escape(method.getMethod()), value));
+    }
+
+    private static void metric(StringBuilder output, String name, String type, String help, long value) {
+        header(output, name, type, help);
+        output.append(name).append(' ').append(value).append('\n');
+    }
+
+    private static void metric(StringBuilder output, String name, String type, String help, double value) {
+        header(output, name, type, help);
+        output.append(name).append(' ').append(Double.toString(value)).append('\n');
+    }
+
+    private static String escape(String labelValue) {
+        return labelValue.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+}
@@ -36,6 +36,7 @@ import no.priv.bang.osgiservice.users.User;
 import no.priv.bang.osgiservice.users.UserAndPasswords;
 import no.priv.bang.osgiservice.users.UserManagementService;
 import no.priv.bang.ukelonn.UkelonnException;
+import no.priv.bang.ukelonn.UkelonnAdminService;
 import no.priv.bang.ukelonn.UkelonnService;
 
 @Path("/admin/user")
@@ -48,6 +49,9 @@ public class AdminUserResource {
     @Inject
     UkelonnService ukelonn;
 
+    @Inject
+    UkelonnAdminService admin;
+
     @Inject
     LogService logservice;
 
@@ -56,7 +60,9 @@ public class AdminUserResource {
     @Consumes(MediaType.APPLICATION_JSON)
     public List<User> modify(User user) {
         try {
-            return useradmin.modifyUser(user);
+            List<User> users = useradmin.modifyUser(user);
+            admin.invalidateCachedUsers();
+            return users;
         } catch (AuthserviceException e) {
             logservice.log(LogService.LOG_ERROR, String.format("REST endpoint /ukelonn/api/admin/user/modify failed to modify user %d", user.getUserid()));
             throw new InternalServerErrorException("See log for details");
@@ -69,6 +75,7 @@ public class AdminUserResource {
     public List<User> create(UserAndPasswords passwords) {
         try {
             List<User> users = useradmin.addUser(passwords);
+            admin.invalidateCachedUsers();
 
             // Create an account with a balance for the new user
             String username = passwords.getUser().getUsername();
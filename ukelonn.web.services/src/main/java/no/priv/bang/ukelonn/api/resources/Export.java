@@ -0,0 +1,172 @@
+/*
+ * Copyright 2019 Steinar Bang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package no.priv.bang.ukelonn.api.resources;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+import javax.inject.Inject;
+import javax.ws.rs.BadRequestException;
+import javax.ws.rs.DefaultValue;
+import javax.ws.rs.ForbiddenException;
+import javax.ws.rs.GET;
+import javax.ws.rs.InternalServerErrorException;
+import javax.ws.rs.NotFoundException;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+
+import org.osgi.service.log.LogService;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import no.priv.bang.ukelonn.UkelonnException;
+import no.priv.bang.ukelonn.UkelonnService;
+import no.priv.bang.ukelonn.beans.Account;
+import no.priv.bang.ukelonn.beans.Transaction;
+import no.priv.bang.ukelonn.beans.TransactionType;
+
+/**
+ * Export the full transaction history of an account, as newline
+ * delimited JSON (the default) or as CSV.
+ *
+ * The transactions are written to the response as they are read from
+ * the database, so the memory used doesn't grow with the length of the
+ * history.
+ *
+ * Only the owner of the account and administrators may export it.
+ * The account is looked up, and access checked, before the response
+ * starts, since once the first rows have been sent a failure can only
+ * cut the response short.
+ */
+@Path("/export")
+public class Export extends ResourceBase {
+
+    static final String NDJSON = "application/x-ndjson";
+    static final String CSV = "text/csv";
+    static final String CSV_HEADER = "transaction_id,transaction_time,transaction_type_id,transaction_type_name,transaction_is_work,transaction_is_wage_payment,transaction_amount,paid_out\n";
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    @Inject
+    UkelonnService ukelonn;
+
+    @Inject
+    LogService logservice;
+
+    @GET
+    @Path("{accountId}")
+    @Produces({ NDJSON, CSV })
+    public Response export(@PathParam("accountId") int accountId, @QueryParam("format") @DefaultValue("ndjson") String format) {
+        boolean csv = "csv".equals(format);
+        if (!csv && !"ndjson".equals(format)) {
+            throw new BadRequestException(String.format("Unknown export format \"%s\", expected \"ndjson\" or \"csv\"", format));
+        }
+
+        Account account = findAccount(accountId);
+        if (!isCurrentUserOrAdmin(account.getUsername(), logservice)) {
+            logservice.log(LogService.LOG_WARNING, String.format("REST endpoint /ukelonn/api/export logged in user not allowed to export account %d", accountId));
+            throw new ForbiddenException();
+        }
+
+        StreamingOutput stream = output -> {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+            if (csv) {
+                writer.write(CSV_HEADER);
+            }
+
+            try {
+                ukelonn.exportTransactions(accountId, transaction -> writeTransaction(writer, transaction, csv));
+            } catch (UncheckedIOException e) {
+                // The client has most likely disconnected
+                throw e.getCause();
+            } catch (UkelonnException e) {
+                // The status has already been sent, fail the response instead of ending it as if it were complete
+                logservice.log(LogService.LOG_ERROR, String.format("REST endpoint /ukelonn/api/export failed to export account %d", accountId), e);
+                throw new IOException(String.format("Export of account %d failed", accountId), e);
+            }
+
+            writer.flush();
+        };
+
+        String filename = String.format("transactions-%d.%s", accountId, format);
+        return Response.ok(stream, csv ? CSV : NDJSON)
+            .header("Content-Disposition", "attachment; filename=\"" + filename + "\"")
+            .build();
+    }
+
+    private Account findAccount(int accountId) {
+        Account account;
+        try {
+            account = ukelonn.getAccountById(accountId);
+        } catch (UkelonnException e) {
+            logservice.log(LogService.LOG_ERROR, String.format("REST endpoint /ukelonn/api/export failed to find account %d", accountId), e);
+            throw new InternalServerErrorException("See log for details");
+        }
+
+        if (account == null) {
+            throw new NotFoundException(String.format("No account with id %d", accountId));
+        }
+
+        return account;
+    }
+
+    static void writeTransaction(Writer writer, Transaction transaction, boolean csv) {
+        try {
+            if (csv) {
+                writer.write(csvLine(transaction));
+            } else {
+                writer.write(mapper.writeValueAsString(transaction));
+                writer.write('\n');
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    static String csvLine(Transaction transaction) {
+        TransactionType transactionType = transaction.getTransactionType();
+        return new StringBuilder()
+            .append(transaction.getId()).append(',')
+            .append(transaction.getTransactionTime().toInstant()).append(',')
+            .append(transactionType.getId()).append(',')
+            .append(csvField(transactionType.getTransactionTypeName())).append(',')
+            .append(transactionType.isTransactionIsWork()).append(',')
+            .append(transactionType.isTransactionIsWagePayment()).append(',')
+            .append(transaction.getTransactionAmount()).append(',')
+            .append(transaction.isPaidOut()).append('\n')
+            .toString();
+    }
+
+    static String csvField(String value) {
+        if (value == null) {
+            return "";
+        }
+
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            return value;
+        }
+
+        return "\"" + value.replace("\"", "\"\"") + "\"";
+    }
+
+}
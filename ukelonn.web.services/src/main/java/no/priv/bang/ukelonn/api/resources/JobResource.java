@@ -16,8 +16,11 @@
 package no.priv.bang.ukelonn.api.resources;
 
 import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 import javax.inject.Inject;
+import javax.ws.rs.BadRequestException;
 import javax.ws.rs.Consumes;
 import javax.ws.rs.ForbiddenException;
 import javax.ws.rs.InternalServerErrorException;
@@ -28,6 +31,7 @@ import javax.ws.rs.core.MediaType;
 
 import org.osgi.service.log.LogService;
 
+import no.priv.bang.ukelonn.UkelonnBadRequestException;
 import no.priv.bang.ukelonn.UkelonnException;
 import no.priv.bang.ukelonn.UkelonnService;
 import no.priv.bang.ukelonn.beans.Account;
@@ -58,6 +62,45 @@ public class JobResource extends ResourceBase {
         return ukelonn.registerPerformedJob(performedJob);
     }
 
+    @Path("/registerbatch")
+    @POST
+    @Consumes(MediaType.APPLICATION_JSON)
+    public Account doRegisterJobs(List<PerformedTransaction> performedJobs) {
+        if (performedJobs == null || performedJobs.isEmpty()) {
+            logservice.log(LogService.LOG_WARNING, "REST Endpoint /ukelonn/api/job/registerbatch called without any jobs to register");
+            throw new BadRequestException();
+        }
+
+        Set<Integer> accountIds = performedJobs.stream().map(this::accountIdOfJob).collect(Collectors.toSet());
+        if (accountIds.size() != 1 || accountIds.contains(null)) {
+            logservice.log(LogService.LOG_WARNING, String.format("REST Endpoint /ukelonn/api/job/registerbatch expected jobs on a single account, got jobs for accounts %s", accountIds));
+            throw new BadRequestException();
+        }
+
+        int accountId = accountIds.iterator().next();
+        try {
+            // The jobs are written to the account id, so the owner of that account is the one to check
+            Account account = ukelonn.getAccountById(accountId);
+            if (account == null) {
+                logservice.log(LogService.LOG_WARNING, String.format("REST Endpoint /ukelonn/api/job/registerbatch found no account with id %d", accountId));
+                throw new BadRequestException();
+            }
+
+            if (!isCurrentUserOrAdmin(account.getUsername(), logservice)) {
+                logservice.log(LogService.LOG_WARNING, String.format("REST Endpoint /ukelonn/api/job/registerbatch logged in user not allowed to register jobs for username %s", account.getUsername()));
+                throw new ForbiddenException();
+            }
+
+            return ukelonn.registerPerformedJobs(performedJobs);
+        } catch (UkelonnBadRequestException e) {
+            logservice.log(LogService.LOG_WARNING, "REST endpoint /api/job/registerbatch got a bad request", e);
+            throw new BadRequestException(e.getMessage());
+        } catch (UkelonnException e) {
+            logservice.log(LogService.LOG_ERROR, "REST endpoint /api/job/registerbatch failed", e);
+            throw new InternalServerErrorException("See log for details");
+        }
+    }
+
     @Path("/update")
     @POST
     @Consumes(MediaType.APPLICATION_JSON)
@@ -70,4 +113,9 @@ public class JobResource extends ResourceBase {
         }
     }
 
+    private Integer accountIdOfJob(PerformedTransaction job) {
+        Account account = job != null ? job.getAccount() : null;
+        return account != null ? account.getAccountId() : null;
+    }
+
 }
@@ -15,17 +15,22 @@
  */
 package no.priv.bang.ukelonn.api.resources;
 
-import java.util.List;
-
 import javax.inject.Inject;
+import javax.ws.rs.BadRequestException;
+import javax.ws.rs.DefaultValue;
 import javax.ws.rs.GET;
+import javax.ws.rs.InternalServerErrorException;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
 import javax.ws.rs.core.MediaType;
 
+import no.priv.bang.ukelonn.UkelonnBadRequestException;
 import no.priv.bang.ukelonn.UkelonnService;
-import no.priv.bang.ukelonn.beans.Transaction;
 
 @Path("/jobs")
 @Produces(MediaType.APPLICATION_JSON)
@@ -36,8 +41,16 @@ public class Jobs extends ResourceBase {
 
     @GET
     @Path("{accountId}")
-    public List<Transaction> jobs(@PathParam("accountId") int accountId) {
-        return ukelonn.getJobs(accountId);
+    public void jobs(@PathParam("accountId") int accountId, @QueryParam("before") @DefaultValue(NO_TRANSACTION_ID_LIMIT) int before, @QueryParam("limit") @DefaultValue(DEFAULT_PAGE_SIZE) int limit, @Suspended AsyncResponse asyncResponse) {
+        resumeWhenComplete(asyncResponse, ukelonn.getJobsAsync(accountId, before, limit), Jobs::jobsError);
+    }
+
+    static WebApplicationException jobsError(Throwable e) {
+        if (e instanceof UkelonnBadRequestException) {
+            return new BadRequestException(e.getMessage());
+        }
+
+        return new InternalServerErrorException("See log for details");
     }
 
 }
@@ -15,23 +15,41 @@
  */
 package no.priv.bang.ukelonn.api.resources;
 
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 import javax.inject.Inject;
 import javax.ws.rs.Consumes;
+import javax.ws.rs.ForbiddenException;
 import javax.ws.rs.GET;
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
 import javax.ws.rs.core.MediaType;
 
+import org.osgi.service.log.LogService;
+
 import no.priv.bang.ukelonn.UkelonnService;
 import no.priv.bang.ukelonn.beans.Notification;
 
 @Path("")
 @Produces(MediaType.APPLICATION_JSON)
-public class NotificationResource {
+public class NotificationResource extends ResourceBase {
+
+    /**
+     * How long a long poll for notifications is held open before it is
+     * answered with an empty list.  Kept below the idle timeouts of
+     * common reverse proxies.
+     */
+    static final long LONG_POLL_TIMEOUT_SECONDS = 25;
+
+    @Inject
+    LogService logservice;
 
     @Inject
     UkelonnService ukelonn;
@@ -39,9 +57,45 @@ public class NotificationResource {
     @GET
     @Path("/notificationsto/{username}")
     public List<Notification> notificationsTo(@PathParam("username") String username) {
+        checkCurrentUserOrAdmin(username);
         return ukelonn.notificationsTo(username);
     }
 
+    /**
+     * Long poll for notifications.  The request is parked until a
+     * notification is sent to the user, and answered with a list
+     * holding that notification.  If no notification arrives within
+     * {@link #LONG_POLL_TIMEOUT_SECONDS} the request is answered with
+     * an empty list, and the client is expected to poll again.
+     *
+     * A user that hasn't been sent any notifications lately gets an
+     * empty list from the service right away.  That request is held
+     * until the timeout as well, so that the client doesn't poll in a
+     * busy loop, and a notification sent in the meantime is picked up
+     * by the next poll.
+     *
+     * @param username the user to wait for notifications to
+     * @param asyncResponse the parked request
+     */
+    @GET
+    @Path("/notificationsto/{username}/wait")
+    public void waitForNotificationsTo(@PathParam("username") String username, @Suspended AsyncResponse asyncResponse) {
+        checkCurrentUserOrAdmin(username);
+        CompletableFuture<List<Notification>> notification = ukelonn.waitForNotificationTo(username);
+        asyncResponse.setTimeout(LONG_POLL_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        asyncResponse.setTimeoutHandler(timedOut -> {
+                // If the notification arrived just before the timeout, it is resumed below
+                if (notification.cancel(false) || notification.join().isEmpty()) {
+                    timedOut.resume(Collections.emptyList());
+                }
+            });
+        notification.thenAccept(notifications -> {
+                if (!notifications.isEmpty()) {
+                    asyncResponse.resume(notifications);
+                }
+            });
+    }
+
     @POST
     @Path("/notificationto/{username}")
     @Consumes(MediaType.APPLICATION_JSON)
@@ -49,4 +103,11 @@ public class NotificationResource {
         ukelonn.notificationTo(username, notification);
     }
 
+    private void checkCurrentUserOrAdmin(String username) {
+        if (!isCurrentUserOrAdmin(username, logservice)) {
+            logservice.log(LogService.LOG_WARNING, String.format("REST endpoint /ukelonn/api/notificationsto logged in user not allowed to get notifications to username %s", username));
+            throw new ForbiddenException();
+        }
+    }
+
 }
@@ -15,7 +15,16 @@
  */
 package no.priv.bang.ukelonn.api.resources;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
 import javax.ws.rs.InternalServerErrorException;
+import javax.ws.rs.ServiceUnavailableException;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.container.AsyncResponse;
 
 import org.apache.shiro.SecurityUtils;
 import org.apache.shiro.subject.Subject;
@@ -23,10 +32,51 @@ import org.osgi.service.log.LogService;
 
 public class ResourceBase {
 
+    /**
+     * Default value of the "before" query parameter of the transaction
+     * history resources, i.e. start at the newest transaction.
+     */
+    static final String NO_TRANSACTION_ID_LIMIT = "2147483647";
+    static final String DEFAULT_PAGE_SIZE = "10";
+
+    /**
+     * The longest time a suspended request waits for the database, before
+     * the response is 503 Service Unavailable.
+     */
+    static final long ASYNC_RESPONSE_TIMEOUT_SECONDS = 30;
+
     public ResourceBase() {
         super();
     }
 
+    /**
+     * Resume a suspended request with the result of an asynchronous
+     * service call, or with the error it failed with.  The request is
+     * resumed with 503 Service Unavailable if the service call times out,
+     * or if the service has no room for the call.
+     *
+     * @param asyncResponse the suspended request
+     * @param result the result of the service call
+     * @param mapError maps a failure of the service call to an HTTP error response
+     */
+    protected <T> void resumeWhenComplete(AsyncResponse asyncResponse, CompletableFuture<T> result, Function<Throwable, WebApplicationException> mapError) {
+        asyncResponse.setTimeout(ASYNC_RESPONSE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        asyncResponse.setTimeoutHandler(timedOut -> timedOut.resume(new ServiceUnavailableException("Timed out waiting for the database")));
+        result.whenComplete((value, error) -> {
+                if (error == null) {
+                    asyncResponse.resume(value);
+                    return;
+                }
+
+                Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+                if (cause instanceof RejectedExecutionException) {
+                    asyncResponse.resume(new ServiceUnavailableException("Too many requests waiting for the database"));
+                } else {
+                    asyncResponse.resume(mapError.apply(cause));
+                }
+            });
+    }
+
     protected boolean isCurrentUserOrAdmin(String username, LogService logservice) {
         try {
             Subject subject = SecurityUtils.getSubject();
@@ -15,36 +15,40 @@
  */
 package no.priv.bang.ukelonn.api.resources;
 
-import java.util.List;
-
 import javax.inject.Inject;
 import javax.ws.rs.GET;
+import javax.ws.rs.InternalServerErrorException;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
 import javax.ws.rs.core.MediaType;
 
 import no.priv.bang.ukelonn.UkelonnService;
-import no.priv.bang.ukelonn.beans.SumYear;
-import no.priv.bang.ukelonn.beans.SumYearMonth;
 
 @Path("/statistics")
 @Produces(MediaType.APPLICATION_JSON)
-public class Statistics {
+public class Statistics extends ResourceBase {
 
     @Inject
     UkelonnService ukelonn;
 
     @GET
     @Path("/earnings/sumoveryear/{username}")
-    public List<SumYear> earningsSumOverYear(@PathParam("username") String username) {
-        return ukelonn.earningsSumOverYear(username);
+    public void earningsSumOverYear(@PathParam("username") String username, @Suspended AsyncResponse asyncResponse) {
+        resumeWhenComplete(asyncResponse, ukelonn.earningsSumOverYearAsync(username), Statistics::statisticsError);
     }
 
     @GET
     @Path("/earnings/sumovermonth/{username}")
-    public List<SumYearMonth> earningsSumOverMonth(@PathParam("username") String username) {
-        return ukelonn.earningsSumOverMonth(username);
+    public void earningsSumOverMonth(@PathParam("username") String username, @Suspended AsyncResponse asyncResponse) {
+        resumeWhenComplete(asyncResponse, ukelonn.earningsSumOverMonthAsync(username), Statistics::statisticsError);
+    }
+
+    static WebApplicationException statisticsError(Throwable e) {
+        return new InternalServerErrorException("See log for details");
     }
 
 }
@@ -0,0 +1,75 @@
+/*
+ * Copyright 2019 Steinar Bang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package no.priv.bang.ukelonn.api;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.*;
+
+import java.io.StringWriter;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import no.priv.bang.osgi.service.mocks.logservice.MockLogService;
+
+public class AccessLogTest {
+
+    @Test
+    public void testEntriesAreWrittenBeforeStopping() {
+        StringWriter writer = new StringWriter();
+        AccessLog accessLog = new AccessLog(writer, new RouteStatistics(), new MockLogService(), 0);
+        accessLog.start();
+
+        accessLog.log(0, "127.0.0.1", "GET", "/ukelonn/api/jobs/1", "HTTP/1.1", 200, TimeUnit.MILLISECONDS.toNanos(3), "/api/jobs/{accountId}");
+        accessLog.log(0, "127.0.0.1", "POST", "/ukelonn/api/login", "HTTP/1.1", 401, 1000, "/api/login");
+        accessLog.stop();
+
+        String[] lines = writer.toString().split("\n");
+        assertEquals(2, lines.length);
+        assertThat(lines[0]).startsWith("127.0.0.1 - - [").endsWith("] \"GET /ukelonn/api/jobs/1 HTTP/1.1\" 200 3000 /api/jobs/{accountId}");
+        assertThat(lines[1]).endsWith("\"POST /ukelonn/api/login HTTP/1.1\" 401 1 /api/login");
+    }
+
+    @Test
+    public void testDroppedEntriesAreCounted() {
+        AccessLog accessLog = new AccessLog(new StringWriter(), new RouteStatistics(), new MockLogService(), 0);
+
+        // The writer thread isn't started, so the queue fills up
+        for (int i = 0; i < AccessLog.QUEUE_CAPACITY + 3; ++i) {
+            accessLog.log(0, "127.0.0.1", "GET", "/ukelonn/", "HTTP/1.1", 200, 1000, "/");
+        }
+
+        assertEquals(3, accessLog.getDroppedEntries());
+    }
+
+    @Test
+    public void testLogSummary() {
+        RouteStatistics statistics = new RouteStatistics();
+        statistics.record("/api/login", 1000);
+        MockLogService logservice = new MockLogService();
+        AccessLog accessLog = new AccessLog(null, statistics, logservice, 0);
+        assertFalse(accessLog.isEnabled());
+        accessLog.log(0, "127.0.0.1", "GET", "/ukelonn/", "HTTP/1.1", 200, 1000, "/");
+
+        accessLog.logSummary();
+        accessLog.write(Collections.emptyList());
+
+        assertEquals(1, logservice.getLogmessagecount());
+        assertEquals(0, accessLog.getDroppedEntries());
+    }
+
+}
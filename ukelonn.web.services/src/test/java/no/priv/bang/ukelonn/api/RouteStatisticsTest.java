@@ -0,0 +1,75 @@
+/*
+ * Copyright 2019 Steinar Bang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package no.priv.bang.ukelonn.api;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.*;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.HdrHistogram.Histogram;
+import org.junit.Test;
+
+public class RouteStatisticsTest {
+
+    @Test
+    public void testRecordAndGetIntervalHistograms() {
+        RouteStatistics statistics = new RouteStatistics();
+        statistics.record("/api/jobs/{accountId}", TimeUnit.MILLISECONDS.toNanos(2));
+        statistics.record("/api/jobs/{accountId}", TimeUnit.MILLISECONDS.toNanos(4));
+        statistics.record("/api/login", TimeUnit.HOURS.toNanos(1));
+
+        Map<String, Histogram> histograms = statistics.getIntervalHistograms();
+
+        assertThat(histograms.keySet()).containsExactly("/api/jobs/{accountId}", "/api/login");
+        assertEquals(2, histograms.get("/api/jobs/{accountId}").getTotalCount());
+        assertThat(histograms.get("/api/login").getMaxValue()).isGreaterThanOrEqualTo(RouteStatistics.HIGHEST_TRACKABLE_MICROSECONDS);
+        assertThat(statistics.getIntervalHistograms()).isEmpty();
+    }
+
+    @Test
+    public void testNumberOfRoutesIsLimited() {
+        RouteStatistics statistics = new RouteStatistics();
+        for (int i = 0; i < RouteStatistics.MAX_ROUTES + 10; ++i) {
+            statistics.record("/notfound" + i, 1000);
+        }
+
+        Map<String, Histogram> histograms = statistics.getIntervalHistograms();
+
+        assertEquals(RouteStatistics.MAX_ROUTES + 1, histograms.size());
+        assertEquals(10, histograms.get(RouteStatistics.OTHER_ROUTES).getTotalCount());
+    }
+
+    @Test
+    public void testRoute() {
+        assertEquals("/api/jobs/{accountId}", RouteStatistics.route("/api", "/jobs/1", "/jobs/{accountId}"));
+        assertEquals("/api/jobs/{id}", RouteStatistics.route("/api", "/jobs/1", null));
+        assertEquals("/api/admin/user/{id}/x", RouteStatistics.route("/api", "/admin/user/12/x", null));
+        assertEquals("/api/v2x", RouteStatistics.route("/api", "/v2x", null));
+        assertEquals("/bundle.js", RouteStatistics.route("/bundle.js", null, null));
+        assertEquals("", RouteStatistics.route(null, null, null));
+    }
+
+    @Test
+    public void testFormat() {
+        Histogram histogram = new Histogram(3);
+        histogram.recordValue(1500);
+
+        assertThat(RouteStatistics.format("/api/login", histogram)).startsWith("/api/login requests=1 p50=");
+    }
+
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright 2019 Steinar Bang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package no.priv.bang.ukelonn.api;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import javax.ws.rs.container.ContainerRequestContext;
+
+import org.glassfish.jersey.server.ExtendedUriInfo;
+import org.glassfish.jersey.uri.UriTemplate;
+import org.junit.Test;
+
+public class RouteTemplateFilterTest {
+
+    @Test
+    public void testFilter() {
+        RouteTemplateFilter filter = new RouteTemplateFilter();
+        ContainerRequestContext requestContext = mock(ContainerRequestContext.class);
+        ExtendedUriInfo uriInfo = mock(ExtendedUriInfo.class);
+        when(uriInfo.getMatchedTemplates()).thenReturn(Arrays.asList(new UriTemplate("{accountId}"), new UriTemplate("/jobs")));
+        when(requestContext.getUriInfo()).thenReturn(uriInfo);
+
+        filter.filter(requestContext);
+
+        verify(requestContext).setProperty(RouteTemplateFilter.ROUTE_TEMPLATE, "/jobs/{accountId}");
+    }
+
+    @Test
+    public void testTemplate() {
+        assertEquals("/login", RouteTemplateFilter.template(Arrays.asList(new UriTemplate("/login"))));
+        assertEquals("/statistics/earnings/sumoveryear/{username}", RouteTemplateFilter.template(Arrays.asList(new UriTemplate("/earnings/sumoveryear/{username}"), new UriTemplate("/statistics/"))));
+        assertEquals("/", RouteTemplateFilter.template(Collections.emptyList()));
+    }
+
+}
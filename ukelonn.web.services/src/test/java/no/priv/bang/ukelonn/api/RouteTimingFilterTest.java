@@ -0,0 +1,159 @@
+/*
+ * Copyright 2019 Steinar Bang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package no.priv.bang.ukelonn.api;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.*;
+import static org.mockito.Mockito.*;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.HdrHistogram.Histogram;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import com.mockrunner.mock.web.MockHttpServletRequest;
+import com.mockrunner.mock.web.MockHttpServletResponse;
+
+import no.priv.bang.osgi.service.mocks.logservice.MockLogService;
+
+public class RouteTimingFilterTest {
+
+    @Test
+    public void testRequestIsTimedOnItsRoute() throws Exception {
+        File accessLogFile = File.createTempFile("ukelonn-access", ".log");
+        accessLogFile.deleteOnExit();
+        RouteTimingFilter filter = createFilter(accessLogFile.getAbsolutePath());
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setMethod("GET");
+        request.setRequestURI("/ukelonn/api/jobs/1");
+        request.setServletPath("/api");
+        request.setPathInfo("/jobs/1");
+        request.setQueryString("limit=10");
+        request.setProtocol("HTTP/1.1");
+        request.setRemoteAddr("127.0.0.1");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        FilterChain chain = (req, resp) -> req.setAttribute(RouteTemplateFilter.ROUTE_TEMPLATE, "/jobs/{accountId}");
+
+        filter.doFilter(request, response, chain);
+        filter.deactivate();
+
+        Map<String, Histogram> histograms = filter.getStatistics().getIntervalHistograms();
+        assertEquals(1, histograms.get("/api/jobs/{accountId}").getTotalCount());
+        List<String> lines = Files.readAllLines(accessLogFile.toPath(), StandardCharsets.UTF_8);
+        assertEquals(1, lines.size());
+        assertThat(lines.get(0)).contains("\"GET /ukelonn/api/jobs/1?limit=10 HTTP/1.1\" ").endsWith(" /api/jobs/{accountId}");
+    }
+
+    @Test
+    public void testAsyncRequestIsTimedWhenCompleted() throws Exception {
+        RouteTimingFilter filter = createFilter(null);
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        when(request.getServletPath()).thenReturn("/api");
+        when(request.getPathInfo()).thenReturn("/account/jad");
+        when(request.getAttribute(RouteTemplateFilter.ROUTE_TEMPLATE)).thenReturn("/account/{username}");
+        when(request.isAsyncStarted()).thenReturn(true);
+        AsyncContext asyncContext = mock(AsyncContext.class);
+        when(request.getAsyncContext()).thenReturn(asyncContext);
+        HttpServletResponse response = mock(HttpServletResponse.class);
+
+        filter.doFilter(request, response, mock(FilterChain.class));
+        assertThat(filter.getStatistics().getIntervalHistograms()).isEmpty();
+
+        ArgumentCaptor<AsyncListener> listener = ArgumentCaptor.forClass(AsyncListener.class);
+        verify(asyncContext).addListener(listener.capture());
+        AsyncEvent event = new AsyncEvent(asyncContext);
+        listener.getValue().onTimeout(event);
+        listener.getValue().onError(event);
+        listener.getValue().onStartAsync(event);
+        listener.getValue().onComplete(event);
+        filter.deactivate();
+
+        assertEquals(1, filter.getStatistics().getIntervalHistograms().get("/api/account/{username}").getTotalCount());
+        verify(asyncContext, times(2)).addListener(any(AsyncListener.class));
+    }
+
+    @Test
+    public void testNonHttpRequestIsPassedOn() throws Exception {
+        RouteTimingFilter filter = createFilter(null);
+        filter.init(null);
+        ServletRequest request = mock(ServletRequest.class);
+        ServletResponse response = mock(ServletResponse.class);
+        FilterChain chain = mock(FilterChain.class);
+
+        filter.doFilter(request, response, chain);
+        filter.destroy();
+        filter.deactivate();
+
+        verify(chain).doFilter(request, response);
+        assertThat(filter.getStatistics().getIntervalHistograms()).isEmpty();
+    }
+
+    @Test
+    public void testAccessLogThatCantBeOpened() {
+        MockLogService logservice = new MockLogService();
+        RouteTimingFilter filter = new RouteTimingFilter();
+        filter.setLogservice(logservice);
+        Map<String, Object> config = new HashMap<>();
+        config.put("accessLog", new File("nonexisting-directory", "access.log").getPath());
+        config.put("summaryIntervalMinutes", "0");
+
+        filter.activate(config);
+        filter.deactivate();
+
+        assertEquals(1, logservice.getLogmessagecount());
+    }
+
+    @Test
+    public void testActivateWithoutConfig() {
+        RouteTimingFilter filter = new RouteTimingFilter();
+        filter.setLogservice(new MockLogService());
+        filter.activate(Collections.emptyMap());
+        assertFalse(filter.getAccessLog().isEnabled());
+        filter.deactivate();
+        assertNull(filter.getAccessLog());
+    }
+
+    private RouteTimingFilter createFilter(String accessLog) {
+        RouteTimingFilter filter = new RouteTimingFilter();
+        filter.setLogservice(new MockLogService());
+        Map<String, Object> config = new HashMap<>();
+        if (accessLog != null) {
+            config.put("accessLog", accessLog);
+        }
+
+        config.put("summaryIntervalMinutes", 0);
+        filter.activate(config);
+        return filter;
+    }
+
+}
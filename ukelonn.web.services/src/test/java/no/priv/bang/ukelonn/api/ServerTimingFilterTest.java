@@ -0,0 +1,122 @@
+/*
+ * Copyright 2019 Steinar Bang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package no.priv.bang.ukelonn.api;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.*;
+import static org.mockito.Mockito.*;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerResponseContext;
+import javax.ws.rs.core.MultivaluedHashMap;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.core.SecurityContext;
+import javax.ws.rs.ext.WriterInterceptorContext;
+
+import org.junit.Test;
+
+import no.priv.bang.ukelonn.trace.RequestTrace;
+
+public class ServerTimingFilterTest {
+
+    @Test
+    public void testPhasesAreAddedToServerTimingHeader() throws Exception {
+        ServerTimingFilter filter = new ServerTimingFilter();
+        RequestTrace trace = new RequestTrace();
+        Map<String, Object> properties = new HashMap<>();
+        properties.put(TraceFilter.REQUEST_TRACE, trace);
+        ContainerRequestContext requestContext = requestContext(properties);
+        MultivaluedMap<String, Object> headers = new MultivaluedHashMap<>();
+        ContainerResponseContext responseContext = mock(ContainerResponseContext.class);
+        when(responseContext.getHeaders()).thenReturn(headers);
+        WriterInterceptorContext writerContext = mock(WriterInterceptorContext.class);
+        when(writerContext.getProperty(TraceFilter.REQUEST_TRACE)).thenReturn(trace);
+        when(writerContext.getHeaders()).thenReturn(headers);
+
+        filter.filter(requestContext);
+        trace.addPhase("db", "select * from accounts", 1000);
+        filter.filter(requestContext, responseContext);
+        assertThat((String) headers.getFirst(ServerTimingFilter.SERVER_TIMING_HEADER))
+            .startsWith("auth;dur=")
+            .contains(", db;dur=0.001, resource;dur=")
+            .doesNotContain("select")
+            .doesNotContain("serialization");
+
+        filter.aroundWriteTo(writerContext);
+
+        verify(writerContext).proceed();
+        assertEquals(1, headers.get(ServerTimingFilter.SERVER_TIMING_HEADER).size());
+        assertThat((String) headers.getFirst(ServerTimingFilter.SERVER_TIMING_HEADER)).contains(", serialization;dur=");
+    }
+
+    @Test
+    public void testAdministratorGetsPhaseDescriptions() throws Exception {
+        ServerTimingFilter filter = new ServerTimingFilter();
+        RequestTrace trace = new RequestTrace();
+        Map<String, Object> properties = new HashMap<>();
+        properties.put(TraceFilter.REQUEST_TRACE, trace);
+        ContainerRequestContext requestContext = requestContext(properties);
+        SecurityContext securityContext = mock(SecurityContext.class);
+        when(securityContext.isUserInRole(ServerTimingFilter.ADMIN_ROLE)).thenReturn(true);
+        when(requestContext.getSecurityContext()).thenReturn(securityContext);
+        MultivaluedMap<String, Object> headers = new MultivaluedHashMap<>();
+        ContainerResponseContext responseContext = mock(ContainerResponseContext.class);
+        when(responseContext.getHeaders()).thenReturn(headers);
+        WriterInterceptorContext writerContext = mock(WriterInterceptorContext.class);
+        when(writerContext.getProperty(anyString())).thenAnswer(invocation -> properties.get(invocation.getArguments()[0]));
+        when(writerContext.getHeaders()).thenReturn(headers);
+
+        filter.filter(requestContext);
+        trace.addPhase("db", "/sql/query/jobs_last_n.sql", 1000);
+        filter.filter(requestContext, responseContext);
+        assertThat((String) headers.getFirst(ServerTimingFilter.SERVER_TIMING_HEADER)).contains(", db;desc=\"/sql/query/jobs_last_n.sql\";dur=0.001, ");
+
+        filter.aroundWriteTo(writerContext);
+
+        assertThat((String) headers.getFirst(ServerTimingFilter.SERVER_TIMING_HEADER))
+            .contains(", db;desc=\"/sql/query/jobs_last_n.sql\";dur=0.001, ")
+            .contains(", serialization;dur=");
+    }
+
+    @Test
+    public void testRequestWithoutTrace() throws Exception {
+        ServerTimingFilter filter = new ServerTimingFilter();
+        ContainerRequestContext requestContext = requestContext(new HashMap<>());
+        ContainerResponseContext responseContext = mock(ContainerResponseContext.class);
+        WriterInterceptorContext writerContext = mock(WriterInterceptorContext.class);
+
+        filter.filter(requestContext);
+        filter.filter(requestContext, responseContext);
+        filter.aroundWriteTo(writerContext);
+
+        verify(requestContext, never()).setProperty(anyString(), any());
+        verify(responseContext, never()).getHeaders();
+        verify(writerContext).proceed();
+        verify(writerContext, never()).getHeaders();
+    }
+
+    private ContainerRequestContext requestContext(Map<String, Object> properties) {
+        ContainerRequestContext requestContext = mock(ContainerRequestContext.class);
+        when(requestContext.getProperty(anyString())).thenAnswer(invocation -> properties.get(invocation.getArguments()[0]));
+        doAnswer(invocation -> properties.put((String) invocation.getArguments()[0], invocation.getArguments()[1])).when(requestContext).setProperty(anyString(), any());
+        return requestContext;
+    }
+
+}
@@ -16,6 +16,7 @@
 package no.priv.bang.ukelonn.api;
 
 import static no.priv.bang.ukelonn.testutils.TestUtils.*;
+import static org.mockito.Matchers.*;
 import static org.mockito.Mockito.*;
 
 import java.io.ByteArrayInputStream;
@@ -25,15 +26,18 @@ import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.Collections;
 
+import javax.servlet.AsyncContext;
 import javax.servlet.ReadListener;
 import javax.servlet.ServletInputStream;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import javax.servlet.http.HttpSession;
+import javax.ws.rs.container.AsyncResponse;
 
 import org.apache.shiro.authc.UsernamePasswordToken;
 import org.apache.shiro.util.ThreadContext;
 import org.apache.shiro.web.subject.WebSubject;
+import org.mockito.ArgumentCaptor;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.DeserializationFeature;
@@ -49,6 +53,24 @@ public class ServletTestBase {
         super();
     }
 
+    /**
+     * Get the value a suspended request was resumed with.
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> T resumedWith(AsyncResponse asyncResponse) {
+        ArgumentCaptor<Object> value = ArgumentCaptor.forClass(Object.class);
+        verify(asyncResponse).resume(value.capture());
+        return (T) value.getValue();
+    }
+
+    /**
+     * Let a mocked request be suspended by a resource taking an AsyncResponse.
+     */
+    public static void supportAsync(HttpServletRequest request) {
+        when(request.isAsyncSupported()).thenReturn(true);
+        when(request.startAsync(any(), any())).thenReturn(mock(AsyncContext.class));
+    }
+
     protected WebSubject createSubjectAndBindItToThread(HttpServletRequest request, HttpServletResponse response) {
         WebSubject subject = new WebSubject.Builder(getSecurityManager(), request, response).buildWebSubject();
         ThreadContext.bind(subject);
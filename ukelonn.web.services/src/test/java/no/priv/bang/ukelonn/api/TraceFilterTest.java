@@ -0,0 +1,88 @@
+/*
+ * Copyright 2019 Steinar Bang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package no.priv.bang.ukelonn.api;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+
+import org.junit.Test;
+
+import com.mockrunner.mock.web.MockHttpServletRequest;
+import com.mockrunner.mock.web.MockHttpServletResponse;
+
+import no.priv.bang.ukelonn.trace.RequestTrace;
+
+public class TraceFilterTest {
+
+    @Test
+    public void testTraceIsBoundWhileRequestIsHandled() throws Exception {
+        TraceFilter filter = new TraceFilter();
+        filter.init(null);
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        AtomicReference<RequestTrace> traceInChain = new AtomicReference<>();
+        FilterChain chain = (req, resp) -> traceInChain.set(RequestTrace.current());
+
+        filter.doFilter(request, response, chain);
+        filter.destroy();
+
+        RequestTrace trace = (RequestTrace) request.getAttribute(TraceFilter.REQUEST_TRACE);
+        assertSame(trace, traceInChain.get());
+        assertEquals(trace.getTraceId(), response.getHeader(TraceFilter.TRACE_ID_HEADER));
+        assertNull(RequestTrace.current());
+    }
+
+    @Test
+    public void testAsyncDispatchKeepsTrace() throws Exception {
+        TraceFilter filter = new TraceFilter();
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        RequestTrace trace = new RequestTrace();
+        request.setAttribute(TraceFilter.REQUEST_TRACE, trace);
+        AtomicReference<RequestTrace> traceInChain = new AtomicReference<>();
+        FilterChain chain = (req, resp) -> traceInChain.set(RequestTrace.current());
+
+        filter.doFilter(request, new MockHttpServletResponse(), chain);
+
+        assertSame(trace, traceInChain.get());
+        assertSame(trace, request.getAttribute(TraceFilter.REQUEST_TRACE));
+    }
+
+    @Test
+    public void testTraceIsUnboundWhenChainFails() throws Exception {
+        TraceFilter filter = new TraceFilter();
+        ServletRequest request = mock(ServletRequest.class);
+        ServletResponse response = mock(ServletResponse.class);
+        FilterChain chain = (req, resp) -> { throw new IllegalStateException("failed"); };
+
+        try {
+            filter.doFilter(request, response, chain);
+            fail("Expected the exception of the chain");
+        } catch (IllegalStateException e) {
+            assertThat(e).hasMessage("failed");
+        }
+
+        verify(request).setAttribute(eq(TraceFilter.REQUEST_TRACE), any(RequestTrace.class));
+        assertNull(RequestTrace.current());
+    }
+
+}
@@ -26,9 +26,11 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
+import javax.servlet.AsyncContext;
 import javax.servlet.ServletConfig;
 import javax.servlet.ServletContext;
 import javax.servlet.http.HttpServletRequest;
@@ -53,6 +55,7 @@ import no.priv.bang.osgiservice.users.User;
 import no.priv.bang.osgiservice.users.UserAndPasswords;
 import no.priv.bang.osgiservice.users.UserManagementService;
 import no.priv.bang.ukelonn.UkelonnException;
+import no.priv.bang.ukelonn.UkelonnAdminService;
 import no.priv.bang.ukelonn.UkelonnService;
 import no.priv.bang.ukelonn.api.beans.LoginCredentials;
 import no.priv.bang.ukelonn.api.beans.LoginResult;
@@ -97,6 +100,7 @@ public class UkelonnRestApiServletTest extends ServletTestBase {
         servlet.setUserManagement(useradmin);
         UkelonnService ukelonn = mock(UkelonnService.class);
         servlet.setUkelonnService(ukelonn);
+        servlet.setUkelonnAdminService(mock(UkelonnAdminService.class));
         createSubjectAndBindItToThread(request, response);
 
         // Activate the servlet DS component
@@ -137,6 +141,7 @@ public class UkelonnRestApiServletTest extends ServletTestBase {
         servlet.setUserManagement(useradmin);
         UkelonnService ukelonn = mock(UkelonnService.class);
         servlet.setUkelonnService(ukelonn);
+        servlet.setUkelonnAdminService(mock(UkelonnAdminService.class));
         createSubjectAndBindItToThread(request, response);
 
         // Activate the servlet DS component
@@ -176,6 +181,7 @@ public class UkelonnRestApiServletTest extends ServletTestBase {
         servlet.setLogservice(logservice);
         UkelonnService ukelonn = mock(UkelonnService.class);
         servlet.setUkelonnService(ukelonn);
+        servlet.setUkelonnAdminService(mock(UkelonnAdminService.class));
         createSubjectAndBindItToThread(request, response);
 
         // Activate the servlet DS component
@@ -216,6 +222,7 @@ public class UkelonnRestApiServletTest extends ServletTestBase {
         servlet.setUserManagement(useradmin);
         UkelonnService ukelonn = mock(UkelonnService.class);
         servlet.setUkelonnService(ukelonn);
+        servlet.setUkelonnAdminService(mock(UkelonnAdminService.class));
         createSubjectAndBindItToThread(request, response);
 
         // Activate the servlet DS component
@@ -255,6 +262,7 @@ public class UkelonnRestApiServletTest extends ServletTestBase {
         servlet.setUserManagement(useradmin);
         UkelonnService ukelonn = mock(UkelonnService.class);
         servlet.setUkelonnService(ukelonn);
+        servlet.setUkelonnAdminService(mock(UkelonnAdminService.class));
         createSubjectAndBindItToThread(request, response);
 
         // Activate the servlet DS component
@@ -313,6 +321,7 @@ public class UkelonnRestApiServletTest extends ServletTestBase {
         servlet.setUserManagement(useradmin);
         UkelonnService ukelonn = mock(UkelonnService.class);
         servlet.setUkelonnService(ukelonn);
+        servlet.setUkelonnAdminService(mock(UkelonnAdminService.class));
 
         // Activate the servlet DS component
         servlet.activate();
@@ -373,6 +382,7 @@ public class UkelonnRestApiServletTest extends ServletTestBase {
         servlet.setUserManagement(useradmin);
         UkelonnService ukelonn = mock(UkelonnService.class);
         servlet.setUkelonnService(ukelonn);
+        servlet.setUkelonnAdminService(mock(UkelonnAdminService.class));
 
         // Activate the servlet DS component
         servlet.activate();
@@ -422,6 +432,7 @@ public class UkelonnRestApiServletTest extends ServletTestBase {
         servlet.setUserManagement(useradmin);
         UkelonnService ukelonn = mock(UkelonnService.class);
         servlet.setUkelonnService(ukelonn);
+        servlet.setUkelonnAdminService(mock(UkelonnAdminService.class));
 
         // Activate the servlet DS component
         servlet.activate();
@@ -477,6 +488,7 @@ public class UkelonnRestApiServletTest extends ServletTestBase {
         servlet.setUserManagement(useradmin);
         UkelonnService ukelonn = mock(UkelonnService.class);
         servlet.setUkelonnService(ukelonn);
+        servlet.setUkelonnAdminService(mock(UkelonnAdminService.class));
 
         // Activate the servlet DS component
         servlet.activate();
@@ -525,6 +537,7 @@ public class UkelonnRestApiServletTest extends ServletTestBase {
         UkelonnService ukelonn = mock(UkelonnService.class);
         when(ukelonn.getJobTypes()).thenReturn(getJobtypes());
         servlet.setUkelonnService(ukelonn);
+        servlet.setUkelonnAdminService(mock(UkelonnAdminService.class));
 
         // Activate the servlet DS component
         servlet.activate();
@@ -572,6 +585,7 @@ public class UkelonnRestApiServletTest extends ServletTestBase {
         UkelonnService ukelonn = mock(UkelonnService.class);
         when(ukelonn.getAccounts()).thenReturn(getDummyAccounts());
         servlet.setUkelonnService(ukelonn);
+        servlet.setUkelonnAdminService(mock(UkelonnAdminService.class));
 
         // Activate the servlet DS component
         servlet.activate();
@@ -602,6 +616,7 @@ public class UkelonnRestApiServletTest extends ServletTestBase {
         when(request.getMethod()).thenReturn("GET");
         when(request.getRequestURL()).thenReturn(new StringBuffer("http://localhost:8181/ukelonn/api/account/jad"));
         when(request.getRequestURI()).thenReturn("/ukelonn/api/account/jad");
+        supportAsync(request);
         when(request.getContextPath()).thenReturn("/ukelonn");
         when(request.getServletPath()).thenReturn("/api");
         when(request.getHeaderNames()).thenReturn(Collections.emptyEnumeration());
@@ -620,8 +635,9 @@ public class UkelonnRestApiServletTest extends ServletTestBase {
         servlet.setLogservice(logservice);
         servlet.setUserManagement(useradmin);
         UkelonnService ukelonn = mock(UkelonnService.class);
-        when(ukelonn.getAccount(anyString())).thenReturn(getJadAccount());
+        when(ukelonn.getAccountAsync(anyString())).thenReturn(CompletableFuture.completedFuture(getJadAccount()));
         servlet.setUkelonnService(ukelonn);
+        servlet.setUkelonnAdminService(mock(UkelonnAdminService.class));
 
         // Activate the servlet DS component
         servlet.activate();
@@ -660,6 +676,7 @@ public class UkelonnRestApiServletTest extends ServletTestBase {
         when(request.getMethod()).thenReturn("GET");
         when(request.getRequestURL()).thenReturn(new StringBuffer("http://localhost:8181/ukelonn/api/account/jod"));
         when(request.getRequestURI()).thenReturn("/ukelonn/api/account/jod");
+        supportAsync(request);
         when(request.getContextPath()).thenReturn("/ukelonn");
         when(request.getServletPath()).thenReturn("/api");
         when(request.getHeaderNames()).thenReturn(Collections.emptyEnumeration());
@@ -679,6 +696,7 @@ public class UkelonnRestApiServletTest extends ServletTestBase {
         servlet.setUserManagement(useradmin);
         UkelonnService ukelonn = mock(UkelonnService.class);
         servlet.setUkelonnService(ukelonn);
+        servlet.setUkelonnAdminService(mock(UkelonnAdminService.class));
 
         // Activate the servlet DS component
         servlet.activate();
@@ -711,6 +729,7 @@ public class UkelonnRestApiServletTest extends ServletTestBase {
         when(request.getMethod()).thenReturn("GET");
         when(request.getRequestURL()).thenReturn(new StringBuffer("http://localhost:8181/ukelonn/api/account/jad"));
         when(request.getRequestURI()).thenReturn("/ukelonn/api/account/jad");
+        supportAsync(request);
         when(request.getContextPath()).thenReturn("/ukelonn");
         when(request.getServletPath()).thenReturn("/api");
         when(request.getHeaderNames()).thenReturn(Collections.emptyEnumeration());
@@ -729,8 +748,9 @@ public class UkelonnRestApiServletTest extends ServletTestBase {
         servlet.setLogservice(logservice);
         servlet.setUserManagement(useradmin);
         UkelonnService ukelonn = mock(UkelonnService.class);
-        when(ukelonn.getAccount(anyString())).thenReturn(getJadAccount());
+        when(ukelonn.getAccountAsync(anyString())).thenReturn(CompletableFuture.completedFuture(getJadAccount()));
         servlet.setUkelonnService(ukelonn);
+        servlet.setUkelonnAdminService(mock(UkelonnAdminService.class));
 
         // Activate the servlet DS component
         servlet.activate();
@@ -782,6 +802,7 @@ public class UkelonnRestApiServletTest extends ServletTestBase {
         servlet.setUserManagement(useradmin);
         UkelonnService ukelonn = mock(UkelonnService.class);
         servlet.setUkelonnService(ukelonn);
+        servlet.setUkelonnAdminService(mock(UkelonnAdminService.class));
 
         // Activate the servlet DS component
         servlet.activate();
@@ -811,6 +832,7 @@ public class UkelonnRestApiServletTest extends ServletTestBase {
         when(request.getMethod()).thenReturn("GET");
         when(request.getRequestURL()).thenReturn(new StringBuffer("http://localhost:8181/ukelonn/api/account/unknownuser"));
         when(request.getRequestURI()).thenReturn("/ukelonn/api/account/unknownuser");
+        supportAsync(request);
         when(request.getContextPath()).thenReturn("/ukelonn");
         when(request.getServletPath()).thenReturn("/api");
         when(request.getHeaderNames()).thenReturn(Collections.emptyEnumeration());
@@ -827,8 +849,11 @@ public class UkelonnRestApiServletTest extends ServletTestBase {
         UkelonnRestApiServlet servlet = new UkelonnRestApiServlet();
         servlet.setLogservice(logservice);
         UkelonnService ukelonn = mock(UkelonnService.class);
-        when(ukelonn.getAccount(anyString())).thenThrow(UkelonnException.class);
+        CompletableFuture<Account> failed = new CompletableFuture<>();
+        failed.completeExceptionally(new UkelonnException("no account for user \"unknownuser\""));
+        when(ukelonn.getAccountAsync(anyString())).thenReturn(failed);
         servlet.setUkelonnService(ukelonn);
+        servlet.setUkelonnAdminService(mock(UkelonnAdminService.class));
 
         // Inject fake OSGi service UserAdminService
         UserManagementService useradmin = mock(UserManagementService.class);
@@ -880,6 +905,7 @@ public class UkelonnRestApiServletTest extends ServletTestBase {
         UkelonnService ukelonn = mock(UkelonnService.class);
         when(ukelonn.registerPerformedJob(any())).thenReturn(account);
         servlet.setUkelonnService(ukelonn);
+        servlet.setUkelonnAdminService(mock(UkelonnAdminService.class));
 
         // Activate the servlet DS component
         servlet.activate();
@@ -936,6 +962,7 @@ public class UkelonnRestApiServletTest extends ServletTestBase {
         servlet.setUserManagement(useradmin);
         UkelonnService ukelonn = mock(UkelonnService.class);
         servlet.setUkelonnService(ukelonn);
+        servlet.setUkelonnAdminService(mock(UkelonnAdminService.class));
 
         // Activate the servlet DS component
         servlet.activate();
@@ -987,6 +1014,7 @@ public class UkelonnRestApiServletTest extends ServletTestBase {
         UkelonnService ukelonn = mock(UkelonnService.class);
         when(ukelonn.registerPerformedJob(any())).thenReturn(account);
         servlet.setUkelonnService(ukelonn);
+        servlet.setUkelonnAdminService(mock(UkelonnAdminService.class));
 
         // Activate the servlet DS component
         servlet.activate();
@@ -1032,6 +1060,7 @@ public class UkelonnRestApiServletTest extends ServletTestBase {
         servlet.setUserManagement(useradmin);
         UkelonnService ukelonn = mock(UkelonnService.class);
         servlet.setUkelonnService(ukelonn);
+        servlet.setUkelonnAdminService(mock(UkelonnAdminService.class));
 
         // Activate the servlet DS component
         servlet.activate();
@@ -1070,6 +1099,7 @@ public class UkelonnRestApiServletTest extends ServletTestBase {
         servlet.setUserManagement(useradmin);
         UkelonnService ukelonn = mock(UkelonnService.class);
         servlet.setUkelonnService(ukelonn);
+        servlet.setUkelonnAdminService(mock(UkelonnAdminService.class));
 
         // Activate the servlet DS component
         servlet.activate();
@@ -1118,6 +1148,7 @@ public class UkelonnRestApiServletTest extends ServletTestBase {
         servlet.setUserManagement(useradmin);
         UkelonnService ukelonn = mock(UkelonnService.class);
         servlet.setUkelonnService(ukelonn);
+        servlet.setUkelonnAdminService(mock(UkelonnAdminService.class));
 
         // Activate the servlet DS component
         servlet.activate();
@@ -1148,6 +1179,7 @@ public class UkelonnRestApiServletTest extends ServletTestBase {
         String requestURI = String.format("/ukelonn/api/jobs/%d", account.getAccountId());
         when(request.getRequestURL()).thenReturn(new StringBuffer(requestURL));
         when(request.getRequestURI()).thenReturn(requestURI);
+        supportAsync(request);
         when(request.getContextPath()).thenReturn("/ukelonn");
         when(request.getServletPath()).thenReturn("/api");
         when(request.getHeaderNames()).thenReturn(Collections.emptyEnumeration());
@@ -1166,8 +1198,9 @@ public class UkelonnRestApiServletTest extends ServletTestBase {
 
         // Inject fake OSGi service UkelonnService
         UkelonnService ukelonn = mock(UkelonnService.class);
-        when(ukelonn.getJobs(anyInt())).thenReturn(getJadJobs());
+        when(ukelonn.getJobsAsync(anyInt(), anyInt(), anyInt())).thenReturn(CompletableFuture.completedFuture(getJadJobs()));
         servlet.setUkelonnService(ukelonn);
+        servlet.setUkelonnAdminService(mock(UkelonnAdminService.class));
 
         // Activate the servlet DS component
         servlet.activate();
@@ -1217,6 +1250,7 @@ public class UkelonnRestApiServletTest extends ServletTestBase {
         // Inject fake OSGi service UkelonnService
         UkelonnService ukelonn = mock(UkelonnService.class);
         servlet.setUkelonnService(ukelonn);
+        servlet.setUkelonnAdminService(mock(UkelonnAdminService.class));
 
         // Activate the servlet DS component
         servlet.activate();
@@ -1276,6 +1310,7 @@ public class UkelonnRestApiServletTest extends ServletTestBase {
         UkelonnService ukelonn = mock(UkelonnService.class);
         when(ukelonn.updateJob(any())).thenReturn(Arrays.asList(convertUpdatedTransaction(editedJob)));
         servlet.setUkelonnService(ukelonn);
+        servlet.setUkelonnAdminService(mock(UkelonnAdminService.class));
 
         // Activate the servlet DS component
         servlet.activate();
@@ -1309,6 +1344,7 @@ public class UkelonnRestApiServletTest extends ServletTestBase {
         String requestURI = String.format("/ukelonn/api/payments/%d", account.getAccountId());
         when(request.getRequestURL()).thenReturn(new StringBuffer(requestURL));
         when(request.getRequestURI()).thenReturn(requestURI);
+        supportAsync(request);
         when(request.getContextPath()).thenReturn("/ukelonn");
         when(request.getServletPath()).thenReturn("/api");
         when(request.getHeaderNames()).thenReturn(Collections.emptyEnumeration());
@@ -1327,8 +1363,9 @@ public class UkelonnRestApiServletTest extends ServletTestBase {
 
         // Inject fake OSGi service UkelonnService
         UkelonnService ukelonn = mock(UkelonnService.class);
-        when(ukelonn.getPayments(anyInt())).thenReturn(getJadPayments());
+        when(ukelonn.getPaymentsAsync(anyInt(), anyInt(), anyInt())).thenReturn(CompletableFuture.completedFuture(getJadPayments()));
         servlet.setUkelonnService(ukelonn);
+        servlet.setUkelonnAdminService(mock(UkelonnAdminService.class));
 
         // Activate the servlet DS component
         servlet.activate();
@@ -1376,6 +1413,7 @@ public class UkelonnRestApiServletTest extends ServletTestBase {
         UkelonnService ukelonn = mock(UkelonnService.class);
         when(ukelonn.getPaymenttypes()).thenReturn(getPaymenttypes());
         servlet.setUkelonnService(ukelonn);
+        servlet.setUkelonnAdminService(mock(UkelonnAdminService.class));
 
         // Activate the servlet DS component
         servlet.activate();
@@ -1422,6 +1460,7 @@ public class UkelonnRestApiServletTest extends ServletTestBase {
         UkelonnService ukelonn = mock(UkelonnService.class);
         when(ukelonn.registerPayment(any())).thenReturn(account);
         servlet.setUkelonnService(ukelonn);
+        servlet.setUkelonnAdminService(mock(UkelonnAdminService.class));
 
         // Activate the servlet DS component
         servlet.activate();
@@ -1472,6 +1511,7 @@ public class UkelonnRestApiServletTest extends ServletTestBase {
         UkelonnService ukelonn = mock(UkelonnService.class);
         when(ukelonn.modifyJobtype(any())).thenReturn(Arrays.asList(jobtype));
         servlet.setUkelonnService(ukelonn);
+        servlet.setUkelonnAdminService(mock(UkelonnAdminService.class));
 
         // Activate the servlet DS component
         servlet.activate();
@@ -1521,6 +1561,7 @@ public class UkelonnRestApiServletTest extends ServletTestBase {
         List<TransactionType> updatedjobtypes = Stream.concat(originalJobtypes.stream(), Stream.of(jobtype)).collect(Collectors.toList());
         when(ukelonn.createJobtype(any())).thenReturn(updatedjobtypes);
         servlet.setUkelonnService(ukelonn);
+        servlet.setUkelonnAdminService(mock(UkelonnAdminService.class));
 
         // Activate the servlet DS component
         servlet.activate();
@@ -1571,6 +1612,7 @@ public class UkelonnRestApiServletTest extends ServletTestBase {
         UkelonnService ukelonn = mock(UkelonnService.class);
         when(ukelonn.modifyPaymenttype(any())).thenReturn(Arrays.asList(paymenttype));
         servlet.setUkelonnService(ukelonn);
+        servlet.setUkelonnAdminService(mock(UkelonnAdminService.class));
 
         // Activate the servlet DS component
         servlet.activate();
@@ -1620,6 +1662,7 @@ public class UkelonnRestApiServletTest extends ServletTestBase {
         List<TransactionType> updatedpaymenttypes = Stream.concat(originalPaymenttypes.stream(), Stream.of(paymenttype)).collect(Collectors.toList());
         when(ukelonn.createPaymenttype(any())).thenReturn(updatedpaymenttypes);
         servlet.setUkelonnService(ukelonn);
+        servlet.setUkelonnAdminService(mock(UkelonnAdminService.class));
 
         // Activate the servlet DS component
         servlet.activate();
@@ -1665,6 +1708,7 @@ public class UkelonnRestApiServletTest extends ServletTestBase {
         // Inject fake OSGi service UkelonnService
         UkelonnService ukelonn = mock(UkelonnService.class);
         servlet.setUkelonnService(ukelonn);
+        servlet.setUkelonnAdminService(mock(UkelonnAdminService.class));
 
         // Inject fake OSGi service UserAdminService
         UserManagementService useradmin = mock(UserManagementService.class);
@@ -1718,6 +1762,7 @@ public class UkelonnRestApiServletTest extends ServletTestBase {
         servlet.setLogservice(logservice);
         UkelonnService ukelonn = mock(UkelonnService.class);
         servlet.setUkelonnService(ukelonn);
+        servlet.setUkelonnAdminService(mock(UkelonnAdminService.class));
         UserManagementService useradmin = mock(UserManagementService.class);
         when(useradmin.modifyUser(any())).thenReturn(Arrays.asList(user));
         servlet.setUserManagement(useradmin);
@@ -1777,6 +1822,7 @@ public class UkelonnRestApiServletTest extends ServletTestBase {
         servlet.setLogservice(logservice);
         UkelonnService ukelonn = mock(UkelonnService.class);
         servlet.setUkelonnService(ukelonn);
+        servlet.setUkelonnAdminService(mock(UkelonnAdminService.class));
         UserManagementService useradmin = mock(UserManagementService.class);
         List<User> updatedusers = Stream.concat(getUsersForUserManagement().stream(), Stream.of(user)).collect(Collectors.toList());
         when(useradmin.addUser(any())).thenReturn(updatedusers);
@@ -1838,6 +1884,7 @@ public class UkelonnRestApiServletTest extends ServletTestBase {
         servlet.setLogservice(logservice);
         UkelonnService ukelonn = mock(UkelonnService.class);
         servlet.setUkelonnService(ukelonn);
+        servlet.setUkelonnAdminService(mock(UkelonnAdminService.class));
         UserManagementService useradmin = mock(UserManagementService.class);
         when(useradmin.updatePassword(any())).thenReturn(users);
         servlet.setUserManagement(useradmin);
@@ -1869,17 +1916,20 @@ public class UkelonnRestApiServletTest extends ServletTestBase {
         UserManagementService useradmin = mock(UserManagementService.class);
         UkelonnService ukelonn = mock(UkelonnService.class);
         List<SumYear> earningsSumOverYear = Arrays.asList(new SumYear(1250.0, 2016), new SumYear(2345.0, 2017), new SumYear(5467.0, 2018), new SumYear(2450.0, 2019));
-        when(ukelonn.earningsSumOverYear(eq("jad"))).thenReturn(earningsSumOverYear);
+        when(ukelonn.earningsSumOverYearAsync(eq("jad"))).thenReturn(CompletableFuture.completedFuture(earningsSumOverYear));
         UkelonnRestApiServlet servlet = new UkelonnRestApiServlet();
         servlet.setLogservice(logservice);
         servlet.setUserManagement(useradmin);
         servlet.setUkelonnService(ukelonn);
+        servlet.setUkelonnAdminService(mock(UkelonnAdminService.class));
         servlet.activate();
         ServletConfig config = createServletConfigWithApplicationAndPackagenameForJerseyResources();
         servlet.init(config);
 
         // Create the request and response
-        MockHttpServletRequest request = buildGetUrl("/statistics/earnings/sumoveryear/jad");
+        MockHttpServletRequest request = spy(buildGetUrl("/statistics/earnings/sumoveryear/jad"));
+        doReturn(true).when(request).isAsyncSupported();
+        doReturn(mock(AsyncContext.class)).when(request).startAsync(any(), any());
         MockHttpServletResponse response = new MockHttpServletResponse();
 
         // Run the method under test
@@ -1904,6 +1954,7 @@ public class UkelonnRestApiServletTest extends ServletTestBase {
         servlet.setLogservice(logservice);
         servlet.setUserManagement(useradmin);
         servlet.setUkelonnService(ukelonn);
+        servlet.setUkelonnAdminService(mock(UkelonnAdminService.class));
         servlet.activate();
         ServletConfig config = createServletConfigWithApplicationAndPackagenameForJerseyResources();
         servlet.init(config);
@@ -1913,6 +1964,9 @@ public class UkelonnRestApiServletTest extends ServletTestBase {
         when(requestGetNotifications.getRequestURL()).thenReturn(new StringBuffer("http://localhost:8181/ukelonn/api/notificationsto/jad"));
         when(requestGetNotifications.getRequestURI()).thenReturn("/ukelonn/api/notificationsto/jad");
 
+        // Set up Shiro to be in a logged-in state
+        loginUser(requestGetNotifications, new MockHttpServletResponse(), "jad", "1ad");
+
         // Create a response object that will receive and hold the servlet output
         MockHttpServletResponse notificationsResponse = new MockHttpServletResponse();
 
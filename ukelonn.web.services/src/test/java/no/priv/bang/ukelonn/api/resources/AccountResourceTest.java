@@ -19,12 +19,15 @@ import static no.priv.bang.ukelonn.testutils.TestUtils.*;
 import static org.junit.Assert.*;
 import static org.mockito.Mockito.*;
 
+import java.util.concurrent.CompletableFuture;
+
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import javax.servlet.http.HttpSession;
 import javax.ws.rs.BadRequestException;
 import javax.ws.rs.ForbiddenException;
 import javax.ws.rs.InternalServerErrorException;
+import javax.ws.rs.container.AsyncResponse;
 
 import org.junit.Test;
 
@@ -56,11 +59,13 @@ public class AccountResourceTest extends ServletTestBase {
 
         // Inject fake OSGi service UkelonnService
         UkelonnService ukelonn = mock(UkelonnService.class);
-        when(ukelonn.getAccount(anyString())).thenReturn(getJadAccount());
+        when(ukelonn.getAccountAsync(anyString())).thenReturn(CompletableFuture.completedFuture(getJadAccount()));
         resource.ukelonn = ukelonn;
 
         // Run the method under test
-        Account result = resource.getAccount("jad");
+        AsyncResponse asyncResponse = mock(AsyncResponse.class);
+        resource.getAccount("jad", asyncResponse);
+        Account result = resumedWith(asyncResponse);
 
         // Check the result
         assertEquals("jad", result.getUsername());
@@ -96,7 +101,7 @@ public class AccountResourceTest extends ServletTestBase {
         resource.ukelonn = ukelonn;
 
         // Run the method under test with a different username
-        resource.getAccount("jod");
+        resource.getAccount("jod", mock(AsyncResponse.class));
 
         // Expect a ForbiddenException to be thrown
     }
@@ -127,11 +132,13 @@ public class AccountResourceTest extends ServletTestBase {
 
         // Inject fake OSGi service UkelonnService
         UkelonnService ukelonn = mock(UkelonnService.class);
-        when(ukelonn.getAccount(anyString())).thenReturn(getJadAccount());
+        when(ukelonn.getAccountAsync(anyString())).thenReturn(CompletableFuture.completedFuture(getJadAccount()));
         resource.ukelonn = ukelonn;
 
         // Run the method under test
-        Account result = resource.getAccount("jad");
+        AsyncResponse asyncResponse = mock(AsyncResponse.class);
+        resource.getAccount("jad", asyncResponse);
+        Account result = resumedWith(asyncResponse);
 
         // Check the response
         assertEquals("jad", result.getUsername());
@@ -158,15 +165,14 @@ public class AccountResourceTest extends ServletTestBase {
         resource.ukelonn = ukelonn;
 
         // Run the method under test
-        resource.getAccount(null);
+        resource.getAccount(null, mock(AsyncResponse.class));
 
         // Verify that the test never gets here
         assertNull("Should never get here, exception should be thrown", response);
         fail("Should never get here, exception should be thrown");
     }
 
-    @SuppressWarnings("unchecked")
-    @Test(expected=InternalServerErrorException.class)
+    @Test
     public void testGetAccountUsernameNotPresentInDatabase() throws Exception {
         // Create the request and response for the Shiro login
         HttpServletRequest request = mock(HttpServletRequest.class);
@@ -186,15 +192,18 @@ public class AccountResourceTest extends ServletTestBase {
 
         // Inject fake OSGi service UkelonnService
         UkelonnService ukelonn = mock(UkelonnService.class);
-        when(ukelonn.getAccount(anyString())).thenThrow(UkelonnException.class);
+        CompletableFuture<Account> failed = new CompletableFuture<>();
+        failed.completeExceptionally(new UkelonnException("no account for user \"on\""));
+        when(ukelonn.getAccountAsync(anyString())).thenReturn(failed);
         resource.ukelonn = ukelonn;
 
         // Run the method under test
-        resource.getAccount("on");
+        AsyncResponse asyncResponse = mock(AsyncResponse.class);
+        resource.getAccount("on", asyncResponse);
 
-        // Verify that the test never gets here
-        assertNull("Should never get here, exception should be thrown", response);
-        fail("Should never get here, exception should be thrown");
+        // Verify that the request is resumed with an error response
+        verify(asyncResponse).resume(any(InternalServerErrorException.class));
+        assertEquals(1, logservice.getLogmessages().size());
     }
 
     @Test(expected=InternalServerErrorException.class)
@@ -213,10 +222,10 @@ public class AccountResourceTest extends ServletTestBase {
         resource.ukelonn = ukelonn;
 
         // Run the method under test
-        Account account = resource.getAccount("on");
+        AsyncResponse asyncResponse = mock(AsyncResponse.class);
+        resource.getAccount("on", asyncResponse);
 
         // Verify that the test never gets here
-        assertNull("Should never get here, exception should be thrown", account);
         fail("Should never get here, exception should be thrown");
     }
 }
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2019 Steinar Bang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package no.priv.bang.ukelonn.api.resources;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import no.priv.bang.ukelonn.UkelonnAdminService;
+import no.priv.bang.ukelonn.beans.DataSourceStatistics;
+import no.priv.bang.ukelonn.beans.MethodMetrics;
+import no.priv.bang.ukelonn.beans.NotificationQueueStatistics;
+
+public class AdminMetricsTest {
+
+    @Test
+    public void testMetrics() {
+        // Create the resource that is to be tested
+        AdminMetrics resource = new AdminMetrics();
+
+        // Inject fake OSGi service UkelonnAdminService
+        UkelonnAdminService admin = mock(UkelonnAdminService.class);
+        MethodMetrics getAccounts = new MethodMetrics("getAccounts", 3, 1, 0.25, new double[] { 0.0005, 0.01 }, new long[] { 1, 2 });
+        when(admin.getMethodMetrics()).thenReturn(Arrays.asList(getAccounts));
+        when(admin.getNotificationQueueStatistics()).thenReturn(new NotificationQueueStatistics(2, 5, 1, 0, 3, 4));
+        when(admin.getDataSourceStatistics()).thenReturn(new DataSourceStatistics(2, 4, -1, 100, 0.5, 0.125, 1, 300, 1.5, 7));
+        when(admin.getTransactionTypeCacheHits()).thenReturn(42L);
+        when(admin.getTransactionTypeCacheMisses()).thenReturn(3L);
+        resource.admin = admin;
+
+        // Run the method that is to be tested
+        String metrics = resource.metrics();
+
+        // Check the output
+        assertThat(metrics)
+            .contains("# TYPE ukelonn_service_calls_total counter\n")
+            .contains("ukelonn_service_calls_total{method=\"getAccounts\"} 3\n")
+            .contains("ukelonn_service_errors_total{method=\"getAccounts\"} 1\n")
+            .contains("# TYPE ukelonn_service_duration_seconds histogram\n")
+            .contains("ukelonn_service_duration_seconds_bucket{method=\"getAccounts\",le=\"0.0005\"} 1\n")
+            .contains("ukelonn_service_duration_seconds_bucket{method=\"getAccounts\",le=\"0.01\"} 2\n")
+            .contains("ukelonn_service_duration_seconds_bucket{method=\"getAccounts\",le=\"+Inf\"} 3\n")
+            .contains("ukelonn_service_duration_seconds_sum{method=\"getAccounts\"} 0.25\n")
+            .contains("ukelonn_service_duration_seconds_count{method=\"getAccounts\"} 3\n")
+            .contains("ukelonn_notification_queued 5\n")
+            .contains("ukelonn_notification_evicted_users_total 4\n")
+            .contains("# TYPE ukelonn_transaction_type_cache_hits_total counter\n")
+            .contains("ukelonn_transaction_type_cache_hits_total 42\n")
+            .contains("# TYPE ukelonn_transaction_type_cache_misses_total counter\n")
+            .contains("ukelonn_transaction_type_cache_misses_total 3\n")
+            .contains("# TYPE ukelonn_db_connections_active gauge\n")
+            .contains("ukelonn_db_connections_active 2\n")
+            .contains("ukelonn_db_connection_checkout_wait_seconds_max 0.125\n")
+            .contains("ukelonn_db_slow_statements_total 7\n")
+            .doesNotContain("ukelonn_db_connections_idle");
+    }
+
+    @Test
+    public void testDataSourceStatisticsWithIdleConnections() {
+        StringBuilder output = new StringBuilder();
+
+        AdminMetrics.formatDataSourceStatistics(output, new DataSourceStatistics(1, 1, 3, 1, 0.0, 0.0, 0, 0, 0.0, 0));
+
+        assertThat(output.toString()).contains("ukelonn_db_connections_idle 3\n");
+    }
+
+    @Test
+    public void testMetricsWithoutCallsOrStatistics() {
+        AdminMetrics resource = new AdminMetrics();
+        UkelonnAdminService admin = mock(UkelonnAdminService.class);
+        resource.admin = admin;
+
+        String metrics = resource.metrics();
+
+        assertThat(metrics)
+            .contains("# TYPE ukelonn_service_calls_total counter\n")
+            .doesNotContain("method=")
+            .doesNotContain("ukelonn_notification_queued")
+            .doesNotContain("ukelonn_db_");
+    }
+
+}
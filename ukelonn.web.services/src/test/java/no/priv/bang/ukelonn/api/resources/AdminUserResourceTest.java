@@ -21,6 +21,7 @@ import static org.junit.Assert.*;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.sql.Connection;
@@ -42,6 +43,7 @@ import no.priv.bang.osgi.service.mocks.logservice.MockLogService;
 import no.priv.bang.osgiservice.users.User;
 import no.priv.bang.osgiservice.users.UserAndPasswords;
 import no.priv.bang.osgiservice.users.UserManagementService;
+import no.priv.bang.ukelonn.UkelonnAdminService;
 import no.priv.bang.ukelonn.UkelonnService;
 import no.priv.bang.ukelonn.backend.UkelonnServiceProvider;
 
@@ -56,6 +58,8 @@ public class AdminUserResourceTest {
         resource.useradmin = useradmin;
         UkelonnService ukelonn = mock(UkelonnService.class);
         resource.ukelonn = ukelonn;
+        UkelonnAdminService admin = mock(UkelonnAdminService.class);
+        resource.admin = admin;
         MockLogService logservice = new MockLogService();
         resource.logservice = logservice;
 
@@ -76,6 +80,9 @@ public class AdminUserResourceTest {
         assertEquals(modifiedEmailaddress, firstUser.getEmail());
         assertEquals(modifiedFirstname, firstUser.getFirstname());
         assertEquals(modifiedLastname, firstUser.getLastname());
+
+        // Verify that cached user names are dropped
+        verify(admin).invalidateCachedUsers();
     }
 
     @SuppressWarnings("unchecked")
@@ -120,6 +127,8 @@ public class AdminUserResourceTest {
         resource.useradmin = useradmin;
         UkelonnService ukelonn = mock(UkelonnService.class);
         resource.ukelonn = ukelonn;
+        UkelonnAdminService admin = mock(UkelonnAdminService.class);
+        resource.admin = admin;
         MockLogService logservice = new MockLogService();
         resource.logservice = logservice;
 
@@ -149,6 +158,9 @@ public class AdminUserResourceTest {
         assertEquals(newEmailaddress, lastUser.getEmail());
         assertEquals(newFirstname, lastUser.getFirstname());
         assertEquals(newLastname, lastUser.getLastname());
+
+        // Verify that cached user names are dropped
+        verify(admin).invalidateCachedUsers();
     }
 
     @SuppressWarnings("unchecked")
@@ -247,6 +259,8 @@ public class AdminUserResourceTest {
         resource.useradmin = useradmin;
         UkelonnService ukelonn = mock(UkelonnService.class);
         resource.ukelonn = ukelonn;
+        UkelonnAdminService admin = mock(UkelonnAdminService.class);
+        resource.admin = admin;
         MockLogService logservice = new MockLogService();
         resource.logservice = logservice;
         useradmin.setLogservice(logservice);
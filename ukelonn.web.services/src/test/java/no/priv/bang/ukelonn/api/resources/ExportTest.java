@@ -0,0 +1,205 @@
+/*
+ * Copyright 2019 Steinar Bang
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package no.priv.bang.ukelonn.api.resources;
+
+import static no.priv.bang.ukelonn.testutils.TestUtils.*;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.*;
+import static org.mockito.Mockito.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.function.Consumer;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSession;
+import javax.ws.rs.BadRequestException;
+import javax.ws.rs.ForbiddenException;
+import javax.ws.rs.InternalServerErrorException;
+import javax.ws.rs.NotFoundException;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import no.priv.bang.osgi.service.mocks.logservice.MockLogService;
+import no.priv.bang.ukelonn.UkelonnException;
+import no.priv.bang.ukelonn.UkelonnService;
+import no.priv.bang.ukelonn.api.ServletTestBase;
+import no.priv.bang.ukelonn.beans.Transaction;
+import no.priv.bang.ukelonn.beans.TransactionType;
+
+public class ExportTest extends ServletTestBase {
+
+    @Test
+    public void testExportNdjson() throws Exception {
+        List<Transaction> jobs = getJadJobs();
+        Export resource = createResourceExporting(jobs);
+
+        Response response = resource.export(1, "ndjson");
+        assertEquals(Export.NDJSON, response.getMediaType().toString());
+        String[] lines = writeToString(response).split("\n");
+
+        assertEquals(jobs.size(), lines.length);
+        JsonNode firstTransaction = new ObjectMapper().readTree(lines[0]);
+        assertEquals(jobs.get(0).getId(), firstTransaction.get("id").asInt());
+    }
+
+    @Test
+    public void testExportCsv() throws Exception {
+        List<Transaction> jobs = getJadJobs();
+        Export resource = createResourceExporting(jobs);
+
+        Response response = resource.export(1, "csv");
+        assertEquals(Export.CSV, response.getMediaType().toString());
+        assertThat(response.getHeaderString("Content-Disposition")).contains("transactions-1.csv");
+        String[] lines = writeToString(response).split("\n");
+
+        assertEquals(jobs.size() + 1, lines.length);
+        assertEquals(Export.CSV_HEADER.trim(), lines[0]);
+        assertThat(lines[1]).startsWith(jobs.get(0).getId() + ",");
+    }
+
+    @Test(expected=BadRequestException.class)
+    public void testExportUnknownFormat() {
+        Export resource = createResourceExporting(getJadJobs());
+        resource.export(1, "xml");
+    }
+
+    @Test(expected=IOException.class)
+    public void testExportDatabaseFailure() throws Exception {
+        login("jad", "1ad");
+        Export resource = new Export();
+        resource.logservice = new MockLogService();
+        UkelonnService ukelonn = mock(UkelonnService.class);
+        when(ukelonn.getAccountById(anyInt())).thenReturn(getJadAccount());
+        doThrow(UkelonnException.class).when(ukelonn).exportTransactions(anyInt(), any());
+        resource.ukelonn = ukelonn;
+
+        // The status has been sent when the export fails, so the response must be failed rather than ended
+        writeToString(resource.export(1, "ndjson"));
+    }
+
+    @Test(expected=ForbiddenException.class)
+    public void testExportAccountOfOtherUser() {
+        Export resource = createResourceExporting(getJadJobs());
+        when(resource.ukelonn.getAccountById(anyInt())).thenReturn(getJodAccount());
+
+        resource.export(2, "ndjson");
+    }
+
+    @Test
+    public void testExportAccountOfOtherUserAsAdministrator() throws Exception {
+        List<Transaction> jobs = getJadJobs();
+        Export resource = createResourceExporting(jobs);
+        login("admin", "admin");
+        when(resource.ukelonn.getAccountById(anyInt())).thenReturn(getJodAccount());
+
+        String[] lines = writeToString(resource.export(2, "ndjson")).split("\n");
+
+        assertEquals(jobs.size(), lines.length);
+    }
+
+    @Test(expected=NotFoundException.class)
+    public void testExportUnknownAccount() {
+        Export resource = createResourceExporting(getJadJobs());
+        when(resource.ukelonn.getAccountById(anyInt())).thenReturn(null);
+
+        resource.export(1234, "ndjson");
+    }
+
+    @Test(expected=InternalServerErrorException.class)
+    public void testExportFailureWhenFindingAccount() {
+        Export resource = createResourceExporting(getJadJobs());
+        when(resource.ukelonn.getAccountById(anyInt())).thenThrow(UkelonnException.class);
+
+        resource.export(1, "ndjson");
+    }
+
+    @Test(expected=IOException.class)
+    public void testExportClientDisconnected() throws Exception {
+        Export resource = createResourceExporting(getJadJobs());
+        StreamingOutput stream = (StreamingOutput) resource.export(1, "ndjson").getEntity();
+        OutputStream brokenOutput = mock(OutputStream.class);
+        doThrow(IOException.class).when(brokenOutput).write(any(byte[].class), anyInt(), anyInt());
+
+        // Enough transactions to overflow the write buffer
+        UkelonnService ukelonn = mock(UkelonnService.class);
+        doAnswer(invocation -> {
+                @SuppressWarnings("unchecked")
+                Consumer<Transaction> consumer = (Consumer<Transaction>) invocation.getArguments()[1];
+                for (int i = 0; i < 10000; ++i) {
+                    consumer.accept(getJadJobs().get(0));
+                }
+                return null;
+            }).when(ukelonn).exportTransactions(anyInt(), any());
+        resource.ukelonn = ukelonn;
+
+        stream.write(brokenOutput);
+    }
+
+    @Test
+    public void testCsvField() {
+        assertEquals("", Export.csvField(null));
+        assertEquals("Støvsuging", Export.csvField("Støvsuging"));
+        assertEquals("\"Vask, tørk\"", Export.csvField("Vask, tørk"));
+        assertEquals("\"Gi \"\"kos\"\"\"", Export.csvField("Gi \"kos\""));
+    }
+
+    @Test
+    public void testCsvLineOfPayment() {
+        Transaction payment = new Transaction(3, new TransactionType(4, "Inn på konto", null, false, true), new java.sql.Timestamp(0), -150.0, false);
+        assertEquals("3,1970-01-01T00:00:00Z,4,Inn på konto,false,true,-150.0,false\n", Export.csvLine(payment));
+    }
+
+    private Export createResourceExporting(List<Transaction> transactions) {
+        login("jad", "1ad");
+        Export resource = new Export();
+        resource.logservice = new MockLogService();
+        UkelonnService ukelonn = mock(UkelonnService.class);
+        when(ukelonn.getAccountById(anyInt())).thenReturn(getJadAccount());
+        doAnswer(invocation -> {
+                @SuppressWarnings("unchecked")
+                Consumer<Transaction> consumer = (Consumer<Transaction>) invocation.getArguments()[1];
+                transactions.forEach(consumer);
+                return null;
+            }).when(ukelonn).exportTransactions(anyInt(), any());
+        resource.ukelonn = ukelonn;
+        return resource;
+    }
+
+    private void login(String username, String password) {
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        HttpSession session = mock(HttpSession.class);
+        when(request.getSession()).thenReturn(session);
+        loginUser(request, mock(HttpServletResponse.class), username, password);
+    }
+
+    private String writeToString(Response response) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ((StreamingOutput) response.getEntity()).write(output);
+        return new String(output.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+}
@@ -28,6 +28,7 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 import java.util.stream.Collectors;
@@ -36,6 +37,7 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import javax.servlet.http.HttpSession;
 import javax.sql.DataSource;
+import javax.ws.rs.BadRequestException;
 import javax.ws.rs.ForbiddenException;
 import javax.ws.rs.InternalServerErrorException;
 
@@ -43,6 +45,7 @@ import org.apache.shiro.util.ThreadContext;
 import org.junit.Test;
 
 import no.priv.bang.osgi.service.mocks.logservice.MockLogService;
+import no.priv.bang.ukelonn.UkelonnException;
 import no.priv.bang.ukelonn.UkelonnService;
 import no.priv.bang.ukelonn.api.ServletTestBase;
 import no.priv.bang.ukelonn.backend.UkelonnServiceProvider;
@@ -240,6 +243,177 @@ public class JobResourceTest extends ServletTestBase {
         resource.doRegisterJob(job);
     }
 
+    @Test
+    public void testRegisterJobs() throws Exception {
+        // Create the request
+        Account account = getJadAccount();
+        double originalBalance = account.getBalance();
+        List<TransactionType> jobTypes = getJobtypes();
+        List<PerformedTransaction> jobs = Arrays.asList(
+            new PerformedTransaction(account, jobTypes.get(0).getId(), jobTypes.get(0).getTransactionAmount(), new Date()),
+            new PerformedTransaction(account, jobTypes.get(1).getId(), jobTypes.get(1).getTransactionAmount(), new Date()));
+
+        // Create the request and response for the Shiro login
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        HttpSession session = mock(HttpSession.class);
+        when(request.getSession()).thenReturn(session);
+        HttpServletResponse response = mock(HttpServletResponse.class);
+
+        // Create the object to be tested
+        JobResource resource = new JobResource();
+
+        // Log the user in to shiro
+        loginUser(request, response, "jad", "1ad");
+
+        // Create mock OSGi services to inject and inject it
+        MockLogService logservice = new MockLogService();
+        resource.logservice = logservice;
+
+        // Inject fake OSGi service UkelonnService
+        UkelonnService ukelonn = mock(UkelonnService.class);
+        Account accountWithUpdatedBalance = copyAccount(account);
+        accountWithUpdatedBalance.setBalance(account.getBalance() + jobTypes.get(0).getTransactionAmount() + jobTypes.get(1).getTransactionAmount());
+        when(ukelonn.getAccountById(account.getAccountId())).thenReturn(account);
+        when(ukelonn.registerPerformedJobs(any())).thenReturn(accountWithUpdatedBalance);
+        resource.ukelonn = ukelonn;
+
+        // Run the method under test
+        Account result = resource.doRegisterJobs(jobs);
+
+        // Check the response
+        assertEquals("jad", result.getUsername());
+        assertThat(result.getBalance()).isGreaterThan(originalBalance);
+    }
+
+    @Test(expected=ForbiddenException.class)
+    public void testRegisterJobsOtherUsername() throws Exception {
+        // Create the request
+        Account account = getJodAccount();
+        List<TransactionType> jobTypes = getJobtypes();
+        List<PerformedTransaction> jobs = Arrays.asList(new PerformedTransaction(account, jobTypes.get(0).getId(), jobTypes.get(0).getTransactionAmount(), new Date()));
+
+        // Create the request and response for the Shiro login
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        HttpSession session = mock(HttpSession.class);
+        when(request.getSession()).thenReturn(session);
+        HttpServletResponse response = mock(HttpServletResponse.class);
+
+        // Log the user in to shiro
+        loginUser(request, response, "jad", "1ad");
+
+        // Create the object to be tested
+        JobResource resource = new JobResource();
+        resource.logservice = new MockLogService();
+        UkelonnService ukelonn = mock(UkelonnService.class);
+        when(ukelonn.getAccountById(account.getAccountId())).thenReturn(account);
+        resource.ukelonn = ukelonn;
+
+        // Run the method under test
+        resource.doRegisterJobs(jobs);
+    }
+
+    @Test(expected=ForbiddenException.class)
+    public void testRegisterJobsOnAccountIdOfOtherUser() throws Exception {
+        // Jobs with the username of the logged in user, on the account id of another user
+        Account jad = getJadAccount();
+        Account jod = getJodAccount();
+        Account accountWithJadsUsernameAndJodsId = new Account(jod.getAccountId(), jad.getUsername(), jad.getFirstName(), jad.getLastName(), jad.getBalance());
+        List<TransactionType> jobTypes = getJobtypes();
+        List<PerformedTransaction> jobs = Arrays.asList(new PerformedTransaction(accountWithJadsUsernameAndJodsId, jobTypes.get(0).getId(), jobTypes.get(0).getTransactionAmount(), new Date()));
+
+        // Create the request and response for the Shiro login
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        HttpSession session = mock(HttpSession.class);
+        when(request.getSession()).thenReturn(session);
+        HttpServletResponse response = mock(HttpServletResponse.class);
+
+        // Log the user in to shiro
+        loginUser(request, response, "jad", "1ad");
+
+        // Create the object to be tested
+        JobResource resource = new JobResource();
+        resource.logservice = new MockLogService();
+        UkelonnService ukelonn = mock(UkelonnService.class);
+        when(ukelonn.getAccountById(jod.getAccountId())).thenReturn(jod);
+        resource.ukelonn = ukelonn;
+
+        // Run the method under test
+        try {
+            resource.doRegisterJobs(jobs);
+        } finally {
+            verify(ukelonn, never()).registerPerformedJobs(any());
+        }
+    }
+
+    @Test(expected=BadRequestException.class)
+    public void testRegisterJobsOnUnknownAccount() throws Exception {
+        List<TransactionType> jobTypes = getJobtypes();
+        Account unknownAccount = new Account(1234, "jad", "Jane", "Doe", 0.0);
+        List<PerformedTransaction> jobs = Arrays.asList(new PerformedTransaction(unknownAccount, jobTypes.get(0).getId(), jobTypes.get(0).getTransactionAmount(), new Date()));
+
+        JobResource resource = new JobResource();
+        resource.logservice = new MockLogService();
+        resource.ukelonn = mock(UkelonnService.class);
+
+        // Run the method under test
+        resource.doRegisterJobs(jobs);
+    }
+
+    @Test(expected=BadRequestException.class)
+    public void testRegisterJobsOnMoreThanOneAccount() throws Exception {
+        // Create the request
+        List<TransactionType> jobTypes = getJobtypes();
+        List<PerformedTransaction> jobs = Arrays.asList(
+            new PerformedTransaction(getJadAccount(), jobTypes.get(0).getId(), jobTypes.get(0).getTransactionAmount(), new Date()),
+            new PerformedTransaction(getJodAccount(), jobTypes.get(0).getId(), jobTypes.get(0).getTransactionAmount(), new Date()));
+
+        // Create the object to be tested
+        JobResource resource = new JobResource();
+        resource.logservice = new MockLogService();
+        resource.ukelonn = mock(UkelonnService.class);
+
+        // Run the method under test
+        resource.doRegisterJobs(jobs);
+    }
+
+    @Test(expected=BadRequestException.class)
+    public void testRegisterJobsEmptyList() throws Exception {
+        JobResource resource = new JobResource();
+        resource.logservice = new MockLogService();
+        resource.ukelonn = mock(UkelonnService.class);
+
+        // Run the method under test
+        resource.doRegisterJobs(Collections.emptyList());
+    }
+
+    @Test(expected=InternalServerErrorException.class)
+    public void testRegisterJobsFailure() throws Exception {
+        // Create the request
+        Account account = getJadAccount();
+        List<TransactionType> jobTypes = getJobtypes();
+        List<PerformedTransaction> jobs = Arrays.asList(new PerformedTransaction(account, jobTypes.get(0).getId(), jobTypes.get(0).getTransactionAmount(), new Date()));
+
+        // Create the request and response for the Shiro login
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        HttpSession session = mock(HttpSession.class);
+        when(request.getSession()).thenReturn(session);
+        HttpServletResponse response = mock(HttpServletResponse.class);
+
+        // Log the user in to shiro
+        loginUser(request, response, "jad", "1ad");
+
+        // Create the object to be tested, with a service that fails
+        JobResource resource = new JobResource();
+        resource.logservice = new MockLogService();
+        UkelonnService ukelonn = mock(UkelonnService.class);
+        when(ukelonn.getAccountById(account.getAccountId())).thenReturn(account);
+        when(ukelonn.registerPerformedJobs(any())).thenThrow(UkelonnException.class);
+        resource.ukelonn = ukelonn;
+
+        // Run the method under test
+        resource.doRegisterJobs(jobs);
+    }
+
     @Test
     public void testUpdateJob() {
         UkelonnService ukelonn = mock(UkelonnService.class);
@@ -17,12 +17,18 @@ package no.priv.bang.ukelonn.api.resources;
 
 import static no.priv.bang.ukelonn.testutils.TestUtils.*;
 import static org.junit.Assert.*;
+import static org.mockito.Matchers.*;
 import static org.mockito.Mockito.*;
 
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import javax.ws.rs.BadRequestException;
+import javax.ws.rs.container.AsyncResponse;
 
 import org.junit.Test;
 
+import no.priv.bang.ukelonn.UkelonnBadRequestException;
 import no.priv.bang.ukelonn.UkelonnService;
 import no.priv.bang.ukelonn.api.ServletTestBase;
 import no.priv.bang.ukelonn.beans.Account;
@@ -35,10 +41,26 @@ public class JobsTest extends ServletTestBase {
         Account account = getJadAccount();
         Jobs resource = new Jobs();
         UkelonnService ukelonn = mock(UkelonnService.class);
-        when(ukelonn.getJobs(anyInt())).thenReturn(getJadJobs());
+        when(ukelonn.getJobsAsync(anyInt(), anyInt(), anyInt())).thenReturn(CompletableFuture.completedFuture(getJadJobs()));
         resource.ukelonn = ukelonn;
-        List<Transaction> jobs = resource.jobs(account.getAccountId());
+        AsyncResponse asyncResponse = mock(AsyncResponse.class);
+        resource.jobs(account.getAccountId(), Integer.MAX_VALUE, 10, asyncResponse);
+        List<Transaction> jobs = resumedWith(asyncResponse);
         assertEquals(10, jobs.size());
     }
 
+    @Test
+    public void testGetJobsWithTooLargeLimit() {
+        Account account = getJadAccount();
+        Jobs resource = new Jobs();
+        UkelonnService ukelonn = mock(UkelonnService.class);
+        CompletableFuture<List<Transaction>> failed = new CompletableFuture<>();
+        failed.completeExceptionally(new UkelonnBadRequestException("limit too large"));
+        when(ukelonn.getJobsAsync(anyInt(), anyInt(), anyInt())).thenReturn(failed);
+        resource.ukelonn = ukelonn;
+        AsyncResponse asyncResponse = mock(AsyncResponse.class);
+        resource.jobs(account.getAccountId(), Integer.MAX_VALUE, 1000, asyncResponse);
+        verify(asyncResponse).resume(any(BadRequestException.class));
+    }
+
 }
@@ -17,22 +17,34 @@ package no.priv.bang.ukelonn.api.resources;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.Assert.*;
+import static org.mockito.Matchers.*;
+import static org.mockito.Mockito.*;
 
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSession;
+import javax.ws.rs.ForbiddenException;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.TimeoutHandler;
 
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 
+import no.priv.bang.osgi.service.mocks.logservice.MockLogService;
 import no.priv.bang.ukelonn.UkelonnService;
+import no.priv.bang.ukelonn.api.ServletTestBase;
 import no.priv.bang.ukelonn.backend.UkelonnServiceProvider;
 import no.priv.bang.ukelonn.beans.Notification;
 
-public class NotificationResourceTest {
+public class NotificationResourceTest extends ServletTestBase {
 
     @Test
     public void testNotification() {
-        UkelonnService ukelonn = new UkelonnServiceProvider();
-        NotificationResource resource = new NotificationResource();
-        resource.ukelonn = ukelonn;
+        NotificationResource resource = createResource(new UkelonnServiceProvider());
         List<Notification> notificationsToJad = resource.notificationsTo("jad");
         assertThat(notificationsToJad).isEmpty();
 
@@ -47,4 +59,102 @@ public class NotificationResourceTest {
         assertEquals(utbetalt, resource.notificationsTo("jad").get(0));
     }
 
+    @Test
+    public void testWaitForNotification() {
+        NotificationResource resource = createResource(new UkelonnServiceProvider());
+        // Give "jad" a channel
+        resource.notificationTo("jad", new Notification("Ukelønn", "Velkommen"));
+        resource.notificationsTo("jad");
+        AsyncResponse asyncResponse = mock(AsyncResponse.class);
+        resource.waitForNotificationsTo("jad", asyncResponse);
+        verify(asyncResponse, never()).resume(any(Object.class));
+        verify(asyncResponse, never()).resume(any(Throwable.class));
+
+        Notification utbetalt = new Notification("Ukelønn", "150 kroner betalt til konto");
+        resource.notificationTo("jad", utbetalt);
+
+        verify(asyncResponse).resume(Collections.singletonList(utbetalt));
+        assertThat(resource.notificationsTo("jad")).isEmpty();
+    }
+
+    @Test
+    public void testWaitForNotificationTimesOut() {
+        NotificationResource resource = createResource(new UkelonnServiceProvider());
+        AsyncResponse asyncResponse = mock(AsyncResponse.class);
+        resource.waitForNotificationsTo("jad", asyncResponse);
+        ArgumentCaptor<TimeoutHandler> timeoutHandler = ArgumentCaptor.forClass(TimeoutHandler.class);
+        verify(asyncResponse).setTimeoutHandler(timeoutHandler.capture());
+
+        timeoutHandler.getValue().handleTimeout(asyncResponse);
+        verify(asyncResponse).resume(Collections.emptyList());
+
+        // A notification sent after the timeout is kept for the next poll
+        Notification utbetalt = new Notification("Ukelønn", "150 kroner betalt til konto");
+        resource.notificationTo("jad", utbetalt);
+        assertEquals(utbetalt, resource.notificationsTo("jad").get(0));
+    }
+
+    @Test
+    public void testWaitForNotificationToUserWithoutChannelIsHeldUntilTimeout() {
+        NotificationResource resource = createResource(new UkelonnServiceProvider());
+        AsyncResponse asyncResponse = mock(AsyncResponse.class);
+        resource.waitForNotificationsTo("jad", asyncResponse);
+        verify(asyncResponse, never()).resume(any(Object.class));
+        ArgumentCaptor<TimeoutHandler> timeoutHandler = ArgumentCaptor.forClass(TimeoutHandler.class);
+        verify(asyncResponse).setTimeoutHandler(timeoutHandler.capture());
+
+        // A notification sent while waiting is kept for the next poll
+        Notification utbetalt = new Notification("Ukelønn", "150 kroner betalt til konto");
+        resource.notificationTo("jad", utbetalt);
+        verify(asyncResponse, never()).resume(any(Object.class));
+
+        timeoutHandler.getValue().handleTimeout(asyncResponse);
+        verify(asyncResponse).resume(Collections.emptyList());
+        assertEquals(utbetalt, resource.notificationsTo("jad").get(0));
+    }
+
+    @Test
+    public void testWaitForNotificationAlreadyQueued() {
+        UkelonnService ukelonn = mock(UkelonnService.class);
+        Notification utbetalt = new Notification("Ukelønn", "150 kroner betalt til konto");
+        when(ukelonn.waitForNotificationTo(anyString())).thenReturn(CompletableFuture.completedFuture(Collections.singletonList(utbetalt)));
+        NotificationResource resource = createResource(ukelonn);
+        AsyncResponse asyncResponse = mock(AsyncResponse.class);
+
+        resource.waitForNotificationsTo("jad", asyncResponse);
+
+        verify(asyncResponse).resume(Collections.singletonList(utbetalt));
+    }
+
+    @Test(expected=ForbiddenException.class)
+    public void testWaitForNotificationToOtherUser() {
+        UkelonnService ukelonn = mock(UkelonnService.class);
+        NotificationResource resource = createResource(ukelonn);
+        AsyncResponse asyncResponse = mock(AsyncResponse.class);
+
+        try {
+            resource.waitForNotificationsTo("jod", asyncResponse);
+        } finally {
+            verify(ukelonn, never()).waitForNotificationTo(anyString());
+        }
+    }
+
+    @Test(expected=ForbiddenException.class)
+    public void testNotificationsToOtherUser() {
+        NotificationResource resource = createResource(new UkelonnServiceProvider());
+
+        resource.notificationsTo("jod");
+    }
+
+    private NotificationResource createResource(UkelonnService ukelonn) {
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        HttpSession session = mock(HttpSession.class);
+        when(request.getSession()).thenReturn(session);
+        loginUser(request, mock(HttpServletResponse.class), "jad", "1ad");
+        NotificationResource resource = new NotificationResource();
+        resource.logservice = new MockLogService();
+        resource.ukelonn = ukelonn;
+        return resource;
+    }
+
 }
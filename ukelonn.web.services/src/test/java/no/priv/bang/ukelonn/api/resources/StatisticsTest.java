@@ -15,15 +15,23 @@
  */
 package no.priv.bang.ukelonn.api.resources;
 
+import static no.priv.bang.ukelonn.api.ServletTestBase.resumedWith;
 import static org.junit.Assert.*;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.*;
 import static org.mockito.Mockito.*;
 
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import javax.ws.rs.InternalServerErrorException;
+import javax.ws.rs.ServiceUnavailableException;
+import javax.ws.rs.container.AsyncResponse;
 
 import org.junit.Test;
 
+import no.priv.bang.ukelonn.UkelonnException;
 import no.priv.bang.ukelonn.UkelonnService;
 import no.priv.bang.ukelonn.beans.SumYear;
 import no.priv.bang.ukelonn.beans.SumYearMonth;
@@ -34,11 +42,13 @@ public class StatisticsTest {
     public void testEarningsSumOverYear() {
         Statistics resource = new Statistics();
         UkelonnService ukelonn = mock(UkelonnService.class);
-        when(ukelonn.earningsSumOverYear(eq("jad"))).thenReturn(Arrays.asList(new SumYear(1250.0, 2016)));
+        when(ukelonn.earningsSumOverYearAsync(eq("jad"))).thenReturn(CompletableFuture.completedFuture(Arrays.asList(new SumYear(1250.0, 2016))));
         resource.ukelonn = ukelonn;
 
         String username = "jad";
-        List<SumYear> earningsSumOverYear = resource.earningsSumOverYear(username);
+        AsyncResponse asyncResponse = mock(AsyncResponse.class);
+        resource.earningsSumOverYear(username, asyncResponse);
+        List<SumYear> earningsSumOverYear = resumedWith(asyncResponse);
         assertThat(earningsSumOverYear.size()).isGreaterThan(0);
         assertEquals(2016, earningsSumOverYear.get(0).getYear());
     }
@@ -47,13 +57,46 @@ public class StatisticsTest {
     public void testEarningsSumOverMonth() {
         Statistics resource = new Statistics();
         UkelonnService ukelonn = mock(UkelonnService.class);
-        when(ukelonn.earningsSumOverMonth(eq("jad"))).thenReturn(Arrays.asList(new SumYearMonth(125.0, 2016, 7)));
+        when(ukelonn.earningsSumOverMonthAsync(eq("jad"))).thenReturn(CompletableFuture.completedFuture(Arrays.asList(new SumYearMonth(125.0, 2016, 7))));
         resource.ukelonn = ukelonn;
 
         String username = "jad";
-        List<SumYearMonth> earningsSumOverYear = resource.earningsSumOverMonth(username);
+        AsyncResponse asyncResponse = mock(AsyncResponse.class);
+        resource.earningsSumOverMonth(username, asyncResponse);
+        List<SumYearMonth> earningsSumOverYear = resumedWith(asyncResponse);
         assertThat(earningsSumOverYear.size()).isGreaterThan(0);
         assertEquals(2016, earningsSumOverYear.get(0).getYear());
     }
 
+    @Test
+    public void testEarningsSumOverYearFailure() {
+        Statistics resource = new Statistics();
+        UkelonnService ukelonn = mock(UkelonnService.class);
+        CompletableFuture<List<SumYear>> failed = new CompletableFuture<>();
+        failed.completeExceptionally(new UkelonnException("database is down"));
+        when(ukelonn.earningsSumOverYearAsync(anyString())).thenReturn(failed);
+        resource.ukelonn = ukelonn;
+
+        AsyncResponse asyncResponse = mock(AsyncResponse.class);
+        resource.earningsSumOverYear("jad", asyncResponse);
+
+        verify(asyncResponse).setTimeout(eq(ResourceBase.ASYNC_RESPONSE_TIMEOUT_SECONDS), any());
+        verify(asyncResponse).resume(any(InternalServerErrorException.class));
+    }
+
+    @Test
+    public void testEarningsSumOverMonthWhenServiceIsBusy() {
+        Statistics resource = new Statistics();
+        UkelonnService ukelonn = mock(UkelonnService.class);
+        CompletableFuture<List<SumYearMonth>> rejected = new CompletableFuture<>();
+        rejected.completeExceptionally(new java.util.concurrent.RejectedExecutionException());
+        when(ukelonn.earningsSumOverMonthAsync(anyString())).thenReturn(rejected);
+        resource.ukelonn = ukelonn;
+
+        AsyncResponse asyncResponse = mock(AsyncResponse.class);
+        resource.earningsSumOverMonth("jad", asyncResponse);
+
+        verify(asyncResponse).resume(any(ServiceUnavailableException.class));
+    }
+
 }